@@ -2,16 +2,16 @@ package de.mpc.pia.intermediate;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import uk.ac.ebi.jmzidml.model.mzidml.AbstractParam;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
 
 import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.IdentificationKeySettingsMask;
 import de.mpc.pia.modeller.psm.PSMItem;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
@@ -87,8 +87,8 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
     /** are the modifications changed since last building the modification string and peptideIDString */
     private boolean modificationChanged;
 
-    /** caches the identification keys */
-    private Map<String, String> identificationKeys;
+    /** caches the identification keys, created on demand (thread safe, as the scoring may run in parallel) */
+    private transient volatile Map<IdentificationKeySettingsMask, String> identificationKeys;
 
     /** the finished peptide, only used after reading in a PIA file */
     private Peptide peptide;
@@ -119,7 +119,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
         this.modifications = new TreeMap<>();
         this.paramList = new ArrayList<>();
         this.modificationChanged = true;
-        this.identificationKeys = new HashMap<>(2);
+        this.identificationKeys = null;
 
         this.peptide = null;
     }
@@ -336,7 +336,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
         }
         peptideStringID = modificationSB.toString();
 
-        identificationKeys = new HashMap<>(2);
+        identificationKeys = null;
 
         modificationChanged = false;
     }
@@ -530,14 +530,21 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public String getSpectrumIdentificationKey(Map<String, Boolean> maximalKeySettings) {
-        Map<String, Boolean> psmSetSettings =
-                new HashMap<>(maximalKeySettings);
+        return getSpectrumIdentificationKey(IdentificationKeySettingsMask.of(maximalKeySettings));
+    }
 
-        // remove the SEQUENCE and MODIFICATIONS, they are not needed for spectrumIdentificationKey
-        psmSetSettings.remove(IdentificationKeySettings.SEQUENCE.name());
-        psmSetSettings.remove(IdentificationKeySettings.MODIFICATIONS.name());
 
-        return getIdentificationKey(psmSetSettings);
+    /**
+     * Returns a string to identify the spectrum, like
+     * {@link #getSpectrumIdentificationKey(Map)}.
+     *
+     * @param maximalKeySettings
+     * @return
+     */
+    public String getSpectrumIdentificationKey(IdentificationKeySettingsMask maximalKeySettings) {
+        // the SEQUENCE and MODIFICATIONS are not needed for spectrumIdentificationKey
+        return getIdentificationKey(maximalKeySettings.without(
+                IdentificationKeySettings.SEQUENCE, IdentificationKeySettings.MODIFICATIONS));
     }
 
 
@@ -554,17 +561,26 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
             Map<String, Boolean> psmSetSettings, String sequence,
             String modificationString, int charge, Double massToCharge,
             Double rt, String sourceID, String spectrumTitle, Long fileID) {
+        return getIdentificationKey(IdentificationKeySettingsMask.of(psmSetSettings),
+                sequence, modificationString, charge, massToCharge, rt, sourceID,
+                spectrumTitle, fileID);
+    }
 
-        List<String> usedSettings = psmSetSettings.entrySet().stream()
-                .filter(Map.Entry::getValue)
-                .map(Map.Entry::getKey)
-                .sorted()
-                .collect(Collectors.toList());
 
+    /**
+     * Returns a string for identifying a PSM, like
+     * {@link #getIdentificationKey(Map, String, String, int, Double, Double, String, String, Long)}.
+     *
+     * @return
+     */
+    public static String getIdentificationKey(
+            IdentificationKeySettingsMask psmSetSettings, String sequence,
+            String modificationString, int charge, Double massToCharge,
+            Double rt, String sourceID, String spectrumTitle, Long fileID) {
         StringBuilder key = new StringBuilder();
-        for (String settingName : usedSettings) {
+        for (IdentificationKeySettings setting : psmSetSettings.getOrderedSettings()) {
             String value = null;
-            switch(IdentificationKeySettings.getByName(settingName)) {
+            switch(setting) {
             case CHARGE:
                 value = Integer.toString(charge);
                 break;
@@ -630,18 +646,29 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
      * @return
      */
     public String getIdentificationKey(Map<String, Boolean> psmSetSettings) {
-        List<String> usedSettings = psmSetSettings.entrySet()
-                .stream()
-                .filter(Map.Entry::getValue)
-                .map(Map.Entry::getKey)
-                .sorted()
-                .collect(Collectors.toList());
+        return getIdentificationKey(IdentificationKeySettingsMask.of(psmSetSettings));
+    }
 
-        StringBuilder keyKey = new StringBuilder();
 
-        usedSettings.forEach(keyKey::append);
+    /**
+     * Returns a string for identifying a PSM, like
+     * {@link #getIdentificationKey(Map)}. The keys are cached per settings.
+     *
+     * @param psmSetSettings
+     * @return
+     */
+    public String getIdentificationKey(IdentificationKeySettingsMask psmSetSettings) {
+        if (modificationChanged) {
+            rebuildAfterModificationChange();
+        }
 
-        String key = identificationKeys.get(keyKey.toString());
+        Map<IdentificationKeySettingsMask, String> keys = identificationKeys;
+        if (keys == null) {
+            keys = new ConcurrentHashMap<>(4);
+            identificationKeys = keys;
+        }
+
+        String key = keys.get(psmSetSettings);
         if (key == null) {
             key = getIdentificationKey(
                     psmSetSettings,
@@ -654,9 +681,7 @@ public class PeptideSpectrumMatch implements PSMItem, Serializable {
                     this.getSpectrumTitle(),
                     this.getFile().getID());
 
-            if (key != null) {
-                identificationKeys.put(keyKey.toString(), key);
-            }
+            keys.put(psmSetSettings, key);
         }
 
         return key;
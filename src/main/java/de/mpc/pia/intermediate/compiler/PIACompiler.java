@@ -17,7 +17,6 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -59,7 +58,10 @@ import de.mpc.pia.intermediate.piaxml.FilesListXML;
 import de.mpc.pia.intermediate.piaxml.GroupXML;
 import de.mpc.pia.intermediate.piaxml.PeptideXML;
 import de.mpc.pia.intermediate.piaxml.SpectrumMatchXML;
+import de.mpc.pia.tools.JAXBContextCache;
+import de.mpc.pia.tools.MissedCleavageCache;
 import de.mpc.pia.tools.MzIdentMLTools;
+import de.mpc.pia.tools.OntologyRegistry;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.PIATools;
 import de.mpc.pia.tools.matomo.PIAMatomoTracker;
@@ -126,6 +128,9 @@ public abstract class PIACompiler {
     /** the OBO mapper, to get additional data */
     private OBOMapper oboMapper;
 
+    /** the missed cleavages of already parsed sequences, shared by all parsers */
+    private MissedCleavageCache missedCleavageCache;
+
     /** the number of used threads */
     private int numThreads;
 
@@ -174,6 +179,7 @@ public abstract class PIACompiler {
         softwareMap = new HashMap<>();
 
         oboMapper = null;
+        missedCleavageCache = null;
 
         unimodParser = null;
         psiModParser = null;
@@ -184,40 +190,51 @@ public abstract class PIACompiler {
 
 
     /**
-     * Getter for the oboMapper. Initializes the OBOMapper on the first call.
+     * Getter for the oboMapper, which is shared via the {@link OntologyRegistry}.
      * @return
      */
     public final OBOMapper getOBOMapper() {
         if (oboMapper == null) {
-            oboMapper = new OBOMapper();
+            oboMapper = OntologyRegistry.getOBOMapper();
         }
         return oboMapper;
     }
 
 
     /**
-     * Getter for the UnimodParser. Initializes the UnimodParser on the first
-     * call.
+     * Getter for the cache of missed cleavages, which should be used by all
+     * parsers of this compilation. Initializes the cache on the first call.
+     * @return
+     */
+    public final MissedCleavageCache getMissedCleavageCache() {
+        if (missedCleavageCache == null) {
+            missedCleavageCache = new MissedCleavageCache();
+        }
+        return missedCleavageCache;
+    }
+
+
+    /**
+     * Getter for the UnimodParser, which is shared via the
+     * {@link OntologyRegistry}.
      *
      * @return
      */
     public final UnimodParser getUnimodParser() {
         if (unimodParser == null) {
-            LOGGER.info("Initializing unimod parser...");
-            unimodParser = new UnimodParser();
-            LOGGER.info("unimod parser initialized...");
+            unimodParser = OntologyRegistry.getUnimodParser();
         }
         return unimodParser;
     }
 
 
     /**
-     * Getter for the PsiModParser. Initializes the parser on the first call.
+     * Getter for the PsiModParser, which is shared via the {@link OntologyRegistry}.
      * @return
      */
     public final PsiModParser getPsiModParser() {
         if (psiModParser == null) {
-            psiModParser = new PsiModParser();
+            psiModParser = OntologyRegistry.getPsiModParser();
         }
         return psiModParser;
     }
@@ -999,15 +1016,14 @@ public abstract class PIACompiler {
 
 
     /**
-     * Creates a marshaller for PIA XML for the given class.
+     * Returns the (per thread cached) marshaller for PIA XML for the given
+     * class, with the PIA XML properties set.
      *
      * @return
      * @throws JAXBException
      */
     private static Marshaller createMarshallerForPiaXML(Class<?> marshalClass) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(marshalClass);
-
-        Marshaller m = context.createMarshaller();
+        Marshaller m = JAXBContextCache.getMarshaller(marshalClass);
         m.setProperty(Marshaller.JAXB_ENCODING, encoding);
         m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
         m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
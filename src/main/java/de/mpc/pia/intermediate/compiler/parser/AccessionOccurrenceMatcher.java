@@ -0,0 +1,408 @@
+package de.mpc.pia.intermediate.compiler.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Peptide;
+
+
+/**
+ * Calculates the {@link de.mpc.pia.intermediate.AccessionOccurrence}s of
+ * peptides in the sequences of their accessions for file formats, which do
+ * not report the start and end positions themselves.
+ * <p>
+ * The peptide-accession connections of a whole input file are collected first
+ * and resolved afterwards at once: an Aho-Corasick automaton is built over all
+ * peptide sequences and each protein sequence is scanned only once. By
+ * default, the sequences are compared case insensitively and the special
+ * amino acid X is treated as wildcard on both sides. With exact matching, the
+ * sequences are compared case sensitively without wildcards, like
+ * {@link String#indexOf(String)} does. In both cases, all (also overlapping)
+ * occurrences are reported.
+ *
+ * @author julian
+ *
+ */
+public class AccessionOccurrenceMatcher {
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(AccessionOccurrenceMatcher.class);
+
+    /** the amino acid, which matches any other amino acid */
+    private static final char WILDCARD = 'X';
+
+
+    /** the peptides, the index in this list is the pattern index in the automaton */
+    private List<Peptide> peptides;
+
+    /** the (upper case, if not exactly matching) sequences of the peptides, same indices as the peptides */
+    private List<String> patterns;
+
+    /** maps from the peptide sequence to the pattern index */
+    private Map<String, Integer> patternIndices;
+
+    /** whether to compare the sequences case sensitively and without wildcards */
+    private final boolean exactMatching;
+
+    /** the accessions to be scanned, mapped by their IDs */
+    private Map<Long, Accession> accessions;
+
+    /** the pattern indices of the peptides connected to each accession (mapped by the accession ID) */
+    private Map<Long, BitSet> accessionPatterns;
+
+
+    /**
+     * Basic constructor, the sequences are compared case insensitively and
+     * with X as wildcard.
+     */
+    public AccessionOccurrenceMatcher() {
+        this(false);
+    }
+
+
+    /**
+     * Creates a matcher, which compares the sequences either exactly (case
+     * sensitive and without wildcards) or case insensitively and with X as
+     * wildcard.
+     *
+     * @param exactMatching whether to compare the sequences exactly
+     */
+    public AccessionOccurrenceMatcher(boolean exactMatching) {
+        this.exactMatching = exactMatching;
+        peptides = new ArrayList<>();
+        patterns = new ArrayList<>();
+        patternIndices = new HashMap<>();
+        accessions = new LinkedHashMap<>();
+        accessionPatterns = new HashMap<>();
+    }
+
+
+    /**
+     * Registers the connection between the peptide and the accession. The
+     * occurrences are calculated in {@link #resolveOccurrences()}. Accessions
+     * without a dbSequence are silently ignored.
+     *
+     * @param peptide
+     * @param accession
+     */
+    public void addPeptideAccessionConnection(Peptide peptide, Accession accession) {
+        if ((accession.getDbSequence() == null) || accession.getDbSequence().trim().isEmpty()
+                || peptide.getSequence().isEmpty()) {
+            return;
+        }
+
+        Integer patternIdx = patternIndices.get(peptide.getSequence());
+        if (patternIdx == null) {
+            patternIdx = peptides.size();
+            peptides.add(peptide);
+            patterns.add(exactMatching ? peptide.getSequence() : peptide.getSequence().toUpperCase());
+            patternIndices.put(peptide.getSequence(), patternIdx);
+        }
+
+        accessions.putIfAbsent(accession.getID(), accession);
+        accessionPatterns.computeIfAbsent(accession.getID(), k -> new BitSet()).set(patternIdx);
+    }
+
+
+    /**
+     * Calculates the start and end positions of all registered peptides in
+     * the connected accessions and adds them to the peptides. Afterwards, the
+     * matcher is cleared and can be used for the next file.
+     *
+     * @return the number of found occurrences
+     */
+    public int resolveOccurrences() {
+        if (accessions.isEmpty()) {
+            return 0;
+        }
+
+        // peptides containing wildcards (and the rare sequences only differing
+        // in the case) cannot be put into the automaton
+        BitSet fallbackPatterns = new BitSet(patterns.size());
+        Set<String> automatonPatterns = new HashSet<>(patterns.size());
+        AhoCorasickAutomaton automaton = new AhoCorasickAutomaton();
+        for (int idx = 0; idx < patterns.size(); idx++) {
+            String pattern = patterns.get(idx);
+            if ((!exactMatching && (pattern.indexOf(WILDCARD) > -1)) || !automatonPatterns.add(pattern)) {
+                fallbackPatterns.set(idx);
+            } else {
+                automaton.addPattern(pattern, idx);
+            }
+        }
+        automaton.buildFailureLinks();
+
+        int nrOccurrences = 0;
+        for (Map.Entry<Long, Accession> accIt : accessions.entrySet()) {
+            Accession acc = accIt.getValue();
+            String proteinSeq = acc.getDbSequence();
+            BitSet connected = accessionPatterns.get(accIt.getKey());
+            BitSet found = new BitSet(patterns.size());
+
+            int[] added = {0};
+            automaton.scan(proteinSeq, !exactMatching, (patternIdx, endPos) -> {
+                if (connected.get(patternIdx)) {
+                    int length = patterns.get(patternIdx).length();
+                    int start = endPos - length + 2;
+                    if (peptides.get(patternIdx).addAccessionOccurrence(acc, start, start + length - 1)) {
+                        added[0]++;
+                    }
+                    found.set(patternIdx);
+                }
+            });
+            nrOccurrences += added[0];
+
+            boolean proteinHasWildcard = !exactMatching && (proteinSeq.indexOf(WILDCARD) > -1
+                    || proteinSeq.indexOf(Character.toLowerCase(WILDCARD)) > -1);
+
+            for (int patternIdx = connected.nextSetBit(0); patternIdx >= 0; patternIdx = connected.nextSetBit(patternIdx + 1)) {
+                if (fallbackPatterns.get(patternIdx)) {
+                    nrOccurrences += addWildcardOccurrences(patternIdx, acc, 0, proteinSeq.length(), found);
+                } else if (proteinHasWildcard) {
+                    nrOccurrences += addOccurrencesAroundProteinWildcards(patternIdx, acc, found);
+                }
+
+                if (!found.get(patternIdx)) {
+                    LOGGER.warn("no occurrences for " + patterns.get(patternIdx) + "    dbSeq: " + proteinSeq);
+                }
+            }
+        }
+
+        LOGGER.debug("resolved " + nrOccurrences + " accession occurrences of "
+                + peptides.size() + " peptides in " + accessions.size() + " accessions");
+
+        peptides.clear();
+        patterns.clear();
+        patternIndices.clear();
+        accessions.clear();
+        accessionPatterns.clear();
+
+        return nrOccurrences;
+    }
+
+
+    /**
+     * Adds the occurrences of the pattern, which overlap with an X in the
+     * protein sequence.
+     *
+     * @return the number of newly added occurrences
+     */
+    private int addOccurrencesAroundProteinWildcards(int patternIdx, Accession acc, BitSet found) {
+        String proteinSeq = acc.getDbSequence();
+        int length = patterns.get(patternIdx).length();
+        int added = 0;
+
+        for (int pos = 0; pos < proteinSeq.length(); pos++) {
+            if (Character.toUpperCase(proteinSeq.charAt(pos)) == WILDCARD) {
+                added += addWildcardOccurrences(patternIdx, acc,
+                        Math.max(0, pos - length + 1), Math.min(proteinSeq.length(), pos + length), found);
+            }
+        }
+
+        return added;
+    }
+
+
+    /**
+     * Compares the pattern with the protein sequence at every start position
+     * in the given range of the protein, treating X on both sides as
+     * wildcard, and adds the found occurrences.
+     *
+     * @param fromPos first (0-based) position of the protein sequence to check
+     * @param toPos (0-based, exclusive) position, after which the pattern must end
+     * @return the number of newly added occurrences
+     */
+    private int addWildcardOccurrences(int patternIdx, Accession acc, int fromPos, int toPos, BitSet found) {
+        String pattern = patterns.get(patternIdx);
+        String proteinSeq = acc.getDbSequence();
+        int added = 0;
+
+        for (int start = fromPos; start + pattern.length() <= toPos; start++) {
+            if (matchesWithWildcards(pattern, proteinSeq, start)) {
+                found.set(patternIdx);
+                if (peptides.get(patternIdx).addAccessionOccurrence(acc, start + 1, start + pattern.length())) {
+                    added++;
+                }
+            }
+        }
+
+        return added;
+    }
+
+
+    /**
+     * Checks whether the (upper case) pattern matches the sequence at the
+     * given offset, with X matching any amino acid.
+     */
+    private static boolean matchesWithWildcards(String pattern, String sequence, int offset) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char p = pattern.charAt(i);
+            char s = Character.toUpperCase(sequence.charAt(offset + i));
+            if ((p != s) && (p != WILDCARD) && (s != WILDCARD)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Consumer of the matches found by the automaton.
+     */
+    @FunctionalInterface
+    private interface MatchConsumer {
+        /**
+         * @param patternIdx index of the matched pattern
+         * @param endPos (0-based) position of the last matched character
+         */
+        void match(int patternIdx, int endPos);
+    }
+
+
+    /**
+     * A simple Aho-Corasick automaton over strings. The trie is
+     * stored in primitive arrays with child/sibling links, which keeps the
+     * memory footprint small for large peptide sets.
+     */
+    private static final class AhoCorasickAutomaton {
+
+        /** initial capacity of the state arrays */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int[] firstChild;
+        private int[] nextSibling;
+        private char[] label;
+        private int[] failure;
+        /** pattern index ending in the state, -1 if none */
+        private int[] output;
+        /** the next state on the failure path with an output, -1 if none */
+        private int[] outputLink;
+        private int nrStates;
+
+
+        private AhoCorasickAutomaton() {
+            firstChild = new int[INITIAL_CAPACITY];
+            nextSibling = new int[INITIAL_CAPACITY];
+            label = new char[INITIAL_CAPACITY];
+            failure = new int[INITIAL_CAPACITY];
+            output = new int[INITIAL_CAPACITY];
+            outputLink = new int[INITIAL_CAPACITY];
+            nrStates = 0;
+
+            // the root
+            newState('\0');
+        }
+
+
+        private int newState(char c) {
+            if (nrStates == firstChild.length) {
+                int capacity = nrStates * 2;
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                label = Arrays.copyOf(label, capacity);
+                failure = Arrays.copyOf(failure, capacity);
+                output = Arrays.copyOf(output, capacity);
+                outputLink = Arrays.copyOf(outputLink, capacity);
+            }
+
+            firstChild[nrStates] = -1;
+            nextSibling[nrStates] = -1;
+            label[nrStates] = c;
+            failure[nrStates] = 0;
+            output[nrStates] = -1;
+            outputLink[nrStates] = -1;
+            return nrStates++;
+        }
+
+
+        private int getChild(int state, char c) {
+            for (int child = firstChild[state]; child > -1; child = nextSibling[child]) {
+                if (label[child] == c) {
+                    return child;
+                }
+            }
+            return -1;
+        }
+
+
+        private void addPattern(String pattern, int patternIdx) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int child = getChild(state, c);
+                if (child < 0) {
+                    child = newState(c);
+                    nextSibling[child] = firstChild[state];
+                    firstChild[state] = child;
+                }
+                state = child;
+            }
+            output[state] = patternIdx;
+        }
+
+
+        /**
+         * Builds the failure and output links in breadth-first order
+         */
+        private void buildFailureLinks() {
+            int[] queue = new int[nrStates];
+            int head = 0;
+            int tail = 0;
+
+            for (int child = firstChild[0]; child > -1; child = nextSibling[child]) {
+                failure[child] = 0;
+                queue[tail++] = child;
+            }
+
+            while (head < tail) {
+                int state = queue[head++];
+
+                for (int child = firstChild[state]; child > -1; child = nextSibling[child]) {
+                    char c = label[child];
+                    int fail = failure[state];
+                    int next = getChild(fail, c);
+                    while ((next < 0) && (fail != 0)) {
+                        fail = failure[fail];
+                        next = getChild(fail, c);
+                    }
+                    failure[child] = (next < 0) ? 0 : next;
+                    outputLink[child] = (output[failure[child]] > -1) ? failure[child] : outputLink[failure[child]];
+
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+
+        /**
+         * Scans the given text and reports all, also overlapping, matches of
+         * the patterns. If ignoring the case, the patterns must be upper case.
+         */
+        private void scan(String text, boolean ignoreCase, MatchConsumer consumer) {
+            int state = 0;
+            for (int pos = 0; pos < text.length(); pos++) {
+                char c = ignoreCase ? Character.toUpperCase(text.charAt(pos)) : text.charAt(pos);
+
+                int next = getChild(state, c);
+                while ((next < 0) && (state != 0)) {
+                    state = failure[state];
+                    next = getChild(state, c);
+                }
+                state = (next < 0) ? 0 : next;
+
+                for (int out = (output[state] > -1) ? state : outputLink[state]; out > -1; out = outputLink[out]) {
+                    consumer.match(output[out], pos);
+                }
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.compiler.PIACompiler;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.tools.CleavageSiteMatcher;
 import de.mpc.pia.tools.MzIdentMLTools;
 
 public class FastaFileParser {
@@ -196,7 +197,7 @@ public class FastaFileParser {
         accession.addSearchDatabaseRef(searchDBRef);
 
         // digest the protein
-        String[] peptides = dbSequence.split(enzymePattern);
+        String[] peptides = CleavageSiteMatcher.getForRegexp(enzymePattern).split(dbSequence);
 
         // if the missedCleavages is below 0, allow for all possible missed cleavages
         int missedCleavages;
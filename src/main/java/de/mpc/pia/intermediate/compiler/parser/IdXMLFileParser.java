@@ -44,7 +44,6 @@ import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.CleavageAgent;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.OntologyConstants;
-import de.mpc.pia.tools.PIATools;
 import de.mpc.pia.tools.openms.IdXMLParser;
 import de.mpc.pia.tools.openms.jaxb.DigestionEnzyme;
 import de.mpc.pia.tools.openms.jaxb.FixedModification;
@@ -130,6 +129,7 @@ public class IdXMLFileParser {
         int pepNr = 0;
         int specNr = 0;
         int runCount = 0;
+        AccessionOccurrenceMatcher occurrenceMatcher = new AccessionOccurrenceMatcher();
         for (IdentificationRun idRun : idXMLFile.getIdentificationRuns()) {
 
             runCount++;
@@ -264,13 +264,16 @@ public class IdXMLFileParser {
             for (PeptideIdentification pepID : idRun.getPeptideIdentification()) {
                 int[] adds = processPeptideIdentification(pepID, compiler,
                         enzyme, file, spectrumID, idRun,
-                        searchDatabase.getId());
+                        searchDatabase.getId(), occurrenceMatcher);
                 specNr += adds[0];
                 pepNr += adds[1];
                 accNr += adds[2];
             }
         }
 
+        // calculate the occurrences of all peptides in their proteins at once
+        occurrenceMatcher.resolveOccurrences();
+
         LOGGER.info("inserted new: \n\t" +
                 pepNr + " peptides\n\t" +
                 specNr + " peptide spectrum matches\n\t" +
@@ -317,11 +320,12 @@ public class IdXMLFileParser {
      * @param spectrumID
      * @param idRun
      * @param searchDbId
+     * @param occurrenceMatcher
      * @return
      */
     private static int[] processPeptideIdentification(PeptideIdentification pepID, PIACompiler compiler,
             Enzyme enzyme, PIAInputFile file, SpectrumIdentification spectrumID, IdentificationRun idRun,
-            String searchDbId) {
+            String searchDbId, AccessionOccurrenceMatcher occurrenceMatcher) {
         int specNr = 0;
         int pepNr = 0;
         int accNr = 0;
@@ -361,7 +365,8 @@ public class IdXMLFileParser {
 
             int missedCleavages;
             if (enzyme.getSiteRegexp() != null) {
-                missedCleavages = sequence.split(enzyme.getSiteRegexp()).length - 1;
+                missedCleavages = compiler.getMissedCleavageCache().getMissedCleavages(sequence,
+                        enzyme.getSiteRegexp());
             } else {
                 missedCleavages = -1;
             }
@@ -408,7 +413,8 @@ public class IdXMLFileParser {
                 peptide.addSpectrum(psm);
             }
 
-            accNr += connectProteins(pepHit.getProteinRefs(), compiler, peptide, file.getID(), searchDbId);
+            accNr += connectProteins(pepHit.getProteinRefs(), compiler, peptide, file.getID(), searchDbId,
+                    occurrenceMatcher);
         }
 
         return new int[]{specNr, pepNr, accNr};
@@ -574,16 +580,18 @@ public class IdXMLFileParser {
      * @param peptide
      * @param fileID
      * @param searchDbID
+     * @param occurrenceMatcher
      * @return
      */
     private static int connectProteins(List<Object> proteinRefs, PIACompiler compiler, Peptide peptide,
-            long fileID, String searchDbID) {
+            long fileID, String searchDbID, AccessionOccurrenceMatcher occurrenceMatcher) {
         AtomicInteger addedAccs = new AtomicInteger(0);
 
         // filter for correct references and connect them
         proteinRefs.stream()
                 .filter(ref -> ref instanceof ProteinHit)
-                .forEach(protHit -> addedAccs.addAndGet(connectProtein((ProteinHit)protHit, compiler, peptide, fileID, searchDbID))
+                .forEach(protHit -> addedAccs.addAndGet(connectProtein((ProteinHit)protHit, compiler, peptide, fileID, searchDbID,
+                        occurrenceMatcher))
                 );
 
         return addedAccs.intValue();
@@ -598,10 +606,11 @@ public class IdXMLFileParser {
      * @param peptide
      * @param fileID
      * @param searchDbID
+     * @param occurrenceMatcher
      * @return
      */
     private static int connectProtein(ProteinHit protHit, PIACompiler compiler, Peptide peptide,
-            long fileID, String searchDbID) {
+            long fileID, String searchDbID, AccessionOccurrenceMatcher occurrenceMatcher) {
         FastaHeaderInfos fastaInfo = FastaHeaderInfos.parseHeaderInfos(protHit.getAccession());
         if (fastaInfo == null) {
             LOGGER.error("Could not parse '" + protHit.getAccession() + '\'');
@@ -623,14 +632,8 @@ public class IdXMLFileParser {
             addAccessionInformation(acc, protHit, fileID, searchDbID, fastaInfo);
         }
 
-        // get the occurrences of the peptide
-        if ((acc.getDbSequence() != null)
-                && !acc.getDbSequence().trim().isEmpty()) {
-            String sequence = peptide.getSequence();
-            for (int start : getStartSites(sequence, acc.getDbSequence())) {
-                peptide.addAccessionOccurrence(acc, start, start + sequence.length() - 1);
-            }
-        }
+        // the occurrences of the peptide are calculated after the whole file is parsed
+        occurrenceMatcher.addPeptideAccessionConnection(peptide, acc);
 
         // now insert the connection between peptide and accession into the compiler
         compiler.addAccessionPeptideConnection(acc, peptide);
@@ -951,59 +954,6 @@ public class IdXMLFileParser {
     }
 
 
-    /**
-     * Getter for the start sites of a given peptide in the given protein
-     * sequence.
-     *
-     * @param peptide
-     * @param protein
-     * @return
-     */
-    private static List<Integer> getStartSites(String peptide, String protein) {
-        List<Integer> startSites = new ArrayList<>();
-
-        String peptideSeq = peptide.toUpperCase();
-        String proteinSeq = protein.toUpperCase();
-
-        if (peptideSeq.contains("X")) {
-            // replace the X by "." for regular expression matching
-            peptideSeq = peptideSeq.replace("X", ".");
-        }
-
-        Matcher matcher;
-        matcher = Pattern.compile(peptideSeq).matcher(proteinSeq);
-        while (matcher.find()) {
-            startSites.add(matcher.start() + 1);
-        }
-
-        if (proteinSeq.contains("X")) {
-            // needs to match around the X
-            matcher = Pattern.compile("X").matcher(proteinSeq);
-            while (matcher.find()) {
-                int subStart = Math.max(0, matcher.start() - peptideSeq.length() + 1);
-                int subEnd = Math.min(proteinSeq.length(), matcher.end() + peptideSeq.length() - 1);
-
-                String subProteinSeq = proteinSeq.substring(subStart, subEnd);
-                Integer pos = PIATools.longestCommonPeptide(peptideSeq, subProteinSeq);
-
-                if (pos > -1) {
-                    pos = subStart + pos;
-                    startSites.add(pos);
-                }
-            }
-
-            // clean the startSites
-            startSites = startSites.stream().distinct().collect(Collectors.toList());
-        }
-
-        if (startSites.isEmpty()) {
-            LOGGER.warn("no occurrences for " + peptideSeq + "    dbSeq: " + proteinSeq);
-        }
-
-        return startSites;
-    }
-
-
     /**
      * Check whether the list of PSMs already contains the PSMs, without comparing the IDs
      *
@@ -6,14 +6,12 @@ import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.compiler.PIACompiler;
 import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.tools.MissedCleavageCache;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.OntologyConstants;
-import de.mpc.pia.tools.obo.AbstractOBOMapper;
-import de.mpc.pia.tools.obo.OBOMapper;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.biojava.nbio.ontology.Term;
-import org.biojava.nbio.ontology.Triple;
 import uk.ac.ebi.jmzidml.model.mzidml.*;
 import uk.ac.ebi.jmzidml.xml.io.MzIdentMLUnmarshaller;
 
@@ -334,23 +332,9 @@ class MzIdentMLFileParser {
     private void getAndSetEnzymeRegexFromOBO(String oboID, Enzyme enzyme) {
         Term oboTerm = compiler.getOBOMapper().getTerm(oboID);
         if (oboTerm != null) {
-            Set<Triple> tripleSet = compiler.getOBOMapper().getTriples(oboTerm, null, null);
-
-            // get the regexes
-            List<String> regexes = tripleSet.stream()
-                    .filter(triple -> triple.getPredicate().getName().equals(AbstractOBOMapper.OBO_RELATIONSHIP)
-                            && triple.getObject().getName().startsWith(OBOMapper.OBO_HAS_REGEXP))
-                    .map(triple -> {
-                        // put filtered regExes into the map
-                        String regExpID = triple.getObject().getName().substring(11).trim();
-                        Term regExpTerm = compiler.getOBOMapper().getTerm(regExpID);
-                        return StringEscapeUtils.unescapeJava(regExpTerm.getDescription());
-                    })
-                    .collect(Collectors.toList());
-
-            // set the regex
-            if (!regexes.isEmpty()) {
-                enzyme.setSiteRegexp(regexes.get(0));
+            String regExp = compiler.getOBOMapper().getEnzymeRegexp(oboTerm);
+            if (regExp != null) {
+                enzyme.setSiteRegexp(regExp);
             }
         }
     }
@@ -571,7 +555,7 @@ class MzIdentMLFileParser {
 
         // calculate the missed cleavages
         // TODO: how do multiple and independent enzymes behave???
-        int missed = calculateMissedCleavages(sequence, specIDListsEnzymes);
+        int missed = calculateMissedCleavages(sequence, specIDListsEnzymes, compiler.getMissedCleavageCache());
 
         // create the PeptideSpectrumMatch object
         PeptideSpectrumMatch psm;
@@ -817,9 +801,11 @@ class MzIdentMLFileParser {
      *
      * @param sequence
      * @param specIDListsEnzymes
+     * @param missedCleavageCache
      * @return
      */
-    private static int calculateMissedCleavages(String sequence, Enzymes specIDListsEnzymes) {
+    private static int calculateMissedCleavages(String sequence, Enzymes specIDListsEnzymes,
+            MissedCleavageCache missedCleavageCache) {
         int missed = 0;
         if (specIDListsEnzymes != null) {
             for (Enzyme enzyme : specIDListsEnzymes.getEnzyme()) {
@@ -831,7 +817,7 @@ class MzIdentMLFileParser {
                     break;
                 }
 
-                missed += sequence.split(regExp).length - 1;
+                missed += missedCleavageCache.getMissedCleavages(sequence, regExp);
             }
         }
 
@@ -849,20 +835,14 @@ class MzIdentMLFileParser {
     private ScoreModel parseOBOTermAsScore(Term oboTerm, String value) {
         ScoreModel score = null;
 
-        if (oboTerm != null) {
-            // the score is in the OBO file, get the relations etc.
-            Set<Triple> tripleSet = compiler.getOBOMapper().getTriples(oboTerm, null, null);
-
-            for (Triple triple : tripleSet) {
-                if (triple.getPredicate().getName().equals(AbstractOBOMapper.OBO_IS_A) &&
-                        triple.getObject().getName().equals(OntologyConstants.SEARCH_ENGINE_PSM_SCORE.getPsiAccession())) {
-                    // subject is a "search engine specific score for PSM"
-                    double doubleValue = Double.parseDouble(value);
-                    score = new ScoreModel(doubleValue,
-                            StringEscapeUtils.unescapeJava(oboTerm.getName()),
-                            StringEscapeUtils.unescapeJava(oboTerm.getDescription()));
-                }
-            }
+        if ((oboTerm != null)
+                && compiler.getOBOMapper().getParentAccessions(oboTerm).contains(
+                        OntologyConstants.SEARCH_ENGINE_PSM_SCORE.getPsiAccession())) {
+            // subject is a "search engine specific score for PSM"
+            double doubleValue = Double.parseDouble(value);
+            score = new ScoreModel(doubleValue,
+                    StringEscapeUtils.unescapeJava(oboTerm.getName()),
+                    StringEscapeUtils.unescapeJava(oboTerm.getDescription()));
         }
 
         return score;
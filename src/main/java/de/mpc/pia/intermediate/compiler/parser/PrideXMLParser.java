@@ -143,224 +143,333 @@ public class PrideXMLParser {
 
         file.addSpectrumIdentification(spectrumID);
 
-        int accNr = 0;
-        int pepNr = 0;
-        int specNr = 0;
+        UnimodParser unimodParser = compiler.getUnimodParser();
 
-        boolean decoysFound = false;
+        IdentificationMerger merger = new IdentificationMerger(compiler, file, spectrumID, enzymes);
 
-        // to check, whether the PSM is already there, we need the psmSetSettings map
-        Map<String, Boolean> psmSetSettings = new HashMap<>();
-        psmSetSettings.put(IdentificationKeySettings.SOURCE_ID.name(), true);
-        psmSetSettings.put(IdentificationKeySettings.SEQUENCE.name(), true);
-        psmSetSettings.put(IdentificationKeySettings.MODIFICATIONS.name(), true);
-        psmSetSettings.put(IdentificationKeySettings.CHARGE.name(), true);
+        // go through the identifications (they refer to accessions)
+        for (String identifier : prideParser.getIdentIds()) {
+            merger.merge(convertIdentification(prideParser.getIdentById(identifier), unimodParser));
+        }
 
-        // map to store the already created PSMs
-        Map<String, PeptideSpectrumMatch> keysToPSMs = new HashMap<>();
+        // if any modifications were found, add them to the spectrumIDProtocol
+        if (!merger.foundModifications.isEmpty()) {
+            spectrumIDProtocol.setModificationParams(
+                    createModificationParams(merger.foundModifications, unimodParser));
+        }
 
-        // mapping from the enzyme accessions to regular expressions of the enzyme
-        Map<String, String> enzymesToRegexes = new HashMap<>();
+        // go through all PSMs and delete decoy information (if none were found)
+        if (!merger.decoysFound) {
+            LOGGER.debug("resetting all decoy information, because no decoys were found in the file");
+            for (PeptideSpectrumMatch psm : merger.keysToPSMs.values()) {
+                psm.setIsDecoy(null);
+            }
+        }
 
-        // stores the modifications
-        Set<Modification> foundModifications = new HashSet<>();
+        LOGGER.info("inserted new: \n\t" +
+                merger.pepNr + " peptides\n\t" +
+                merger.specNr + " peptide spectrum matches\n\t" +
+                merger.accNr + " accessions");
+        return true;
+    }
 
-        // go through the identifications (they refer to accessions)
-        for (String identifier: prideParser.getIdentIds()) {
-            Identification identification = prideParser.getIdentById(identifier);
-            Accession acc = null;
 
-            for (PeptideItem peptideItem : identification.getPeptideItem()) {
+    /**
+     * Converts the identification and its peptide items into the PIA
+     * representation, without accessing the compiler.
+     */
+    private static ConvertedIdentification convertIdentification(Identification identification,
+            UnimodParser unimodParser) {
+        ConvertedIdentification converted = new ConvertedIdentification();
+        converted.accession = identification.getAccession();
+        converted.database = identification.getDatabase();
+        converted.databaseVersion = identification.getDatabaseVersion();
+        converted.isDecoy = PRIDETools.isDecoyHit(identification);
+
+        if (identification.getAdditional() != null) {
+            uk.ac.ebi.pride.jaxb.model.CvParam descParam =
+                    identification.getAdditional().getCvParamByAcc("PRIDE:0000063");
+            if (descParam != null) {
+                converted.description = descParam.getValue();
+            }
+        }
 
-                if(peptideItem.getSequence() != null && peptideItem.getStart() != null && peptideItem.getEnd() != null){
+        for (PeptideItem peptideItem : identification.getPeptideItem()) {
+            if ((peptideItem.getSequence() == null) || (peptideItem.getStart() == null)
+                    || (peptideItem.getEnd() == null)) {
+                continue;
+            }
 
-                    String sequence = peptideItem.getSequence();
+            ConvertedPeptideItem item = new ConvertedPeptideItem();
+            item.sequence = peptideItem.getSequence();
+            item.start = peptideItem.getStart().intValue();
+            item.end = peptideItem.getEnd().intValue();
 
-                    Spectrum spectrum = peptideItem.getSpectrum();
-                    SpectrumDesc spectrumDesc = spectrum.getSpectrumDesc();
+            Spectrum spectrum = peptideItem.getSpectrum();
+            SpectrumDesc spectrumDesc = spectrum.getSpectrumDesc();
+            item.spectrumID = String.valueOf(spectrum.getId());
 
-                    Integer charge = null;
-                    String chargeStr = getValueFromSpectrumPrecursor(spectrumDesc, chargeAccessions);
-                    if (chargeStr != null) {
-                        charge = Integer.parseInt(chargeStr);
-                    }
+            String chargeStr = getValueFromSpectrumPrecursor(spectrumDesc, chargeAccessions);
+            item.charge = (chargeStr != null) ? Integer.parseInt(chargeStr) : -1;
 
-                    Map<Integer, Modification> modifications =
-                            transformModifications(sequence, peptideItem.getModificationItem(), compiler.getUnimodParser());
+            item.modifications =
+                    transformModifications(item.sequence, peptideItem.getModificationItem(), unimodParser);
 
-                    foundModifications.addAll(modifications.values());
+            String mzStr = getValueFromSpectrumPrecursor(spectrumDesc, mzAccessions);
+            item.deltaMass = Double.NaN;
+            if (mzStr != null) {
+                item.precursorMZ = Double.parseDouble(mzStr);
 
-                    if(charge == null)
-                        charge = -1;
+                double theoreticalMass = MoleculeUtilities.calculateTheoreticalMass(item.sequence,
+                        getPtmMassesForTheoreticalMass(item.modifications));
+                double precursorMass = item.precursorMZ*item.charge -
+                        item.charge*PIAConstants.H_MASS.doubleValue();
+                item.deltaMass = precursorMass - theoreticalMass;
+            } else {
+                item.precursorMZ = Double.NaN;
+            }
 
-                    String psmKey = PeptideSpectrumMatch.getIdentificationKey(
-                            psmSetSettings,
-                            sequence,
-                            PeptideSpectrumMatch.getModificationString(modifications),  // no different rounding in the same file, so this should be safe
-                            charge,
-                            null,
-                            null,
-                            String.valueOf(spectrum.getId()),
-                            String.valueOf(spectrum.getId()),
-                            null);
+            String rtStr = getValueFromSpectrumPrecursor(spectrumDesc, rtAccessions);
+            if (rtStr != null) {
+                if (rtStr.contains("-")) {
+                    rtStr = rtStr.split("-")[0].trim();
+                }
+                if(rtStr.startsWith("PT"))
+                    rtStr = rtStr.replace("PT", "");
+                if(rtStr.contains("S"))
+                    rtStr = rtStr.replace("S", "");
 
-                    Peptide peptide;
-
-                    PeptideSpectrumMatch psm = keysToPSMs.get(psmKey);
-                    if (psm == null) {
-                        String mzStr = getValueFromSpectrumPrecursor(spectrumDesc, mzAccessions);
-                        Double precursorMZ;
-                        double deltaMass = Double.NaN;
-                        if (mzStr != null) {
-                            precursorMZ = Double.parseDouble(mzStr);
-
-                            double theoreticalMass = MoleculeUtilities.calculateTheoreticalMass(sequence,
-                                    getPtmMassesForTheoreticalMass(modifications));
-                            double precursorMass = precursorMZ*charge -
-                                    charge*PIAConstants.H_MASS.doubleValue();
-                            deltaMass = precursorMass - theoreticalMass;
-                        } else {
-                            precursorMZ = Double.NaN;
-                        }
+                item.rt = Double.parseDouble(rtStr);
+            }
 
-                        Double rt = null;
-                        String rtStr = getValueFromSpectrumPrecursor(spectrumDesc, rtAccessions);
-                        if (rtStr != null) {
-                            if (rtStr.contains("-")) {
-                                rtStr = rtStr.split("-")[0].trim();
-                            }
-                            if(rtStr.startsWith("PT"))
-                                rtStr = rtStr.replace("PT", "");
-                            if(rtStr.contains("S"))
-                                rtStr = rtStr.replace("S", "");
-
-                            rt = Double.parseDouble(rtStr);
-                        }
+            item.scores = transformScoreModels(peptideItem.getAdditional());
 
-                        int missedCleavages = MzIdentMLTools.calculateMissedCleavages(sequence,
-                                enzymes, enzymesToRegexes, compiler.getOBOMapper());
-
-                        psm = compiler.createNewPeptideSpectrumMatch(
-                                charge,
-                                precursorMZ,
-                                deltaMass,
-                                rt,
-                                sequence,
-                                missedCleavages,
-                                String.valueOf(spectrum.getId()),
-                                String.valueOf(spectrum.getId()),
-                                file,
-                                spectrumID);
-                        specNr++;
-                        keysToPSMs.put(psmKey, psm);
-
-                        // get the peptide or create it
-                        peptide = compiler.getPeptide(sequence);
-                        if (peptide == null) {
-                            peptide = compiler.insertNewPeptide(sequence);
-                            pepNr++;
-                        }
+            converted.peptideItems.add(item);
+        }
 
-                        // add the spectrum to the peptide
-                        peptide.addSpectrum(psm);
+        return converted;
+    }
 
-                        // add the modifications
-                        for (Map.Entry<Integer, Modification> mod
-                                : modifications.entrySet()) {
-                            psm.addModification(mod.getKey(), mod.getValue());
-                        }
-                    } else {
-                        // if the PSM is already in the compiler, the peptide must be there as well
-                        peptide = compiler.getPeptide(sequence);
-                        if (peptide == null) {
-                            LOGGER.error("The peptide " + sequence + " was not found in the compiler!");
-                            continue;
-                        }
-                    }
 
-                    // setting of decoy parameter, but only, if it was calculated anywhere
-                    boolean isDecoy = PRIDETools.isDecoyHit(identification);
-                    if (isDecoy) {
-                        decoysFound = true;
-                    }
-                    if (((psm.getIsDecoy() == null) || psm.getIsDecoy()) && isDecoy) {
-                        // either not set, or it is a decoy (which may become target)
-                        psm.setIsDecoy(isDecoy);
-                    }
+    /**
+     * An identification (i.e. accession with its peptides) of the PRIDE XML
+     * file, converted into the PIA representation but not yet inserted into
+     * the compiler.
+     */
+    private static class ConvertedIdentification {
+        private String accession;
+        private String description;
+        private String database;
+        private String databaseVersion;
+        private boolean isDecoy;
+        private List<ConvertedPeptideItem> peptideItems = new ArrayList<>();
+    }
 
 
-                    // add the scores (if not already in the PSM)
-                    List<ScoreModel> scores = transformScoreModels(peptideItem.getAdditional());
+    /**
+     * A converted peptide item of an identification
+     */
+    private static class ConvertedPeptideItem {
+        private String sequence;
+        private int start;
+        private int end;
+        private String spectrumID;
+        private int charge;
+        private Map<Integer, Modification> modifications;
+        private Double precursorMZ;
+        private double deltaMass;
+        private Double rt;
+        private List<ScoreModel> scores;
+    }
 
-                    for (ScoreModel score : scores) {
-                        if (!psm.getScores().contains(score)) {
-                            psm.addScore(score);
-                        }
-                    }
 
-                    if(acc == null){
-                        // add the Accession to the compiler (if it is not already there)
-                        acc = compiler.getAccession(identification.getAccession());
-                        if (acc == null) {
-                            // no sequence information available in the PRIDE XML
-                            acc = compiler.insertNewAccession(identification.getAccession(), null);
-                            accNr++;
-
-                            uk.ac.ebi.pride.jaxb.model.CvParam descParam =
-                                    identification.getAdditional().getCvParamByAcc("PRIDE:0000063");
-                            if (descParam != null) {
-                                acc.addDescription(file.getID(), descParam.getValue());
-                            }
-                        }
-                        acc.addFile(file.getID());
-
-                        // add the searchDB to the accession
-                        if ((identification.getDatabase() != null) &&
-                                !identification.getDatabase().isEmpty()) {
-                            SearchDatabase sDB = createSearchDatabase(
-                                    identification.getDatabase(), identification.getDatabaseVersion());
-                            sDB = compiler.putIntoSearchDatabasesMap(sDB);
-                            acc.addSearchDatabaseRef(sDB.getId());
-                        }
+    /**
+     * Inserts the converted identifications into the compiler. As PRIDE XML
+     * does not know the concept of PSMs, the peptide items are considered as
+     * PSMs here.
+     */
+    private static class IdentificationMerger {
+        private PIACompiler compiler;
+        private PIAInputFile file;
+        private SpectrumIdentification spectrumID;
+        private Enzymes enzymes;
+
+        /** to check, whether the PSM is already there, we need the psmSetSettings map */
+        private Map<String, Boolean> psmSetSettings;
+
+        /** map to store the already created PSMs */
+        private Map<String, PeptideSpectrumMatch> keysToPSMs;
+
+        /** mapping from the enzyme accessions to regular expressions of the enzyme */
+        private Map<String, String> enzymesToRegexes;
+
+        /** stores the modifications */
+        private Set<Modification> foundModifications;
+
+        private boolean decoysFound;
+
+        private int accNr;
+        private int pepNr;
+        private int specNr;
+
+
+        private IdentificationMerger(PIACompiler compiler, PIAInputFile file,
+                SpectrumIdentification spectrumID, Enzymes enzymes) {
+            this.compiler = compiler;
+            this.file = file;
+            this.spectrumID = spectrumID;
+            this.enzymes = enzymes;
+
+            psmSetSettings = new HashMap<>();
+            psmSetSettings.put(IdentificationKeySettings.SOURCE_ID.name(), true);
+            psmSetSettings.put(IdentificationKeySettings.SEQUENCE.name(), true);
+            psmSetSettings.put(IdentificationKeySettings.MODIFICATIONS.name(), true);
+            psmSetSettings.put(IdentificationKeySettings.CHARGE.name(), true);
+
+            keysToPSMs = new HashMap<>();
+            enzymesToRegexes = new HashMap<>();
+            foundModifications = new HashSet<>();
+
+            decoysFound = false;
+            accNr = 0;
+            pepNr = 0;
+            specNr = 0;
+        }
+
+
+        /**
+         * Inserts the converted identification into the compiler
+         */
+        private void merge(ConvertedIdentification identification) {
+            Accession acc = null;
+
+            for (ConvertedPeptideItem item : identification.peptideItems) {
+                String sequence = item.sequence;
+
+                foundModifications.addAll(item.modifications.values());
+
+                String psmKey = PeptideSpectrumMatch.getIdentificationKey(
+                        psmSetSettings,
+                        sequence,
+                        PeptideSpectrumMatch.getModificationString(item.modifications),  // no different rounding in the same file, so this should be safe
+                        item.charge,
+                        null,
+                        null,
+                        item.spectrumID,
+                        item.spectrumID,
+                        null);
+
+                Peptide peptide;
+
+                PeptideSpectrumMatch psm = keysToPSMs.get(psmKey);
+                if (psm == null) {
+                    int missedCleavages = MzIdentMLTools.calculateMissedCleavages(sequence,
+                            enzymes, enzymesToRegexes, compiler.getOBOMapper(),
+                            compiler.getMissedCleavageCache());
+
+                    psm = compiler.createNewPeptideSpectrumMatch(
+                            item.charge,
+                            item.precursorMZ,
+                            item.deltaMass,
+                            item.rt,
+                            sequence,
+                            missedCleavages,
+                            item.spectrumID,
+                            item.spectrumID,
+                            file,
+                            spectrumID);
+                    specNr++;
+                    keysToPSMs.put(psmKey, psm);
+
+                    // get the peptide or create it
+                    peptide = compiler.getPeptide(sequence);
+                    if (peptide == null) {
+                        peptide = compiler.insertNewPeptide(sequence);
+                        pepNr++;
                     }
 
-                    // add the accession occurrence to the peptide
-                    peptide.addAccessionOccurrence(acc,
-                            peptideItem.getStart().intValue(), peptideItem.getEnd().intValue());
+                    // add the spectrum to the peptide
+                    peptide.addSpectrum(psm);
 
-                    // now insert the connection between peptide and accession into the compiler
-                    compiler.addAccessionPeptideConnection(acc, peptide);
+                    // add the modifications
+                    for (Map.Entry<Integer, Modification> mod
+                            : item.modifications.entrySet()) {
+                        psm.addModification(mod.getKey(), mod.getValue());
+                    }
+                } else {
+                    // if the PSM is already in the compiler, the peptide must be there as well
+                    peptide = compiler.getPeptide(sequence);
+                    if (peptide == null) {
+                        LOGGER.error("The peptide " + sequence + " was not found in the compiler!");
+                        continue;
+                    }
+                }
 
-                    // add the PSM in the compiler (or overwrite it), this might give warning
-                    compiler.insertCompletePeptideSpectrumMatch(psm);
+                // setting of decoy parameter, but only, if it was calculated anywhere
+                if (identification.isDecoy) {
+                    decoysFound = true;
+                }
+                if (((psm.getIsDecoy() == null) || psm.getIsDecoy()) && identification.isDecoy) {
+                    // either not set, or it is a decoy (which may become target)
+                    psm.setIsDecoy(identification.isDecoy);
+                }
 
-                    // TODO: this should be restructured: first get a list of all peptides, then add them to avoid adding a PSM multiple times
+                // add the scores (if not already in the PSM)
+                for (ScoreModel score : item.scores) {
+                    if (!psm.getScores().contains(score)) {
+                        psm.addScore(score);
+                    }
+                }
 
+                if (acc == null) {
+                    acc = getOrInsertAccession(identification);
                 }
+
+                // add the accession occurrence to the peptide
+                peptide.addAccessionOccurrence(acc, item.start, item.end);
+
+                // now insert the connection between peptide and accession into the compiler
+                compiler.addAccessionPeptideConnection(acc, peptide);
+
+                // add the PSM in the compiler (or overwrite it), this might give warning
+                compiler.insertCompletePeptideSpectrumMatch(psm);
+
+                // TODO: this should be restructured: first get a list of all peptides, then add them to avoid adding a PSM multiple times
             }
         }
 
-        // if any modifications were found, add them to the spectrumIDProtocol
-        if (!foundModifications.isEmpty()) {
-            spectrumIDProtocol.setModificationParams(
-                    createModificationParams(foundModifications, compiler.getUnimodParser()));
-        }
 
-        // go through all PSMs and delete decoy information (if none were found)
-        if (!decoysFound) {
-            LOGGER.debug("resetting all decoy information, because no decoys were found in the file");
-            for (PeptideSpectrumMatch psm : keysToPSMs.values()) {
-                psm.setIsDecoy(null);
+        /**
+         * Gets the accession of the identification from the compiler or
+         * inserts it.
+         */
+        private Accession getOrInsertAccession(ConvertedIdentification identification) {
+            // add the Accession to the compiler (if it is not already there)
+            Accession acc = compiler.getAccession(identification.accession);
+            if (acc == null) {
+                // no sequence information available in the PRIDE XML
+                acc = compiler.insertNewAccession(identification.accession, null);
+                accNr++;
+
+                if (identification.description != null) {
+                    acc.addDescription(file.getID(), identification.description);
+                }
+            }
+            acc.addFile(file.getID());
+
+            // add the searchDB to the accession
+            if ((identification.database != null) && !identification.database.isEmpty()) {
+                SearchDatabase sDB = createSearchDatabase(
+                        identification.database, identification.databaseVersion);
+                sDB = compiler.putIntoSearchDatabasesMap(sDB);
+                acc.addSearchDatabaseRef(sDB.getId());
             }
-        }
 
-        LOGGER.info("inserted new: \n\t" +
-                pepNr + " peptides\n\t" +
-                specNr + " peptide spectrum matches\n\t" +
-                accNr + " accessions");
-        return true;
+            return acc;
+        }
     }
 
+
     /**
      * Retrieving the scores at PSM level from PRIDE XMLs
      *
@@ -1,7 +1,5 @@
 package de.mpc.pia.intermediate.compiler.parser.searchengines;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
@@ -47,6 +45,7 @@ import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
 import de.mpc.pia.modeller.IdentificationKeySettings;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.tools.DelimitedFieldTokenizer;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.OntologyConstants;
 import de.mpc.pia.tools.PIAConstants;
@@ -105,20 +104,16 @@ public class TandemFileParser {
 
         if ((rtMapFileName != null) && (rtMapFileName.length() > 0)) {
             // additional RT info is given, parse the file
-            try (FileInputStream rtStream = new FileInputStream(rtMapFileName)) {
+            try (DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(
+                    new InputStreamReader(new FileInputStream(rtMapFileName)), '\t')) {
                 LOGGER.info("Parsing the file '" + rtMapFileName + '\''
                         + " for RT information.");
 
-                DataInputStream in = new DataInputStream(rtStream);
-                BufferedReader br = new BufferedReader(new InputStreamReader(in));
-
-                String strLine;
-                while ((strLine = br.readLine()) != null) {
-                    String[] v = strLine.split("\t");
-                    rtMap.put(Integer.parseInt(v[0]), Double.parseDouble(v[1]));
+                // only the spectrum ID and RT columns are needed
+                tokenizer.setProjection(0, 1);
+                while (tokenizer.nextLine()) {
+                    rtMap.put(tokenizer.parseIntField(0), tokenizer.parseDoubleField(1));
                 }
-
-                in.close();
             } catch (Exception e) {
                 LOGGER.error("Error while parsing the RT info file " +
                         rtMapFileName + ", program will continue, " +
@@ -1,5 +1,7 @@
 package de.mpc.pia.intermediate.compiler.parser.searchengines;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.log4j.Logger;
@@ -23,31 +25,12 @@ import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
 import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentificationProtocol;
 import uk.ac.ebi.jmzidml.model.mzidml.Tolerance;
 import de.mpc.PD.ABaseClass;
-import de.mpc.PD.APeptideScores;
-import de.mpc.PD.APeptides;
-import de.mpc.PD.APeptidesAminoAcidModifications;
-import de.mpc.PD.APeptidesTerminalModifications;
-import de.mpc.PD.AminoAcidModifications;
 import de.mpc.PD.AminoAcids;
 import de.mpc.PD.FastaFiles;
 import de.mpc.PD.FileInfos;
-import de.mpc.PD.MassPeaks;
-import de.mpc.PD.PeptideScores;
-import de.mpc.PD.PeptideScores_decoy;
-import de.mpc.PD.Peptides;
-import de.mpc.PD.PeptidesAminoAcidModifications;
-import de.mpc.PD.PeptidesAminoAcidModifications_decoy;
-import de.mpc.PD.PeptidesProteins;
-import de.mpc.PD.PeptidesProteins_decoy;
-import de.mpc.PD.PeptidesTerminalModifications;
-import de.mpc.PD.PeptidesTerminalModifications_decoy;
-import de.mpc.PD.Peptides_decoy;
 import de.mpc.PD.ProcessingNodeParameters;
 import de.mpc.PD.ProcessingNodeScores;
 import de.mpc.PD.ProcessingNodes;
-import de.mpc.PD.ProteinAnnotations;
-import de.mpc.PD.Proteins;
-import de.mpc.PD.SpectrumHeaders;
 import de.mpc.PD.DB.JDBCAccess;
 import de.mpc.PD.Params.SimpleProgramParameters;
 import de.mpc.pia.intermediate.Accession;
@@ -56,8 +39,11 @@ import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.parser.AccessionOccurrenceMatcher;
 import de.mpc.pia.intermediate.compiler.parser.FastaHeaderInfos;
 import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import de.mpc.pia.intermediate.compiler.parser.searchengines.ThermoMSFPeptideStream.MSFModification;
+import de.mpc.pia.intermediate.compiler.parser.searchengines.ThermoMSFPeptideStream.MSFPeptide;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.MzIdentMLTools;
@@ -90,6 +76,10 @@ public class ThermoMSFFileParser {
     /**
      * Parses the data from an ProteomeDiscoverer's MSF file given by its name
      * into the given {@link PIACompiler}.
+     * <p>
+     * The peptides are streamed from the database together with their
+     * spectra, scores, modifications and proteins, so the large tables are
+     * never loaded into memory completely.
      */
     public static boolean getDataFromThermoMSFFile(String name, String fileName,
             PIACompiler compiler) {
@@ -364,38 +354,10 @@ public class ThermoMSFFileParser {
         Map<String, Set<String>> spectrumIdToSpectraData =
                 new HashMap<>();
 
-        LOGGER.info("get spectra info...");
-        Map<Object, Object> spectraMap = ABaseClass.getObjectMap(fileConnectionParams, SpectrumHeaders.class);
-        LOGGER.info("#spectra: " + spectraMap.size());
-
-        LOGGER.info("get peak info...");
-        Map<Object, Object> massPeakMap = ABaseClass.getObjectMap(fileConnectionParams, MassPeaks.class);
-        LOGGER.info("#peaks: " + massPeakMap.size());
-
         LOGGER.info("get file info...");
         Map<Object, Object> fileMap = ABaseClass.getObjectMap(fileConnectionParams, FileInfos.class);
         LOGGER.info("#files: " + fileMap.size());
 
-        LOGGER.info("get amino acid modifications...");
-        Map<Object, Object> modificationsMap = ABaseClass.getObjectMap(fileConnectionParams, AminoAcidModifications.class);
-        LOGGER.info("#amino acid modifications: " + modificationsMap.size());
-
-        LOGGER.info("get protein sequences...");
-        Map<Long, String> sequencesMap = new HashMap<>();
-        for (Object proteinObj : ABaseClass.getObjectMap(fileConnectionParams, Proteins.class).values()) {
-            Proteins protein = (Proteins)proteinObj;
-            sequencesMap.put(protein.getProteinID(), protein.getSequence());
-        }
-        LOGGER.info("#protein sequences: " + sequencesMap.size());
-
-        LOGGER.info("get protein annotations...");
-        Map<Long, String> annotationsMap = new HashMap<>();
-        for (Object annotationObj : ABaseClass.getObjectMap(fileConnectionParams, ProteinAnnotations.class).values()) {
-            ProteinAnnotations annotation = (ProteinAnnotations)annotationObj;
-            annotationsMap.put(annotation.getProteinID(), annotation.getDescription());
-        }
-        LOGGER.info("#protein annotations: " + annotationsMap.size());
-
         LOGGER.info("get scores...");
         // mapping from scoreID to scoreName
         Map<Long, String> scoresMap = new HashMap<>();
@@ -405,150 +367,95 @@ public class ThermoMSFFileParser {
         }
         LOGGER.info("#scores: " + scoresMap.size());
 
+        // the occurrences are not stored in the MSF file, they are calculated at the end
+        // with exact (case sensitive, no wildcard) matching, like always for MSF files
+        AccessionOccurrenceMatcher occurrenceMatcher = new AccessionOccurrenceMatcher(true);
 
-        // parse the peptides
-        LOGGER.info("get peptide info...");
-        Collection<Object> peptides = ABaseClass.getObjectMap(fileConnectionParams, Peptides.class).values();
-        LOGGER.info("#peptides: " + peptides.size());
-
-        LOGGER.info("get modifications info...");
-        // map from peptideID to modifications
-        Map<Long, List<APeptidesAminoAcidModifications>> peptidesModifications =
-                new HashMap<>();
-        for (Object modObj : ABaseClass.getObjectMap(fileConnectionParams, PeptidesAminoAcidModifications.class).values()) {
-            APeptidesAminoAcidModifications mod = (APeptidesAminoAcidModifications)modObj;
-
-            List<APeptidesAminoAcidModifications> modList = peptidesModifications.computeIfAbsent(mod.getPeptideID(), k -> new ArrayList<>());
-
-            modList.add(mod);
-        }
-        LOGGER.info("#modified peptides: " + peptidesModifications.size());
-
-        LOGGER.info("get terminal modifications info...");
-        // map from peptideID to terminal modifications
-        Map<Long, List<AminoAcidModifications>> terminalModifications =
-                new HashMap<>();
-        for (Object modObj : ABaseClass.getObjectMap(fileConnectionParams, PeptidesTerminalModifications.class).values()) {
-            APeptidesTerminalModifications termMod = (APeptidesTerminalModifications)modObj;
-
-            List<AminoAcidModifications> termModList = terminalModifications.computeIfAbsent(termMod.getPeptideID(), k -> new ArrayList<>());
+        // the already processed proteins of the file, mapped by their IDs
+        Map<Long, MSFProtein> proteinsMap = new HashMap<>();
 
-            termModList.add((AminoAcidModifications)modificationsMap.get(termMod.getTerminalModificationID()));
-        }
-        LOGGER.info("#terminal modified peptides: " + terminalModifications.size());
-
-        LOGGER.info("get peptides/proteins information...");
-        //map from peptideID to proteins
-        Map<Long, List<Long>> peptidesProteins = new HashMap<>();
-        for (Object pepProtObj : ABaseClass.getObjectMap(fileConnectionParams, PeptidesProteins.class).values()) {
-            PeptidesProteins pepProt = (PeptidesProteins)pepProtObj;
-
-            List<Long> proteinList = peptidesProteins.computeIfAbsent(pepProt.getPeptideID(), k -> new ArrayList<>());
-
-            proteinList.add(pepProt.getProteinID());
-        }
-        LOGGER.info("#peptides associated to proteins: " + peptidesProteins.size());
-
-        LOGGER.info("get peptides/scores information...");
-        // map from peptideID to scores
-        Map<Long, List<APeptideScores>> peptidesScores = new HashMap<>();
-        for (Object scoreObject : ABaseClass.getObjectMap(fileConnectionParams, PeptideScores.class).values()) {
-            PeptideScores score = (PeptideScores)scoreObject;
-
-            List<APeptideScores> scoreList = peptidesScores.computeIfAbsent(score.getPeptideID(), k -> new ArrayList<>());
-
-            scoreList.add(score);
-        }
-        LOGGER.info("#peptides associated to sores: " + peptidesScores.size());
-
-        long emptyPSMs = 0;
-        for (Object peptide : peptides) {
-            if (parsePSM(peptide, false, spectraMap, massPeakMap, fileMap,
-                    peptidesProteins, peptidesScores, peptidesModifications, terminalModifications,
-                    aminoAcidMap, sequencesMap, annotationsMap, scoresMap,
-                    compiler,
-                    nodeNumbersToIdentifications, nodeNumbersToInputFiles, spectraDataMap, spectrumIdToSpectraData) == null) {
-                emptyPSMs++;
+        long[] emptyPSMs = {0};
+        try {
+            // stream the peptides with all their information ordered by their IDs
+            LOGGER.info("processing target peptides...");
+            long nrPeptides = streamPeptides(jdbc.dbConn, false, emptyPSMs, fileMap, aminoAcidMap,
+                    proteinsMap, scoresMap, compiler, nodeNumbersToIdentifications,
+                    nodeNumbersToInputFiles, spectraDataMap, spectrumIdToSpectraData, occurrenceMatcher);
+            LOGGER.info(nrPeptides + " target peptides processed");
+
+            if (ThermoMSFPeptideStream.hasPeptideTables(jdbc.dbConn, true)) {
+                LOGGER.info("processing decoy peptides...");
+                nrPeptides = streamPeptides(jdbc.dbConn, true, emptyPSMs, fileMap, aminoAcidMap,
+                        proteinsMap, scoresMap, compiler, nodeNumbersToIdentifications,
+                        nodeNumbersToInputFiles, spectraDataMap, spectrumIdToSpectraData, occurrenceMatcher);
+
+                List<String> missingTables = ThermoMSFPeptideStream.getMissingDataTables(jdbc.dbConn, true);
+                if (!missingTables.isEmpty()) {
+                    LOGGER.warn(nrPeptides + " decoy peptides processed, but the tables " + missingTables
+                            + " are missing, their scores, modifications or proteins are treated as empty");
+                } else if (nrPeptides > 0) {
+                    LOGGER.info(nrPeptides + " decoy peptides processed");
+                } else {
+                    LOGGER.info("no decoy peptides, that's ok");
+                }
+            } else {
+                LOGGER.info("no decoy peptides, that's ok");
             }
+        } catch (SQLException e) {
+            LOGGER.error("Error while reading the peptides from " + fileName, e);
+            fileConnectionParams.closeDB();
+            return false;
         }
-        LOGGER.info("target peptides processed");
-
-
-        // parse the decoy peptides
-        LOGGER.info("get decoy peptide info...");
-        peptides = ABaseClass.getObjectMap(fileConnectionParams, Peptides_decoy.class).values();
-        LOGGER.info("#decoy peptides: " + peptides.size());
-
-        if (!peptides.isEmpty()) {
-            LOGGER.info("get decoy modifications info...");
-            // map from peptideID to modifications
-            peptidesModifications = new HashMap<>();
-            for (Object modObj : ABaseClass.getObjectMap(fileConnectionParams, PeptidesAminoAcidModifications_decoy.class).values()) {
-                APeptidesAminoAcidModifications mod = (APeptidesAminoAcidModifications)modObj;
-
-                List<APeptidesAminoAcidModifications> modList = peptidesModifications.computeIfAbsent(mod.getPeptideID(), k -> new ArrayList<>());
-                modList.add(mod);
-            }
-            LOGGER.info("#modified decoy peptides: " + peptidesModifications.size());
-
-            LOGGER.info("get decoy terminal modifications info...");
-            // map from peptideID to terminal modifications
-            terminalModifications = new HashMap<>();
-            for (Object modObj : ABaseClass.getObjectMap(fileConnectionParams, PeptidesTerminalModifications_decoy.class).values()) {
-                APeptidesTerminalModifications termMod = (APeptidesTerminalModifications)modObj;
 
-                List<AminoAcidModifications> termModList = terminalModifications.computeIfAbsent(termMod.getPeptideID(), k -> new ArrayList<>());
-
-                termModList.add((AminoAcidModifications)modificationsMap.get(termMod.getTerminalModificationID()));
-            }
-            LOGGER.info("#terminal modified decoy peptides: " + terminalModifications.size());
-
-            LOGGER.info("get decoy peptides/proteins information...");
-            // map from peptideID to proteins
-            peptidesProteins = new HashMap<>();
-            for (Object pepProtObj : ABaseClass.getObjectMap(fileConnectionParams, PeptidesProteins_decoy.class).values()) {
-                PeptidesProteins_decoy pepProt = (PeptidesProteins_decoy)pepProtObj;
-
-                List<Long> proteinList = peptidesProteins.computeIfAbsent(pepProt.getPeptideID(), k -> new ArrayList<>());
+        LOGGER.info("all peptides processed");
 
-                proteinList.add(pepProt.getProteinID());
-            }
-            LOGGER.info("#decoy peptides associated to proteins: " + peptidesProteins.size());
+        LOGGER.info("calculating peptide occurrences in the proteins...");
+        occurrenceMatcher.resolveOccurrences();
 
-            LOGGER.info("get decoy peptides/scores information...");
-            // map from peptideID to scores
-            peptidesScores = new HashMap<>();
-            for (Object scoreObject : ABaseClass.getObjectMap(fileConnectionParams, PeptideScores_decoy.class).values()) {
-                PeptideScores_decoy score = (PeptideScores_decoy)scoreObject;
+        if (emptyPSMs[0] > 0) {
+            LOGGER.info("There were " + emptyPSMs[0] + " PSMs without protein connection, these are rejected!");
+        }
 
-                List<APeptideScores> scoreList = peptidesScores.computeIfAbsent(score.getPeptideID(), k -> new ArrayList<>());
+        fileConnectionParams.closeDB();
+        return true;
+    }
 
-                scoreList.add(score);
-            }
-            LOGGER.info("#decoy peptides associated to sores: " + peptidesScores.size());
 
-            for (Object peptide : peptides) {
-                if (parsePSM(peptide, true, spectraMap, massPeakMap, fileMap,
-                        peptidesProteins, peptidesScores, peptidesModifications, terminalModifications,
-                        aminoAcidMap, sequencesMap, annotationsMap, scoresMap,
+    /**
+     * Streams the target or decoy peptides of the MSF file and creates the
+     * PSMs for them.
+     *
+     * @param emptyPSMs counter for the rejected PSMs
+     * @return the number of streamed peptides
+     * @throws SQLException
+     */
+    private static long streamPeptides(Connection connection, boolean isDecoy, long[] emptyPSMs,
+            Map<Object, Object> fileMap,
+            Map<Character, AminoAcids> aminoAcidMap,
+            Map<Long, MSFProtein> proteinsMap,
+            Map<Long, String> scoresMap,
+            PIACompiler compiler,
+            Map<Long, SpectrumIdentification> nodeNumbersToIdentifications,
+            Map<Long, PIAInputFile> nodeNumbersToInputFiles,
+            Map<Long, SpectraData> spectraDataMap,
+            Map<String, Set<String>> spectrumIdToSpectraData,
+            AccessionOccurrenceMatcher occurrenceMatcher) throws SQLException {
+        long nrPeptides = 0;
+
+        try (ThermoMSFPeptideStream peptideStream = new ThermoMSFPeptideStream(connection, isDecoy)) {
+            while (peptideStream.hasNext()) {
+                nrPeptides++;
+                if (parsePSM(peptideStream.next(), isDecoy, peptideStream, fileMap,
+                        aminoAcidMap, proteinsMap, scoresMap,
                         compiler,
-                        nodeNumbersToIdentifications, nodeNumbersToInputFiles, spectraDataMap, spectrumIdToSpectraData) == null) {
-                    emptyPSMs++;
+                        nodeNumbersToIdentifications, nodeNumbersToInputFiles, spectraDataMap, spectrumIdToSpectraData,
+                        occurrenceMatcher) == null) {
+                    emptyPSMs[0]++;
                 }
             }
-            LOGGER.info("decoy peptides processed");
-        } else {
-            LOGGER.info("no decoy peptides, that's ok");
         }
 
-        LOGGER.info("all peptides processed");
-
-        if (emptyPSMs > 0) {
-            LOGGER.info("There were " + emptyPSMs + " PSMs without protein connection, these are rejected!");
-        }
-
-        fileConnectionParams.closeDB();
-        return true;
+        return nrPeptides;
     }
 
 
@@ -759,28 +666,21 @@ public class ThermoMSFFileParser {
      * Creates and adds an {@link PeptideSpectrumMatch} from an peptide entry in
      * the MSF file.
      */
-    private static PeptideSpectrumMatch parsePSM(Object peptideObject,
+    private static PeptideSpectrumMatch parsePSM(MSFPeptide peptide,
             boolean isDecoy,
-            Map<Object, Object> spectraMap,
-            Map<Object, Object> massPeakMap,
+            ThermoMSFPeptideStream peptideStream,
             Map<Object, Object> fileMap,
-            Map<Long, List<Long>> peptidesProteins,
-            Map<Long, List<APeptideScores>> peptidesScores,
-            Map<Long, List<APeptidesAminoAcidModifications>> peptidesModifications,
-            Map<Long, List<AminoAcidModifications>> terminalModifications,
             Map<Character, AminoAcids> aminoAcidMap,
-            Map<Long, String> sequencesMap,
-            Map<Long, String> annotationsMap,
+            Map<Long, MSFProtein> proteinsMap,
             Map<Long, String> scoresMap,
             PIACompiler compiler,
             Map<Long, SpectrumIdentification> nodeNumbersToIdentifications,
             Map<Long, PIAInputFile> nodeNumbersToInputFiles,
             Map<Long, SpectraData> spectraDataMap,
-            Map<String, Set<String>> spectrumIdToSpectraData
-            ) {
-        APeptides peptide = (APeptides)peptideObject;
-
-        if (!peptidesProteins.containsKey(peptide.getPeptideID())) {
+            Map<String, Set<String>> spectrumIdToSpectraData,
+            AccessionOccurrenceMatcher occurrenceMatcher
+            ) throws SQLException {
+        if (peptide.getProteinIDs().isEmpty()) {
             // there is no protein information for the peptide! PD does these things...
             // for now: do not include these PSMs
             // TODO: find some better solution
@@ -788,12 +688,9 @@ public class ThermoMSFFileParser {
         }
 
         // get some spectrum information
-        SpectrumHeaders spectrum = (SpectrumHeaders)spectraMap.get(peptide.getSpectrumID());
-        MassPeaks massPeak = (MassPeaks)massPeakMap.get(spectrum.getMassPeakID());
-
-        int charge = spectrum.getCharge();
-        double precursorMZ = PIATools.round(massPeak.getMass(), 6);
-        String sourceID = "index=" + (spectrum.getFirstScan()-1);
+        int charge = peptide.getCharge();
+        double precursorMZ = PIATools.round(peptide.getPrecursorMass(), 6);
+        String sourceID = "index=" + (peptide.getFirstScan()-1);
 
         // get the spectrumIdentification, which identified this peptide
         SpectrumIdentification spectrumID =
@@ -803,10 +700,10 @@ public class ThermoMSFFileParser {
             LOGGER.warn("PSM (" + sourceID + ", " + peptide.getSequence() +") does not originate from a search.");
             return null;
         } else {
-            String rawFileName = ((FileInfos)fileMap.get(massPeak.getFileID())).getFileName();
+            String rawFileName = ((FileInfos)fileMap.get(peptide.getFileID())).getFileName();
 
             SpectraData spectraData =
-                    spectraDataMap.get(massPeak.getFileID());
+                    spectraDataMap.get(peptide.getFileID());
 
             if (spectraData == null) {
 
@@ -837,7 +734,7 @@ public class ThermoMSFFileParser {
 
                 spectraData = compiler.putIntoSpectraDataMap(spectraData);
 
-                spectraDataMap.put(massPeak.getFileID(), spectraData);
+                spectraDataMap.put(peptide.getFileID(), spectraData);
             }
 
             // look, if spectrumID has the needed spectraData, if not, add it
@@ -858,23 +755,21 @@ public class ThermoMSFFileParser {
 
         // get the modifications
         Map<Integer, Modification> modifications = new HashMap<>();
-        if (peptidesModifications.containsKey(peptide.getPeptideID())) {
-            for (APeptidesAminoAcidModifications aaMod : peptidesModifications.get(peptide.getPeptideID())) {
-                int loc = (int)aaMod.getPosition() + 1;
-
-                // TODO: get the unimod modification code
-                Modification modification = new Modification(
-                        pepSequence.charAt(loc-1),
-                        aaMod.getAminoAcidModification().getDeltaMass(),
-                        aaMod.getAminoAcidModification().getModificationName(),
-                        null);
-
-                modifications.put(loc, modification);
-            }
+        for (MSFModification aaMod : peptide.getModifications()) {
+            int loc = (int)aaMod.getPosition() + 1;
+
+            // TODO: get the unimod modification code
+            Modification modification = new Modification(
+                    pepSequence.charAt(loc-1),
+                    aaMod.getDeltaMass(),
+                    aaMod.getModificationName(),
+                    null);
+
+            modifications.put(loc, modification);
         }
 
-        if (terminalModifications.containsKey(peptide.getPeptideID())) {
-            for (AminoAcidModifications termMod : terminalModifications.get(peptide.getPeptideID())) {
+        if (!peptide.getTerminalModifications().isEmpty()) {
+            for (MSFModification termMod : peptide.getTerminalModifications()) {
                 int loc;
 
                 switch (termMod.getPositionType()) {
@@ -906,8 +801,8 @@ public class ThermoMSFFileParser {
         PeptideSpectrumMatch psm = compiler.createNewPeptideSpectrumMatch(
                 charge,
                 precursorMZ,
-                PIATools.round(spectrum.getMass() - getPeptideMassForCharge(1, pepSequence, aminoAcidMap, modifications), 6),
-                spectrum.getRetentionTime()*60.0,
+                PIATools.round(peptide.getSpectrumMass() - getPeptideMassForCharge(1, pepSequence, aminoAcidMap, modifications), 6),
+                peptide.getRetentionTime()*60.0,
                 pepSequence,
                 peptide.getMissedCleavages(),
                 sourceID,
@@ -927,23 +822,22 @@ public class ThermoMSFFileParser {
         piaPeptide.addSpectrum(psm);
 
         // add the scores
-        if (peptidesScores.containsKey(peptide.getPeptideID())) {
-            for (APeptideScores pepScore : peptidesScores.get(peptide.getPeptideID())) {
+        for (int scoreIdx = 0; scoreIdx < peptide.getScoreIDs().size(); scoreIdx++) {
+            String scoreName = scoresMap.get(peptide.getScoreIDs().get(scoreIdx));
+            double scoreValue = peptide.getScoreValues().get(scoreIdx);
 
-                ScoreModelEnum scoreModel =
-                        ScoreModelEnum.getModelByDescription(
-                                scoresMap.get(pepScore.getScoreID()));
+            ScoreModelEnum scoreModel =
+                    ScoreModelEnum.getModelByDescription(scoreName);
 
-                ScoreModel score;
-                if (!scoreModel.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
-                    score = new ScoreModel(pepScore.getScoreValue(),
-                            scoreModel);
-                } else {
-                    score = new ScoreModel(pepScore.getScoreValue(),
-                            null, scoresMap.get(pepScore.getScoreID()));
-                }
-                psm.addScore(score);
+            ScoreModel score;
+            if (!scoreModel.equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+                score = new ScoreModel(scoreValue,
+                        scoreModel);
+            } else {
+                score = new ScoreModel(scoreValue,
+                        null, scoreName);
             }
+            psm.addScore(score);
         }
 
         // add the modifications
@@ -952,45 +846,25 @@ public class ThermoMSFFileParser {
         }
 
         // add protein infos
-        for (Long proteinID : peptidesProteins.get(peptide.getPeptideID())) {
-            FastaHeaderInfos fastaInfo =
-                    FastaHeaderInfos.parseHeaderInfos(annotationsMap.get(proteinID));
-            if (fastaInfo == null) {
-                LOGGER.error("Could not parse protein annotation '" +
-                        annotationsMap.get(proteinID) + '\'');
-                continue;
+        for (Long proteinID : peptide.getProteinIDs()) {
+            MSFProtein protein = proteinsMap.get(proteinID);
+            if (protein == null) {
+                protein = processNewProtein(proteinID, peptideStream, compiler);
+                proteinsMap.put(proteinID, protein);
             }
 
-            String proteinSequence = sequencesMap.get(proteinID);
-
-            // add the Accession to the compiler (if it is not already there)
-            Accession acc = compiler.getAccession(fastaInfo.getAccession());
-            if (acc == null) {
-                acc = compiler.insertNewAccession(
-                        fastaInfo.getAccession(), proteinSequence);
+            if (protein.getAccession() == null) {
+                LOGGER.error("Could not parse protein annotation '" +
+                        protein.getDescription() + '\'');
+                continue;
             }
 
+            Accession acc = protein.getAccession();
             acc.addFile(file.getID());
 
-            if ((fastaInfo.getDescription() != null) &&
-                    (fastaInfo.getDescription().length() > 0)) {
-                acc.addDescription(file.getID(), fastaInfo.getDescription());
-            }
-
-            if ((acc.getDbSequence() == null) &&
-                    (proteinSequence != null)) {
-                acc.setDbSequence(proteinSequence);
-            } else if ((acc.getDbSequence() != null) &&
-                    (proteinSequence != null) &&
-                    !acc.getDbSequence().equals(proteinSequence)) {
-                if (acc.getDbSequence() != null)  {
-                    if (!proteinSequence.equals(acc.getDbSequence())) {
-                        LOGGER.warn("Different DBSequences found for same Accession, this is not supported!\n" +
-                                "\t Accession: " + acc.getAccession() +
-                                "\t'" + proteinSequence + "'\n" +
-                                "\t'" + acc.getDbSequence() + '\'');
-                    }
-                }
+            if ((protein.getDescription() != null) &&
+                    (protein.getDescription().length() > 0)) {
+                acc.addDescription(file.getID(), protein.getDescription());
             }
 
             // add the searchDB to the accession
@@ -1001,15 +875,8 @@ public class ThermoMSFFileParser {
 
             // add the accession occurrence to the peptide
             // have to recalculate the occurrence, because it is not saved in the MSF
-            if (proteinSequence != null) {
-                int start = proteinSequence.indexOf(pepSequence);
-
-                while (start > -1) {
-                    piaPeptide.addAccessionOccurrence(acc, start + 1,
-                            start + pepSequence.length());
-
-                    start = proteinSequence.indexOf(pepSequence, start + 1);
-                }
+            if (protein.hasSequence()) {
+                occurrenceMatcher.addPeptideAccessionConnection(piaPeptide, acc);
             } else {
                 // without valid sequence, set a fake occurrence
                 piaPeptide.addAccessionOccurrence(acc, 0, 0);
@@ -1024,6 +891,51 @@ public class ThermoMSFFileParser {
     }
 
 
+    /**
+     * Fetches the annotation and sequence of a protein, which was not yet
+     * processed in this file, and gets or adds the {@link Accession} in the
+     * compiler.
+     *
+     * @param proteinID
+     * @param peptideStream
+     * @param compiler
+     * @return
+     * @throws SQLException
+     */
+    private static MSFProtein processNewProtein(Long proteinID, ThermoMSFPeptideStream peptideStream,
+            PIACompiler compiler) throws SQLException {
+        String annotation = peptideStream.getProteinAnnotation(proteinID);
+        FastaHeaderInfos fastaInfo = FastaHeaderInfos.parseHeaderInfos(annotation);
+        if (fastaInfo == null) {
+            // keep the annotation for the error messages
+            return new MSFProtein(null, annotation, false);
+        }
+
+        String proteinSequence = peptideStream.getProteinSequence(proteinID);
+
+        // add the Accession to the compiler (if it is not already there)
+        Accession acc = compiler.getAccession(fastaInfo.getAccession());
+        if (acc == null) {
+            acc = compiler.insertNewAccession(
+                    fastaInfo.getAccession(), proteinSequence);
+        }
+
+        if ((acc.getDbSequence() == null) &&
+                (proteinSequence != null)) {
+            acc.setDbSequence(proteinSequence);
+        } else if ((acc.getDbSequence() != null) &&
+                (proteinSequence != null) &&
+                !acc.getDbSequence().equals(proteinSequence)) {
+            LOGGER.warn("Different DBSequences found for same Accession, this is not supported!\n" +
+                    "\t Accession: " + acc.getAccession() +
+                    "\t'" + proteinSequence + "'\n" +
+                    "\t'" + acc.getDbSequence() + '\'');
+        }
+
+        return new MSFProtein(acc, fastaInfo.getDescription(), proteinSequence != null);
+    }
+
+
     /**
      * Parses the amino acids from the MSF file in a map from oneLetterCode to
      * AminoAcid
@@ -1104,4 +1016,37 @@ public class ThermoMSFFileParser {
 
         return isMSFFile;
     }
+
+
+    /**
+     * The information of an already processed protein of the MSF file.
+     */
+    private static class MSFProtein {
+        /** the accession in the compiler, null if the annotation could not be parsed */
+        private final Accession accession;
+
+        /** the parsed description or the full annotation, if it could not be parsed */
+        private final String description;
+
+        /** whether the protein has a sequence in the file */
+        private final boolean hasSequence;
+
+        private MSFProtein(Accession accession, String description, boolean hasSequence) {
+            this.accession = accession;
+            this.description = description;
+            this.hasSequence = hasSequence;
+        }
+
+        private Accession getAccession() {
+            return accession;
+        }
+
+        private String getDescription() {
+            return description;
+        }
+
+        private boolean hasSequence() {
+            return hasSequence;
+        }
+    }
 }
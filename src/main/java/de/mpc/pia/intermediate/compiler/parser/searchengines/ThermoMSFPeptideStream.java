@@ -0,0 +1,454 @@
+package de.mpc.pia.intermediate.compiler.parser.searchengines;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Streams the peptides of a Thermo MSF file together with their spectrum,
+ * scores, modifications and protein IDs in the order of the peptide IDs.
+ * <p>
+ * Instead of loading whole tables into memory, one column-projected (and
+ * where possible joined) SQL query is issued per table, all ordered by the
+ * PeptideID, and the results are merged while iterating. The protein
+ * sequences and annotations are not streamed, they can be fetched lazily by
+ * their IDs.
+ *
+ * @author julian
+ *
+ */
+class ThermoMSFPeptideStream implements Iterator<ThermoMSFPeptideStream.MSFPeptide>, AutoCloseable {
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(ThermoMSFPeptideStream.class);
+
+    /** the tables with the data of the peptides, which are treated as empty if missing */
+    private static final String[] PEPTIDE_DATA_TABLES = {"PeptideScores", "PeptidesAminoAcidModifications",
+            "PeptidesTerminalModifications", "PeptidesProteins"};
+
+    /** the connection to the MSF file */
+    private Connection connection;
+
+    /** the statements of the opened result sets */
+    private List<Statement> statements;
+
+    private ResultSet peptidesRS;
+    private ResultSet scoresRS;
+    private ResultSet modificationsRS;
+    private ResultSet terminalModificationsRS;
+    private ResultSet proteinsRS;
+
+    /** whether the cursors of the respective result set point to a valid row */
+    private boolean hasScore;
+    private boolean hasModification;
+    private boolean hasTerminalModification;
+    private boolean hasProtein;
+
+    /** the next peptide, which is returned by {@link #next()} */
+    private MSFPeptide nextPeptide;
+
+    private PreparedStatement proteinSequenceStatement;
+    private PreparedStatement proteinAnnotationStatement;
+
+
+    /**
+     * Opens the stream on the target or the decoy tables of the MSF file. The
+     * peptides table must exist, missing tables with the scores, modifications
+     * or proteins of the peptides are treated as empty.
+     *
+     * @param connection a JDBC connection to the MSF file
+     * @param decoys whether to stream the decoy (or target) peptides
+     * @throws SQLException
+     */
+    ThermoMSFPeptideStream(Connection connection, boolean decoys) throws SQLException {
+        this.connection = connection;
+        this.statements = new ArrayList<>();
+
+        String suffix = decoys ? "_decoy" : "";
+        List<String> missingTables = getMissingDataTables(connection, decoys);
+
+        peptidesRS = executeQuery("SELECT p.PeptideID, p.ProcessingNodeNumber, p.Sequence, p.MissedCleavages, "
+                + "s.Charge, s.FirstScan, s.Mass, s.RetentionTime, m.Mass, m.FileID "
+                + "FROM Peptides" + suffix + " p "
+                + "JOIN SpectrumHeaders s ON s.SpectrumID = p.SpectrumID "
+                + "JOIN MassPeaks m ON m.MassPeakID = s.MassPeakID "
+                + "ORDER BY p.PeptideID");
+
+        if (!missingTables.contains("PeptideScores" + suffix)) {
+            scoresRS = executeQuery("SELECT PeptideID, ScoreID, ScoreValue "
+                    + "FROM PeptideScores" + suffix + " "
+                    + "ORDER BY PeptideID, ScoreID");
+            hasScore = scoresRS.next();
+        }
+
+        if (!missingTables.contains("PeptidesAminoAcidModifications" + suffix)) {
+            modificationsRS = executeQuery("SELECT pm.PeptideID, pm.Position, a.ModificationName, a.DeltaMass "
+                    + "FROM PeptidesAminoAcidModifications" + suffix + " pm "
+                    + "JOIN AminoAcidModifications a ON a.AminoAcidModificationID = pm.AminoAcidModificationID "
+                    + "ORDER BY pm.PeptideID, pm.Position");
+            hasModification = modificationsRS.next();
+        }
+
+        if (!missingTables.contains("PeptidesTerminalModifications" + suffix)) {
+            terminalModificationsRS = executeQuery("SELECT tm.PeptideID, a.PositionType, a.ModificationName, a.DeltaMass "
+                    + "FROM PeptidesTerminalModifications" + suffix + " tm "
+                    + "JOIN AminoAcidModifications a ON a.AminoAcidModificationID = tm.TerminalModificationID "
+                    + "ORDER BY tm.PeptideID");
+            hasTerminalModification = terminalModificationsRS.next();
+        }
+
+        if (!missingTables.contains("PeptidesProteins" + suffix)) {
+            proteinsRS = executeQuery("SELECT PeptideID, ProteinID "
+                    + "FROM PeptidesProteins" + suffix + " "
+                    + "ORDER BY PeptideID, ProteinID");
+            hasProtein = proteinsRS.next();
+        }
+
+        proteinSequenceStatement = connection.prepareStatement(
+                "SELECT Sequence FROM Proteins WHERE ProteinID = ?");
+        proteinAnnotationStatement = connection.prepareStatement(
+                "SELECT Description FROM ProteinAnnotations WHERE ProteinID = ?");
+
+        nextPeptide = readNextPeptide();
+    }
+
+
+    /**
+     * Checks, whether the table of the target or decoy peptides is in the MSF
+     * file. Only this table is needed to stream the peptides.
+     *
+     * @param connection
+     * @param decoys
+     * @return
+     * @throws SQLException
+     */
+    static boolean hasPeptideTables(Connection connection, boolean decoys) throws SQLException {
+        String suffix = decoys ? "_decoy" : "";
+
+        try (PreparedStatement statement = prepareTableQuery(connection)) {
+            return hasTable(statement, "Peptides" + suffix);
+        }
+    }
+
+
+    /**
+     * Returns the names of the tables with the scores, modifications and
+     * proteins of the target or decoy peptides, which are missing in the MSF
+     * file. These are treated as empty while streaming.
+     *
+     * @param connection
+     * @param decoys
+     * @return
+     * @throws SQLException
+     */
+    static List<String> getMissingDataTables(Connection connection, boolean decoys) throws SQLException {
+        String suffix = decoys ? "_decoy" : "";
+        List<String> missingTables = new ArrayList<>();
+
+        try (PreparedStatement statement = prepareTableQuery(connection)) {
+            for (String table : PEPTIDE_DATA_TABLES) {
+                if (!hasTable(statement, table + suffix)) {
+                    missingTables.add(table + suffix);
+                }
+            }
+        }
+
+        return missingTables;
+    }
+
+
+    private static PreparedStatement prepareTableQuery(Connection connection) throws SQLException {
+        return connection.prepareStatement(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?");
+    }
+
+
+    private static boolean hasTable(PreparedStatement statement, String table) throws SQLException {
+        statement.setString(1, table);
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() && (rs.getInt(1) > 0);
+        }
+    }
+
+
+    private ResultSet executeQuery(String query) throws SQLException {
+        Statement statement = connection.createStatement();
+        statements.add(statement);
+        statement.setFetchSize(1000);
+        return statement.executeQuery(query);
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        return nextPeptide != null;
+    }
+
+
+    @Override
+    public MSFPeptide next() {
+        if (nextPeptide == null) {
+            throw new NoSuchElementException();
+        }
+
+        MSFPeptide peptide = nextPeptide;
+        try {
+            nextPeptide = readNextPeptide();
+        } catch (SQLException e) {
+            LOGGER.error("Error while reading peptides from the MSF file", e);
+            throw new IllegalStateException(e);
+        }
+        return peptide;
+    }
+
+
+    /**
+     * Reads the next peptide and all its associated data from the result sets.
+     */
+    private MSFPeptide readNextPeptide() throws SQLException {
+        if (!peptidesRS.next()) {
+            return null;
+        }
+
+        MSFPeptide peptide = new MSFPeptide();
+        peptide.peptideID = peptidesRS.getLong(1);
+        peptide.processingNodeNumber = peptidesRS.getLong(2);
+        peptide.sequence = peptidesRS.getString(3);
+        peptide.missedCleavages = peptidesRS.getShort(4);
+        peptide.charge = peptidesRS.getShort(5);
+        peptide.firstScan = peptidesRS.getInt(6);
+        peptide.spectrumMass = peptidesRS.getDouble(7);
+        peptide.retentionTime = peptidesRS.getDouble(8);
+        peptide.precursorMass = peptidesRS.getDouble(9);
+        peptide.fileID = peptidesRS.getLong(10);
+
+        // the other result sets are advanced up to the current peptide
+        while (hasScore && (scoresRS.getLong(1) <= peptide.peptideID)) {
+            if (scoresRS.getLong(1) == peptide.peptideID) {
+                peptide.scoreIDs.add(scoresRS.getLong(2));
+                peptide.scoreValues.add(scoresRS.getDouble(3));
+            }
+            hasScore = scoresRS.next();
+        }
+
+        while (hasModification && (modificationsRS.getLong(1) <= peptide.peptideID)) {
+            if (modificationsRS.getLong(1) == peptide.peptideID) {
+                peptide.modifications.add(new MSFModification(
+                        modificationsRS.getLong(2),
+                        -1,
+                        modificationsRS.getString(3),
+                        modificationsRS.getDouble(4)));
+            }
+            hasModification = modificationsRS.next();
+        }
+
+        while (hasTerminalModification && (terminalModificationsRS.getLong(1) <= peptide.peptideID)) {
+            if (terminalModificationsRS.getLong(1) == peptide.peptideID) {
+                peptide.terminalModifications.add(new MSFModification(
+                        -1,
+                        terminalModificationsRS.getInt(2),
+                        terminalModificationsRS.getString(3),
+                        terminalModificationsRS.getDouble(4)));
+            }
+            hasTerminalModification = terminalModificationsRS.next();
+        }
+
+        while (hasProtein && (proteinsRS.getLong(1) <= peptide.peptideID)) {
+            if (proteinsRS.getLong(1) == peptide.peptideID) {
+                peptide.proteinIDs.add(proteinsRS.getLong(2));
+            }
+            hasProtein = proteinsRS.next();
+        }
+
+        return peptide;
+    }
+
+
+    /**
+     * Fetches the sequence of the protein with the given ID from the MSF file.
+     *
+     * @param proteinID
+     * @return the sequence or null, if none is found
+     * @throws SQLException
+     */
+    String getProteinSequence(long proteinID) throws SQLException {
+        return querySingleString(proteinSequenceStatement, proteinID);
+    }
+
+
+    /**
+     * Fetches the annotation (i.e. the FASTA header) of the protein with the
+     * given ID from the MSF file.
+     *
+     * @param proteinID
+     * @return the annotation or null, if none is found
+     * @throws SQLException
+     */
+    String getProteinAnnotation(long proteinID) throws SQLException {
+        return querySingleString(proteinAnnotationStatement, proteinID);
+    }
+
+
+    private static String querySingleString(PreparedStatement statement, long id) throws SQLException {
+        statement.setLong(1, id);
+        try (ResultSet rs = statement.executeQuery()) {
+            if (rs.next()) {
+                return rs.getString(1);
+            }
+        }
+        return null;
+    }
+
+
+    @Override
+    public void close() {
+        List<Statement> toClose = new ArrayList<>(statements);
+        toClose.add(proteinSequenceStatement);
+        toClose.add(proteinAnnotationStatement);
+
+        for (Statement statement : toClose) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    LOGGER.warn("could not close statement", e);
+                }
+            }
+        }
+        statements.clear();
+    }
+
+
+    /**
+     * A peptide of the MSF file with the data needed to create a PSM.
+     */
+    static class MSFPeptide {
+        private long peptideID;
+        private long processingNodeNumber;
+        private String sequence;
+        private short missedCleavages;
+        private short charge;
+        private int firstScan;
+        private double spectrumMass;
+        private double retentionTime;
+        private double precursorMass;
+        private long fileID;
+        private List<Long> scoreIDs = new ArrayList<>();
+        private List<Double> scoreValues = new ArrayList<>();
+        private List<MSFModification> modifications = new ArrayList<>();
+        private List<MSFModification> terminalModifications = new ArrayList<>();
+        private List<Long> proteinIDs = new ArrayList<>();
+
+        long getPeptideID() {
+            return peptideID;
+        }
+
+        long getProcessingNodeNumber() {
+            return processingNodeNumber;
+        }
+
+        String getSequence() {
+            return sequence;
+        }
+
+        short getMissedCleavages() {
+            return missedCleavages;
+        }
+
+        /** the charge of the spectrum */
+        short getCharge() {
+            return charge;
+        }
+
+        /** the first scan of the spectrum */
+        int getFirstScan() {
+            return firstScan;
+        }
+
+        /** the mass of the spectrum */
+        double getSpectrumMass() {
+            return spectrumMass;
+        }
+
+        /** the retention time of the spectrum in minutes */
+        double getRetentionTime() {
+            return retentionTime;
+        }
+
+        /** the mass of the spectrum's mass peak */
+        double getPrecursorMass() {
+            return precursorMass;
+        }
+
+        /** the ID of the spectrum's file */
+        long getFileID() {
+            return fileID;
+        }
+
+        /** the score IDs, with the same indices as the score values */
+        List<Long> getScoreIDs() {
+            return scoreIDs;
+        }
+
+        List<Double> getScoreValues() {
+            return scoreValues;
+        }
+
+        List<MSFModification> getModifications() {
+            return modifications;
+        }
+
+        List<MSFModification> getTerminalModifications() {
+            return terminalModifications;
+        }
+
+        List<Long> getProteinIDs() {
+            return proteinIDs;
+        }
+    }
+
+
+    /**
+     * An amino acid or terminal modification of a peptide in the MSF file.
+     */
+    static class MSFModification {
+        private final long position;
+        private final int positionType;
+        private final String name;
+        private final double deltaMass;
+
+        private MSFModification(long position, int positionType, String name, double deltaMass) {
+            this.position = position;
+            this.positionType = positionType;
+            this.name = name;
+            this.deltaMass = deltaMass;
+        }
+
+        /** the (0-based) position of an amino acid modification */
+        long getPosition() {
+            return position;
+        }
+
+        /** the position type of a terminal modification */
+        int getPositionType() {
+            return positionType;
+        }
+
+        String getModificationName() {
+            return name;
+        }
+
+        double getDeltaMass() {
+            return deltaMass;
+        }
+    }
+}
@@ -1,16 +1,14 @@
 package de.mpc.pia.intermediate.compiler.parser.searchengines;
 
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -30,6 +28,7 @@ import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.CleavageAgent;
+import de.mpc.pia.tools.DelimitedFieldTokenizer;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.OntologyConstants;
 import de.mpc.pia.tools.unimod.jaxb.ModT;
@@ -76,10 +75,6 @@ public class TideTXTFileParser {
 
     public static final String HEADER_PROTEINID = "protein id";
 
-    /** pattern to match and grep the accession */
-    private static final Pattern patternAccessions = Pattern.compile("([^(]+)\\(\\d+\\)");
-
-
     /** the names of the columns */
     private static final List<String> colNames = Arrays.asList(
             "file", HEADER_SCAN,
@@ -118,17 +113,13 @@ public class TideTXTFileParser {
         int pepNr = 0;
         int specNr = 0;
 
-        String line;
-        int lineNr = 0;
-
         Map<String, Integer> columnMap = new HashMap<>(colNames.size());
 
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            if ((line = br.readLine()) != null) {
-                lineNr++;
-
+        try (DelimitedFieldTokenizer tokenizer =
+                new DelimitedFieldTokenizer(new FileReader(fileName), SEPARATOR_STRING.charAt(0))) {
+            if (tokenizer.nextLine()) {
                 // the first line contains the headers, create the mapping
-                String[] headers = line.split(SEPARATOR_STRING);
+                String[] headers = tokenizer.getFieldStrings();
 
                 for (int idx = 0; idx < headers.length; idx++) {
                     if (colNames.contains(headers[idx])) {
@@ -145,6 +136,23 @@ public class TideTXTFileParser {
                 }
             }
 
+            // the column indices, -1 for missing columns
+            int colCharge = columnMap.getOrDefault(HEADER_CHARGE, -1);
+            int colPrecursorMZ = columnMap.getOrDefault(HEADER_PRECURSOR_MZ, -1);
+            int colSequence = columnMap.getOrDefault(HEADER_SEQUENCE, -1);
+            int colCleavageType = columnMap.getOrDefault(HEADER_CLEAVAGE_TYPE, -1);
+            int colScan = columnMap.getOrDefault(HEADER_SCAN, -1);
+            int colXCorr = columnMap.getOrDefault(HEADER_XCORR, -1);
+            int colRefactoredXCorr = columnMap.getOrDefault(HEADER_REFACTORED_XCORR, -1);
+            int colDeltaCN = columnMap.getOrDefault(HEADER_DELTA_CN, -1);
+            int colSPScore = columnMap.getOrDefault(HEADER_SP_SCORE, -1);
+            int colSPRank = columnMap.getOrDefault(HEADER_SP_RANK, -1);
+            int colProteinID = columnMap.getOrDefault(HEADER_PROTEINID, -1);
+
+            // only the used columns are tokenized
+            tokenizer.setProjection(colCharge, colPrecursorMZ, colSequence, colCleavageType, colScan,
+                    colXCorr, colRefactoredXCorr, colDeltaCN, colSPScore, colSPRank, colProteinID);
+
             PIAInputFile file = compiler.insertNewFile(name, fileName, InputFileParserFactory.InputFileTypes.TIDE_TXT_INPUT.getFileSuffix());
 
             // create the analysis software and add it to the compiler
@@ -181,15 +189,14 @@ public class TideTXTFileParser {
 
 
             // now parse the lines, each line is one PSM
-            while ((line = br.readLine()) != null) {
-                lineNr++;
+            while (tokenizer.nextLine()) {
+                long lineNr = tokenizer.getLineNumber();
 
-                String[] columns = line.split(SEPARATOR_STRING);
                 Peptide peptide;
 
                 Integer charge;
                 try {
-                    charge = Integer.parseInt(columns[columnMap.get(HEADER_CHARGE)]);
+                    charge = tokenizer.parseIntField(colCharge);
                 } catch (Exception ex) {
                     LOGGER.error("could not parse the chargestate in line " + lineNr, ex);
                     charge = 0;
@@ -197,7 +204,7 @@ public class TideTXTFileParser {
 
                 Double precursorMZ;
                 try {
-                    precursorMZ = Double.parseDouble(columns[columnMap.get(HEADER_PRECURSOR_MZ)]);
+                    precursorMZ = tokenizer.parseDoubleField(colPrecursorMZ);
                 } catch (Exception ex) {
                     LOGGER.error("could not parse the precursor m/z in line " + lineNr, ex);
                     precursorMZ = Double.NaN;
@@ -206,16 +213,16 @@ public class TideTXTFileParser {
                 // TODO: implement the delta mass, it is too imprecise to calculate from the given values
                 double deltaMass = Double.NaN;
 
-                String sequence = columns[columnMap.get(HEADER_SEQUENCE)];
+                String sequence = tokenizer.getFieldString(colSequence);
 
                 Map<Integer, Modification> modifications = new HashMap<>();
                 if (sequence.contains("[")) {
                     sequence = extractModifications(sequence, modifications, compiler);
                 }
 
-                int missedCleavages = calculateMissed(sequence, columns[columnMap.get(HEADER_CLEAVAGE_TYPE)]);
+                int missedCleavages = calculateMissed(sequence, tokenizer.getField(colCleavageType), compiler);
 
-                String sourceID = "index=" + columns[columnMap.get(HEADER_SCAN)];
+                String sourceID = "index=" + tokenizer.getField(colScan);
 
                 PeptideSpectrumMatch psm = compiler.createNewPeptideSpectrumMatch(
                         charge,
@@ -254,13 +261,13 @@ public class TideTXTFileParser {
                  * Todo: Create the proper CVTerm for it.
                  */
                 Double scoreValue;
-                if(columnMap.get(HEADER_XCORR) !=null ){
-                    scoreValue = Double.parseDouble(columns[columnMap.get(HEADER_XCORR)]);
+                if (colXCorr > -1) {
+                    scoreValue = tokenizer.parseDoubleField(colXCorr);
                     score = new ScoreModel(scoreValue,
                             ScoreModelEnum.SEQUEST_XCORR);
                     psm.addScore(score);
-                } else if(columnMap.get(HEADER_REFACTORED_XCORR) !=null){
-                    scoreValue = Double.parseDouble(columns[columnMap.get(HEADER_REFACTORED_XCORR)]);
+                } else if (colRefactoredXCorr > -1) {
+                    scoreValue = tokenizer.parseDoubleField(colRefactoredXCorr);
                     score = new ScoreModel(scoreValue,
                             ScoreModelEnum.SEQUEST_XCORR);
                     psm.addScore(score);
@@ -271,51 +278,42 @@ public class TideTXTFileParser {
                  * Parse the other values or scores.
                  */
 
-                if(columnMap.get(HEADER_DELTA_CN) != null){
-                    scoreValue = Double.parseDouble(columns[columnMap.get(HEADER_DELTA_CN)]);
+                if (colDeltaCN > -1) {
+                    scoreValue = tokenizer.parseDoubleField(colDeltaCN);
                     score = new ScoreModel(scoreValue,
                             ScoreModelEnum.SEQUEST_DELTACN);
                     psm.addScore(score);
                 }
 
-                if(columnMap.get(HEADER_SP_SCORE) != null){
-                    scoreValue = Double.parseDouble(columns[columnMap.get(HEADER_SP_SCORE)]);
+                if (colSPScore > -1) {
+                    scoreValue = tokenizer.parseDoubleField(colSPScore);
                     score = new ScoreModel(scoreValue,
                             ScoreModelEnum.SEQUEST_SPSCORE);
                     psm.addScore(score);
                 }
 
-                if(columnMap.get(HEADER_SP_RANK) != null){
-                    scoreValue = Double.parseDouble(columns[columnMap.get(HEADER_SP_RANK)]);
+                if (colSPRank > -1) {
+                    scoreValue = tokenizer.parseDoubleField(colSPRank);
                     score = new ScoreModel(scoreValue,
                             ScoreModelEnum.SEQUEST_PEPTIDE_RANK_SP);
                     psm.addScore(score);
                 }
 
                 // add the protein/accession info
+                CharSequence proteinIDs = tokenizer.getField(colProteinID);
+                for (String accession : parseAccessions(proteinIDs, lineNr)) {
+                    // add the Accession to the compiler (if it is not already there)
+                    Accession acc = compiler.getAccession(accession);
+                    if (acc == null) {
+                        // no sequence information in the file
+                        acc = compiler.insertNewAccession(accession, null);
+                        accNr++;
+                    }
 
-                String[] accessions = columns[columnMap.get(HEADER_PROTEINID)].split(",");
-                for (String accession : accessions) {
-
-                    Matcher matcher = patternAccessions.matcher(accession);
-
-                    if (matcher.matches()) {
-                        // add the Accession to the compiler (if it is not already there)
-                        Accession acc = compiler.getAccession(matcher.group(1));
-                        if (acc == null) {
-                            // no sequence information in the file
-                            acc = compiler.insertNewAccession(
-                                    matcher.group(1), null);
-                            accNr++;
-                        }
-
-                        acc.addFile(file.getID());
+                    acc.addFile(file.getID());
 
-                        // now insert the connection between peptide and accession into the compiler
-                        compiler.addAccessionPeptideConnection(acc, peptide);
-                    } else {
-                        LOGGER.error("could not get the accession in line" + lineNr);
-                    }
+                    // now insert the connection between peptide and accession into the compiler
+                    compiler.addAccessionPeptideConnection(acc, peptide);
                 }
 
                 // teh PSM is completed now
@@ -335,6 +333,78 @@ public class TideTXTFileParser {
     }
 
 
+    /**
+     * Parses the accessions from the comma separated protein IDs, which have
+     * the form "ACCESSION(position)". Empty trailing entries are ignored, any
+     * other entry not matching the form is logged and skipped.
+     *
+     * @param proteinIDs the content of the protein ID column
+     * @param lineNr the line number for logging
+     * @return
+     */
+    private static List<String> parseAccessions(CharSequence proteinIDs, long lineNr) {
+        List<String> accessions = new ArrayList<>(2);
+        int nrEmpty = 0;
+        int start = 0;
+
+        for (int pos = 0; pos <= proteinIDs.length(); pos++) {
+            if ((pos < proteinIDs.length()) && (proteinIDs.charAt(pos) != ',')) {
+                continue;
+            }
+
+            if (pos == start) {
+                // empty entries are only invalid, if anything follows
+                nrEmpty++;
+            } else {
+                for (; nrEmpty > 0; nrEmpty--) {
+                    LOGGER.error("could not get the accession in line" + lineNr);
+                }
+
+                String accession = getAccessionFromEntry(proteinIDs, start, pos);
+                if (accession != null) {
+                    accessions.add(accession);
+                } else {
+                    LOGGER.error("could not get the accession in line" + lineNr);
+                }
+            }
+
+            start = pos + 1;
+        }
+
+        if (proteinIDs.length() == 0) {
+            // an empty column is treated as a single invalid entry
+            LOGGER.error("could not get the accession in line" + lineNr);
+        }
+
+        return accessions;
+    }
+
+
+    /**
+     * Gets the accession of an entry in the form "ACCESSION(digits)" in the
+     * given range of the sequence, or null if the entry has another form.
+     */
+    private static String getAccessionFromEntry(CharSequence proteinIDs, int start, int end) {
+        int openBr = start;
+        while ((openBr < end) && (proteinIDs.charAt(openBr) != '(')) {
+            openBr++;
+        }
+
+        if ((openBr == start) || (openBr > end - 3) || (proteinIDs.charAt(end - 1) != ')')) {
+            return null;
+        }
+
+        for (int pos = openBr + 1; pos < end - 1; pos++) {
+            char c = proteinIDs.charAt(pos);
+            if ((c < '0') || (c > '9')) {
+                return null;
+            }
+        }
+
+        return proteinIDs.subSequence(start, openBr).toString();
+    }
+
+
     /**
      * extracts the modifications from the seqeunce string
      *
@@ -427,11 +497,12 @@ public class TideTXTFileParser {
      *
      * @param sequence the peptide seqeunce
      * @param cleavageType the cleavage type as stated in the tide TXT file output
+     * @param compiler the PIACompiler, holding the cache of missed cleavages
      * @return
      */
-    private static int calculateMissed(String sequence, String cleavageType) {
+    private static int calculateMissed(String sequence, CharSequence cleavageType, PIACompiler compiler) {
         int missed = 0;
-        String type = cleavageType.trim();
+        String type = cleavageType.toString().trim();
         CleavageAgent enzyme = null;
 
         // TODO: add further cleavage agents
@@ -440,7 +511,7 @@ public class TideTXTFileParser {
         }
 
         if (enzyme != null) {
-            missed += sequence.split(enzyme.getSiteRegexp()).length - 1;
+            missed += compiler.getMissedCleavageCache().getMissedCleavages(sequence, enzyme);
         } else {
             missed = -1;
         }
@@ -11,7 +11,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
@@ -57,6 +56,7 @@ import de.mpc.pia.intermediate.piaxml.SpectrumMatchXML;
 import de.mpc.pia.intermediate.piaxml.SpectrumRefXML;
 import de.mpc.pia.modeller.IdentificationKeySettings;
 import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.tools.JAXBContextCache;
 
 
 public class PIAIntermediateJAXBHandler implements Serializable {
@@ -131,6 +131,27 @@ public class PIAIntermediateJAXBHandler implements Serializable {
     }
 
 
+    /**
+     * Constructor for already parsed data, e.g. restored from a snapshot.
+     */
+    public PIAIntermediateJAXBHandler(String projectName, Map<Long, PIAInputFile> files,
+            Map<String, SpectraData> spectraData, Map<String, SearchDatabase> searchDatabases,
+            Map<String, AnalysisSoftware> software, Map<Long, PeptideSpectrumMatch> psms,
+            Map<Long, Peptide> peptides, Map<Long, Accession> accessions,
+            Map<Long, Group> groups, Map<String, Set<Long>> psmSetSettingsWarnings) {
+        this.projectName = projectName;
+        this.files = files;
+        this.spectraData = spectraData;
+        this.searchDatabases = searchDatabases;
+        this.software = software;
+        this.psms = psms;
+        this.peptides = peptides;
+        this.accessions = accessions;
+        this.groups = groups;
+        this.psmSetSettingsWarnings = psmSetSettingsWarnings;
+    }
+
+
     /**
      * Parses the file in chunks and thus having a low memory footprint.<br/>
      *
@@ -296,8 +317,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
      * @throws JAXBException
      */
     private void parseFilesList(XMLStreamReader xmlr) throws JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(FilesListXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(FilesListXML.class);
         FilesListXML filesListXML = (FilesListXML)um.unmarshal(xmlr);
 
         if (filesListXML == null) {
@@ -329,8 +349,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
      * @throws JAXBException
      */
     private void parseInputs(XMLStreamReader xmlr) throws JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(Inputs.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(Inputs.class);
         JAXBElement<Inputs> umRoot = um.unmarshal(xmlr, Inputs.class);
         Inputs inputs = umRoot.getValue();
 
@@ -356,8 +375,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
      * @throws JAXBException
      */
     private void parseAnalysisSoftwareList(XMLStreamReader xmlr) throws JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(AnalysisSoftwareList.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(AnalysisSoftwareList.class);
         JAXBElement<AnalysisSoftwareList> umRoot = um.unmarshal(xmlr, AnalysisSoftwareList.class);
         AnalysisSoftwareList analysisSoftwareList = umRoot.getValue();
 
@@ -381,8 +399,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
             throws XMLStreamException, JAXBException {
         xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_SPECTRA_LIST);
 
-        JAXBContext jaxbContext = JAXBContext.newInstance(SpectrumMatchXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(SpectrumMatchXML.class);
 
         psmSetSettingsWarnings =
                 new HashMap<>(IdentificationKeySettings.values().length);
@@ -563,8 +580,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
             throws XMLStreamException, JAXBException {
         xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_ACCESSIONS_LIST);
 
-        JAXBContext jaxbContext = JAXBContext.newInstance(AccessionXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(AccessionXML.class);
 
         // move to the first accession element
         xmlr.nextTag();
@@ -615,8 +631,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
             throws XMLStreamException, JAXBException {
         xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_PEPTIDES_LIST);
 
-        JAXBContext jaxbContext = JAXBContext.newInstance(PeptideXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(PeptideXML.class);
 
         // move to the first peptide element
         xmlr.nextTag();
@@ -682,8 +697,7 @@ public class PIAIntermediateJAXBHandler implements Serializable {
 
         xmlr.require(XMLStreamConstants.START_ELEMENT, null, XML_TAG_GROUPS_LIST);
 
-        JAXBContext jaxbContext = JAXBContext.newInstance(GroupXML.class);
-        Unmarshaller um = jaxbContext.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(GroupXML.class);
 
         // move to the first peptide element
         xmlr.nextTag();
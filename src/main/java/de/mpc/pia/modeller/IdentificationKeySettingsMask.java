@@ -0,0 +1,203 @@
+package de.mpc.pia.modeller;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An immutable set of used {@link IdentificationKeySettings}, stored as a
+ * bitmask. All masks are interned, so they can be compared by identity and
+ * used as cheap keys, e.g. for caching identification keys.
+ * <p>
+ * This replaces the Map&lt;String, Boolean&gt; of the settings on the hot
+ * paths, use {@link #of(Map)} and {@link #toMap()} to convert between both.
+ *
+ * @author julian
+ *
+ */
+public final class IdentificationKeySettingsMask implements Serializable {
+
+    private static final long serialVersionUID = 4113357207745364915L;
+
+
+    /** the settings in the (alphabetical) order of their names, which is the order in the identification keys */
+    private static final IdentificationKeySettings[] SORTED_SETTINGS;
+
+    /** all the masks, indexed by their bits */
+    private static final IdentificationKeySettingsMask[] MASKS;
+
+    static {
+        SORTED_SETTINGS = IdentificationKeySettings.values();
+        Arrays.sort(SORTED_SETTINGS, Comparator.comparing(IdentificationKeySettings::name));
+
+        MASKS = new IdentificationKeySettingsMask[1 << IdentificationKeySettings.values().length];
+        for (int bits = 0; bits < MASKS.length; bits++) {
+            MASKS[bits] = new IdentificationKeySettingsMask(bits);
+        }
+    }
+
+    /** the mask without any settings */
+    public static final IdentificationKeySettingsMask EMPTY = MASKS[0];
+
+
+    /** the bits of the used settings, by their ordinal */
+    private final int bits;
+
+    /** the used settings in the order of the identification keys */
+    private final transient IdentificationKeySettings[] usedSettings;
+
+
+    private IdentificationKeySettingsMask(int bits) {
+        this.bits = bits;
+        this.usedSettings = Arrays.stream(SORTED_SETTINGS)
+                .filter(setting -> (bits & bit(setting)) != 0)
+                .toArray(IdentificationKeySettings[]::new);
+    }
+
+
+    private static int bit(IdentificationKeySettings setting) {
+        return 1 << setting.ordinal();
+    }
+
+
+    /**
+     * Returns the mask of all settings, which are set to true in the given
+     * map. Unknown setting names are ignored.
+     *
+     * @param psmSetSettings
+     * @return
+     */
+    public static IdentificationKeySettingsMask of(Map<String, Boolean> psmSetSettings) {
+        int bits = 0;
+        for (IdentificationKeySettings setting : IdentificationKeySettings.values()) {
+            if (Boolean.TRUE.equals(psmSetSettings.get(setting.name()))) {
+                bits |= bit(setting);
+            }
+        }
+        return MASKS[bits];
+    }
+
+
+    /**
+     * Returns the mask of the given settings.
+     *
+     * @param settings
+     * @return
+     */
+    public static IdentificationKeySettingsMask of(IdentificationKeySettings... settings) {
+        int bits = 0;
+        for (IdentificationKeySettings setting : settings) {
+            bits |= bit(setting);
+        }
+        return MASKS[bits];
+    }
+
+
+    /**
+     * Whether the given setting is used.
+     *
+     * @param setting
+     * @return
+     */
+    public boolean contains(IdentificationKeySettings setting) {
+        return (bits & bit(setting)) != 0;
+    }
+
+
+    /**
+     * Returns the mask with the given setting additionally used.
+     *
+     * @param setting
+     * @return
+     */
+    public IdentificationKeySettingsMask with(IdentificationKeySettings setting) {
+        return MASKS[bits | bit(setting)];
+    }
+
+
+    /**
+     * Returns the mask without the given settings.
+     *
+     * @param settings
+     * @return
+     */
+    public IdentificationKeySettingsMask without(IdentificationKeySettings... settings) {
+        int newBits = bits;
+        for (IdentificationKeySettings setting : settings) {
+            newBits &= ~bit(setting);
+        }
+        return MASKS[newBits];
+    }
+
+
+    /**
+     * Returns the used settings in the order, in which they are used in the
+     * identification keys (i.e. ordered by their names). The returned array
+     * must not be changed.
+     *
+     * @return
+     */
+    public IdentificationKeySettings[] getOrderedSettings() {
+        return usedSettings;
+    }
+
+
+    /**
+     * Returns the used settings.
+     *
+     * @return
+     */
+    public Set<IdentificationKeySettings> getSettings() {
+        Set<IdentificationKeySettings> settings = EnumSet.noneOf(IdentificationKeySettings.class);
+        settings.addAll(Arrays.asList(usedSettings));
+        return settings;
+    }
+
+
+    /**
+     * Returns the used settings as a modifiable map, like it is used in the
+     * Map based API.
+     *
+     * @return
+     */
+    public Map<String, Boolean> toMap() {
+        Map<String, Boolean> settings = new HashMap<>(usedSettings.length);
+        for (IdentificationKeySettings setting : usedSettings) {
+            settings.put(setting.name(), true);
+        }
+        return settings;
+    }
+
+
+    /**
+     * Ensures the interning after deserialization.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return MASKS[bits];
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof IdentificationKeySettingsMask)
+                && (((IdentificationKeySettingsMask) obj).bits == bits);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return bits;
+    }
+
+
+    @Override
+    public String toString() {
+        return Arrays.toString(usedSettings);
+    }
+}
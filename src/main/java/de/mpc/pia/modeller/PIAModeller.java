@@ -13,7 +13,6 @@ import java.util.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
@@ -31,12 +30,16 @@ import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.execute.PipelineBatchExecutor;
 import de.mpc.pia.modeller.execute.xmlparams.CTDTool;
 import de.mpc.pia.modeller.execute.xmlparams.NODEType;
 import de.mpc.pia.modeller.execute.xmlparams.PARAMETERSType;
 import de.mpc.pia.modeller.peptide.PeptideExecuteCommands;
 import de.mpc.pia.modeller.protein.ProteinExecuteCommands;
 import de.mpc.pia.modeller.psm.PSMExecuteCommands;
+import de.mpc.pia.modeller.snapshot.PIAModellerSnapshot;
+import de.mpc.pia.modeller.snapshot.PIAReportSnapshot;
+import de.mpc.pia.tools.JAXBContextCache;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.PIATools;
 import de.mpc.pia.tools.matomo.PIAMatomoTracker;
@@ -263,6 +266,17 @@ public class PIAModeller implements Serializable {
     }
 
 
+    /**
+     * Infers the peptides for all files in parallel, see
+     * {@link PeptideModeller#inferePeptidesForAllFiles(boolean)}.
+     *
+     * @param calculateFDR whether to calculate the peptide FDR for all files
+     */
+    public void inferePeptidesForAllFiles(boolean calculateFDR) {
+        peptideModeller.inferePeptidesForAllFiles(calculateFDR);
+    }
+
+
     /**
      * Parses in the intermediate structure from the given file.<br/>
      *
@@ -445,22 +459,47 @@ public class PIAModeller implements Serializable {
     public static void processPipelineFile(String paramFileName, PIAModeller model) {
         LOGGER.info("starting parse parameter file " + paramFileName);
 
-        try {
-            JAXBContext context = JAXBContext.newInstance(CTDTool.class);
-            Unmarshaller um = context.createUnmarshaller();
-            CTDTool parametersXML =
-                    (CTDTool)um.unmarshal(new FileReader(paramFileName));
+        CTDTool parametersXML = readPipelineFile(paramFileName);
+        if (parametersXML != null) {
+            processPipeline(parametersXML, model);
+        }
 
-            for (NODEType node : parametersXML.getPARAMETERS().getNODE()) {
-                processNodeInPipelineFile(model, node);
-            }
+        LOGGER.info("finished parsing of parameter file " + paramFileName);
+    }
+
+
+    /**
+     * Reads a parameter pipeline file.
+     *
+     * @param paramFileName
+     * @return the parsed pipeline or null, if the file could not be read
+     */
+    public static CTDTool readPipelineFile(String paramFileName) {
+        try (FileReader reader = new FileReader(paramFileName)) {
+            Unmarshaller um = JAXBContextCache.getUnmarshaller(CTDTool.class);
+            return (CTDTool)um.unmarshal(reader);
         } catch (JAXBException e) {
             LOGGER.error("Error parsing the file " + paramFileName, e);
         } catch (FileNotFoundException e) {
             LOGGER.error("Could not find the file " + paramFileName, e);
+        } catch (IOException e) {
+            LOGGER.error("Could not read the file " + paramFileName, e);
         }
+        return null;
+    }
 
-        LOGGER.info("finished parsing of parameter file " + paramFileName);
+
+    /**
+     * Executes the commands of an already parsed parameter pipeline on the
+     * given model.
+     *
+     * @param parametersXML
+     * @param model
+     */
+    public static void processPipeline(CTDTool parametersXML, PIAModeller model) {
+        for (NODEType node : parametersXML.getPARAMETERS().getNODE()) {
+            processNodeInPipelineFile(model, node);
+        }
     }
 
 
@@ -516,8 +555,7 @@ public class PIAModeller implements Serializable {
 
         // write them to file
         try {
-            JAXBContext context = JAXBContext.newInstance(CTDTool.class);
-            Marshaller m = context.createMarshaller();
+            Marshaller m = JAXBContextCache.getMarshaller(CTDTool.class);
             m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             m.marshal(pipelineXML, new File(fileName));
         } catch (JAXBException e) {
@@ -539,8 +577,7 @@ public class PIAModeller implements Serializable {
             String[] params) {
         try {
             // load the XML content
-            JAXBContext context = JAXBContext.newInstance(CTDTool.class);
-            Unmarshaller um = context.createUnmarshaller();
+            Unmarshaller um = JAXBContextCache.getUnmarshaller(CTDTool.class);
             CTDTool execution =
                     (CTDTool)um.unmarshal(new FileReader(fileName));
 
@@ -566,7 +603,7 @@ public class PIAModeller implements Serializable {
             }
 
             // write the new pipeline
-            Marshaller m = context.createMarshaller();
+            Marshaller m = JAXBContextCache.getMarshaller(CTDTool.class);
             m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             m.marshal(execution, new File(newFileName));
         } catch (JAXBException e) {
@@ -697,6 +734,26 @@ public class PIAModeller implements Serializable {
                 .build();
         options.addOption(proteinExportOpt);
 
+        Option batchInputFilesOpt = Option.builder(PIAConstants.BATCH_INPUT_FILES_OPTION)
+                .argName("inputs")
+                .hasArgs()
+                .desc("Executes the paramFile on each of the given PIA XML files instead of the infile. The inputs "
+                        + "may be file names, glob patterns (e.g. \"data/*.pia.xml\") or files listing one input per "
+                        + "line, prefixed by " + PipelineBatchExecutor.LIST_FILE_PREFIX + ". The file names of the "
+                        + "exports and writeInformation may contain " + PipelineBatchExecutor.TEMPLATE_NAME + " and "
+                        + PipelineBatchExecutor.TEMPLATE_INDEX + ", which are replaced by the name and index of the "
+                        + "input.")
+                .build();
+        options.addOption(batchInputFilesOpt);
+
+        Option batchThreadsOpt = Option.builder(PIAConstants.BATCH_THREADS_OPTION)
+                .argName("threads")
+                .hasArg()
+                .desc("The number of inputs of batchInfiles, which are processed in parallel (default: number of "
+                        + "available processors)")
+                .build();
+        options.addOption(batchThreadsOpt);
+
         Option writeInfoOpt = Option.builder(PIAConstants.WRITE_INFORMATION_OPTION)
                 .argName("outfile")
                 .numberOfArgs(1)
@@ -778,6 +835,8 @@ public class PIAModeller implements Serializable {
             }
 
             appendToPipelineXML(paramFile, paramOutFile, line.getArgs());
+        } else if (line.hasOption(PIAConstants.BATCH_INPUT_FILES_OPTION)) {
+            processBatchExecuteXMLFile(paramFile, line);
         } else {
             // so the default EXECUTE_OPTION will be performed
             if (!line.hasOption(PIAConstants.INPUT_FILE_OPTION)) {
@@ -824,6 +883,78 @@ public class PIAModeller implements Serializable {
     }
 
 
+    /**
+     * Executes a parameter XML file from the command line on all the batch
+     * input files.
+     *
+     * @param paramFileName
+     * @param line
+     */
+    private static void processBatchExecuteXMLFile(String paramFileName, CommandLine line) {
+        CTDTool pipeline = readPipelineFile(paramFileName);
+        if (pipeline == null) {
+            return;
+        }
+
+        try {
+            List<String> inputFiles = PipelineBatchExecutor.resolveInputFiles(
+                    line.getOptionValues(PIAConstants.BATCH_INPUT_FILES_OPTION));
+
+            int nrThreads = 0;
+            if (line.hasOption(PIAConstants.BATCH_THREADS_OPTION)) {
+                nrThreads = Integer.parseInt(line.getOptionValue(PIAConstants.BATCH_THREADS_OPTION));
+            }
+
+            new PipelineBatchExecutor(pipeline, nrThreads).execute(inputFiles,
+                    (model, inputFile, index) -> {
+                        if (line.hasOption(PIAConstants.WRITE_INFORMATION_OPTION)) {
+                            processWriteInformation(line.hasOption(PIAConstants.CALCULATE_INFORMATION_OPTION) ? line.getOptionValue(PIAConstants.CALCULATE_INFORMATION_OPTION) : null,
+                                    PipelineBatchExecutor.applyOutputTemplate(
+                                            line.getOptionValue(PIAConstants.WRITE_INFORMATION_OPTION), inputFile, index),
+                                    model);
+                        }
+
+                        if (line.hasOption(PIAConstants.PSM_EXPORT_OPTION)) {
+                            processPSMExport(templateExportParams(line.getOptionValues(PIAConstants.PSM_EXPORT_OPTION),
+                                    inputFile, index), model);
+                        }
+
+                        if (line.hasOption(PIAConstants.PEPTIDE_EXPORT_OPTION)) {
+                            processPeptideExport(templateExportParams(line.getOptionValues(PIAConstants.PEPTIDE_EXPORT_OPTION),
+                                    inputFile, index), model);
+                        }
+
+                        if (line.hasOption(PIAConstants.PROTEIN_EXPORT_OPTION)) {
+                            processProteinExport(templateExportParams(line.getOptionValues(PIAConstants.PROTEIN_EXPORT_OPTION),
+                                    inputFile, index), model);
+                        }
+                    });
+        } catch (IOException e) {
+            LOGGER.error("Could not read the batch input files", e);
+        } catch (NumberFormatException e) {
+            LOGGER.error("Invalid number of batch threads", e);
+        }
+    }
+
+
+    /**
+     * Returns a copy of the export params with the output file name created
+     * from the template for the given input.
+     *
+     * @param params
+     * @param inputFile
+     * @param index
+     * @return
+     */
+    private static String[] templateExportParams(String[] params, String inputFile, int index) {
+        String[] templatedParams = params.clone();
+        if (templatedParams.length > 0) {
+            templatedParams[0] = PipelineBatchExecutor.applyOutputTemplate(templatedParams[0], inputFile, index);
+        }
+        return templatedParams;
+    }
+
+
     /**
      * Write the PSM information to the given file
      *
@@ -1052,4 +1183,119 @@ public class PIAModeller implements Serializable {
 
         return piaModeller;
     }
+
+
+    /**
+     * Writes the complete processed model as a binary snapshot to the file
+     * given by the name. Writing and reading a snapshot is much faster than
+     * the serialization by {@link #serializeToFile(PIAModeller, File)}.
+     *
+     * @param piaModeller
+     * @param fileName
+     * @throws IOException
+     */
+    public static void writeSnapshot(PIAModeller piaModeller, String fileName) throws IOException {
+        writeSnapshot(piaModeller, new File(fileName));
+    }
+
+
+    /**
+     * Writes the complete processed model as a binary snapshot to the given
+     * file.
+     *
+     * @param piaModeller
+     * @param file
+     * @throws IOException
+     */
+    public static void writeSnapshot(PIAModeller piaModeller, File file) throws IOException {
+        LOGGER.info("Writing snapshot to " + file.getAbsolutePath());
+        PIAModellerSnapshot snapshot = new PIAModellerSnapshot(piaModeller.fileName,
+                piaModeller.intermediateHandler, piaModeller.psmModeller,
+                piaModeller.peptideModeller, piaModeller.proteinModeller);
+
+        try {
+            snapshot.writeToFile(file);
+        } catch (IOException e) {
+            LOGGER.error("Could not write snapshot of PIA model to " + file.getAbsolutePath(), e);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Reads a modeller from the snapshot file given by the name.
+     *
+     * @param fileName
+     * @throws IOException
+     */
+    public static PIAModeller readSnapshot(String fileName) throws IOException {
+        return readSnapshot(new File(fileName));
+    }
+
+
+    /**
+     * Reads a modeller from the given snapshot file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static PIAModeller readSnapshot(File file) throws IOException {
+        LOGGER.info("reading modeller snapshot from " + file.getAbsolutePath());
+
+        PIAModellerSnapshot snapshot;
+        try {
+            snapshot = PIAModellerSnapshot.readFromFile(file);
+        } catch (IOException e) {
+            LOGGER.error("Could not read PIA model snapshot from " + file.getAbsolutePath(), e);
+            throw e;
+        }
+
+        PIAModeller piaModeller = new PIAModeller();
+        piaModeller.fileName = snapshot.getFileName();
+        piaModeller.intermediateHandler = snapshot.getIntermediateHandler();
+        piaModeller.psmModeller = snapshot.getPSMModeller();
+        piaModeller.peptideModeller = snapshot.getPeptideModeller();
+        piaModeller.proteinModeller = snapshot.getProteinModeller();
+
+        return piaModeller;
+    }
+
+
+    /**
+     * Writes the final (filtered) report of the modeller into an indexed
+     * report snapshot, which can be opened read-only by
+     * {@link #openReportSnapshot(File)}.
+     *
+     * @param piaModeller
+     * @param file
+     * @throws IOException
+     */
+    public static void writeReportSnapshot(PIAModeller piaModeller, File file) throws IOException {
+        try {
+            PIAReportSnapshot.write(piaModeller, file);
+        } catch (IOException e) {
+            LOGGER.error("Could not write report snapshot to " + file.getAbsolutePath(), e);
+            throw e;
+        }
+    }
+
+
+    /**
+     * Opens a report snapshot for read-only access. The PSMs, peptides and
+     * proteins are read from the memory mapped file on demand, so this is much
+     * faster than loading the complete model. The returned snapshot must be
+     * closed after usage.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PIAReportSnapshot openReportSnapshot(File file) throws IOException {
+        try {
+            return PIAReportSnapshot.open(file);
+        } catch (IOException e) {
+            LOGGER.error("Could not open report snapshot " + file.getAbsolutePath(), e);
+            throw e;
+        }
+    }
 }
@@ -6,12 +6,14 @@ import java.io.Serializable;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -21,27 +23,29 @@ import java.util.stream.Collectors;
 import de.mpc.pia.modeller.score.*;
 import org.apache.log4j.Logger;
 import org.biojava.nbio.ontology.Term;
-import org.biojava.nbio.ontology.Triple;
 
 import de.mpc.pia.intermediate.Group;
 import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.psm.IdentificationRankGroup;
 import de.mpc.pia.modeller.psm.PSMExecuteCommands;
 import de.mpc.pia.modeller.psm.PSMReportItem;
 import de.mpc.pia.modeller.psm.PSMReportItemComparator;
+import de.mpc.pia.modeller.psm.PSMReportItemSorter;
+import de.mpc.pia.modeller.psm.PSMTable;
 import de.mpc.pia.modeller.psm.ReportPSM;
 import de.mpc.pia.modeller.psm.ReportPSMSet;
 import de.mpc.pia.modeller.report.SortOrder;
 import de.mpc.pia.modeller.report.filter.AbstractFilter;
-import de.mpc.pia.modeller.report.filter.FilterComparator;
 import de.mpc.pia.modeller.report.filter.FilterFactory;
-import de.mpc.pia.modeller.report.filter.impl.PSMTopIdentificationFilter;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
 import de.mpc.pia.modeller.score.comparator.RankCalculator;
 import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+import de.mpc.pia.tools.CompositeKeyGrouping;
 import de.mpc.pia.tools.OntologyConstants;
+import de.mpc.pia.tools.OntologyRegistry;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.PIATools;
 import de.mpc.pia.tools.obo.OBOMapper;
@@ -142,6 +146,12 @@ public class PSMModeller implements Serializable {
     /** the list of filters applied to the data, mapped by the file ID */
     private Map<Long, List<AbstractFilter>> fileFiltersMap;
 
+    /** the generation of the PSM scores, increased whenever the scores of the PSMs change */
+    private long psmScoresGeneration;
+
+    /** the cached rankings, mapped by the file ID and the score and filters fingerprint */
+    private transient Map<Long, Map<String, CachedRanking>> rankingCache;
+
 
     /**
      * Basic constructor, creates the {@link ReportPSM}s and
@@ -205,23 +215,12 @@ public class PSMModeller implements Serializable {
         // rebuild the PSM sets
         List<AbstractFilter> filters = getFilters(0L);
 
-        // map to create the PSMSets
-        Map<String, List<ReportPSM>> psmSetsMap =
-                new HashMap<>();
-
         // sort the PSMs in sets with their identificationKeys
-        // put the PSM in the psmKey -> ReportPSM map
-        spectraPSMs.values().stream().filter(psm -> FilterFactory.satisfiesFilterList(psm, 0L, filters)).forEach(psm -> {
-            String psmKey = psm.getIdentificationKey(this.psmSetSettings);
-
-            // put the PSM in the psmKey -> ReportPSM map
-            if (!psmSetsMap.containsKey(psmKey)) {
-                psmSetsMap.put(psmKey, new ArrayList<>());
-            }
-            psmSetsMap.get(psmKey).add(psm);
-        });
+        List<ReportPSM> filteredPSMs = spectraPSMs.values().stream()
+                .filter(psm -> FilterFactory.satisfiesFilterList(psm, 0L, filters))
+                .collect(Collectors.toList());
 
-        createReportPSMSets(psmSetsMap);
+        createReportPSMSets(groupPSMsBySetKeys(filteredPSMs));
     }
 
 
@@ -346,14 +345,8 @@ public class PSMModeller implements Serializable {
 
         scoreShortToHigherScoreBetterChangeable = new HashMap<>();
 
-        // map to create the PSMSets
-        Map<String, List<ReportPSM>> psmSetsMap =
-                new HashMap<>();
-
-        // this map is used, to get the identification ranking for each score of a PSMs
-        //  fileID    spectrumID  scoreShort        psm
-        Map<Long, Map<String, Map<String, ArrayList<ReportPSM>>>> fileToRankings =
-                new HashMap<>();
+        // all PSMs, they are grouped for the PSM sets and identification rankings afterwards
+        List<ReportPSM> allPSMs = new ArrayList<>(nrAllPSMs);
 
 
         // iterate through the groups
@@ -369,7 +362,6 @@ public class PSMModeller implements Serializable {
                         for (PeptideSpectrumMatch spec : spectra) {
                             ReportPSM psm = new ReportPSM(spec.getID(), spec);
                             Long fileID = spec.getFile().getID();
-                            String psmKey = spec.getIdentificationKey(psmSetSettings);
 
                             // add the accessions
                             // only add accession, if it was found in the spectrum's file
@@ -404,20 +396,7 @@ public class PSMModeller implements Serializable {
                                         defaultFDRTopIdentifications);
                             }
                             filesPSMList.add(psm);
-
-                            // also put the PSM in the psmKey -> ReportPSM map, which is needed for the creation of the ReportPSMSets
-                            List<ReportPSM> psmSets = psmSetsMap.computeIfAbsent(psmKey, k -> new ArrayList<>());
-                            psmSets.add(psm);
-
-
-                            // record everything needed for the identification ranking
-                            Map<String, Map<String, ArrayList<ReportPSM>>> spectraToPSMs =
-                                    fileToRankings.computeIfAbsent(fileID, k -> new HashMap<>(psmsPerFile));
-
-
-                            String psmScoreRankKey = createPSMKeyForScoreRanking(psm);
-                            Map<String, ArrayList<ReportPSM>> scoreshortsToPSMs =
-                                    spectraToPSMs.computeIfAbsent(psmScoreRankKey, k -> new HashMap<>());
+                            allPSMs.add(psm);
 
                             for (ScoreModel score : psm.getScores()) {
                                 // add the scorenames, if not yet done, and take the values for topIdentificationRanking
@@ -462,25 +441,22 @@ public class PSMModeller implements Serializable {
                                         Term oboTerm = getOBOMapper().getTerm(score.getAccession());
                                         if (oboTerm != null) {
                                             // the score is in the OBO file, get the relations etc.
-                                            Set<Triple> tripleSet = getOBOMapper().getTriples(oboTerm, null, null);
-
-                                            for (Triple triple : tripleSet) {
-                                                if (triple.getPredicate().getName().equals(OBOMapper.OBO_IS_A)) {
-                                                    if (triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_PVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_EVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PSM_LEVEL_QVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_QVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_PVALUE.getPsiAccession())
-                                                            || triple.getObject().getName().equals(OntologyConstants.PEPTIDE_LEVEL_EVALUE.getPsiAccession())) {
-                                                        higherscorebetter = false;
-                                                    }
-                                                } else if (triple.getPredicate().getName().equals(OBOMapper.OBO_RELATIONSHIP)) {
-                                                    if (triple.getObject().getName().equals(OBOMapper.OBO_HAS_ORDER_HIGHERSCOREBETTER)) {
-                                                        higherscorebetter = true;
-                                                    } else if (triple.getObject().getName().equals(OBOMapper.OBO_HAS_ORDER_LOWERSCOREBETTER)) {
-                                                        higherscorebetter = false;
-                                                    }
-                                                }
+                                            Set<String> parents = getOBOMapper().getParentAccessions(oboTerm);
+                                            if (parents.contains(OntologyConstants.PSM_LEVEL_PVALUE.getPsiAccession())
+                                                    || parents.contains(OntologyConstants.PSM_LEVEL_EVALUE.getPsiAccession())
+                                                    || parents.contains(OntologyConstants.PSM_LEVEL_QVALUE.getPsiAccession())
+                                                    || parents.contains(OntologyConstants.PEPTIDE_LEVEL_QVALUE.getPsiAccession())
+                                                    || parents.contains(OntologyConstants.PEPTIDE_LEVEL_PVALUE.getPsiAccession())
+                                                    || parents.contains(OntologyConstants.PEPTIDE_LEVEL_EVALUE.getPsiAccession())) {
+                                                higherscorebetter = false;
+                                            }
+
+                                            // an explicit order overrides the one by the parents
+                                            Set<String> relationships = getOBOMapper().getRelationships(oboTerm);
+                                            if (relationships.contains(OBOMapper.OBO_HAS_ORDER_HIGHERSCOREBETTER)) {
+                                                higherscorebetter = true;
+                                            } else if (relationships.contains(OBOMapper.OBO_HAS_ORDER_LOWERSCOREBETTER)) {
+                                                higherscorebetter = false;
                                             }
                                         }
 
@@ -504,10 +480,6 @@ public class PSMModeller implements Serializable {
 
                                     scoreShortToComparator.put(score.getShortName(), comp);
                                 }
-
-                                ArrayList<ReportPSM> psmsOfSpectrum =
-                                        scoreshortsToPSMs.computeIfAbsent(score.getShortName(), k -> new ArrayList<>(10));
-                                psmsOfSpectrum.add(psm);
                             }
 
 
@@ -528,81 +500,90 @@ public class PSMModeller implements Serializable {
         }
 
         // now set ranks to PSMs which have a known ranking
-        for (Map<String, Map<String, ArrayList<ReportPSM>>> spectraToPSM
-                : fileToRankings.values()) {
-
-            for (Map<String, ArrayList<ReportPSM>> scoreshortsToPSMs
-                    : spectraToPSM.values()) {
-
-                for (Map.Entry<String, ArrayList<ReportPSM>> scoreToPSMsIt
-                        : scoreshortsToPSMs.entrySet()) {
-                    String scoreShort = scoreToPSMsIt.getKey();
-                    Comparator<PSMReportItem> comp = scoreShortToComparator.get(scoreShort);
-
-                    // only sort and rank, if we know how
-                    if (comp != null) {
-                        (scoreToPSMsIt.getValue()).sort(comp);
-
-                        // give the ranks to the PSMs
-                        Double lastScore = null;
-                        int rank = 0;
-                        for (ReportPSM psm : scoreToPSMsIt.getValue()) {
-                            Double thisScore =
-                                    psm.getScore(scoreShort);
-
-                            if (!thisScore.equals(lastScore)) {
-                                rank++;
-                            }
-
-                            psm.setIdentificationRank(scoreShort, rank);
-
-                            lastScore = thisScore;
-                        }
-                    } else {
-                        // unrankable get all ranked as -1
-                        for (ReportPSM psm : scoreToPSMsIt.getValue()) {
-                            psm.setIdentificationRank(scoreShort, -1);
-                        }
-                    }
-                }
-            }
-        }
+        setIdentificationRanks(allPSMs);
 
         // create and fill the ReportPSMSets for the overview
-        createReportPSMSets(psmSetsMap);
+        createReportPSMSets(groupPSMsBySetKeys(allPSMs));
 
         LOGGER.info("createReportPSMsFromGroups done.");
     }
 
 
     /**
-     * Getter for the oboMapper. Initializes the OBOMapper on the first call.
+     * Getter for the oboMapper, which is shared via the {@link OntologyRegistry}.
      * @return
      */
     private OBOMapper getOBOMapper() {
         if (oboMapper == null) {
-            oboMapper = new OBOMapper();
+            oboMapper = OntologyRegistry.getOBOMapper();
         }
         return oboMapper;
     }
 
 
     /**
-     * Creates the {@link ReportPSMSet}s, given the {@link ReportPSM}s in a
-     * mapping from the PSM-identificationKeys
-     * @param psmSetsMap
+     * Sets the identification ranks of all scores of the PSMs, i.e. the ranks
+     * between all PSMs of the same spectrum in the same file. The PSMs of each
+     * spectrum are put into an {@link IdentificationRankGroup}, which
+     * calculates the ranks of a score only when they are requested.
+     *
+     * @param psms
      */
-    private void createReportPSMSets(Map<String, List<ReportPSM>> psmSetsMap) {
-        reportPSMSetMap = new HashMap<>(psmSetsMap.size());
+    private void setIdentificationRanks(List<ReportPSM> psms) {
+        List<List<ReportPSM>> spectraPSMsList = CompositeKeyGrouping.group(psms,
+                PSMModeller::hashScoreRankingKey, PSMModeller::equalScoreRankingKeys);
 
-        for (Map.Entry<String, List<ReportPSM>> psmSetsIt : psmSetsMap.entrySet()) {
-            ReportPSMSet psmSet =
-                    new ReportPSMSet(psmSetsIt.getValue(), psmSetSettings);
-            reportPSMSetMap.put(psmSetsIt.getKey(), psmSet);
+        // the ranks use the orderings, which are known by now
+        Map<String, Boolean> higherScoreBetter = new HashMap<>(scoreShortToHigherScoreBetter);
+
+        for (List<ReportPSM> spectrumPSMs : spectraPSMsList) {
+            new IdentificationRankGroup(spectrumPSMs, higherScoreBetter);
+        }
+    }
+
+
+    /**
+     * Groups the PSMs by their identification keys for the current
+     * psmSetSettings, without creating the key strings of all PSMs.
+     *
+     * @param psms
+     * @return
+     */
+    private List<List<ReportPSM>> groupPSMsBySetKeys(List<ReportPSM> psms) {
+        Set<IdentificationKeySettings> usedSettings = IdentificationKeySettingsMask.of(psmSetSettings).getSettings();
+
+        return CompositeKeyGrouping.group(psms,
+                (psm, hash) -> hashIdentificationKey(psm.getSpectrum(), usedSettings, hash),
+                (psm1, psm2) -> equalIdentificationKeys(psm1.getSpectrum(), psm2.getSpectrum(), usedSettings));
+    }
+
+
+    /**
+     * Creates the {@link ReportPSMSet}s, given the {@link ReportPSM}s grouped
+     * by their PSM-identificationKeys
+     * @param psmGroups
+     */
+    private void createReportPSMSets(List<List<ReportPSM>> psmGroups) {
+        reportPSMSetMap = new HashMap<>(psmGroups.size());
+
+        for (List<ReportPSM> psmGroup : psmGroups) {
+            String psmKey = psmGroup.get(0).getIdentificationKey(psmSetSettings);
+
+            ReportPSMSet psmSet = reportPSMSetMap.get(psmKey);
+            if (psmSet != null) {
+                // different values may still give the same key string (e.g. rounded and missing values)
+                List<ReportPSM> mergedPSMs = new ArrayList<>(psmSet.getPSMs());
+                mergedPSMs.addAll(psmGroup);
+                psmSet = new ReportPSMSet(mergedPSMs, psmSetSettings);
+            } else {
+                psmSet = new ReportPSMSet(psmGroup, psmSetSettings);
+            }
+            reportPSMSetMap.put(psmKey, psmSet);
         }
 
         reportPSMSets = new ArrayList<>(
                 reportPSMSetMap.values());
+        invalidateRankings();
 
         fileFDRData.put(0L,
                 new FDRData(fileFDRData.get(0L).getDecoyStrategy(),
@@ -613,28 +594,161 @@ public class PSMModeller implements Serializable {
 
 
     /**
-     * Returns a key by which the PSMs can be grouped for calculation of top
-     * rank identifications.
+     * Adds the values of the PSM, which are used by the given settings of the
+     * identification key, to the hash. This corresponds to
+     * {@link PeptideSpectrumMatch#getIdentificationKey(Map)}.
+     */
+    private static void hashIdentificationKey(PeptideSpectrumMatch spec,
+            Set<IdentificationKeySettings> usedSettings, CompositeKeyGrouping.KeyHash hash) {
+        for (IdentificationKeySettings setting : usedSettings) {
+            switch (setting) {
+            case CHARGE:
+                hash.add(spec.getCharge());
+                break;
+
+            case FILE_ID:
+                hash.add(spec.getFile().getID().longValue());
+                break;
+
+            case MASSTOCHARGE:
+                hash.add(PIATools.round(spec.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION));
+                break;
+
+            case MODIFICATIONS:
+                hash.add(spec.getModificationString());
+                break;
+
+            case RETENTION_TIME:
+                hash.add(getKeyRetentionTime(spec));
+                break;
+
+            case SEQUENCE:
+                hash.add(spec.getSequence());
+                break;
+
+            case SOURCE_ID:
+                hash.add(spec.getSourceID());
+                break;
+
+            case SPECTRUM_TITLE:
+                hash.add(spec.getSpectrumTitle());
+                break;
+
+            default:
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Checks, whether the values of the PSMs used by the given settings of the
+     * identification key are equal.
+     */
+    private static boolean equalIdentificationKeys(PeptideSpectrumMatch spec1,
+            PeptideSpectrumMatch spec2, Set<IdentificationKeySettings> usedSettings) {
+        for (IdentificationKeySettings setting : usedSettings) {
+            boolean equal;
+            switch (setting) {
+            case CHARGE:
+                equal = spec1.getCharge() == spec2.getCharge();
+                break;
+
+            case FILE_ID:
+                equal = spec1.getFile().getID().equals(spec2.getFile().getID());
+                break;
+
+            case MASSTOCHARGE:
+                equal = Double.compare(
+                        PIATools.round(spec1.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION),
+                        PIATools.round(spec2.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION)) == 0;
+                break;
+
+            case MODIFICATIONS:
+                equal = Objects.equals(spec1.getModificationString(), spec2.getModificationString());
+                break;
+
+            case RETENTION_TIME:
+                equal = Objects.equals(getKeyRetentionTime(spec1), getKeyRetentionTime(spec2));
+                break;
+
+            case SEQUENCE:
+                equal = Objects.equals(spec1.getSequence(), spec2.getSequence());
+                break;
+
+            case SOURCE_ID:
+                equal = Objects.equals(spec1.getSourceID(), spec2.getSourceID());
+                break;
+
+            case SPECTRUM_TITLE:
+                equal = Objects.equals(spec1.getSpectrumTitle(), spec2.getSpectrumTitle());
+                break;
+
+            default:
+                equal = true;
+                break;
+            }
+
+            if (!equal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * The retention time as used in the identification key, i.e. rounded to
+     * an integer, or null.
+     */
+    private static Double getKeyRetentionTime(PeptideSpectrumMatch spec) {
+        if (spec.getRetentionTime() == null) {
+            return null;
+        }
+        return (double) (int) PIATools.round(spec.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION);
+    }
+
+
+    /**
+     * Adds the values, by which the PSMs are grouped for calculation of top
+     * rank identifications, to the hash: the file, sourceID, spectrum title,
+     * m/z and retention time.
      *
      * @param psm
+     * @param hash
+     */
+    private static void hashScoreRankingKey(ReportPSM psm, CompositeKeyGrouping.KeyHash hash) {
+        hash.add(psm.getFileID().longValue());
+        hash.add(psm.getSourceID());
+        hash.add(psm.getSpectrum().getSpectrumTitle());
+        hash.add(PIATools.round(psm.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION));
+        hash.add(getRankingRetentionTime(psm));
+    }
+
+
+    /**
+     * Checks, whether the PSMs are grouped together for the calculation of top
+     * rank identifications.
+     *
+     * @param psm1
+     * @param psm2
      * @return
      */
-    private static String createPSMKeyForScoreRanking(ReportPSM psm) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(psm.getSourceID());
-        sb.append(':');
-        sb.append(psm.getSpectrum().getSpectrumTitle());
-        sb.append(':');
-        sb.append(Double.toString(PIATools.round(psm.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION)));
-        sb.append(':');
-        if (psm.getRetentionTime() != null) {
-            sb.append(Double.toString(PIATools.round(psm.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION)));
-        } else {
-            sb.append("null");
-        }
+    private static boolean equalScoreRankingKeys(ReportPSM psm1, ReportPSM psm2) {
+        return psm1.getFileID().equals(psm2.getFileID())
+                && Objects.equals(psm1.getSourceID(), psm2.getSourceID())
+                && Objects.equals(psm1.getSpectrum().getSpectrumTitle(), psm2.getSpectrum().getSpectrumTitle())
+                && (Double.compare(PIATools.round(psm1.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION),
+                        PIATools.round(psm2.getMassToCharge(), PIAConstants.MASS_TO_CHARGE_PRECISION)) == 0)
+                && Objects.equals(getRankingRetentionTime(psm1), getRankingRetentionTime(psm2));
+    }
+
 
-        return sb.toString();
+    private static Double getRankingRetentionTime(ReportPSM psm) {
+        if (psm.getRetentionTime() == null) {
+            return null;
+        }
+        return PIATools.round(psm.getRetentionTime(), PIAConstants.RETENTION_TIME_PRECISION);
     }
 
 
@@ -717,6 +831,18 @@ public class PSMModeller implements Serializable {
     }
 
 
+    /**
+     * Returns the unfiltered List of {@link ReportPSMSet}s. The List is
+     * replaced, whenever the PSM sets are created anew, and must not be
+     * changed.
+     *
+     * @return
+     */
+    public List<ReportPSMSet> getReportPSMSetList() {
+        return reportPSMSets;
+    }
+
+
     /**
      * Returns the filtered List of {@link ReportPSM}s for the given fileID.
      *
@@ -762,6 +888,37 @@ public class PSMModeller implements Serializable {
     }
 
 
+    /**
+     * Creates a columnar {@link PSMTable} of the {@link ReportPSM}s of the
+     * given file, which can be filtered and sorted without accessing the
+     * single PSMs. The table is a snapshot of the current report.
+     *
+     * @param fileID
+     * @return
+     */
+    public PSMTable<ReportPSM> createPSMTable(Long fileID) {
+        List<ReportPSM> psms = fileReportPSMs.get(fileID);
+        if (psms == null) {
+            LOGGER.error("There are no ReportPSMs for the fileID " + fileID);
+            psms = new ArrayList<>(1);
+        }
+        return new PSMTable<>(new ArrayList<>(psms), fileID);
+    }
+
+
+    /**
+     * Creates a columnar {@link PSMTable} of the {@link ReportPSMSet}s of the
+     * overview. The filters of the table are only applied on the sets, unlike
+     * in {@link #getFilteredReportPSMSets(List)}, where the PSMs of the sets
+     * are filtered as well.
+     *
+     * @return
+     */
+    public PSMTable<ReportPSMSet> createPSMSetTable() {
+        return new PSMTable<>(new ArrayList<>(reportPSMSets), 0L);
+    }
+
+
     /**
      * Returns the Score name, given the scoreShortName.
      * @param shortName
@@ -1100,6 +1257,9 @@ public class PSMModeller implements Serializable {
 
         LOGGER.info("updateDecoyStates " + fileID);
 
+        // the decoy states and FDR values change, which may be filtered
+        invalidateRankings();
+
         // select either the PSMs from the given file or all and calculate the fdr
         if (fdrData == null) {
             LOGGER.error("No FDR settings given for file with ID=" + fileID);
@@ -1181,20 +1341,15 @@ public class PSMModeller implements Serializable {
 
                 // as the used ReportPSMs may change with the filter, clear all prior FDR information
                 listForFDR.forEach(FDRComputable::dumpFDRCalculation);
+                setFDRCalculated(fileID, false);
 
-                // only the topIdentifications should be used, so a filter is needed
-                List<AbstractFilter> topRankFilter = new ArrayList<>(1);
-
-                topRankFilter.add(new PSMTopIdentificationFilter(
-                        FilterComparator.less_equal,
-                        fileTopIdentifications.get(fileID),
-                        false,
-                        fdrData.getScoreShortName()));
+                // only the topIdentifications should be used, these are selected without calculating all ranks
+                int topIdentifications = fileTopIdentifications.get(fileID);
+                String scoreShort = fdrData.getScoreShortName();
 
-                listForFDR = FilterFactory.applyFilters(
-                        listForFDR,
-                        topRankFilter,
-                        fileID);
+                listForFDR = listForFDR.stream()
+                        .filter(psm -> ((ReportPSM) psm).isTopIdentification(scoreShort, topIdentifications))
+                        .collect(Collectors.toList());
             }
 
 
@@ -1220,7 +1375,7 @@ public class PSMModeller implements Serializable {
             }
 
             // the FDR for this file is calculated now
-            fileFDRCalculated.put(fileID, true);
+            setFDRCalculated(fileID, true);
         }
     }
 
@@ -1464,7 +1619,37 @@ public class PSMModeller implements Serializable {
                 nrFDRGoodTargets, nrItems, nrTargets);
 
         // the combined FDR is calculated now
-        fileFDRCalculated.put(0L, true);
+        setFDRCalculated(0L, true);
+    }
+
+
+    /**
+     * Sets whether the FDR of the given file is calculated. This is called
+     * whenever the FDR calculation changed the scores of the PSMs, so it
+     * increases the generation of the PSM scores and removes the cached
+     * rankings.
+     *
+     * @param fileID
+     * @param calculated
+     */
+    private void setFDRCalculated(Long fileID, boolean calculated) {
+        fileFDRCalculated.put(fileID, calculated);
+        psmScoresGeneration++;
+        invalidateRankings();
+    }
+
+
+    /**
+     * Returns the generation of the PSM scores, which is increased whenever
+     * the scores of the PSMs (or PSM sets) of this modeller change, e.g. by
+     * an FDR calculation. Anything caching values derived from the PSM
+     * scores, like the best scores of the peptides, is valid as long as the
+     * generation does not change.
+     *
+     * @return
+     */
+    public long getPSMScoresGeneration() {
+        return psmScoresGeneration;
     }
 
 
@@ -1495,11 +1680,15 @@ public class PSMModeller implements Serializable {
             }
         }
 
+        // the values of each sort key are extracted only once per item
         if (fileID > 0) {
-            (fileReportPSMs.get(fileID)).sort(PSMReportItemComparator.getComparator(compares));
+            PSMReportItemSorter.sort(fileReportPSMs.get(fileID), compares);
         } else {
-            reportPSMSets.sort(PSMReportItemComparator.getComparator(compares));
+            PSMReportItemSorter.sort(reportPSMSets, compares);
         }
+
+        // the order of equally scored items in a ranking depends on the report's order
+        invalidateRankings();
     }
 
 
@@ -1527,6 +1716,10 @@ public class PSMModeller implements Serializable {
     /**
      * Calculates the ranking for the given file and scoreShortName. If the
      * filter List is not null or empty, the Report is filtered before ranking.
+     * <p>
+     * The ranking is cached for the file, score and filters, so repeated
+     * requests only re-apply the ranks. The cache is invalidated, whenever the
+     * PSM sets, the decoy states and FDR values or the report's order change.
      */
     public void calculateRanking(Long fileID, String rankableShortName,
             List<AbstractFilter> filters) {
@@ -1535,27 +1728,86 @@ public class PSMModeller implements Serializable {
             return;
         }
 
-        // first, dump all prior ranking
-        List<?> reports;
         if (fileID > 0) {
-            reports = fileReportPSMs.get(fileID);
+            calculateRanking(fileID, fileReportPSMs.get(fileID), rankableShortName, filters);
         } else {
-            reports = reportPSMSets;
+            calculateRanking(fileID, reportPSMSets, rankableShortName, filters);
         }
-        if (reports != null) {
-            reports.stream().filter(obj -> obj instanceof PSMReportItem).forEach(obj -> ((PSMReportItem) obj).setRank(-1L));
+    }
+
+
+    /**
+     * Calculates the ranking for the given report items of the file or
+     * re-applies the cached ranking.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends PSMReportItem> void calculateRanking(Long fileID, List<T> reports,
+            String rankableShortName, List<AbstractFilter> filters) {
+        if (reports == null) {
+            return;
         }
 
-        if (fileID > 0) {
-            RankCalculator.calculateRanking(rankableShortName,
-                    FilterFactory.applyFilters(fileReportPSMs.get(fileID),
-                            filters, fileID),
-                    new ScoreComparator<>(rankableShortName));
+        // first, dump all prior ranking
+        reports.forEach(psm -> psm.setRank(-1L));
+
+        String rankingKey = rankableShortName + '\n' + FilterFactory.getFiltersFingerprint(filters);
+        Map<String, CachedRanking> fileRankings = getRankingCache().computeIfAbsent(fileID, k -> new HashMap<>());
+
+        CachedRanking cached = fileRankings.get(rankingKey);
+        if ((cached == null) || !cached.isValidFor(reports)) {
+            List<T> filteredReports = FilterFactory.applyFilters(reports, filters, fileID);
+            RankCalculator.Ranking<T> ranking = RankCalculator.createRanking(rankableShortName, filteredReports);
+            if (ranking == null) {
+                // invalid score shortName
+                return;
+            }
+
+            cached = new CachedRanking(reports, ranking, filteredReports == reports);
+            fileRankings.put(rankingKey, cached);
         } else {
-            RankCalculator.calculateRanking(rankableShortName,
-                    FilterFactory.applyFilters(reportPSMSets,
-                            filters, fileID),
-                    new ScoreComparator<>(rankableShortName));
+            LOGGER.debug("using cached ranking for " + fileID + ", " + rankableShortName);
+        }
+
+        RankCalculator.Ranking<T> ranking = (RankCalculator.Ranking<T>) cached.ranking;
+        ranking.applyRanks();
+
+        if (cached.unfiltered) {
+            // the unfiltered report is sorted by the ranking
+            List<T> sortedItems = ranking.getSortedItems();
+            boolean reordered = false;
+            for (int i = 0; i < sortedItems.size(); i++) {
+                reordered |= (reports.set(i, sortedItems.get(i)) != sortedItems.get(i));
+            }
+
+            if (reordered) {
+                // the other rankings of the file were created on the old order
+                fileRankings.keySet().retainAll(Collections.singleton(rankingKey));
+            }
+        }
+    }
+
+
+    /**
+     * Getter for the cached rankings, mapped by the file IDs. The rankings
+     * are not serialized and created anew on demand.
+     *
+     * @return
+     */
+    private Map<Long, Map<String, CachedRanking>> getRankingCache() {
+        if (rankingCache == null) {
+            rankingCache = new HashMap<>();
+        }
+        return rankingCache;
+    }
+
+
+    /**
+     * Removes all cached rankings. This must be called on any change of the
+     * report items, which may change the filtering, scores or order.
+     */
+    private void invalidateRankings() {
+        if (rankingCache != null) {
+            rankingCache.clear();
         }
     }
 
@@ -2021,4 +2273,43 @@ public class PSMModeller implements Serializable {
 
         return true;
     }
+
+
+    /**
+     * A cached ranking of the (filtered) report items of a file.
+     *
+     * @author julian
+     *
+     */
+    private static class CachedRanking {
+
+        /** the unfiltered report items, used to recognize, whether they were created anew */
+        private final List<? extends PSMReportItem> reports;
+
+        /** the number of report items at the time of ranking */
+        private final int nrReports;
+
+        /** the ranking */
+        private final RankCalculator.Ranking<? extends PSMReportItem> ranking;
+
+        /** whether all report items are ranked, which sorts the report */
+        private final boolean unfiltered;
+
+
+        private CachedRanking(List<? extends PSMReportItem> reports,
+                RankCalculator.Ranking<? extends PSMReportItem> ranking, boolean unfiltered) {
+            this.reports = reports;
+            this.nrReports = reports.size();
+            this.ranking = ranking;
+            this.unfiltered = unfiltered;
+        }
+
+
+        /**
+         * Whether this ranking can still be used for the given report items.
+         */
+        private boolean isValidFor(List<? extends PSMReportItem> psms) {
+            return (reports == psms) && (nrReports == psms.size());
+        }
+    }
 }
@@ -2,12 +2,19 @@ package de.mpc.pia.modeller;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -19,6 +26,8 @@ import de.mpc.pia.modeller.peptide.PeptideExecuteCommands;
 import de.mpc.pia.modeller.peptide.ReportPeptide;
 import de.mpc.pia.modeller.peptide.ReportPeptideComparatorFactory;
 import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
 import de.mpc.pia.modeller.report.SortOrder;
 import de.mpc.pia.modeller.report.filter.AbstractFilter;
 import de.mpc.pia.modeller.report.filter.FilterFactory;
@@ -67,6 +76,12 @@ public class PeptideModeller implements Serializable {
     /** whether to consider the modifications for building peptides or not */
     private boolean considerModifications;
 
+    /** maps from the fileID to the index of the file's PSMs by their peptides, for incremental filtering */
+    private transient Map<Long, PeptideIndex> peptideIndices;
+
+    /** the generations of the PSM scores, for which the best scores of the files' peptides are cached */
+    private transient Map<Long, Long> filePSMScoresGenerations;
+
 
     /** the default value for considering the modifications
      *  TODO: default value for considerModifications should be loaded from ini-file
@@ -142,50 +157,176 @@ public class PeptideModeller implements Serializable {
      * Infere the peptides for the file given by its ID with the PSMs taken
      * from the {@link PSMModeller}. This takes any given filtering into
      * account.
+     * <p>
+     * The PSMs of each file are indexed by their peptides, so after a change
+     * of the filters only the PSMs, which changed their filter state, are
+     * added to or removed from their peptides. The FDR is only recalculated,
+     * if any peptide changed.
      *
      * @param fileID
      */
     private void inferePeptides(Long fileID) {
-        LOGGER.info("Inferring peptides for " + fileID  +
-                " considerModifications=" + considerModifications);
-        // first put the PSMs sorted by their stringID (this defines a peptide) into a Map
-        Map<String, ReportPeptide> peptides = new HashMap<>();
+        InferredPeptides inferred = inferePeptideList(fileID, getFilters(fileID));
+
+        if (storeInferredPeptides(fileID, inferred)) {
+            // peptides are changed -> reset the FDR data
+            fileFDRCalculated.put(fileID, false);
+            calculateFDR(fileID);
+        }
+    }
+
 
-        // take the (filtered) PSMs from the psmModeller
-        List<PSMReportItem> reportPSMs;
+    /**
+     * Infers the peptides for all files, including the overview, which need
+     * an inference. The files are processed concurrently, sharing the
+     * read-only PSMs of the {@link PSMModeller}. Afterwards the peptide FDR is
+     * calculated in parallel for all files, which had a calculated FDR, or for
+     * all files, if calculateFDR is true.
+     * <p>
+     * The results are the same as for inferring and calculating the FDR of
+     * each file serially.
+     *
+     * @param calculateFDR whether to calculate the FDR for all files
+     */
+    public void inferePeptidesForAllFiles(boolean calculateFDR) {
+        List<Long> fileIDs = new ArrayList<>(getFiles().keySet());
+        Collections.sort(fileIDs);
+
+        // everything, which changes the modeller's maps, is done serially
+        List<Long> inferFileIDs = new ArrayList<>();
+        Map<Long, List<AbstractFilter>> filesFilters = new HashMap<>();
+        for (Long fileID : fileIDs) {
+            Boolean infere = inferePeptides.get(fileID);
+            if ((infere == null) || infere) {
+                inferFileIDs.add(fileID);
+                filesFilters.put(fileID, getFilters(fileID));
+            }
+        }
+        getPeptideIndices();
+        getPSMScoresGenerations();
+
+        LOGGER.info("Inferring peptides for " + inferFileIDs.size() + " files in parallel");
+        List<InferredPeptides> inferred = inferFileIDs.parallelStream()
+                .map(fileID -> inferePeptideList(fileID, filesFilters.get(fileID)))
+                .collect(Collectors.toList());
+
+        List<Long> fdrFileIDs = new ArrayList<>();
+        for (int i = 0; i < inferFileIDs.size(); i++) {
+            Long fileID = inferFileIDs.get(i);
+            if (storeInferredPeptides(fileID, inferred.get(i)) && !calculateFDR) {
+                fdrFileIDs.add(fileID);
+            }
+        }
+        if (calculateFDR) {
+            fdrFileIDs = fileIDs;
+        }
+
+        Map<Long, FDRData> filesFDRData = new HashMap<>();
+        for (Long fileID : fdrFileIDs) {
+            FDRData fdrData = getFDRDataFromPSMLevel(fileID);
+            fileFDRData.put(fileID, fdrData);
+            fileFDRCalculated.put(fileID, false);
+            filesFDRData.put(fileID, fdrData);
+        }
+
+        LOGGER.info("Calculating peptide FDR for " + fdrFileIDs.size() + " files in parallel");
+        List<Boolean> calculated = fdrFileIDs.parallelStream()
+                .map(fileID -> calculateFDR(fileID, filesFDRData.get(fileID)))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < fdrFileIDs.size(); i++) {
+            fileFDRCalculated.put(fdrFileIDs.get(i), calculated.get(i));
+        }
+    }
+
+
+    /**
+     * Infers the peptides of the given file with the given filters, updating
+     * the file's {@link PeptideIndex}. This does not change any of the
+     * modeller's maps, so it may run concurrently for different files, once
+     * the peptide indices are initialized.
+     *
+     * @param fileID
+     * @param filters
+     * @return
+     */
+    private InferredPeptides inferePeptideList(Long fileID, List<AbstractFilter> filters) {
+        List<? extends PSMReportItem> unfilteredPSMs;
         if (!fileID.equals(0L)) {
-            reportPSMs = new ArrayList<>(
-                    psmModeller.getFilteredReportPSMs(fileID, getFilters(fileID)));
+            unfilteredPSMs = psmModeller.getFilteredReportPSMs(fileID, null);
         } else {
-            reportPSMs = new ArrayList<>(
-                    psmModeller.getFilteredReportPSMSets(getFilters(fileID)));
+            unfilteredPSMs = psmModeller.getReportPSMSetList();
         }
 
-        for (PSMReportItem psm : reportPSMs) {
-            String idString =
-                    ReportPeptide.createStringID(psm, considerModifications);
-            ReportPeptide repPeptide = peptides.computeIfAbsent(idString, k -> new ReportPeptide(psm.getSequence(), idString,
-                    psm.getPeptide()));
-            repPeptide.addPSM(psm);
+        PeptideIndex index = getPeptideIndices().get(fileID);
+        boolean newIndex = (index == null) || !index.isValidFor(unfilteredPSMs, considerModifications);
+        if (newIndex) {
+            LOGGER.info("Inferring peptides for " + fileID  +
+                    " considerModifications=" + considerModifications);
+            index = new PeptideIndex(unfilteredPSMs, considerModifications);
         }
 
-        // create a List of the Map
-        List<ReportPeptide> repList = new ArrayList<>(peptides.size());
-        repList.addAll(peptides.entrySet().stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+        Map<String, ReportPeptide> changedPeptides = index.applyFilters(fileID, filters,
+                psmModeller.getPSMSetSettings());
+        int nrChanged = changedPeptides.size();
+
+        List<ReportPeptide> repList;
+        if (newIndex || !fileReportPeptides.containsKey(fileID)) {
+            repList = new ArrayList<>(index.getPeptides());
+        } else {
+            // keep the order of the unchanged peptides, replace or remove the changed ones
+            List<ReportPeptide> oldList = fileReportPeptides.get(fileID);
+            repList = new ArrayList<>(oldList.size());
+            for (ReportPeptide peptide : oldList) {
+                if (changedPeptides.containsKey(peptide.getStringID())) {
+                    ReportPeptide changed = changedPeptides.remove(peptide.getStringID());
+                    if (changed != null) {
+                        repList.add(changed);
+                    }
+                } else {
+                    repList.add(peptide);
+                }
+            }
+            changedPeptides.values().stream().filter(Objects::nonNull).forEach(repList::add);
+        }
+
+        LOGGER.info("Inferred " + repList.size() + " peptides for " + fileID
+                + " (" + nrChanged + " changed)");
+        return new InferredPeptides(index, repList, newIndex || (nrChanged > 0));
+    }
+
+
+    /**
+     * Stores the inferred peptides of the file.
+     *
+     * @param fileID
+     * @param inferred
+     * @return true, if the FDR of the file must be recalculated
+     */
+    private boolean storeInferredPeptides(Long fileID, InferredPeptides inferred) {
+        getPeptideIndices().put(fileID, inferred.index);
 
         // put this new list into the peptides' list
-        fileReportPeptides.put(fileID, repList);
+        fileReportPeptides.put(fileID, inferred.peptides);
         // this file is set
         inferePeptides.put(fileID, false);
-        LOGGER.info("Inferred " + repList.size() + " peptides for " + fileID);
-
 
-        // peptides are changed -> reset the FDR data
         Boolean fileHasFDR = fileFDRCalculated.get(fileID);
-        if ((fileHasFDR != null) && fileHasFDR) {
-            fileFDRCalculated.put(fileID, false);
-            calculateFDR(fileID);
+        return (fileHasFDR != null) && fileHasFDR && inferred.changed;
+    }
+
+
+    /**
+     * Getter for the indices of the PSMs by their peptides, mapped by the file
+     * IDs. The indices are not serialized and created anew on demand.
+     *
+     * @return
+     */
+    private Map<Long, PeptideIndex> getPeptideIndices() {
+        if (peptideIndices == null) {
+            peptideIndices = new HashMap<>();
         }
+        return peptideIndices;
     }
 
 
@@ -283,6 +424,42 @@ public class PeptideModeller implements Serializable {
     }
 
 
+    /**
+     * Getter for the generations of the PSM scores, for which the best scores
+     * of the files' peptides are cached. These are not serialized and created
+     * anew on demand.
+     *
+     * @return
+     */
+    private Map<Long, Long> getPSMScoresGenerations() {
+        if (filePSMScoresGenerations == null) {
+            filePSMScoresGenerations = new ConcurrentHashMap<>();
+        }
+        return filePSMScoresGenerations;
+    }
+
+
+    /**
+     * Returns the peptides of the given file or null, if there are none. If
+     * the scores of the PSMs changed since the peptides' best scores were
+     * cached, the cached best scores are dumped.
+     *
+     * @param fileID
+     * @return
+     */
+    private List<ReportPeptide> getReportPeptides(Long fileID) {
+        List<ReportPeptide> peptides = fileReportPeptides.get(fileID);
+        if (peptides != null) {
+            long generation = psmModeller.getPSMScoresGeneration();
+            Long cachedGeneration = getPSMScoresGenerations().put(fileID, generation);
+            if ((cachedGeneration == null) || (cachedGeneration != generation)) {
+                peptides.forEach(ReportPeptide::dumpCachedBestScores);
+            }
+        }
+        return peptides;
+    }
+
+
     /**
      * Returns a List of {@link ReportPeptide}s for the given fileID filtered
      * by the given filters.
@@ -298,9 +475,9 @@ public class PeptideModeller implements Serializable {
             inferePeptides(fileID);
         }
 
-        if (fileReportPeptides.containsKey(fileID)) {
-            return FilterFactory.applyFilters(fileReportPeptides.get(fileID),
-                    filters, fileID);
+        List<ReportPeptide> peptides = getReportPeptides(fileID);
+        if (peptides != null) {
+            return FilterFactory.applyFilters(peptides, filters, fileID);
         } else {
             LOGGER.error("There are no ReportPeptides for the fileID " + fileID);
             return new ArrayList<>(0);
@@ -318,8 +495,9 @@ public class PeptideModeller implements Serializable {
                         sortKey,
                         sortables.get(sortKey))).collect(Collectors.toList());
 
-        if (fileReportPeptides.get(fileID) != null) {
-            (fileReportPeptides.get(fileID)).sort(ReportPeptideComparatorFactory.getComparator(compares));
+        List<ReportPeptide> peptides = getReportPeptides(fileID);
+        if (peptides != null) {
+            peptides.sort(ReportPeptideComparatorFactory.getComparator(compares));
         }
     }
 
@@ -354,7 +532,7 @@ public class PeptideModeller implements Serializable {
         }
 
         // first, dump all prior ranking
-        List<ReportPeptide> reports = fileReportPeptides.get(fileID);
+        List<ReportPeptide> reports = getReportPeptides(fileID);
         if (reports != null) {
             for (ReportPeptide pep : reports) {
                 pep.setRank(-1L);
@@ -363,9 +541,7 @@ public class PeptideModeller implements Serializable {
 
         // calculate the new ranking
         RankCalculator.calculateRanking(rankableShortName,
-                FilterFactory.applyFilters(
-                        fileReportPeptides.get(fileID),
-                        filters, fileID),
+                FilterFactory.applyFilters(reports, filters, fileID),
                 new ScoreComparator<>(rankableShortName));
     }
 
@@ -425,11 +601,25 @@ public class PeptideModeller implements Serializable {
 
         fileFDRCalculated.put(fileID, false);
 
+        // the FDR for this file is calculated now
+        fileFDRCalculated.put(fileID, calculateFDR(fileID, fdrData));
+    }
+
 
+    /**
+     * Calculates the peptide FDR for the file given by fileID with the given
+     * {@link FDRData}. This does not change any of the modeller's maps, so it
+     * may run concurrently for different files, if the peptides are inferred.
+     *
+     * @param fileID
+     * @param fdrData
+     * @return true, if the FDR was calculated
+     */
+    private boolean calculateFDR(Long fileID, FDRData fdrData) {
         String baseScoreShort = getBaseFDRScorePSMLevel(fileID);
         if (baseScoreShort == null) {
             LOGGER.error("Could not get a valid score from PSM level!");
-            return;
+            return false;
         }
 
         fdrData.setScoreShortName(baseScoreShort);
@@ -437,15 +627,16 @@ public class PeptideModeller implements Serializable {
                 fileID + ": " + fdrData.getScoreShortName());
 
         // recalculate the decoy status (especially important, if decoy pattern was changed)
-        updateDecoyStates(fileID);
+        updateDecoyStates(fileID, fdrData);
 
         if (fileReportPeptides.get(fileID) == null) {
             LOGGER.error("No peptides found for the file with ID=" + fileID);
-            return;
+            return false;
         }
 
         // create new list of the filters and leave only the PSM level filters
-        List<AbstractFilter> filters = new ArrayList<>(getFilters(fileID));
+        List<AbstractFilter> filters = new ArrayList<>(
+                fileFiltersMap.getOrDefault(fileID, Collections.emptyList()));
         ListIterator<AbstractFilter> filterIt = filters.listIterator();
 
         while (filterIt.hasNext()) {
@@ -469,8 +660,7 @@ public class PeptideModeller implements Serializable {
         // and also calculate the FDR score
         FDRScore.calculateFDRScore(listForFDR, fdrData, higherScoreBetter);
 
-        // the FDR for this file is calculated now
-        fileFDRCalculated.put(fileID, true);
+        return true;
     }
 
 
@@ -549,12 +739,11 @@ public class PeptideModeller implements Serializable {
 
 
     /**
-     * Updates the decoy states of the peptides with the current settings from
-     * the file's FDRData.
+     * Updates the decoy states of the peptides with the settings from the
+     * given FDRData.
      *
      */
-    private void updateDecoyStates(Long fileID) {
-        FDRData fdrData = fileFDRData.get(fileID);
+    private void updateDecoyStates(Long fileID, FDRData fdrData) {
         LOGGER.debug("updateDecoyStates for peptides on file " + fileID);
 
         // select either the PSMs from the given file or all and calculate the fdr
@@ -573,4 +762,204 @@ public class PeptideModeller implements Serializable {
             }
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * The result of the peptide inference of a file, before it is stored.
+     */
+    private static class InferredPeptides {
+
+        private final PeptideIndex index;
+
+        private final List<ReportPeptide> peptides;
+
+        /** whether any peptide changed */
+        private final boolean changed;
+
+
+        private InferredPeptides(PeptideIndex index, List<ReportPeptide> peptides, boolean changed) {
+            this.index = index;
+            this.peptides = peptides;
+            this.changed = changed;
+        }
+    }
+
+
+    /**
+     * Indexes the unfiltered PSMs (or PSM sets for the overview) of a file by
+     * their peptides. It keeps the filtered PSM of each item, so that on
+     * changed filters only the peptides with changed PSMs must be rebuilt.
+     *
+     * @author julian
+     *
+     */
+    private static class PeptideIndex {
+
+        /** the unfiltered PSMs of the PSM modeller, used to recognize, whether they were created anew */
+        private final List<? extends PSMReportItem> unfilteredPSMs;
+
+        /** whether the modifications are considered for the peptides */
+        private final boolean considerModifications;
+
+        /** the indexed items, in the order of the unfiltered PSMs */
+        private final PSMReportItem[] items;
+
+        /** the (filtered) PSM of each item, which is in a peptide, null if the item is filtered out */
+        private final PSMReportItem[] filteredItems;
+
+        /** the peptide stringID of each filtered item */
+        private final String[] itemStringIDs;
+
+        /** the indices of the filtered items by the peptide stringIDs */
+        private final Map<String, List<Integer>> peptideItems;
+
+        /** the current peptides by their stringIDs */
+        private final Map<String, ReportPeptide> peptides;
+
+
+        private PeptideIndex(List<? extends PSMReportItem> unfilteredPSMs, boolean considerModifications) {
+            this.unfilteredPSMs = unfilteredPSMs;
+            this.considerModifications = considerModifications;
+
+            this.items = unfilteredPSMs.toArray(new PSMReportItem[unfilteredPSMs.size()]);
+            this.filteredItems = new PSMReportItem[items.length];
+            this.itemStringIDs = new String[items.length];
+            this.peptideItems = new HashMap<>();
+            this.peptides = new LinkedHashMap<>();
+        }
+
+
+        /**
+         * Whether this index can still be used for the given PSMs and setting.
+         */
+        private boolean isValidFor(List<? extends PSMReportItem> psms, boolean considerMods) {
+            return (unfilteredPSMs == psms)
+                    && (items.length == psms.size())
+                    && (considerModifications == considerMods);
+        }
+
+
+        /**
+         * Returns the current peptides.
+         */
+        private Collection<ReportPeptide> getPeptides() {
+            return Collections.unmodifiableCollection(peptides.values());
+        }
+
+
+        /**
+         * Applies the filters to all items and updates the peptides of the
+         * items, whose filtered PSM changed.
+         *
+         * @return the rebuilt peptides by their stringIDs, mapping to null
+         * for removed peptides
+         */
+        private Map<String, ReportPeptide> applyFilters(Long fileID, List<AbstractFilter> filters,
+                Map<String, Boolean> psmSetSettings) {
+            Set<String> changedIDs = new HashSet<>();
+
+            for (int i = 0; i < items.length; i++) {
+                PSMReportItem filtered;
+                if (items[i] instanceof ReportPSMSet) {
+                    filtered = filterPSMSet((ReportPSMSet) items[i], (ReportPSMSet) filteredItems[i],
+                            filters, psmSetSettings);
+                } else {
+                    filtered = FilterFactory.satisfiesFilterList(items[i], fileID, filters) ? items[i] : null;
+                }
+
+                if (filtered != filteredItems[i]) {
+                    if (filteredItems[i] != null) {
+                        peptideItems.get(itemStringIDs[i]).remove(Integer.valueOf(i));
+                        changedIDs.add(itemStringIDs[i]);
+                    }
+
+                    filteredItems[i] = filtered;
+                    itemStringIDs[i] = null;
+
+                    if (filtered != null) {
+                        itemStringIDs[i] = ReportPeptide.createStringID(filtered, considerModifications);
+                        peptideItems.computeIfAbsent(itemStringIDs[i], k -> new ArrayList<>()).add(i);
+                        changedIDs.add(itemStringIDs[i]);
+                    }
+                }
+            }
+
+            Map<String, ReportPeptide> changedPeptides = new HashMap<>(changedIDs.size());
+            for (String stringID : changedIDs) {
+                ReportPeptide peptide = rebuildPeptide(stringID);
+                if (peptide != null) {
+                    peptides.put(stringID, peptide);
+                } else {
+                    peptides.remove(stringID);
+                    peptideItems.remove(stringID);
+                }
+                changedPeptides.put(stringID, peptide);
+            }
+
+            return changedPeptides;
+        }
+
+
+        /**
+         * Filters the PSMs of the given set like
+         * {@link PSMModeller#getFilteredReportPSMSets(List)}. If the PSMs
+         * passing the filters did not change, the previously filtered set is
+         * returned.
+         */
+        private static ReportPSMSet filterPSMSet(ReportPSMSet psmSet, ReportPSMSet previous,
+                List<AbstractFilter> filters, Map<String, Boolean> psmSetSettings) {
+            if (!FilterFactory.satisfiesFilterList(psmSet, 0L, filters)) {
+                return null;
+            }
+
+            List<ReportPSM> psms = FilterFactory.applyFilters(psmSet.getPSMs(), filters);
+            if (psms.isEmpty()) {
+                return null;
+            }
+
+            if ((previous != null) && samePSMs(previous.getPSMs(), psms)) {
+                previous.copyInfo(psmSet);
+                return previous;
+            }
+
+            ReportPSMSet set = new ReportPSMSet(psms, psmSetSettings);
+            set.copyInfo(psmSet);
+            return set;
+        }
+
+
+        private static boolean samePSMs(List<ReportPSM> psms, List<ReportPSM> otherPSMs) {
+            if (psms.size() != otherPSMs.size()) {
+                return false;
+            }
+            for (int i = 0; i < psms.size(); i++) {
+                if (psms.get(i) != otherPSMs.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /**
+         * Creates the peptide with the given stringID from its filtered items,
+         * in the order of the unfiltered PSMs.
+         *
+         * @return the peptide or null, if no item passes the filters
+         */
+        private ReportPeptide rebuildPeptide(String stringID) {
+            List<Integer> indices = peptideItems.get(stringID);
+            if ((indices == null) || indices.isEmpty()) {
+                return null;
+            }
+            Collections.sort(indices);
+
+            PSMReportItem first = filteredItems[indices.get(0)];
+            ReportPeptide peptide = new ReportPeptide(first.getSequence(), stringID, first.getPeptide());
+            for (Integer index : indices) {
+                peptide.addPSM(filteredItems[index]);
+            }
+            return peptide;
+        }
+    }
+}
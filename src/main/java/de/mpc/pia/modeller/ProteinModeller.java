@@ -12,6 +12,7 @@ import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 
 import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
 import de.mpc.pia.modeller.protein.ProteinExecuteCommands;
 import de.mpc.pia.modeller.protein.ReportProtein;
 import de.mpc.pia.modeller.protein.ReportProteinComparatorFactory;
@@ -63,6 +64,9 @@ public class ProteinModeller  implements Serializable {
     /** map of the {@link Group}s in the intermediate structure */
     private Map<Long, Group> intermediateGroups;
 
+    /** the generation of the PSM scores at the time of the inference */
+    private long psmScoresGeneration;
+
 
     /** the FDR settings for the protein FDR */
     private FDRData fdrData;
@@ -201,6 +205,7 @@ public class ProteinModeller  implements Serializable {
 
         if (proteinInference != null) {
             appliedProteinInference = proteinInference;
+            psmScoresGeneration = psmModeller.getPSMScoresGeneration();
             reportProteins = proteinInference.calculateInference(
                     intermediateGroups,
                     psmModeller.getReportPSMSets(),
@@ -330,6 +335,15 @@ public class ProteinModeller  implements Serializable {
             return;
         }
 
+        if ((reportProteinsMap != null)
+                && (psmScoresGeneration != psmModeller.getPSMScoresGeneration())) {
+            // the PSM scores changed since the inference, so did the best scores of the peptides
+            for (ReportProtein protein : reportProteinsMap.values()) {
+                protein.getPeptides().forEach(ReportPeptide::dumpCachedBestScores);
+            }
+            psmScoresGeneration = psmModeller.getPSMScoresGeneration();
+        }
+
         LOGGER.info("applying scoring method: " + scoring.getName());
         scoring.calculateProteinScores(reportProteins);
         LOGGER.info("scoring done");
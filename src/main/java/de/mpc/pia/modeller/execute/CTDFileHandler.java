@@ -3,7 +3,6 @@ package de.mpc.pia.modeller.execute;
 import java.io.File;
 import java.util.List;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 
@@ -21,6 +20,7 @@ import de.mpc.pia.modeller.execute.xmlparams.PossibleITEMType;
 import de.mpc.pia.modeller.peptide.PeptideExecuteCommands;
 import de.mpc.pia.modeller.protein.ProteinExecuteCommands;
 import de.mpc.pia.modeller.psm.PSMExecuteCommands;
+import de.mpc.pia.tools.JAXBContextCache;
 import de.mpc.pia.tools.PIAConstants;
 
 public class CTDFileHandler {
@@ -206,8 +206,7 @@ public class CTDFileHandler {
 			}
 
 			// write the information to a CTD file
-		    JAXBContext context = JAXBContext.newInstance(CTDTool.class);
-		    Marshaller m = context.createMarshaller();
+		    Marshaller m = JAXBContextCache.getMarshaller(CTDTool.class);
 		    m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
 		    m.marshal(executor, new File(fileName));
 		} catch (JAXBException e) {
@@ -0,0 +1,333 @@
+package de.mpc.pia.modeller.execute;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.execute.xmlparams.CTDTool;
+
+
+/**
+ * Executes one parameter pipeline file on many PIA XML files in a bounded
+ * thread pool inside one JVM. The pipeline file is parsed only once and the
+ * ontologies are shared by all inputs (see
+ * {@link de.mpc.pia.tools.OntologyRegistry}).
+ * <p>
+ * File names for the outputs can be created from templates by
+ * {@link #applyOutputTemplate(String, String, int)}.
+ *
+ * @author julian
+ *
+ */
+public class PipelineBatchExecutor {
+
+    /** placeholder for the input's file name without the PIA XML extension */
+    public static final String TEMPLATE_NAME = "{name}";
+
+    /** placeholder for the (1-based) index of the input */
+    public static final String TEMPLATE_INDEX = "{index}";
+
+    /** the prefix of an input argument, which names a file listing the inputs */
+    public static final String LIST_FILE_PREFIX = "@";
+
+
+    /** the parsed pipeline */
+    private final CTDTool pipeline;
+
+    /** the maximal number of inputs processed in parallel */
+    private final int nrThreads;
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PipelineBatchExecutor.class);
+
+
+    /**
+     * Creates an executor for the given pipeline.
+     *
+     * @param pipeline the parsed pipeline file
+     * @param nrThreads the number of inputs processed in parallel, smaller 1
+     * means the number of available processors
+     */
+    public PipelineBatchExecutor(CTDTool pipeline, int nrThreads) {
+        if (pipeline == null) {
+            throw new IllegalArgumentException("No pipeline given.");
+        }
+
+        this.pipeline = pipeline;
+        this.nrThreads = (nrThreads < 1) ? Runtime.getRuntime().availableProcessors() : nrThreads;
+    }
+
+
+    /**
+     * Loads each of the input files, executes the pipeline on it and calls the
+     * postProcessing (e.g. exports) with the model.
+     * Errors of single inputs are logged and do not stop the batch. A summary
+     * of the processing time and memory of each input is logged at the end.
+     *
+     * @param inputFiles
+     * @param postProcessing called after the pipeline execution, may be null
+     * @return the results in the order of the inputs
+     */
+    public List<BatchResult> execute(List<String> inputFiles,
+            PostProcessing postProcessing) {
+        LOGGER.info("starting batch execution of " + inputFiles.size() + " files with " + nrThreads + " threads");
+
+        ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+        List<Future<BatchResult>> futures = new ArrayList<>(inputFiles.size());
+        for (int idx = 0; idx < inputFiles.size(); idx++) {
+            String inputFile = inputFiles.get(idx);
+            int index = idx + 1;
+            futures.add(executor.submit(() -> processInput(inputFile, index, postProcessing)));
+        }
+        executor.shutdown();
+
+        List<BatchResult> results = new ArrayList<>(futures.size());
+        for (int idx = 0; idx < futures.size(); idx++) {
+            try {
+                results.add(futures.get(idx).get());
+            } catch (InterruptedException e) {
+                LOGGER.error("batch execution got interrupted", e);
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                LOGGER.error("Error while processing " + inputFiles.get(idx), e);
+                results.add(new BatchResult(inputFiles.get(idx), false, 0, 0));
+            }
+        }
+
+        logSummary(results);
+        return results;
+    }
+
+
+    /**
+     * Processes a single input file.
+     */
+    private BatchResult processInput(String inputFile, int index,
+            PostProcessing postProcessing) {
+        long start = System.nanoTime();
+        boolean success;
+
+        LOGGER.info("processing " + inputFile);
+        try {
+            PIAModeller model = new PIAModeller(inputFile);
+            PIAModeller.processPipeline(pipeline, model);
+
+            if (postProcessing != null) {
+                postProcessing.process(model, inputFile, index);
+            }
+            success = true;
+        } catch (Exception e) {
+            LOGGER.error("Error while processing " + inputFile, e);
+            success = false;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        return new BatchResult(inputFile, success,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                runtime.totalMemory() - runtime.freeMemory());
+    }
+
+
+    /**
+     * Logs the processing time and used memory of each input.
+     *
+     * @param results
+     */
+    private static void logSummary(List<BatchResult> results) {
+        StringBuilder sb = new StringBuilder("batch summary (input, status, time, heap in use when finished):");
+        long totalMillis = 0;
+        long maxHeap = 0;
+        int nrFailed = 0;
+
+        for (BatchResult result : results) {
+            sb.append("\n\t").append(result.getInputFile())
+                    .append('\t').append(result.isSuccess() ? "ok" : "failed")
+                    .append('\t').append(result.getMillis()).append(" ms")
+                    .append('\t').append(result.getUsedHeap() >> 20).append(" MB");
+            totalMillis += result.getMillis();
+            maxHeap = Math.max(maxHeap, result.getUsedHeap());
+            if (!result.isSuccess()) {
+                nrFailed++;
+            }
+        }
+
+        sb.append("\n\t").append(results.size()).append(" inputs, ").append(nrFailed).append(" failed, ")
+                .append(totalMillis).append(" ms summed processing time, maximal heap in use ")
+                .append(maxHeap >> 20).append(" MB");
+        LOGGER.info(sb.toString());
+    }
+
+
+    /**
+     * Resolves the given input arguments to the list of input files. Each
+     * argument may be a file name, a glob pattern for the file names (e.g.
+     * <code>data/*.pia.xml</code>) or a file with one input per line, when
+     * prefixed by {@link #LIST_FILE_PREFIX}.
+     *
+     * @param inputArgs
+     * @return
+     * @throws IOException
+     */
+    public static List<String> resolveInputFiles(String[] inputArgs) throws IOException {
+        List<String> inputFiles = new ArrayList<>();
+
+        for (String inputArg : inputArgs) {
+            if (inputArg.startsWith(LIST_FILE_PREFIX)) {
+                for (String line : Files.readAllLines(Paths.get(inputArg.substring(LIST_FILE_PREFIX.length())),
+                        StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        inputFiles.add(line.trim());
+                    }
+                }
+            } else if (inputArg.contains("*") || inputArg.contains("?")) {
+                inputFiles.addAll(resolveGlob(inputArg));
+            } else {
+                inputFiles.add(inputArg);
+            }
+        }
+
+        return inputFiles;
+    }
+
+
+    /**
+     * Returns the sorted files matching the glob pattern. Only the file name
+     * part of the pattern may contain wildcards.
+     *
+     * @param pattern
+     * @return
+     * @throws IOException
+     */
+    private static List<String> resolveGlob(String pattern) throws IOException {
+        // the pattern itself may not be a valid path, so split it manually
+        int separatorPos = Math.max(pattern.lastIndexOf('/'), pattern.lastIndexOf(File.separatorChar));
+        Path directory = (separatorPos >= 0) ? Paths.get(pattern.substring(0, separatorPos + 1)) : Paths.get(".");
+        String fileGlob = pattern.substring(separatorPos + 1);
+
+        List<String> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, fileGlob)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path)) {
+                    files.add(path.toString());
+                }
+            }
+        }
+
+        if (files.isEmpty()) {
+            LOGGER.warn("no files found for " + pattern);
+        }
+        files.sort(null);
+        return files;
+    }
+
+
+    /**
+     * Creates the output file name for an input from the template, replacing
+     * {@link #TEMPLATE_NAME} and {@link #TEMPLATE_INDEX}.
+     *
+     * @param template
+     * @param inputFile
+     * @param index
+     * @return
+     */
+    public static String applyOutputTemplate(String template, String inputFile, int index) {
+        String name = new File(inputFile).getName();
+        for (String extension : new String[] {".pia.xml", ".xml"}) {
+            if (name.toLowerCase().endsWith(extension) && (name.length() > extension.length())) {
+                name = name.substring(0, name.length() - extension.length());
+                break;
+            }
+        }
+
+        return template.replace(TEMPLATE_NAME, name)
+                .replace(TEMPLATE_INDEX, Integer.toString(index));
+    }
+
+
+    /**
+     * Processing of a model after the pipeline was executed on it, e.g. the
+     * exports.
+     */
+    @FunctionalInterface
+    public interface PostProcessing {
+
+        /**
+         * Processes the model of the input file with the given (1-based)
+         * index.
+         *
+         * @param model
+         * @param inputFile
+         * @param index
+         */
+        void process(PIAModeller model, String inputFile, int index);
+    }
+
+
+    /**
+     * The result of processing one input of the batch.
+     */
+    public static class BatchResult {
+
+        private final String inputFile;
+
+        private final boolean success;
+
+        private final long millis;
+
+        private final long usedHeap;
+
+
+        private BatchResult(String inputFile, boolean success, long millis, long usedHeap) {
+            this.inputFile = inputFile;
+            this.success = success;
+            this.millis = millis;
+            this.usedHeap = usedHeap;
+        }
+
+
+        public String getInputFile() {
+            return inputFile;
+        }
+
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+
+        /**
+         * The processing time in milliseconds
+         *
+         * @return
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+
+        /**
+         * The used heap in bytes, after the input was processed
+         *
+         * @return
+         */
+        public long getUsedHeap() {
+            return usedHeap;
+        }
+    }
+}
@@ -41,6 +41,7 @@ import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.CleavageAgent;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.OntologyConstants;
+import de.mpc.pia.tools.OntologyRegistry;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.unimod.UnimodParser;
 import de.mpc.pia.tools.unimod.jaxb.ModT;
@@ -225,7 +226,7 @@ public class MzIdentMLExporter {
         LOGGER.info("start writing mzIdentML file");
 
         outWriter = new BufferedWriter(exportWriter);
-        unimodParser = new UnimodParser();
+        unimodParser = OntologyRegistry.getUnimodParser();
         mzidMarshaller = new MzIdentMLMarshaller(); // the reading of 1.2 is broken right now... MzIdentMLVersion.Version_1_2);
 
         piaAnalysisSoftware = MzIdentMLTools.getPIAAnalysisSoftware();
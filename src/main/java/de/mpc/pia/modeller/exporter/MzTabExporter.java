@@ -36,6 +36,7 @@ import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.tools.CleavageAgent;
 import de.mpc.pia.tools.MzIdentMLTools;
 import de.mpc.pia.tools.OntologyConstants;
+import de.mpc.pia.tools.OntologyRegistry;
 import de.mpc.pia.tools.PIAConstants;
 import de.mpc.pia.tools.unimod.UnimodParser;
 import de.mpc.pia.tools.unimod.jaxb.ModT;
@@ -242,7 +243,7 @@ public class MzTabExporter {
         try (BufferedWriter writer = new BufferedWriter(exportWriter)) {
             outWriter = writer;
 
-            unimodParser = new UnimodParser();
+            unimodParser = OntologyRegistry.getUnimodParser();
 
             piaParam = new CVParam(OntologyConstants.CV_PSI_MS_LABEL,
                     OntologyConstants.PIA.getPsiAccession(),
@@ -222,6 +222,61 @@ public enum PeptideExecuteCommands implements ExecuteModelCommands<PeptideModell
     },
 
 
+    InferePeptides {
+        /** the identification string for calculating the FDR */
+        private static final String ID_CALCULATE_FDR = "calculate FDR";
+
+        @Override
+        public boolean execute(PeptideModeller peptideModeller, PIAModeller piaModeller, String[] params) {
+            logParams(params);
+
+            boolean calculateFDR = false;
+            if ((params != null) && (params.length > 0)
+                    && (params[0] != null)) {
+                calculateFDR = "true".equals(params[0]) || "yes".equals(params[0]);
+            }
+
+            peptideModeller.inferePeptidesForAllFiles(calculateFDR);
+            return true;
+        }
+
+        @Override
+        public String describe() {
+            return "Infers the peptides for all files in parallel, using the"
+                    + " current filters. If the first parameter is true, the"
+                    + " peptide FDR is calculated for all files, otherwise"
+                    + " only for the files, which already had an FDR.";
+        }
+
+        @Override
+        public List<List<String>> neededXMLParameters() {
+            List<List<String>> params = new ArrayList<>();
+
+            List<String> param = new ArrayList<>();
+            param.add(ID_CALCULATE_FDR);
+            param.add("no");
+            param.add("yes");
+            params.add(param);
+
+            return params;
+        }
+
+        @Override
+        public void executeXMLParameters(NODEType node, PeptideModeller peptideModeller, PIAModeller piaModeller) {
+            String calculateFDR = null;
+
+            for (Object item : node.getITEMOrITEMLISTOrNODE()) {
+                if ((item instanceof ITEMType)
+                        && ID_CALCULATE_FDR.equals(((ITEMType) item).getName())) {
+                    calculateFDR = ((ITEMType) item).getValue();
+                }
+            }
+
+            execute(peptideModeller, piaModeller, new String[] {calculateFDR});
+        }
+    },
+
+
     Export {
         /** the identification string for the fileName */
         private static final String ID_FILENAME_STRING = "fileName";
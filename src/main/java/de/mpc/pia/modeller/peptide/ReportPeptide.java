@@ -3,6 +3,7 @@ package de.mpc.pia.modeller.peptide;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -14,6 +15,7 @@ import de.mpc.pia.intermediate.Accession;
 import de.mpc.pia.intermediate.Modification;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.IdentificationKeySettingsMask;
 import de.mpc.pia.modeller.psm.PSMReportItem;
 import de.mpc.pia.modeller.psm.ReportPSM;
 import de.mpc.pia.modeller.psm.ReportPSMSet;
@@ -92,6 +94,9 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
     /** the FDR Score of the peptide */
     private ScoreModel fdrScore;
 
+    /** cache of the best scores of the PSMs by the score names, empty if the score is not available */
+    private transient volatile Map<String, Optional<ScoreModel>> bestScoreModels;
+
 
     /**
      * Basic constructor
@@ -202,6 +207,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      */
     public void addPSM(PSMReportItem psm) {
         psmList.add(psm);
+        dumpCachedBestScores();
         allSpectraKeySet = null;
         maximalSpectraIdentificationSettings = null;
         maximalNonRedundantSpectraIdentificationSettings = null;
@@ -214,7 +220,9 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * @param id
      */
     public void addToNonScoringPSMs(Long id) {
-        nonScoringPSMIDs.add(id);
+        if (nonScoringPSMIDs.add(id)) {
+            dumpCachedBestScores();
+        }
     }
 
 
@@ -225,7 +233,11 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * @return true, if the ID was in the set
      */
     public boolean removeFromNonScoringPSMs(Long id) {
-        return nonScoringPSMIDs.remove(id);
+        boolean removed = nonScoringPSMIDs.remove(id);
+        if (removed) {
+            dumpCachedBestScores();
+        }
+        return removed;
     }
 
 
@@ -243,6 +255,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      */
     public void clearNonScoringPSMIDs() {
         nonScoringPSMIDs.clear();
+        dumpCachedBestScores();
     }
 
 
@@ -252,7 +265,9 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * @param idKey
      */
     public void addToNonScoringSpectra(String idKey) {
-        nonScoringSpectraIDKeys.add(idKey);
+        if (nonScoringSpectraIDKeys.add(idKey)) {
+            dumpCachedBestScores();
+        }
     }
 
 
@@ -264,7 +279,11 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * @return true, if the idKey was in the set
      */
     public boolean removeFromNonScoringSpectra(String idKey) {
-        return nonScoringSpectraIDKeys.remove(idKey);
+        boolean removed = nonScoringSpectraIDKeys.remove(idKey);
+        if (removed) {
+            dumpCachedBestScores();
+        }
+        return removed;
     }
 
 
@@ -282,6 +301,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      */
     public void clearNonScoringSpectraIDKeys() {
         nonScoringSpectraIDKeys.clear();
+        dumpCachedBestScores();
     }
 
 
@@ -291,6 +311,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      * @return the removed PSM, or null if none is removed
      */
     public ReportPSMSet removeReportPSMSet(ReportPSMSet remSet, Map<String, Boolean> psmSetSettings) {
+        dumpCachedBestScores();
         allSpectraKeySet = null;
         maximalSpectraIdentificationSettings = null;
         maximalNonRedundantSpectraIdentificationSettings = null;
@@ -403,14 +424,16 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
         for (PSMReportItem psm : psmList) {
             if (psm instanceof ReportPSM) {
                 if (((ReportPSM) psm).getSpectrum().getSpectrumIdentificationKey(
-                        psm.getAvailableIdentificationKeySettings()).equals(spectrumKey)) {
+                        ((ReportPSM) psm).getAvailableIdentificationKeySettingsMask()).equals(spectrumKey)) {
                     list.add(psm);
                 }
             } else if (psm instanceof ReportPSMSet) {
+                IdentificationKeySettingsMask setSettings =
+                        IdentificationKeySettingsMask.of(psm.getAvailableIdentificationKeySettings());
 
                 for (ReportPSM reportPSM : ((ReportPSMSet) psm).getPSMs()) {
                     if (reportPSM.getSpectrum().getSpectrumIdentificationKey(
-                            psm.getAvailableIdentificationKeySettings()).equals(spectrumKey)) {
+                            setSettings).equals(spectrumKey)) {
                         list.add(psm);
                         // the PSMSet must be added only once
                         break;
@@ -470,11 +493,49 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
     /**
      * Returns the ScoreModel with the best score value of all the PSMs for the
      * ScoreModel given by the scoreName.
+     * <p>
+     * The best score is cached per score name, until the PSMs or the non
+     * scoring PSMs and spectra of the peptide change or the cache is dumped
+     * by {@link #dumpCachedBestScores()}.
      *
      * @param scoreName
      * @return
      */
     public ScoreModel getBestScoreModel(String scoreName) {
+        if (scoreName == null) {
+            return calculateBestScoreModel(null);
+        }
+
+        Map<String, Optional<ScoreModel>> cache = bestScoreModels;
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+            bestScoreModels = cache;
+        }
+
+        Optional<ScoreModel> bestScoreModel = cache.get(scoreName);
+        if (bestScoreModel == null) {
+            bestScoreModel = Optional.ofNullable(calculateBestScoreModel(scoreName));
+            cache.put(scoreName, bestScoreModel);
+        }
+        return bestScoreModel.orElse(null);
+    }
+
+
+    /**
+     * Dumps the cached best scores of the PSMs. This must be called, if the
+     * scores of the peptide's PSMs were changed, e.g. by a new FDR calculation
+     * on PSM level.
+     */
+    public void dumpCachedBestScores() {
+        bestScoreModels = null;
+    }
+
+
+    /**
+     * Calculates the ScoreModel with the best score value of all the scoring
+     * PSMs.
+     */
+    private ScoreModel calculateBestScoreModel(String scoreName) {
         ScoreModel bestScoreModel = null;
 
         // get the best of the scores out of the list
@@ -483,7 +544,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
 
             if ((psm instanceof ReportPSM) &&
                     !nonScoringPSMIDs.contains(((ReportPSM)psm).getId()) &&
-                    !nonScoringSpectraIDKeys.contains(((ReportPSM)psm).getSpectrum().getSpectrumIdentificationKey(psm.getAvailableIdentificationKeySettings()))) {
+                    !nonScoringSpectraIDKeys.contains(((ReportPSM)psm).getSpectrum().getSpectrumIdentificationKey(((ReportPSM)psm).getAvailableIdentificationKeySettingsMask()))) {
                 newScoreModel = psm.getCompareScore(scoreName);
             } else if (psm instanceof ReportPSMSet) {
                 newScoreModel =((ReportPSMSet)psm).getCompareScore(scoreName,
@@ -575,14 +636,15 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      */
     public List<String> getSpectraIdentificationKeys(Map<String, Boolean> maximalKeySettings) {
         Set<String> spectraKeySet = new HashSet<>();
+        IdentificationKeySettingsMask keySettings = IdentificationKeySettingsMask.of(maximalKeySettings);
 
         for (PSMReportItem psm : psmList) {
             if (psm instanceof ReportPSM) {
                 spectraKeySet.add(((ReportPSM) psm).getSpectrum().
-                        getSpectrumIdentificationKey(maximalKeySettings));
+                        getSpectrumIdentificationKey(keySettings));
             } else if (psm instanceof ReportPSMSet) {
                 spectraKeySet.addAll(((ReportPSMSet) psm).getPSMs().stream().map(reportPSM -> reportPSM.getSpectrum().
-                        getSpectrumIdentificationKey(maximalKeySettings)).collect(Collectors.toList()));
+                        getSpectrumIdentificationKey(keySettings)).collect(Collectors.toList()));
             }
         }
 
@@ -654,16 +716,18 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
      */
     public List<String> getScoringSpectraIdentificationKeys() {
         Set<String> scoringSpectraKeySet = new HashSet<>();
+        IdentificationKeySettingsMask keySettings =
+                IdentificationKeySettingsMask.of(getNotRedundantIdentificationKeySettings());
 
         for (PSMReportItem psm : psmList) {
             if (psm instanceof ReportPSM) {
                 if (!nonScoringPSMIDs.contains(((ReportPSM) psm).getId())) {
                     scoringSpectraKeySet.add(((ReportPSM) psm).getSpectrum().
-                            getSpectrumIdentificationKey(getNotRedundantIdentificationKeySettings()));
+                            getSpectrumIdentificationKey(keySettings));
                 }
             } else if (psm instanceof ReportPSMSet) {
                 scoringSpectraKeySet.addAll(((ReportPSMSet) psm).getPSMs().stream().filter(reportPSM -> !nonScoringPSMIDs.contains(reportPSM.getId())).map(reportPSM -> reportPSM.getSpectrum().
-                        getSpectrumIdentificationKey(getNotRedundantIdentificationKeySettings())).collect(Collectors.toList()));
+                        getSpectrumIdentificationKey(keySettings)).collect(Collectors.toList()));
             }
         }
 
@@ -790,6 +854,7 @@ public class ReportPeptide implements Rankable, Filterable, FDRComputable, FDRSc
 
     @Override
     public void dumpFDRCalculation() {
+        dumpCachedBestScores();
         isFDRGood = false;
         qValue = null;
         fdrScore = null;
@@ -146,6 +146,20 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
     }
 
 
+    /**
+     * Sets the decoy state of the given accession of this protein, e.g. for a
+     * protein restored from a snapshot. A null state means unknown.
+     *
+     * @param accession
+     * @param isDecoy
+     */
+    public void setAccessionDecoyState(String accession, Boolean isDecoy) {
+        if (accMap.containsKey(accession)) {
+            accessionDecoyStateMap.put(accession, isDecoy);
+        }
+    }
+
+
     /**
      * Adds the given accession to the accessions map, if it is not yet in it.
      *
@@ -595,4 +609,16 @@ public class ReportProtein implements Rankable, Filterable, FDRComputable, Seria
     public boolean getIsDecoy() {
         return isDecoy;
     }
+
+
+    /**
+     * Setter for isDecoy, e.g. for a protein restored from a snapshot.
+     * Usually, the state is set by
+     * {@link #updateDecoyStatus(DecoyStrategy, Pattern)}.
+     *
+     * @param isDecoy
+     */
+    public void setIsDecoy(boolean isDecoy) {
+        this.isDecoy = isDecoy;
+    }
 }
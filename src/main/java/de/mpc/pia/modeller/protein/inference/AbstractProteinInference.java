@@ -48,6 +48,9 @@ public abstract class AbstractProteinInference implements Serializable {
     /** the number of allowed threads (smaller 1 = all available)*/
     private int allowedThreads;
 
+    /** the index of the {@link ReportPSM}s in the currently used map of {@link ReportPSMSet}s */
+    private transient volatile ReportPSMIndex reportPSMIndex;
+
     /** the logger for this class */
     private static final Logger LOGGER = Logger.getLogger(AbstractProteinInference.class);
 
@@ -296,6 +299,7 @@ public abstract class AbstractProteinInference implements Serializable {
             Map<String, ReportPSMSet> reportPSMSetMap, boolean considerModifications,
             Map<String, Boolean> psmSetSettings, Map<String, ReportPeptide> reportPeptideMap) {
         Map<Long, List<ReportPeptide>> peptidesMap = new HashMap<>(groupMap.size() / 2);
+        ReportPSMIndex psmIndex = getReportPSMIndex(reportPSMSetMap);
 
         for (Map.Entry<Long, Group> gIt : groupMap.entrySet()) {
             Map<String, ReportPeptide> gPepsMap = new HashMap<>();
@@ -309,28 +313,20 @@ public abstract class AbstractProteinInference implements Serializable {
 
                 for (PeptideSpectrumMatch psm : pep.getSpectra()) {
                     // get the ReportPSM for each PeptideSpectrumMatch
+                    String psmKey = psm.getIdentificationKey(psmSetSettings);
 
-                    ReportPSMSet repSet =
-                            reportPSMSetMap.get(
-                                    psm.getIdentificationKey(psmSetSettings));
+                    ReportPSMSet repSet = reportPSMSetMap.get(psmKey);
                     if (repSet == null) {
                         // TODO: better error
-                        LOGGER.warn("no PSMSet found for " +
-                                psm.getIdentificationKey(psmSetSettings) +
+                        LOGGER.warn("no PSMSet found for " + psmKey +
                                 "! createFilteredReportPeptides");
                         continue;
                     }
 
-                    ReportPSM reportPSM = null;
-                    for (ReportPSM repPSM : repSet.getPSMs()) {
-                        if (repPSM.getSpectrum().equals(psm)) {
-                            reportPSM = repPSM;
-                        }
-                    }
+                    ReportPSM reportPSM = psmIndex.getReportPSM(psm, repSet);
                     if (reportPSM == null) {
                         // TODO: better error
-                        LOGGER.warn("no PSM found for " +
-                                psm.getIdentificationKey(psmSetSettings) +
+                        LOGGER.warn("no PSM found for " + psmKey +
                                 "! createFilteredReportPeptides");
                         continue;
                     }
@@ -351,8 +347,7 @@ public abstract class AbstractProteinInference implements Serializable {
                         // get ReportPSMSet from the peptide
                         ReportPSMSet reportPSMSet = null;
                         List<PSMReportItem> setList = peptide.getPSMsByIdentificationKey(
-                                reportPSM.getIdentificationKey(psmSetSettings),
-                                psmSetSettings);
+                                psmKey, psmSetSettings);
 
                         if (setList != null) {
                             if (setList.size() > 1) {
@@ -395,36 +390,14 @@ public abstract class AbstractProteinInference implements Serializable {
                         if (psm instanceof ReportPSMSet) {
                             ReportPSMSet checkSet = reportPSMSetMap.get(psmKey);
 
-                            if (((ReportPSMSet) psm).getPSMs().size() == checkSet.getPSMs().size()) {
-                                // same size of PSMs
-                                boolean samePSMs = true;
-
-                                for (ReportPSM p : ((ReportPSMSet) psm).getPSMs()) {
-                                    boolean found = false;
-
-                                    for (ReportPSM q : checkSet.getPSMs()) {
-                                        if (Objects.equals(p.getId(), q.getId())) {
-                                            found = true;
-                                            break;
-                                        }
-                                    }
-
-                                    if (!found) {
-                                        samePSMs = false;
-                                        break;
-                                    }
-                                }
-
-                                if (samePSMs) {
-                                    // same PSMs in both sets -> set FDR scores and so one
-                                    if (checkSet.getFDRScore() != null) {
-                                        psm.setFDR(checkSet.getFDR());
-                                        psm.setFDRScore(checkSet.getFDRScore().getValue());
-                                        psm.setIsFDRGood(checkSet.getIsFDRGood());
-                                        psm.setQValue(checkSet.getQValue());
-                                        psm.setRank(checkSet.getRank());
-                                    }
-                                }
+                            if (((ReportPSMSet) psm).hasSamePSMs(checkSet)
+                                    && (checkSet.getFDRScore() != null)) {
+                                // same PSMs in both sets -> set FDR scores and so one
+                                psm.setFDR(checkSet.getFDR());
+                                psm.setFDRScore(checkSet.getFDRScore().getValue());
+                                psm.setIsFDRGood(checkSet.getIsFDRGood());
+                                psm.setQValue(checkSet.getQValue());
+                                psm.setRank(checkSet.getRank());
                             }
 
                             if (!FilterFactory.satisfiesFilterList(psm, 0L, filters)) {
@@ -459,6 +432,29 @@ public abstract class AbstractProteinInference implements Serializable {
     }
 
 
+    /**
+     * Returns the index of the {@link ReportPSM}s for the given map of
+     * {@link ReportPSMSet}s. The index is built only once for the map and
+     * reused by all trees and threads of the inference run.
+     *
+     * @param reportPSMSetMap
+     * @return
+     */
+    private ReportPSMIndex getReportPSMIndex(Map<String, ReportPSMSet> reportPSMSetMap) {
+        ReportPSMIndex index = reportPSMIndex;
+        if ((index == null) || !index.isIndexOf(reportPSMSetMap)) {
+            synchronized (this) {
+                index = reportPSMIndex;
+                if ((index == null) || !index.isIndexOf(reportPSMSetMap)) {
+                    index = new ReportPSMIndex(reportPSMSetMap);
+                    reportPSMIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+
     /**
      * Sorts the peptides from a collection into the Map needed by
      * {@link #createFilteredReportPeptides(Map, Map, boolean, Map, Map)}.
@@ -616,4 +612,78 @@ public abstract class AbstractProteinInference implements Serializable {
     public Long getProgressValue() {
         return 101L;
     }
+
+
+    /**
+     * Maps from the IDs of the {@link PeptideSpectrumMatch}es to their
+     * {@link ReportPSM}s and the containing {@link ReportPSMSet}s of a map of
+     * PSM sets.
+     */
+    private static final class ReportPSMIndex {
+
+        /** the indexed map */
+        private final Map<String, ReportPSMSet> reportPSMSetMap;
+
+        /** the number of sets in the map, while it was indexed */
+        private final int nrSets;
+
+        /** the ReportPSMs by the IDs of their spectra */
+        private final Map<Long, ReportPSM> reportPSMs;
+
+        /** the sets of the ReportPSMs by the IDs of their spectra */
+        private final Map<Long, ReportPSMSet> reportPSMSets;
+
+
+        private ReportPSMIndex(Map<String, ReportPSMSet> reportPSMSetMap) {
+            this.reportPSMSetMap = reportPSMSetMap;
+            this.nrSets = reportPSMSetMap.size();
+            this.reportPSMs = new HashMap<>(2 * nrSets);
+            this.reportPSMSets = new HashMap<>(2 * nrSets);
+
+            for (ReportPSMSet set : reportPSMSetMap.values()) {
+                for (ReportPSM reportPSM : set.getPSMs()) {
+                    reportPSMs.put(reportPSM.getSpectrum().getID(), reportPSM);
+                    reportPSMSets.put(reportPSM.getSpectrum().getID(), set);
+                }
+            }
+        }
+
+
+        /**
+         * Whether this index was created for the given map.
+         *
+         * @param setMap
+         * @return
+         */
+        private boolean isIndexOf(Map<String, ReportPSMSet> setMap) {
+            return (reportPSMSetMap == setMap) && (nrSets == setMap.size());
+        }
+
+
+        /**
+         * Returns the {@link ReportPSM} of the given PSM in the given set. If
+         * the set was not indexed (e.g. it was replaced in the map), the set is
+         * searched for the PSM.
+         *
+         * @param psm
+         * @param repSet
+         * @return the ReportPSM or null, if the PSM is not in the set
+         */
+        private ReportPSM getReportPSM(PeptideSpectrumMatch psm, ReportPSMSet repSet) {
+            ReportPSM reportPSM = reportPSMs.get(psm.getID());
+            if ((reportPSM != null)
+                    && (reportPSMSets.get(psm.getID()) == repSet)
+                    && reportPSM.getSpectrum().equals(psm)) {
+                return reportPSM;
+            }
+
+            reportPSM = null;
+            for (ReportPSM repPSM : repSet.getPSMs()) {
+                if (repPSM.getSpectrum().equals(psm)) {
+                    reportPSM = repPSM;
+                }
+            }
+            return reportPSM;
+        }
+    }
 }
@@ -1,15 +1,21 @@
 package de.mpc.pia.modeller.protein.inference;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.modeller.peptide.ReportPeptide;
 import de.mpc.pia.modeller.protein.ReportProtein;
 import de.mpc.pia.modeller.psm.ReportPSMSet;
@@ -49,12 +55,15 @@ public class OccamsRazorInference extends AbstractProteinInference {
     private Double progress;
 
 
-    /** this iterator iterates over the mapping from the tree ID to its groups*/
-    private transient Iterator<Map.Entry<Long,Map<Long,Group>>> treeGroupsIterator = null;
+    /** the trees, which are not yet processed, largest first */
+    private transient Queue<ScheduledTree> treeQueue = null;
 
     /** this list holds the reported proteins */
     private List<ReportProtein> reportProteins;
 
+    /** the number of slowest trees, which are logged after the inference */
+    private static final int NR_LOGGED_SLOWEST_TREES = 5;
+
     /** the logger for this class */
     private static final Logger LOGGER = Logger.getLogger(OccamsRazorInference.class);
 
@@ -127,13 +136,26 @@ public class OccamsRazorInference extends AbstractProteinInference {
 
             treeGroups.put(groupIt.getKey(), groupIt.getValue());
         }
-        treeGroupsIterator = treeGroupMap.entrySet().iterator();
+
+        // schedule the largest trees first, so no huge tree is processed last by a single thread
+        List<ScheduledTree> scheduledTrees = new ArrayList<>(treeGroupMap.size());
+        for (Map.Entry<Long, Map<Long, Group>> treeIt : treeGroupMap.entrySet()) {
+            scheduledTrees.add(new ScheduledTree(treeIt.getKey(), treeIt.getValue()));
+        }
+        scheduledTrees.sort(Comparator.comparingInt(ScheduledTree::getNrGroups)
+                .thenComparingInt(ScheduledTree::getNrPSMs)
+                .reversed()
+                .thenComparingLong(ScheduledTree::getTreeID));
+        for (int pos = 0; pos < scheduledTrees.size(); pos++) {
+            scheduledTrees.get(pos).position = pos;
+        }
+        treeQueue = new ConcurrentLinkedQueue<>(scheduledTrees);
         LOGGER.info("PIA trees sorted, " + treeGroupMap.size() + " trees");
 
         // sort the peptides
         Map<String, ReportPeptide> reportPeptidesMap = sortPeptidesInMap(reportPeptides);
 
-        // initialize the reported list
+        // initialize the reported list, only used by addToReports while the threads run
         reportProteins = new ArrayList<>();
 
         // the number of threads used for the inference
@@ -170,6 +192,22 @@ public class OccamsRazorInference extends AbstractProteinInference {
                 Thread.currentThread().interrupt();
             }
         }
+        treeQueue = null;
+
+        // merge the results of the workers in the order of the scheduling
+        List<ScheduledTree> processedTrees = new ArrayList<>(scheduledTrees.size());
+        threads.forEach(workerThread -> processedTrees.addAll(workerThread.getProcessedTrees()));
+        processedTrees.sort(Comparator.comparingInt(tree -> tree.position));
+
+        List<ReportProtein> scheduledProteins = new ArrayList<>();
+        processedTrees.forEach(tree -> scheduledProteins.addAll(tree.getReportProteins()));
+        synchronized (this) {
+            // the proteins of the trees taken by getNextTree follow the scheduled ones
+            scheduledProteins.addAll(reportProteins);
+            reportProteins = scheduledProteins;
+        }
+
+        logSlowestTrees(processedTrees);
 
         progress = 100.0;
         LOGGER.info(NAME + " calculateInference done, " + reportProteins.size() + " groups inferred");
@@ -178,14 +216,35 @@ public class OccamsRazorInference extends AbstractProteinInference {
 
 
     /**
-     * Returns the next tree in the map or null, if no more tree is available.
+     * Returns the next tree to process or null, if no more tree is available.
+     * The trees are returned largest first. The reported proteins of the tree
+     * are kept with the tree by {@link ScheduledTree#setResult(List, long)}
+     * and merged in the order of the schedule.
+     *
+     * @return
+     */
+    public ScheduledTree getNextScheduledTree() {
+        Queue<ScheduledTree> queue = treeQueue;
+        if (queue != null) {
+            return queue.poll();
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns the next tree in the schedule as mapping from the tree ID to its
+     * groups or null, if no more tree is available. The reported proteins of
+     * a tree taken by this method must be added by
+     * {@link #addToReports(List)}.
      *
      * @return
      */
-    public synchronized Map.Entry<Long, Map<Long, Group>> getNextTree() {
-        if ((treeGroupsIterator != null)
-                && treeGroupsIterator.hasNext()) {
-            return treeGroupsIterator.next();
+    public Map.Entry<Long, Map<Long, Group>> getNextTree() {
+        ScheduledTree tree = getNextScheduledTree();
+        if (tree != null) {
+            return new AbstractMap.SimpleImmutableEntry<>(tree.getTreeID(), tree.getGroups());
         }
 
         return null;
@@ -194,6 +253,7 @@ public class OccamsRazorInference extends AbstractProteinInference {
 
     /**
      * Adds the newProteins to the list of reported {@link ReportProtein}s.
+     * They are reported after the proteins of the scheduled trees.
      *
      * @param newProteins
      */
@@ -202,6 +262,28 @@ public class OccamsRazorInference extends AbstractProteinInference {
     }
 
 
+    /**
+     * Logs the trees with the longest processing times.
+     *
+     * @param processedTrees
+     */
+    private static void logSlowestTrees(List<ScheduledTree> processedTrees) {
+        if (!LOGGER.isInfoEnabled() || processedTrees.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("slowest trees:");
+        processedTrees.stream()
+                .sorted(Comparator.comparingLong(ScheduledTree::getProcessingTime).reversed())
+                .limit(NR_LOGGED_SLOWEST_TREES)
+                .forEach(tree -> sb.append("\n\ttree ").append(tree.getTreeID())
+                        .append(": ").append(tree.getNrGroups()).append(" groups, ")
+                        .append(tree.getNrPSMs()).append(" PSMs, ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(tree.getProcessingTime())).append(" ms"));
+        LOGGER.info(sb.toString());
+    }
+
+
     @Override
     public String getName() {
         return NAME;
@@ -218,4 +300,92 @@ public class OccamsRazorInference extends AbstractProteinInference {
     public Long getProgressValue() {
         return progress.longValue();
     }
+
+
+    /**
+     * A tree of {@link Group}s scheduled for the inference, together with its
+     * size and, after it was processed, its reported proteins and the
+     * processing time.
+     */
+    public static class ScheduledTree {
+
+        private final Long treeID;
+
+        private final Map<Long, Group> groups;
+
+        private final int nrGroups;
+
+        private final int nrPSMs;
+
+        /** the position in the schedule */
+        private int position;
+
+        private List<ReportProtein> reportProteins;
+
+        private long processingTime;
+
+
+        private ScheduledTree(Long treeID, Map<Long, Group> groups) {
+            this.treeID = treeID;
+            this.groups = groups;
+            this.nrGroups = groups.size();
+
+            int psms = 0;
+            for (Group group : groups.values()) {
+                if (group.getPeptides() != null) {
+                    for (Peptide peptide : group.getPeptides().values()) {
+                        if (peptide.getSpectra() != null) {
+                            psms += peptide.getSpectra().size();
+                        }
+                    }
+                }
+            }
+            this.nrPSMs = psms;
+
+            this.reportProteins = Collections.emptyList();
+            this.processingTime = 0;
+        }
+
+
+        public Long getTreeID() {
+            return treeID;
+        }
+
+
+        public Map<Long, Group> getGroups() {
+            return groups;
+        }
+
+
+        public int getNrGroups() {
+            return nrGroups;
+        }
+
+
+        public int getNrPSMs() {
+            return nrPSMs;
+        }
+
+
+        /**
+         * Sets the reported proteins and the processing time in nanoseconds.
+         *
+         * @param reportProteins
+         * @param processingTime
+         */
+        public void setResult(List<ReportProtein> reportProteins, long processingTime) {
+            this.reportProteins = reportProteins;
+            this.processingTime = processingTime;
+        }
+
+
+        public List<ReportProtein> getReportProteins() {
+            return reportProteins;
+        }
+
+
+        public long getProcessingTime() {
+            return processingTime;
+        }
+    }
 }
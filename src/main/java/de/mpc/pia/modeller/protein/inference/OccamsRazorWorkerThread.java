@@ -36,6 +36,9 @@ public class OccamsRazorWorkerThread extends Thread {
     /** the inferred peptides, may contain peptide level scores and FDR values */
     private Map<String, ReportPeptide> inferredReportPeptides;
 
+    /** the trees processed by this worker, holding their reported proteins */
+    private List<OccamsRazorInference.ScheduledTree> processedTrees;
+
     /** logger for this class */
     private static final Logger LOGGER = Logger.getLogger(OccamsRazorWorkerThread.class);
 
@@ -54,6 +57,7 @@ public class OccamsRazorWorkerThread extends Thread {
         this.considerModifications = considerModifications;
         this.psmSetSettings = psmSetSettings;
         this.inferredReportPeptides = reportPeptidesMap;
+        this.processedTrees = new ArrayList<>();
 
         this.setName("OccamsRazorWorkerThread-" + this.ID);
     }
@@ -61,20 +65,32 @@ public class OccamsRazorWorkerThread extends Thread {
 
     @Override
     public void run() {
-        int treeCount = 0;
-        Map.Entry<Long, Map<Long, Group>> treeEntry;
+        OccamsRazorInference.ScheduledTree tree;
 
-        while (null != (treeEntry = parent.getNextTree())) {
-            processTree(treeEntry.getValue());
-            treeCount++;
+        while (null != (tree = parent.getNextScheduledTree())) {
+            long start = System.nanoTime();
+            List<ReportProtein> reportProteins = processTree(tree.getGroups());
+            tree.setResult(reportProteins, System.nanoTime() - start);
+            processedTrees.add(tree);
         }
 
-        LOGGER.debug("worker " + ID + " finished after " + treeCount);
+        LOGGER.debug("worker " + ID + " finished after " + processedTrees.size());
     }
 
 
+    /**
+     * Returns the trees processed by this worker together with their reported
+     * proteins. Should only be called after the thread finished.
+     *
+     * @return
+     */
+    public List<OccamsRazorInference.ScheduledTree> getProcessedTrees() {
+        return processedTrees;
+    }
+
 
-    private void processTree(Map<Long, Group> groupMap) {
+
+    private List<ReportProtein> processTree(Map<Long, Group> groupMap) {
         // get the filtered report peptides mapping from the groups' IDs
         Map<Long, List<ReportPeptide>> reportPeptidesMap =
                 parent.createFilteredReportPeptides(groupMap, reportPSMSetMap,
@@ -84,13 +100,10 @@ public class OccamsRazorWorkerThread extends Thread {
         Map<Long, ReportProtein> proteins =
                 new HashMap<>(reportPeptidesMap.size());
 
-        // maps from the protein/group IDs to the peptide keys
-        Map<Long, Set<String>> peptideKeysMap =
-                new HashMap<>();
-
-        // maps from the groups ID to the IDs, which have the same peptides
-        Map<Long, Set<Long>> sameSetMap =
-                new HashMap<>(reportPeptidesMap.size());
+        // the dense index of the tree's peptides and the peptide indices of the proteins in order of creation
+        Map<String, Integer> peptideIndices = new HashMap<>();
+        List<Long> proteinOrder = new ArrayList<>();
+        Map<Long, int[]> proteinPeptideIndices = new HashMap<>();
 
         // create for each group, which has at least one peptide and accession, a ReportProtein
         for (Map.Entry<Long, Group> groupIt : groupMap.entrySet()) {
@@ -109,6 +122,7 @@ public class OccamsRazorWorkerThread extends Thread {
             // add the peptides
             Set<Long> pepGroupIDs = new HashSet<>();
             Set<String> peptideKeys = new HashSet<>();
+            List<Integer> peptideIdxs = new ArrayList<>();
             pepGroupIDs.add(groupIt.getKey());
             pepGroupIDs.addAll(groupIt.getValue().getAllPeptideChildren().keySet());
             pepGroupIDs.stream().filter(reportPeptidesMap::containsKey).forEach(pepGroupID -> {
@@ -117,26 +131,58 @@ public class OccamsRazorWorkerThread extends Thread {
                         LOGGER.warn("Peptide already in list of peptides '" + peptide.getStringID() + '\'');
                     } else {
                         protein.addPeptide(peptide);
+                        peptideIdxs.add(peptideIndices.computeIfAbsent(peptide.getStringID(),
+                                k -> peptideIndices.size()));
                     }
                 }
             });
 
-            // get the proteins with same peptides and subgroups
-            Set<Long> sameSet = new HashSet<>();
-            peptideKeysMap.entrySet().stream().filter(peptideKeyIt -> peptideKeyIt.getValue().equals(peptideKeys)).forEach(peptideKeyIt -> {
-                sameSet.add(peptideKeyIt.getKey());
-                sameSetMap.get(peptideKeyIt.getKey()).add(groupIt.getKey());
-            });
-            sameSetMap.put(groupIt.getKey(), sameSet);
-
-            peptideKeysMap.put(groupIt.getKey(), peptideKeys);
-
+            proteinOrder.add(groupIt.getKey());
+            proteinPeptideIndices.put(groupIt.getKey(),
+                    peptideIdxs.stream().mapToInt(Integer::intValue).toArray());
             proteins.put(protein.getID(), protein);
         }
 
         if (proteins.size() < 1) {
             // no proteins could be created (e.g. due to filters?)
-            return;
+            return Collections.emptyList();
+        }
+
+        // maps from the protein/group IDs to the bitsets of the peptides
+        int nrWords = (peptideIndices.size() + 63) >>> 6;
+        Map<Long, long[]> peptideKeysMap =
+                new HashMap<>();
+
+        // maps from the groups ID to the IDs, which have the same peptides
+        Map<Long, Set<Long>> sameSetMap =
+                new HashMap<>(reportPeptidesMap.size());
+
+        // the IDs of the proteins by their peptide bitsets, for finding the same sets
+        Map<PeptideBits, List<Long>> proteinsByPeptides = new HashMap<>();
+
+        for (Long protID : proteinOrder) {
+            long[] peptideBits = new long[nrWords];
+            for (int idx : proteinPeptideIndices.get(protID)) {
+                peptideBits[idx >>> 6] |= 1L << idx;
+            }
+
+            // get the proteins with same peptides, in the order of the peptideKeysMap
+            List<Long> sameIDs = proteinsByPeptides.computeIfAbsent(new PeptideBits(peptideBits),
+                    k -> new ArrayList<>(1));
+            Set<Long> sameSet = new HashSet<>();
+            if (sameIDs.size() > 1) {
+                Set<Long> sameIDsSet = new HashSet<>(sameIDs);
+                peptideKeysMap.keySet().stream().filter(sameIDsSet::contains).forEach(sameSet::add);
+            } else {
+                sameSet.addAll(sameIDs);
+            }
+            for (Long sameID : sameSet) {
+                sameSetMap.get(sameID).add(protID);
+            }
+            sameSetMap.put(protID, sameSet);
+
+            sameIDs.add(protID);
+            peptideKeysMap.put(protID, peptideBits);
         }
 
         // merge proteins with same peptides
@@ -145,9 +191,6 @@ public class OccamsRazorWorkerThread extends Thread {
             ReportProtein protein = proteins.get(protID);
             if (protein != null) {
                 // the protein is not yet deleted due to samesets
-                // add the accessions of sameProtein to protein
-// and remove the same-protein
-// this makes sure, the protein does not get removed, when it is iterated over sameProtein
                 sameSetIt.getValue().stream().filter(sameID -> !Objects.equals(sameID, protID)).forEach(sameID -> {
                     ReportProtein sameProtein = proteins.get(sameID);
                     if (sameProtein != null) {
@@ -190,54 +233,56 @@ public class OccamsRazorWorkerThread extends Thread {
         HashMap<Long, ReportProtein> unreportedProteins =
                 new HashMap<>(proteins);
 
+        // the proteins' IDs, peptide bitsets and numbers of peptides in the order of the proteins map
+        int nrProteins = proteins.size();
+        Long[] protIDs = proteins.keySet().toArray(new Long[nrProteins]);
+        long[][] protBits = new long[nrProteins][];
+        int[] protSizes = new int[nrProteins];
+        for (int i = 0; i < nrProteins; i++) {
+            protBits[i] = peptideKeysMap.get(protIDs[i]);
+            protSizes[i] = bitCount(protBits[i]);
+        }
+
         // check proteins for sub-proteins and intersections. this cannot be
         // done before, because all proteins have to be built beforehand
         Map<Long, Set<Long>> subProteinMap = new HashMap<>(reportPeptidesMap.size());
-        Map<Long, Set<Long>> intersectingProteinMap = new HashMap<>(reportPeptidesMap.size());
         Set<Long> isSubProtein = new HashSet<>();
-        Set<String> reportedPeptides = new HashSet<>();
-        for (Map.Entry<Long, ReportProtein> longReportProteinEntry : proteins.entrySet()) {
-            Set<String> peptideKeys = peptideKeysMap.get(longReportProteinEntry.getKey());
-
+        long[] reportedPeptides = new long[nrWords];
+        for (int i = 0; i < nrProteins; i++) {
             Set<Long> subProteins = new HashSet<>();
-            subProteinMap.put(longReportProteinEntry.getKey(), subProteins);
+            subProteinMap.put(protIDs[i], subProteins);
 
-            Set<Long> intersectingProteins = new HashSet<>();
-            intersectingProteinMap.put(longReportProteinEntry.getKey(), intersectingProteins);
+            boolean hasIntersections = false;
 
-            for (Long subProtID : proteins.keySet()) {
-                if (Objects.equals(longReportProteinEntry.getKey(), subProtID)) {
+            for (int j = 0; j < nrProteins; j++) {
+                if (i == j) {
                     continue;
                 }
 
-                Set<String> intersection = new HashSet<>(
-                        peptideKeysMap.get(subProtID));
-                intersection.retainAll(peptideKeys);
+                int intersectionSize = intersectionCount(protBits[i], protBits[j]);
 
-                if (intersection.size() > 0) {
-                    if (intersection.size() ==
-                            peptideKeysMap.get(subProtID).size()) {
+                if (intersectionSize > 0) {
+                    if (intersectionSize == protSizes[j]) {
                         // the complete subProtID is in proteinID
-                        subProteins.add(subProtID);
-                    } else if (intersection.size() == peptideKeys.size()) {
+                        subProteins.add(protIDs[j]);
+                    } else if (intersectionSize == protSizes[i]) {
                         // the complete proteinID is in subProtID
-                        isSubProtein.add(longReportProteinEntry.getKey());
-                    } else if (intersection.size() != peptideKeys.size()) {
+                        isSubProtein.add(protIDs[i]);
+                    } else {
                         // subProtID intersects proteinID somehow
-                        intersectingProteins.add(subProtID);
+                        hasIntersections = true;
                     }
                 }
             }
 
-            if ((intersectingProteins.size() == 0) &&
-                    !isSubProtein.contains(longReportProteinEntry.getKey())) {
+            if (!hasIntersections && !isSubProtein.contains(protIDs[i])) {
                 // this protein is no subProtein and has no intersections (but
                 // maybe subProteins) -> report this protein
-                ReportProtein protein = longReportProteinEntry.getValue();
+                ReportProtein protein = proteins.get(protIDs[i]);
 
                 reportProteins.add(protein);
-                reportedPeptides.addAll(peptideKeysMap.get(longReportProteinEntry.getKey()));
-                unreportedProteins.remove(longReportProteinEntry.getKey());
+                or(reportedPeptides, protBits[i]);
+                unreportedProteins.remove(protIDs[i]);
 
                 // add the subproteins
                 for (Long subID : subProteins) {
@@ -247,37 +292,56 @@ public class OccamsRazorWorkerThread extends Thread {
             }
         }
 
-        // report all the proteins ordered by which explains the most new peptides
-        while (unreportedProteins.size() > 0) {
-            Set<Long> mostPepsIDs = null;
-            Set<String> mostCanReport = null;
-            int nrMostPeps = -1;
+        // report all the proteins ordered by which explains the most new
+        // peptides, ties are resolved by the order of the unreported proteins
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        int position = 0;
+        for (Long protID : unreportedProteins.keySet()) {
+            if (!isSubProtein.contains(protID)) {
+                // subproteins are reported indirectly
+                long[] bits = peptideKeysMap.get(protID);
+                candidates.add(new Candidate(protID, position, bits, uncoveredCount(bits, reportedPeptides)));
+            }
+            position++;
+        }
 
-            for (ReportProtein protein : unreportedProteins.values()) {
-                if (isSubProtein.contains(protein.getID())) {
-                    // subproteins are reported indirectly
-                    continue;
-                }
-                Set<String> canReport = peptideKeysMap.get(protein.getID());
-                canReport.removeAll(reportedPeptides);
-
-                if (canReport.size() > nrMostPeps) {
-                    mostPepsIDs = new HashSet<>();
-                    mostPepsIDs.add(protein.getID());
-                    nrMostPeps = canReport.size();
-                    mostCanReport = canReport;
-                } else if ((canReport.size() == nrMostPeps) &&
-                        canReport.equals(mostCanReport)) {
-                    mostPepsIDs.add(protein.getID());
+        while (!candidates.isEmpty()) {
+            Candidate best = candidates.poll();
+            int nrUncovered = uncoveredCount(best.peptideBits, reportedPeptides);
+            if (nrUncovered < best.nrUncovered) {
+                // outdated number of unreported peptides
+                best.nrUncovered = nrUncovered;
+                candidates.add(best);
+                continue;
+            }
+
+            // all proteins, which report the same new peptides
+            List<Candidate> mostPeps = new ArrayList<>();
+            mostPeps.add(best);
+            List<Candidate> others = new ArrayList<>();
+            while (!candidates.isEmpty() && (candidates.peek().nrUncovered == nrUncovered)) {
+                Candidate candidate = candidates.poll();
+                candidate.nrUncovered = uncoveredCount(candidate.peptideBits, reportedPeptides);
+                if ((candidate.nrUncovered == nrUncovered)
+                        && sameUncovered(best.peptideBits, candidate.peptideBits, reportedPeptides)) {
+                    mostPeps.add(candidate);
+                } else {
+                    others.add(candidate);
                 }
             }
+            candidates.addAll(others);
+
+            mostPeps.sort(Comparator.comparingInt(candidate -> candidate.position));
+            Set<Long> mostPepsIDs = new HashSet<>();
+            mostPeps.forEach(candidate -> mostPepsIDs.add(candidate.protID));
 
+            List<long[]> mostPepsBits = new ArrayList<>(mostPeps.size());
             for (Long protID : mostPepsIDs) {
                 ReportProtein protein = proteins.get(protID);
-                if (nrMostPeps > 0) {
+                if (nrUncovered > 0) {
                     // TODO: for now, the proteins which "explain" no more peptides are not reported (this happens sometimes)
                     reportProteins.add(protein);
-                    reportedPeptides.addAll(peptideKeysMap.get(protID));
+                    mostPepsBits.add(peptideKeysMap.get(protID));
                 }
                 unreportedProteins.remove(protID);
 
@@ -287,10 +351,104 @@ public class OccamsRazorWorkerThread extends Thread {
                     unreportedProteins.remove(subID);
                 }
             }
+            mostPepsBits.forEach(bits -> or(reportedPeptides, bits));
+        }
+
+        return reportProteins;
+    }
+
+
+    private static int bitCount(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+
+    private static int intersectionCount(long[] bits, long[] otherBits) {
+        int count = 0;
+        for (int i = 0; i < bits.length; i++) {
+            count += Long.bitCount(bits[i] & otherBits[i]);
+        }
+        return count;
+    }
+
+
+    private static int uncoveredCount(long[] bits, long[] coveredBits) {
+        int count = 0;
+        for (int i = 0; i < bits.length; i++) {
+            count += Long.bitCount(bits[i] & ~coveredBits[i]);
+        }
+        return count;
+    }
+
+
+    private static boolean sameUncovered(long[] bits, long[] otherBits, long[] coveredBits) {
+        for (int i = 0; i < bits.length; i++) {
+            if ((bits[i] & ~coveredBits[i]) != (otherBits[i] & ~coveredBits[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static void or(long[] bits, long[] otherBits) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= otherBits[i];
+        }
+    }
+
+
+    /**
+     * The bitset of a protein's peptides, usable as key for the proteins
+     * with the same peptides.
+     */
+    private static final class PeptideBits {
+        private final long[] bits;
+        private final int hash;
+
+        private PeptideBits(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PeptideBits) && Arrays.equals(bits, ((PeptideBits) obj).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+
+    /**
+     * A protein, which may be reported in the greedy selection. The candidates
+     * are ordered descending by their (possibly outdated) number of unreported
+     * peptides and then by their position in the unreported proteins.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final Long protID;
+        private final int position;
+        private final long[] peptideBits;
+        private int nrUncovered;
+
+        private Candidate(Long protID, int position, long[] peptideBits, int nrUncovered) {
+            this.protID = protID;
+            this.position = position;
+            this.peptideBits = peptideBits;
+            this.nrUncovered = nrUncovered;
         }
 
-        if (reportProteins.size() > 0) {
-            parent.addToReports(reportProteins);
+        @Override
+        public int compareTo(Candidate other) {
+            int cmp = Integer.compare(other.nrUncovered, nrUncovered);
+            return (cmp != 0) ? cmp : Integer.compare(position, other.position);
         }
     }
 }
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import de.mpc.pia.modeller.protein.ReportProtein;
 import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
@@ -37,6 +38,13 @@ public abstract class AbstractScoring implements Serializable {
 
     public static final String SCORING_SPECTRA_SETTING_ID = "used_spectra";
 
+    /** the minimal number of proteins, for which the scores are calculated in parallel */
+    private static final int PARALLEL_SCORING_MIN_PROTEINS = 1000;
+
+    /** the buffers for the scores of a protein, one per thread */
+    private static final ThreadLocal<ProteinScoreBuffer> SCORE_BUFFERS =
+            ThreadLocal.withInitial(ProteinScoreBuffer::new);
+
 
     /**
      * Basic constructor, requires a mapping of the available
@@ -178,31 +186,52 @@ public abstract class AbstractScoring implements Serializable {
      *
      * @param protein
      */
-    public abstract Double calculateProteinScore(ReportProtein protein);
+    public Double calculateProteinScore(ReportProtein protein) {
+        ProteinScoreBuffer scores = SCORE_BUFFERS.get();
+        scores.clear();
+        PSMForScoring.collectProteinsScores(getPSMForScoringSetting().getValue(), protein,
+                getScoreSetting().getValue(), scores);
+
+        return calculateProteinScore(scores);
+    }
+
+
+    /**
+     * Calculates the protein score from the given scores, which contribute to
+     * the protein. If no score can be used, NaN is returned.
+     *
+     * @param scores
+     * @return
+     */
+    protected abstract double calculateProteinScore(ProteinScoreBuffer scores);
 
 
     /**
      * Calculates the scores for each {@link ReportProtein} in the given List
      * with the current settings and set the them to the proteins. Also the
      * subProtein's scores are calculated.
+     * <p>
+     * For larger lists, the proteins are scored in parallel.
      *
      * @param proteinList
      */
     public final void calculateProteinScores(List<ReportProtein> proteinList) {
         Map<Long, ReportProtein> subProteins = new HashMap<>();
 
-        // calculate scores for the reported proteins
+        // get the subset proteins
         for (ReportProtein protein : proteinList) {
-            protein.setScore(calculateProteinScore(protein));
-
-            // get the subset proteins
             protein.getSubSets().stream().filter(subProtein -> !subProteins.containsKey(subProtein.getID())).forEach(subProtein -> subProteins.put(subProtein.getID(), subProtein));
         }
 
-        // and the scores for the subset proteins
-        for (ReportProtein subProtein : subProteins.values()) {
-            subProtein.setScore(calculateProteinScore(subProtein));
-        }
+        // calculate the scores for the reported and the subset proteins
+        List<ReportProtein> scoredProteins = new ArrayList<>(proteinList.size() + subProteins.size());
+        scoredProteins.addAll(proteinList);
+        scoredProteins.addAll(subProteins.values());
+
+        Stream<ReportProtein> proteinStream = (scoredProteins.size() < PARALLEL_SCORING_MIN_PROTEINS)
+                ? scoredProteins.stream()
+                : scoredProteins.parallelStream();
+        proteinStream.forEach(protein -> protein.setScore(calculateProteinScore(protein)));
     }
 
     /**
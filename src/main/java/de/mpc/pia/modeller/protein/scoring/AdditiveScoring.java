@@ -1,12 +1,7 @@
 package de.mpc.pia.modeller.protein.scoring;
 
-import java.util.List;
 import java.util.Map;
 
-import de.mpc.pia.modeller.protein.ReportProtein;
-import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
-import de.mpc.pia.modeller.score.ScoreModel;
-
 
 public class AdditiveScoring extends AbstractScoring {
 
@@ -41,24 +36,17 @@ public class AdditiveScoring extends AbstractScoring {
      * Calculate the protein score by adding the scores.
      */
     @Override
-    public Double calculateProteinScore(ReportProtein protein) {
-        List<ScoreModel> scores = PSMForScoring.getProteinsScores(
-                getPSMForScoringSetting().getValue(), protein,
-                getScoreSetting().getValue());
-
-        if (scores.isEmpty()) {
-            // no scores found -> no scoring possible
-            return Double.NaN;
-        }
+    protected double calculateProteinScore(ProteinScoreBuffer scores) {
+        double proteinScore = Double.NaN;
 
-        Double proteinScore = Double.NaN;
+        for (int i = 0; i < scores.size(); i++) {
+            double value = scores.getValue(i);
 
-        for (ScoreModel score : scores) {
-            if ((score != null) && !score.getValue().equals(Double.NaN)) {
-                if (!proteinScore.equals(Double.NaN)) {
-                    proteinScore += score.getValue();
+            if (!Double.isNaN(value)) {
+                if (!Double.isNaN(proteinScore)) {
+                    proteinScore += value;
                 } else {
-                    proteinScore = score.getValue();
+                    proteinScore = value;
                 }
             }
         }
@@ -1,12 +1,7 @@
 package de.mpc.pia.modeller.protein.scoring;
 
-import java.util.List;
 import java.util.Map;
 
-import de.mpc.pia.modeller.protein.ReportProtein;
-import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
-import de.mpc.pia.modeller.score.ScoreModel;
-
 
 public class GeometricMeanScoring extends AbstractScoring {
 	
@@ -34,22 +29,13 @@ public class GeometricMeanScoring extends AbstractScoring {
 	
 	
 	@Override
-	public Double calculateProteinScore(ReportProtein protein) {
-		List<ScoreModel> scores = PSMForScoring.getProteinsScores(
-				getPSMForScoringSetting().getValue(), protein,
-				getScoreSetting().getValue());
-		
-		if (scores.size() < 1) {
-			// no scores found -> no scoring possible
-			return Double.NaN;
-		}
-		
-		Double proteinScore = Double.NaN;
+	protected double calculateProteinScore(ProteinScoreBuffer scores) {
+		double proteinScore = Double.NaN;
 		int nrScore = 0;
 		
 		// count the scores
-		for (ScoreModel score : scores) {
-			if ((score != null) && !score.getValue().equals(Double.NaN)) {
+		for (int i = 0; i < scores.size(); i++) {
+			if (!Double.isNaN(scores.getValue(i))) {
 				nrScore++;
 			}
 		}
@@ -58,26 +44,22 @@ public class GeometricMeanScoring extends AbstractScoring {
 			double exp = 1.0 / (double)nrScore;
 			
 			// calculate the product(scores)^(1/nrScores) respectively -log() of it for higherScoreBetter
-			for (ScoreModel score : scores) {
-				Double signum = 1.0;
-				if ((score.getType().higherScoreBetter() != null) &&
-						!score.getType().higherScoreBetter()) {
-					signum = -1.0;
-				}
+			for (int i = 0; i < scores.size(); i++) {
+				double value = scores.getValue(i);
 				
-				if (!score.getValue().equals(Double.NaN)) {
-					if (!proteinScore.equals(Double.NaN)) {
-						if (signum < 0) {
-							proteinScore -= Math.log10(Math.pow(score.getValue(), exp));
+				if (!Double.isNaN(value)) {
+					if (!Double.isNaN(proteinScore)) {
+						if (scores.isLowerScoreBetter(i)) {
+							proteinScore -= Math.log10(Math.pow(value, exp));
 						} else {
-							proteinScore *= Math.pow(score.getValue(), exp);
+							proteinScore *= Math.pow(value, exp);
 						}
 						
 					} else {
-						if (signum < 0) {
-							proteinScore = -Math.log10(Math.pow(score.getValue(), exp));
+						if (scores.isLowerScoreBetter(i)) {
+							proteinScore = -Math.log10(Math.pow(value, exp));
 						} else {
-							proteinScore = Math.pow(score.getValue(), exp);
+							proteinScore = Math.pow(value, exp);
 						}
 					}
 				}
@@ -1,12 +1,7 @@
 package de.mpc.pia.modeller.protein.scoring;
 
-import java.util.List;
 import java.util.Map;
 
-import de.mpc.pia.modeller.protein.ReportProtein;
-import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
-import de.mpc.pia.modeller.score.ScoreModel;
-
 
 public class MultiplicativeScoring extends AbstractScoring {
 
@@ -38,30 +33,17 @@ public class MultiplicativeScoring extends AbstractScoring {
 
 
     @Override
-    public Double calculateProteinScore(ReportProtein protein) {
-        List<ScoreModel> scores = PSMForScoring.getProteinsScores(
-                getPSMForScoringSetting().getValue(), protein,
-                getScoreSetting().getValue());
-
-        if (scores.isEmpty()) {
-            // no scores found -> no scoring possible
-            return Double.NaN;
-        }
-
-        Double proteinScore = Double.NaN;
+    protected double calculateProteinScore(ProteinScoreBuffer scores) {
+        double proteinScore = Double.NaN;
 
-        for (ScoreModel score : scores) {
-            Double signum = 1.0;
-            if ((score.getType().higherScoreBetter() != null) &&
-                    !score.getType().higherScoreBetter()) {
-                signum = -1.0;
-            }
+        for (int i = 0; i < scores.size(); i++) {
+            double value = scores.getValue(i);
 
-            if (!score.getValue().equals(Double.NaN)) {
-                if (!proteinScore.equals(Double.NaN)) {
-                    proteinScore = addToScore(proteinScore, signum, score.getValue());
+            if (!Double.isNaN(value)) {
+                if (!Double.isNaN(proteinScore)) {
+                    proteinScore = addToScore(proteinScore, scores.isLowerScoreBetter(i), value);
                 } else {
-                    proteinScore = initializeScore(signum, score.getValue());
+                    proteinScore = initializeScore(scores.isLowerScoreBetter(i), value);
                 }
             }
         }
@@ -73,14 +55,14 @@ public class MultiplicativeScoring extends AbstractScoring {
     /**
      * Initializes the protein score with the given valuescore
      *
-     * @param signum
+     * @param lowerScoreBetter
      * @param value
      * @return
      */
-    private static Double initializeScore(Double signum, Double value) {
-        Double ret = value;
+    private static double initializeScore(boolean lowerScoreBetter, double value) {
+        double ret = value;
 
-        if (signum < 0) {
+        if (lowerScoreBetter) {
             ret = -Math.log10(value);
         }
 
@@ -92,14 +74,14 @@ public class MultiplicativeScoring extends AbstractScoring {
      * Adds the given value to the protein score
      *
      * @param score
-     * @param signum
+     * @param lowerScoreBetter
      * @param value
      * @return
      */
-    private static Double addToScore(Double score, Double signum, Double value) {
-        Double ret = score;
+    private static double addToScore(double score, boolean lowerScoreBetter, double value) {
+        double ret = score;
 
-        if (signum < 0) {
+        if (lowerScoreBetter) {
             ret -= Math.log10(value);
         } else {
             ret *= value;
@@ -108,5 +90,3 @@ public class MultiplicativeScoring extends AbstractScoring {
         return ret;
     }
 }
-
-
@@ -0,0 +1,97 @@
+package de.mpc.pia.modeller.protein.scoring;
+
+import java.util.Arrays;
+
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * A reusable buffer of the scores, which contribute to the score of a
+ * {@link de.mpc.pia.modeller.protein.ReportProtein}. The values are kept in
+ * primitive arrays, which grow as needed, so the scoring needs no boxing.
+ *
+ * @author julian
+ *
+ */
+public final class ProteinScoreBuffer {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    /** the score values */
+    private double[] values;
+
+    /** whether a lower value is better for the score */
+    private boolean[] lowerScoreBetter;
+
+    /** the number of scores in the buffer */
+    private int size;
+
+
+    public ProteinScoreBuffer() {
+        values = new double[INITIAL_CAPACITY];
+        lowerScoreBetter = new boolean[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+
+    /**
+     * Removes all scores from the buffer, keeping the allocated arrays.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+
+    /**
+     * Adds the value of the given score. null scores are ignored.
+     *
+     * @param score
+     */
+    public void add(ScoreModel score) {
+        if (score == null) {
+            return;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+            lowerScoreBetter = Arrays.copyOf(lowerScoreBetter, size << 1);
+        }
+
+        values[size] = score.getValue();
+        lowerScoreBetter[size] = (score.getType() != null)
+                && Boolean.FALSE.equals(score.getType().higherScoreBetter());
+        size++;
+    }
+
+
+    /**
+     * The number of scores in the buffer.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * The value of the score at the given index.
+     *
+     * @param index
+     * @return
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+
+    /**
+     * Whether a lower value is better for the score at the given index.
+     *
+     * @param index
+     * @return
+     */
+    public boolean isLowerScoreBetter(int index) {
+        return lowerScoreBetter[index];
+    }
+}
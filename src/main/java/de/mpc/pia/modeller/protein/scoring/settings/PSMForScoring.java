@@ -2,9 +2,11 @@ package de.mpc.pia.modeller.protein.scoring.settings;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import de.mpc.pia.modeller.peptide.ReportPeptide;
 import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.scoring.ProteinScoreBuffer;
 import de.mpc.pia.modeller.psm.ReportPSMSet;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
@@ -31,21 +33,17 @@ public enum PSMForScoring {
 		}
 
 		@Override
-		public List<ScoreModel> getProteinsScores(ReportProtein protein,
-				String scoreShortName) {
-			List<ScoreModel> scores = new ArrayList<>(protein.getNrPeptides());
-			
+		public void forEachProteinsScore(ReportProtein protein,
+				String scoreShortName, Consumer<ScoreModel> scoreConsumer) {
 			// get the best score of each peptide
 			for (ReportPeptide peptide : protein.getPeptides()) {
 				
 				ScoreModel pepScore = peptide.getBestScoreModel(scoreShortName);
 				
 				if (pepScore != null) {
-					scores.add(pepScore);
+					scoreConsumer.accept(pepScore);
 				}
 			}
-			
-			return scores;
 		}
 	},
 	/**
@@ -63,11 +61,8 @@ public enum PSMForScoring {
 		}
 
 		@Override
-		public List<ScoreModel> getProteinsScores(ReportProtein protein,
-				String scoreShortName) {
-			// TODO: implement
-			List<ScoreModel> scores = new ArrayList<>(protein.getNrPeptides());
-			
+		public void forEachProteinsScore(ReportProtein protein,
+				String scoreShortName, Consumer<ScoreModel> scoreConsumer) {
 			// go through all peptides...
 			for (ReportPeptide peptide : protein.getPeptides()) {
 				// ...go through all PSM sets...
@@ -80,22 +75,20 @@ public enum PSMForScoring {
 						// ... the COMBINED_FDR_SCORE is in the PSM set
 						ScoreModel psmScore = repPSM.getCompareScore(scoreShortName);
 						if (psmScore != null) {
-							scores.add(psmScore);
+							scoreConsumer.accept(psmScore);
 						}
 					} else {
 						// ... go through all PSMs and take all their (scoring) scores
 						((ReportPSMSet) repPSM).getPSMs().stream().filter(psm -> !peptide.getNonScoringPSMIDs().contains(psm.getId())).forEach(psm -> {
 							ScoreModel psmScore = psm.getCompareScore(scoreShortName);
 							if (psmScore != null) {
-								scores.add(psmScore);
+								scoreConsumer.accept(psmScore);
 							}
 						});
 
 					}
 				});
 			}
-			
-			return scores;
 		}
 	},
 	;
@@ -114,12 +107,24 @@ public enum PSMForScoring {
 	public abstract String getShortName();
 	
 	
+	/**
+	 * Passes all the scores, this method needs for its calculation, to the
+	 * given consumer.
+	 */
+	public abstract void forEachProteinsScore(ReportProtein protein, String scoreShortName,
+			Consumer<ScoreModel> scoreConsumer);
+	
+	
 	/**
 	 * Gets all the scores, this method needs for its calculation.
 	 * 
 	 * @return
 	 */
-	public abstract List<ScoreModel> getProteinsScores(ReportProtein protein, String scoreShortName);
+	public List<ScoreModel> getProteinsScores(ReportProtein protein, String scoreShortName) {
+		List<ScoreModel> scores = new ArrayList<>(protein.getNrPeptides());
+		forEachProteinsScore(protein, scoreShortName, scores::add);
+		return scores;
+	}
 	
 	
 	/**
@@ -138,4 +143,19 @@ public enum PSMForScoring {
 		
 		return new ArrayList<>(0);
 	}
+	
+	
+	/**
+	 * Adds all the scores, the method given by the methodName needs for its
+	 * calculation, to the buffer.
+	 */
+	public static void collectProteinsScores(String methodName,
+			ReportProtein protein, String scoreShortName, ProteinScoreBuffer scores) {
+		for (PSMForScoring method : values()) {
+			if (method.getShortName().equals(methodName)) {
+				method.forEachProteinsScore(protein, scoreShortName, scores::add);
+				return;
+			}
+		}
+	}
 }
\ No newline at end of file
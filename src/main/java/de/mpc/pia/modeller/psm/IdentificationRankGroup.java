@@ -0,0 +1,305 @@
+package de.mpc.pia.modeller.psm;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * The {@link ReportPSM}s of one spectrum in one file, which are ranked against
+ * each other for the identification ranks.
+ * <p>
+ * The ranks of a score are only calculated, when they are requested for the
+ * first time. The selection of the top identifications of a score (as used
+ * for the FDR calculation) does not need the ranks, but only selects the k
+ * best distinct score values of the group.
+ * <p>
+ * The ranks are dense, i.e. PSMs with equal scores share a rank and the next
+ * worse score gets the next rank. PSMs with a NaN score are ranked after all
+ * valid scores. Scores without a known ordering get the rank -1.
+ *
+ * @author julian
+ *
+ */
+public class IdentificationRankGroup implements Serializable {
+
+    private static final long serialVersionUID = -2470416785061734862L;
+
+
+    /** the PSMs of the spectrum */
+    private final ReportPSM[] psms;
+
+    /** the scoreShorts with known ordering to whether a higher score is better, shared by all groups */
+    private final Map<String, Boolean> higherScoreBetter;
+
+    /** the scoreShorts, for which the ranks are calculated already */
+    private final Set<String> rankedScores;
+
+    /** the scoreShort of the last top identification selection */
+    private transient String topScoreShort;
+
+    /** the number of top identifications of the last selection */
+    private transient int topNumber;
+
+    /** the worst key of the last selection, which is still in the top identifications */
+    private transient double topThreshold;
+
+
+    /**
+     * Creates the group for the given PSMs of one spectrum and sets it in each
+     * of the PSMs.
+     *
+     * @param psms
+     * @param higherScoreBetter the orderings of the scores at the time of the
+     * PSM creation, this map must not be changed afterwards
+     */
+    public IdentificationRankGroup(List<ReportPSM> psms, Map<String, Boolean> higherScoreBetter) {
+        this.psms = psms.toArray(new ReportPSM[psms.size()]);
+        this.higherScoreBetter = higherScoreBetter;
+        this.rankedScores = new HashSet<>(4);
+
+        for (ReportPSM psm : this.psms) {
+            psm.setIdentificationRankGroup(this);
+        }
+    }
+
+
+    /**
+     * Returns the PSMs of this group.
+     *
+     * @return
+     */
+    public List<ReportPSM> getPSMs() {
+        return Collections.unmodifiableList(Arrays.asList(psms));
+    }
+
+
+    /**
+     * Returns the orderings of the scores, which are used for the ranking.
+     * The map is shared by all groups and must not be changed.
+     *
+     * @return
+     */
+    public Map<String, Boolean> getHigherScoreBetter() {
+        return higherScoreBetter;
+    }
+
+
+    /**
+     * Returns the identification rank of the given PSM of this group for the
+     * score, calculating the ranks of the score for all PSMs on the first
+     * call.
+     *
+     * @param psm
+     * @param scoreShort
+     * @return the rank or null, if the PSM has no such score
+     */
+    public synchronized Integer getIdentificationRank(ReportPSM psm, String scoreShort) {
+        calculateRanks(scoreShort);
+        return psm.getCalculatedIdentificationRank(scoreShort);
+    }
+
+
+    /**
+     * Calculates the ranks of all scores of all PSMs in this group.
+     */
+    public synchronized void calculateAllRanks() {
+        for (ReportPSM psm : psms) {
+            for (ScoreModel score : psm.getSpectrum().getScores()) {
+                calculateRanks(score.getShortName());
+            }
+        }
+    }
+
+
+    /**
+     * Checks, whether the given PSM is in the top identifications of this
+     * group, i.e. whether its rank for the score is at most topNumber. The
+     * ranks of the score are not calculated for this, only the topNumber best
+     * distinct scores of the group are selected.
+     *
+     * @param psm
+     * @param scoreShort
+     * @param topNumber
+     * @return
+     */
+    public synchronized boolean isTopIdentification(ReportPSM psm, String scoreShort, int topNumber) {
+        Boolean higherBetter = higherScoreBetter.get(scoreShort);
+        if (rankedScores.contains(scoreShort) || (higherBetter == null)) {
+            // unknown or no ordering, use the ranks
+            Integer rank = getIdentificationRank(psm, scoreShort);
+            return (rank != null) && (rank <= topNumber);
+        }
+
+        ScoreModel score = psm.getSpectrum().getScore(scoreShort);
+        if ((score == null) || (topNumber < 1)) {
+            return false;
+        }
+
+        if (!scoreShort.equals(topScoreShort) || (topNumber != this.topNumber)) {
+            topThreshold = selectTopThreshold(scoreShort, higherBetter, topNumber);
+            topScoreShort = scoreShort;
+            this.topNumber = topNumber;
+        }
+
+        return Double.compare(getKey(score, higherBetter), topThreshold) <= 0;
+    }
+
+
+    /**
+     * Selects the topNumber best distinct keys of the score in this group and
+     * returns the worst of these, or NaN (the worst possible key), if there
+     * are not more distinct keys.
+     *
+     * @param scoreShort
+     * @param higherBetter
+     * @param topNumber
+     * @return
+     */
+    private double selectTopThreshold(String scoreShort, boolean higherBetter, int topNumber) {
+        // the best distinct keys in ascending order, usually only very few
+        double[] topKeys = new double[Math.min(topNumber, psms.length)];
+        int nrTopKeys = 0;
+
+        for (ReportPSM psm : psms) {
+            ScoreModel score = psm.getSpectrum().getScore(scoreShort);
+            if (score == null) {
+                continue;
+            }
+
+            double key = getKey(score, higherBetter);
+            int pos = nrTopKeys;
+            while ((pos > 0) && (Double.compare(key, topKeys[pos - 1]) < 0)) {
+                pos--;
+            }
+
+            if (((pos > 0) && (Double.compare(key, topKeys[pos - 1]) == 0))
+                    || (pos == topKeys.length)) {
+                // already selected or not in the top
+                continue;
+            }
+
+            int moved = Math.min(nrTopKeys, topKeys.length - 1) - pos;
+            System.arraycopy(topKeys, pos, topKeys, pos + 1, moved);
+            topKeys[pos] = key;
+            nrTopKeys = Math.min(nrTopKeys + 1, topKeys.length);
+        }
+
+        if (nrTopKeys < topNumber) {
+            return Double.NaN;
+        }
+        return topKeys[nrTopKeys - 1];
+    }
+
+
+    /**
+     * Calculates the ranks of the score for all PSMs of the group, if not done
+     * yet.
+     *
+     * @param scoreShort
+     */
+    private void calculateRanks(String scoreShort) {
+        if (!rankedScores.add(scoreShort)) {
+            return;
+        }
+
+        boolean rankable = higherScoreBetter.containsKey(scoreShort);
+        Boolean higherBetter = higherScoreBetter.get(scoreShort);
+
+        double[] keys = new double[psms.length];
+        int nrKeys = 0;
+        for (ReportPSM psm : psms) {
+            ScoreModel score = psm.getSpectrum().getScore(scoreShort);
+            if (score != null) {
+                if (!rankable) {
+                    // unrankable get all ranked as -1
+                    psm.setIdentificationRank(scoreShort, -1);
+                } else if (higherBetter != null) {
+                    keys[nrKeys++] = getKey(score, higherBetter);
+                }
+            }
+        }
+
+        if (!rankable) {
+            return;
+        } else if (higherBetter == null) {
+            calculateUnorderedRanks(scoreShort);
+            return;
+        }
+
+        // the rank is one more than the number of distinct better keys
+        Arrays.sort(keys, 0, nrKeys);
+        int nrDistinct = 0;
+        for (int i = 0; i < nrKeys; i++) {
+            if ((nrDistinct == 0) || (Double.compare(keys[i], keys[nrDistinct - 1]) != 0)) {
+                keys[nrDistinct++] = keys[i];
+            }
+        }
+
+        for (ReportPSM psm : psms) {
+            ScoreModel score = psm.getSpectrum().getScore(scoreShort);
+            if (score != null) {
+                int idx = Arrays.binarySearch(keys, 0, nrDistinct, getKey(score, higherBetter));
+                psm.setIdentificationRank(scoreShort, idx + 1);
+            }
+        }
+    }
+
+
+    /**
+     * Calculates the ranks for a score without a direction: all valid scores
+     * are considered equally good and keep their order, the ranks only change
+     * with the values.
+     *
+     * @param scoreShort
+     */
+    private void calculateUnorderedRanks(String scoreShort) {
+        Double lastScore = null;
+        int rank = 0;
+
+        for (boolean validScores : new boolean[] {true, false}) {
+            for (ReportPSM psm : psms) {
+                ScoreModel score = psm.getSpectrum().getScore(scoreShort);
+                if ((score == null) || (isValid(score.getValue()) != validScores)) {
+                    continue;
+                }
+
+                Double thisScore = score.getValue();
+                if ((rank == 0) || !thisScore.equals(lastScore)) {
+                    rank++;
+                }
+
+                psm.setIdentificationRank(scoreShort, rank);
+                lastScore = thisScore;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the key of the score for the ranking, smaller keys are better.
+     * Invalid scores are mapped to NaN, which is ranked after all others.
+     *
+     * @param score
+     * @param higherBetter
+     * @return
+     */
+    private static double getKey(ScoreModel score, boolean higherBetter) {
+        Double value = score.getValue();
+        if (!isValid(value)) {
+            return Double.NaN;
+        }
+        return higherBetter ? -value : value;
+    }
+
+
+    private static boolean isValid(Double value) {
+        return (value != null) && !value.isNaN();
+    }
+}
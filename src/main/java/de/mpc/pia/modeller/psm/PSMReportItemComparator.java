@@ -456,7 +456,7 @@ public enum PSMReportItemComparator implements Comparator<PSMReportItem>, Serial
      * @return
      */
     public static Comparator<PSMReportItem> descending(final Comparator<PSMReportItem> other) {
-        return (o1, o2) -> -1 * other.compare(o1, o2);
+        return new DescendingComparator(other);
     }
 
 
@@ -532,4 +532,30 @@ public enum PSMReportItemComparator implements Comparator<PSMReportItem>, Serial
 
         return null;
     }
+
+
+    /**
+     * Inverts the ordering of another comparator, which stays accessible for
+     * the {@link PSMReportItemSorter}.
+     */
+    static final class DescendingComparator implements Comparator<PSMReportItem> {
+
+        private final Comparator<PSMReportItem> other;
+
+
+        private DescendingComparator(Comparator<PSMReportItem> other) {
+            this.other = other;
+        }
+
+
+        Comparator<PSMReportItem> getInvertedComparator() {
+            return other;
+        }
+
+
+        @Override
+        public int compare(PSMReportItem o1, PSMReportItem o2) {
+            return -1 * other.compare(o1, o2);
+        }
+    }
 }
@@ -0,0 +1,330 @@
+package de.mpc.pia.modeller.psm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+import de.mpc.pia.tools.IndexSorter;
+import de.mpc.pia.tools.IndexSorter.IndexComparator;
+
+
+/**
+ * Sorts {@link PSMReportItem}s by a list of comparators (as created by
+ * {@link PSMReportItemComparator#getComparator(List)}), but extracts the
+ * compared value of each comparator only once per item into a primitive or
+ * dictionary ranked array. Afterwards, a permutation of the indices is sorted
+ * stably on these keys by the {@link IndexSorter}, without any further access
+ * to the items.
+ * <p>
+ * The result is the same as sorting the list with the chained comparators.
+ * If a comparator is unknown or its ordering cannot be represented by keys
+ * (e.g. the inconsistent ordering of NaN scores), the list is sorted by the
+ * comparators instead.
+ *
+ * @author julian
+ *
+ */
+public final class PSMReportItemSorter {
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private PSMReportItemSorter() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Sorts the list in place, like {@link List#sort(Comparator)} with the
+     * chained comparators would.
+     *
+     * @param items
+     * @param comparators
+     */
+    public static <T extends PSMReportItem> void sort(List<T> items,
+            List<Comparator<PSMReportItem>> comparators) {
+        if (items.size() < 2) {
+            return;
+        }
+
+        List<IndexComparator> keys = new ArrayList<>(comparators.size());
+        for (Comparator<PSMReportItem> comparator : comparators) {
+            IndexComparator key = createKey(items, comparator);
+            if (key == null) {
+                // not representable by keys
+                items.sort(PSMReportItemComparator.getComparator(comparators));
+                return;
+            }
+            keys.add(key);
+        }
+
+        int[] order = IndexSorter.sortedIndices(items.size(), (idx1, idx2) -> {
+            for (IndexComparator key : keys) {
+                int result = key.compare(idx1, idx2);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        });
+
+        List<T> unsorted = new ArrayList<>(items);
+        ListIterator<T> iterator = items.listIterator();
+        for (int idx : order) {
+            iterator.next();
+            iterator.set(unsorted.get(idx));
+        }
+    }
+
+
+    /**
+     * Extracts the keys of the comparator and returns a comparator on the
+     * indices of the items, or null, if the comparator's ordering cannot be
+     * represented by keys.
+     *
+     * @param items
+     * @param comparator
+     * @return
+     */
+    static IndexComparator createKey(List<? extends PSMReportItem> items,
+            Comparator<PSMReportItem> comparator) {
+        if (comparator instanceof PSMReportItemComparator.DescendingComparator) {
+            IndexComparator ascending = createKey(items,
+                    ((PSMReportItemComparator.DescendingComparator) comparator).getInvertedComparator());
+            return (ascending == null) ? null : (idx1, idx2) -> -1 * ascending.compare(idx1, idx2);
+        } else if (comparator instanceof ScoreComparator) {
+            ScoreComparator<?> scoreComparator = (ScoreComparator<?>) comparator;
+            return createScoreKey(items, scoreComparator.getScoreModelName(),
+                    scoreComparator.getHigherScoreBetter());
+        } else if (comparator instanceof PSMReportItemComparator) {
+            return createKey(items, (PSMReportItemComparator) comparator);
+        }
+
+        return null;
+    }
+
+
+    private static IndexComparator createKey(List<? extends PSMReportItem> items,
+            PSMReportItemComparator comparator) {
+        int size = items.size();
+
+        switch (comparator) {
+        case RANK_SORT:
+            long[] ranks = new long[size];
+            for (int i = 0; i < size; i++) {
+                Long rank = items.get(i).getRank();
+                if (rank == null) {
+                    return null;
+                }
+                ranks[i] = rank;
+            }
+            // like the RankComparator: negative ranks after all others, in descending order
+            return (idx1, idx2) -> {
+                if ((ranks[idx1] < 0) || (ranks[idx2] < 0)) {
+                    return Long.compare(ranks[idx2], ranks[idx1]);
+                }
+                return Long.compare(ranks[idx1], ranks[idx2]);
+            };
+
+        case SEQUENCE_SORT:
+            int[] sequenceRanks = createDictionaryRanks(items, PSMReportItem::getSequence);
+            if (sequenceRanks == null) {
+                return null;
+            }
+            return (idx1, idx2) -> Integer.compare(sequenceRanks[idx1], sequenceRanks[idx2]);
+
+        case CHARGE_SORT:
+            int[] charges = new int[size];
+            for (int i = 0; i < size; i++) {
+                charges[i] = items.get(i).getCharge();
+            }
+            return (idx1, idx2) -> Integer.compare(charges[idx1], charges[idx2]);
+
+        case NR_PSMS_SORT:
+            int[] nrPSMs = new int[size];
+            for (int i = 0; i < size; i++) {
+                PSMReportItem item = items.get(i);
+                nrPSMs[i] = (item instanceof ReportPSMSet) ? ((ReportPSMSet) item).getPSMs().size() : 1;
+            }
+            return (idx1, idx2) -> Integer.compare(nrPSMs[idx1], nrPSMs[idx2]);
+
+        case MASS_TO_CHARGE_SORT:
+            double[] massToCharges = new double[size];
+            for (int i = 0; i < size; i++) {
+                massToCharges[i] = items.get(i).getMassToCharge();
+            }
+            return (idx1, idx2) -> Double.compare(massToCharges[idx1], massToCharges[idx2]);
+
+        case MISSED_SORT:
+            int[] missed = new int[size];
+            for (int i = 0; i < size; i++) {
+                missed[i] = items.get(i).getMissedCleavages();
+            }
+            return (idx1, idx2) -> Integer.compare(missed[idx1], missed[idx2]);
+
+        case SOURCE_ID_SORT:
+            int[] sourceIDRanks = createNullableDictionaryRanks(items, PSMReportItem::getSourceID);
+            return (idx1, idx2) -> Integer.compare(sourceIDRanks[idx1], sourceIDRanks[idx2]);
+
+        case SPECTRUM_TITLE_SORT:
+            int[] titleRanks = createNullableDictionaryRanks(items, PSMReportItem::getSpectrumTitle);
+            return (idx1, idx2) -> Integer.compare(titleRanks[idx1], titleRanks[idx2]);
+
+        case DELTA_MASS_SORT:
+            double[] deltaMasses = new double[size];
+            for (int i = 0; i < size; i++) {
+                deltaMasses[i] = items.get(i).getDeltaMass();
+            }
+            return (idx1, idx2) -> Double.compare(deltaMasses[idx1], deltaMasses[idx2]);
+
+        case DELTA_PPM_SORT:
+            double[] deltaPPMs = new double[size];
+            for (int i = 0; i < size; i++) {
+                deltaPPMs[i] = items.get(i).getDeltaPPM();
+            }
+            return (idx1, idx2) -> Double.compare(deltaPPMs[idx1], deltaPPMs[idx2]);
+
+        case RETENTION_TIME_SORT:
+            double[] retentionTimes = new double[size];
+            BitSet noRetentionTimes = new BitSet(size);
+            for (int i = 0; i < size; i++) {
+                Double retentionTime = items.get(i).getRetentionTime();
+                if (retentionTime != null) {
+                    retentionTimes[i] = retentionTime;
+                } else {
+                    noRetentionTimes.set(i);
+                }
+            }
+            // like PIATools.CompareProbableNulls: no retention time comes first
+            return (idx1, idx2) -> {
+                boolean none1 = noRetentionTimes.get(idx1);
+                boolean none2 = noRetentionTimes.get(idx2);
+                if (none1 || none2) {
+                    return Boolean.compare(none2, none1);
+                }
+                return Double.compare(retentionTimes[idx1], retentionTimes[idx2]);
+            };
+
+        default:
+            if (comparator.toString().startsWith(PSMReportItemComparator.SCORE_PREFIX)) {
+                return createScoreKey(items,
+                        comparator.toString().substring(PSMReportItemComparator.SCORE_PREFIX.length()), null);
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Creates the key for a {@link ScoreComparator} of the given score. Items
+     * without the score are sorted last. If any item has an invalid (NaN or
+     * null) score value or the score types differ, null is returned, as
+     * the ordering of the {@link ScoreModel}s is not consistent for these.
+     *
+     * @param higherScoreBetter the explicit direction, if null the score type
+     * decides
+     */
+    private static IndexComparator createScoreKey(List<? extends PSMReportItem> items,
+            String scoreShort, Boolean higherScoreBetter) {
+        int size = items.size();
+        double[] scores = new double[size];
+        BitSet noScores = new BitSet(size);
+        ScoreModelEnum type = null;
+
+        for (int i = 0; i < size; i++) {
+            ScoreModel score = items.get(i).getCompareScore(scoreShort);
+            if (score == null) {
+                noScores.set(i);
+                continue;
+            }
+
+            Double value = score.getValue();
+            if ((value == null) || value.isNaN() || (score.getType() == null)
+                    || ((type != null) && !Objects.equals(type, score.getType()))) {
+                return null;
+            }
+            type = score.getType();
+            scores[i] = value;
+        }
+
+        Boolean higherBetter = (higherScoreBetter != null) || (type == null) ?
+                higherScoreBetter : type.higherScoreBetter();
+        for (int i = 0; i < size; i++) {
+            if (higherBetter == null) {
+                // all valid scores are equal
+                scores[i] = 0.0;
+            } else if (higherBetter) {
+                // adding 0.0 turns -0.0 into 0.0, as the scores compare them equal
+                scores[i] = -scores[i] + 0.0;
+            } else {
+                scores[i] = scores[i] + 0.0;
+            }
+        }
+
+        return (idx1, idx2) -> {
+            boolean none1 = noScores.get(idx1);
+            boolean none2 = noScores.get(idx2);
+            if (none1 || none2) {
+                return Boolean.compare(none1, none2);
+            }
+            return Double.compare(scores[idx1], scores[idx2]);
+        };
+    }
+
+
+    /**
+     * Creates the ranks of the values in their natural order, equal values
+     * get the same rank. Returns null, if any value is null.
+     */
+    private static int[] createDictionaryRanks(List<? extends PSMReportItem> items,
+            Function<PSMReportItem, String> getter) {
+        TreeSet<String> dictionary = new TreeSet<>();
+        for (PSMReportItem item : items) {
+            String value = getter.apply(item);
+            if (value == null) {
+                return null;
+            }
+            dictionary.add(value);
+        }
+
+        return createRanks(items, getter, dictionary.toArray(new String[dictionary.size()]));
+    }
+
+
+    /**
+     * Creates the ranks of the values in their natural order, equal values
+     * get the same rank and null values the smallest rank.
+     */
+    private static int[] createNullableDictionaryRanks(List<? extends PSMReportItem> items,
+            Function<PSMReportItem, String> getter) {
+        TreeSet<String> dictionary = new TreeSet<>();
+        for (PSMReportItem item : items) {
+            String value = getter.apply(item);
+            if (value != null) {
+                dictionary.add(value);
+            }
+        }
+
+        return createRanks(items, getter, dictionary.toArray(new String[dictionary.size()]));
+    }
+
+
+    private static int[] createRanks(List<? extends PSMReportItem> items,
+            Function<PSMReportItem, String> getter, String[] dictionary) {
+        int[] ranks = new int[items.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            String value = getter.apply(items.get(i));
+            ranks[i] = (value == null) ? -1 : Arrays.binarySearch(dictionary, value);
+        }
+        return ranks;
+    }
+}
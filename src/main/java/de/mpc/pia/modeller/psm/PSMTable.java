@@ -0,0 +1,598 @@
+package de.mpc.pia.modeller.psm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.modeller.report.SortOrder;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.report.filter.impl.SimpleTypeFilter;
+import de.mpc.pia.tools.IndexSorter;
+import de.mpc.pia.tools.IndexSorter.IndexComparator;
+
+
+/**
+ * A columnar, read-only table of {@link PSMReportItem}s, i.e. the PSMs of one
+ * file or the PSM sets of the overview. The values, which are mostly used for
+ * filtering and sorting, are copied once into primitive arrays, the sequences
+ * and files are dictionary encoded. Filters and sorts are evaluated over these
+ * columns and return selections, i.e. arrays of row indices.
+ * <p>
+ * The table is a snapshot of the items at its creation: later changes of the
+ * decoy or FDR states (e.g. by a new FDR calculation) are not reflected and a
+ * new table must be created. The score columns are created on their first
+ * request. The table is not thread-safe.
+ *
+ * @author julian
+ *
+ */
+public class PSMTable<T extends PSMReportItem> {
+
+    /** the registered filters, which are evaluated directly over the numerical columns */
+    private static final Set<RegisteredFilters> NUMERICAL_COLUMN_FILTERS = EnumSet.of(
+            RegisteredFilters.CHARGE_FILTER,
+            RegisteredFilters.DELTA_MASS_FILTER,
+            RegisteredFilters.DELTA_PPM_FILTER,
+            RegisteredFilters.MZ_FILTER,
+            RegisteredFilters.PSM_MISSED_CLEAVAGES_FILTER);
+
+
+    /** the items in the order of the rows */
+    private final List<T> items;
+
+    /** the file of the items, used for the file refinement of filters */
+    private final Long fileID;
+
+    private final int[] charges;
+
+    private final int[] missedCleavages;
+
+    private final double[] massToCharges;
+
+    private final double[] deltaMasses;
+
+    private final double[] deltaPPMs;
+
+    /** the retention times, NaN if not available (see noRetentionTimes) */
+    private final double[] retentionTimes;
+
+    /** the rows without retention time */
+    private final BitSet noRetentionTimes;
+
+    private final BitSet decoys;
+
+    private final BitSet fdrGoods;
+
+    /** the codes of the sequences, ordered like the sequences, -1 for no sequence */
+    private final int[] sequenceCodes;
+
+    /** the dictionary of the sequence codes, in natural order */
+    private final String[] sequences;
+
+    /** the codes of the files */
+    private final int[] fileCodes;
+
+    /** the dictionary of the file codes, in ascending order */
+    private final long[] fileIDs;
+
+    /** the columns of the scores, created on demand */
+    private final Map<String, ScoreColumn> scoreColumns;
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PSMTable.class);
+
+
+    /**
+     * Creates the table of the given items.
+     *
+     * @param items the items, which should not be changed while the table is
+     * used
+     * @param fileID the file of the items, 0 for the overview
+     */
+    public PSMTable(List<T> items, Long fileID) {
+        this.items = items;
+        this.fileID = fileID;
+
+        int nrRows = items.size();
+        charges = new int[nrRows];
+        missedCleavages = new int[nrRows];
+        massToCharges = new double[nrRows];
+        deltaMasses = new double[nrRows];
+        deltaPPMs = new double[nrRows];
+        retentionTimes = new double[nrRows];
+        noRetentionTimes = new BitSet(nrRows);
+        decoys = new BitSet(nrRows);
+        fdrGoods = new BitSet(nrRows);
+
+        Set<String> sequenceSet = new TreeSet<>();
+        Set<Long> fileSet = new TreeSet<>();
+
+        for (int row = 0; row < nrRows; row++) {
+            T item = items.get(row);
+
+            charges[row] = item.getCharge();
+            missedCleavages[row] = item.getMissedCleavages();
+            massToCharges[row] = item.getMassToCharge();
+            deltaMasses[row] = item.getDeltaMass();
+            deltaPPMs[row] = item.getDeltaPPM();
+
+            Double retentionTime = item.getRetentionTime();
+            if (retentionTime != null) {
+                retentionTimes[row] = retentionTime;
+            } else {
+                retentionTimes[row] = Double.NaN;
+                noRetentionTimes.set(row);
+            }
+
+            decoys.set(row, item.getIsDecoy());
+            fdrGoods.set(row, getIsFDRGood(item));
+
+            if (item.getSequence() != null) {
+                sequenceSet.add(item.getSequence());
+            }
+            fileSet.add(getFileID(item));
+        }
+
+        sequences = sequenceSet.toArray(new String[sequenceSet.size()]);
+        sequenceCodes = new int[nrRows];
+        fileIDs = fileSet.stream().mapToLong(Long::longValue).toArray();
+        fileCodes = new int[nrRows];
+        for (int row = 0; row < nrRows; row++) {
+            T item = items.get(row);
+            sequenceCodes[row] = (item.getSequence() != null) ? Arrays.binarySearch(sequences, item.getSequence()) : -1;
+            fileCodes[row] = Arrays.binarySearch(fileIDs, getFileID(item));
+        }
+
+        scoreColumns = new HashMap<>();
+    }
+
+
+    private static boolean getIsFDRGood(PSMReportItem item) {
+        if (item instanceof ReportPSM) {
+            return ((ReportPSM) item).getIsFDRGood();
+        } else if (item instanceof ReportPSMSet) {
+            return ((ReportPSMSet) item).getIsFDRGood();
+        }
+        return false;
+    }
+
+
+    /**
+     * The file ID of a PSM or 0 for the PSM sets of the overview.
+     */
+    private static long getFileID(PSMReportItem item) {
+        if (item instanceof ReportPSM) {
+            return ((ReportPSM) item).getFileID();
+        }
+        return 0L;
+    }
+
+
+    /**
+     * The number of rows, i.e. items, in the table
+     *
+     * @return
+     */
+    public int size() {
+        return items.size();
+    }
+
+
+    public T getItem(int row) {
+        return items.get(row);
+    }
+
+
+    /**
+     * Returns the items of the selected rows, in the order of the selection.
+     *
+     * @param rows
+     * @return
+     */
+    public List<T> getItems(int[] rows) {
+        List<T> selectedItems = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            selectedItems.add(items.get(row));
+        }
+        return selectedItems;
+    }
+
+
+    /**
+     * Returns a selection of all rows in their order.
+     *
+     * @return
+     */
+    public int[] getAllRows() {
+        int[] rows = new int[items.size()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+
+    public int getCharge(int row) {
+        return charges[row];
+    }
+
+
+    public int getMissedCleavages(int row) {
+        return missedCleavages[row];
+    }
+
+
+    public double getMassToCharge(int row) {
+        return massToCharges[row];
+    }
+
+
+    public double getDeltaMass(int row) {
+        return deltaMasses[row];
+    }
+
+
+    public double getDeltaPPM(int row) {
+        return deltaPPMs[row];
+    }
+
+
+    /**
+     * The retention time of the row or null, if it has none.
+     *
+     * @param row
+     * @return
+     */
+    public Double getRetentionTime(int row) {
+        return noRetentionTimes.get(row) ? null : retentionTimes[row];
+    }
+
+
+    public boolean getIsDecoy(int row) {
+        return decoys.get(row);
+    }
+
+
+    public boolean getIsFDRGood(int row) {
+        return fdrGoods.get(row);
+    }
+
+
+    public String getSequence(int row) {
+        return (sequenceCodes[row] < 0) ? null : sequences[sequenceCodes[row]];
+    }
+
+
+    public long getFileID(int row) {
+        return fileIDs[fileCodes[row]];
+    }
+
+
+    /**
+     * Returns the value of the score for the row, like
+     * {@link PSMReportItem#getScore(String)}.
+     *
+     * @param row
+     * @param scoreShort
+     * @return
+     */
+    public Double getScore(int row, String scoreShort) {
+        return getScoreColumn(scoreShort).getValue(row);
+    }
+
+
+    /**
+     * Returns the column of the given score, which is created on the first
+     * call.
+     */
+    private ScoreColumn getScoreColumn(String scoreShort) {
+        return scoreColumns.computeIfAbsent(scoreShort, ScoreColumn::new);
+    }
+
+
+    /**
+     * Returns the rows, which satisfy all the filters, in ascending order.
+     * This gives the same items as
+     * {@link de.mpc.pia.modeller.report.filter.FilterFactory#applyFilters(List, List, Long)}
+     * with the file of this table.
+     * <p>
+     * The filters on charge, missed cleavages, m/z, delta mass, delta PPM,
+     * sequence and PSM scores are evaluated over the columns, all others on
+     * the items of the still selected rows. Whether a filter applies to an
+     * item, is decided by the item's class.
+     *
+     * @param filters
+     * @return
+     */
+    public int[] filter(List<AbstractFilter> filters) {
+        BitSet selected = new BitSet(items.size());
+        selected.set(0, items.size());
+
+        if (filters != null) {
+            for (AbstractFilter filter : filters) {
+                applyFilter(filter, selected);
+            }
+        }
+
+        return selected.stream().toArray();
+    }
+
+
+    /**
+     * Clears the rows of the selection, which do not satisfy the filter.
+     */
+    private void applyFilter(AbstractFilter filter, BitSet selected) {
+        Map<Class<?>, Boolean> supportedClasses = new HashMap<>();
+        boolean[] sequencesSatisfy = null;
+        ScoreColumn scoreColumn = null;
+        NumericalCondition condition = null;
+        int[] intColumn = null;
+        double[] doubleColumn = null;
+
+        boolean simpleType = (filter instanceof SimpleTypeFilter)
+                && !filter.getRegisteredFilter().valueNeedsFileRefinement();
+        if (filter instanceof PSMScoreFilter) {
+            scoreColumn = getScoreColumn(((PSMScoreFilter) filter).getScoreShortName());
+            condition = new NumericalCondition(filter);
+        } else if (simpleType && NUMERICAL_COLUMN_FILTERS.contains(filter.getRegisteredFilter())) {
+            condition = new NumericalCondition(filter);
+            intColumn = getIntColumn(filter.getRegisteredFilter());
+            doubleColumn = getDoubleColumn(filter.getRegisteredFilter());
+        } else if (simpleType && RegisteredFilters.PSM_SEQUENCE_FILTER.equals(filter.getRegisteredFilter())) {
+            // the filter returns the given sequence as value, so each sequence is checked once
+            sequencesSatisfy = new boolean[sequences.length];
+            for (int code = 0; code < sequences.length; code++) {
+                sequencesSatisfy[code] = filter.satisfiesFilter(sequences[code], fileID);
+            }
+        }
+
+        for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+            T item = items.get(row);
+            if (!supportedClasses.computeIfAbsent(item.getClass(), c -> filter.supportsClass(item))) {
+                continue;
+            }
+
+            boolean satisfies;
+            if (scoreColumn != null) {
+                Double score = scoreColumn.getValue(row);
+                satisfies = (score != null) && condition.test(score);
+            } else if (intColumn != null) {
+                satisfies = condition.test(intColumn[row]);
+            } else if (doubleColumn != null) {
+                satisfies = condition.test(doubleColumn[row]);
+            } else if (sequencesSatisfy != null) {
+                satisfies = (sequenceCodes[row] >= 0) && sequencesSatisfy[sequenceCodes[row]];
+            } else {
+                satisfies = filter.satisfiesFilter(item, fileID);
+            }
+
+            if (!satisfies) {
+                selected.clear(row);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the given selection sorted by the given sort keys (see
+     * {@link PSMReportItemComparator}) and their orders. The sort is stable
+     * and gives the same order as sorting the items with the comparators.
+     * The sequence, charge, m/z, missed cleavages, delta mass, delta PPM and
+     * retention time are compared on the columns, all other keys on the keys
+     * extracted by the {@link PSMReportItemSorter} or, if these are not
+     * available, by the comparators on the items.
+     *
+     * @param rows the selection, which is not changed
+     * @param sortKeys
+     * @param sortables the orders of the sort keys
+     * @return
+     */
+    public int[] sort(int[] rows, List<String> sortKeys, Map<String, SortOrder> sortables) {
+        List<IndexComparator> comparators = new ArrayList<>(sortKeys.size());
+        for (String sortKey : sortKeys) {
+            IndexComparator comparator = getRowComparator(sortKey);
+            boolean ascending = SortOrder.ascending.equals(sortables.get(sortKey));
+
+            if (comparator == null) {
+                Comparator<PSMReportItem> itemComparator =
+                        PSMReportItemComparator.getComparatorByName(sortKey, SortOrder.ascending);
+                if (itemComparator == null) {
+                    LOGGER.error("no comparator found for " + sortKey);
+                    continue;
+                }
+
+                comparator = PSMReportItemSorter.createKey(items, itemComparator);
+                if (comparator == null) {
+                    comparator = (row1, row2) -> itemComparator.compare(items.get(row1), items.get(row2));
+                }
+            }
+
+            if (ascending) {
+                comparators.add(comparator);
+            } else {
+                IndexComparator ascendingComparator = comparator;
+                comparators.add((row1, row2) -> -1 * ascendingComparator.compare(row1, row2));
+            }
+        }
+
+        int[] sorted = Arrays.copyOf(rows, rows.length);
+        IndexSorter.sort(sorted, (row1, row2) -> {
+            for (IndexComparator comparator : comparators) {
+                int result = comparator.compare(row1, row2);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        });
+        return sorted;
+    }
+
+
+    /**
+     * Returns the comparator over the columns for the sort key or null, if the
+     * key is not available in a column.
+     */
+    private IndexComparator getRowComparator(String sortKey) {
+        if (PSMReportItemComparator.SEQUENCE_SORT.toString().equals(sortKey)) {
+            return (row1, row2) -> Integer.compare(sequenceCodes[row1], sequenceCodes[row2]);
+        } else if (PSMReportItemComparator.CHARGE_SORT.toString().equals(sortKey)) {
+            return (row1, row2) -> Integer.compare(charges[row1], charges[row2]);
+        } else if (PSMReportItemComparator.MISSED_SORT.toString().equals(sortKey)) {
+            return (row1, row2) -> Integer.compare(missedCleavages[row1], missedCleavages[row2]);
+        } else if (PSMReportItemComparator.MASS_TO_CHARGE_SORT.toString().equals(sortKey)) {
+            return (row1, row2) -> Double.compare(massToCharges[row1], massToCharges[row2]);
+        } else if (PSMReportItemComparator.DELTA_MASS_SORT.toString().equals(sortKey)) {
+            return (row1, row2) -> Double.compare(deltaMasses[row1], deltaMasses[row2]);
+        } else if (PSMReportItemComparator.DELTA_PPM_SORT.toString().equals(sortKey)) {
+            return (row1, row2) -> Double.compare(deltaPPMs[row1], deltaPPMs[row2]);
+        } else if (PSMReportItemComparator.RETENTION_TIME_SORT.toString().equals(sortKey)) {
+            // no retention time comes first
+            return (row1, row2) -> {
+                boolean none1 = noRetentionTimes.get(row1);
+                boolean none2 = noRetentionTimes.get(row2);
+                if (none1 || none2) {
+                    return Boolean.compare(none2, none1);
+                }
+                return Double.compare(retentionTimes[row1], retentionTimes[row2]);
+            };
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the integer column for the filter or null, if it has none.
+     */
+    private int[] getIntColumn(RegisteredFilters filter) {
+        switch (filter) {
+        case CHARGE_FILTER:
+            return charges;
+        case PSM_MISSED_CLEAVAGES_FILTER:
+            return missedCleavages;
+        default:
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns the floating point column for the filter or null, if it has
+     * none.
+     */
+    private double[] getDoubleColumn(RegisteredFilters filter) {
+        switch (filter) {
+        case DELTA_MASS_FILTER:
+            return deltaMasses;
+        case DELTA_PPM_FILTER:
+            return deltaPPMs;
+        case MZ_FILTER:
+            return massToCharges;
+        default:
+            return null;
+        }
+    }
+
+
+    /**
+     * The values of one score for all rows.
+     */
+    private class ScoreColumn {
+
+        /** the values, NaN for null values (see nullValues) */
+        private final double[] values;
+
+        /** the rows, for which the item returned null as score value */
+        private final BitSet nullValues;
+
+
+        private ScoreColumn(String scoreShort) {
+            values = new double[items.size()];
+            nullValues = new BitSet(items.size());
+
+            for (int row = 0; row < values.length; row++) {
+                Double value = items.get(row).getScore(scoreShort);
+                if (value != null) {
+                    values[row] = value;
+                } else {
+                    values[row] = Double.NaN;
+                    nullValues.set(row);
+                }
+            }
+        }
+
+
+        private Double getValue(int row) {
+            return nullValues.get(row) ? null : values[row];
+        }
+    }
+
+
+    /**
+     * The numerical comparison of a filter, evaluated like
+     * {@link AbstractFilter#satisfiesFilter(Object, Long)} does for an item's
+     * value.
+     */
+    private static class NumericalCondition {
+
+        private final FilterComparator comparator;
+
+        private final boolean negate;
+
+        private final Object filterValue;
+
+        private final double threshold;
+
+
+        private NumericalCondition(AbstractFilter filter) {
+            comparator = filter.getFilterComparator();
+            negate = filter.getFilterNegate();
+            filterValue = filter.getFilterValue();
+            threshold = (filterValue instanceof Number) ? ((Number) filterValue).doubleValue() : Double.NaN;
+        }
+
+
+        private boolean test(double value) {
+            if (FilterComparator.equal.equals(comparator)) {
+                return negate ^ filterValue.equals(value);
+            }
+            return testOrder(value);
+        }
+
+
+        private boolean test(int value) {
+            if (FilterComparator.equal.equals(comparator)) {
+                return negate ^ filterValue.equals(value);
+            }
+            return testOrder(value);
+        }
+
+
+        private boolean testOrder(double value) {
+            switch (comparator) {
+            case less:
+                return negate ^ (value < threshold);
+            case less_equal:
+                return negate ^ (value <= threshold);
+            case greater_equal:
+                return negate ^ (value >= threshold);
+            case greater:
+                return negate ^ (value > threshold);
+            default:
+                return false;
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ import de.mpc.pia.intermediate.PIAInputFile;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.IdentificationKeySettingsMask;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
@@ -62,12 +63,18 @@ public class ReportPSM  implements PSMReportItem {
     /** map from the scoreShorts to the identification ranks */
     private Map<String, Integer> identificationRanks;
 
+    /** the PSMs of the same spectrum, which calculates the identificationRanks on demand */
+    private IdentificationRankGroup identificationRankGroup;
+
     /** The maximal set of  {@link IdentificationKeySettings} which are available on this PSM */
     private Map<String, Boolean> maximalSpectraIdentificationSettings;
 
     /** The maximal set of not redundant {@link IdentificationKeySettings} which are available on this PSM */
     private Map<String, Boolean> maximalNotRedundantSpectraIdentificationSettings;
 
+    /** the maximalSpectraIdentificationSettings as mask, created on demand */
+    private transient IdentificationKeySettingsMask maximalSpectraIdentificationSettingsMask;
+
 
     /**
      * Basic constructor.
@@ -433,25 +440,86 @@ public class ReportPSM  implements PSMReportItem {
     /**
      * Returns the identification rank for the given score type.<br/>
      * The identification ranks must be calculated, or null will be returned
-     * always.
+     * always. If the PSM is in an {@link IdentificationRankGroup}, the ranks
+     * are calculated on the first request.
      *
      * @param scoreShort
      * @return
      */
     public Integer getIdentificationRank(String scoreShort) {
+        if (identificationRankGroup != null) {
+            return identificationRankGroup.getIdentificationRank(this, scoreShort);
+        }
+        return identificationRanks.get(scoreShort);
+    }
+
+
+    /**
+     * Returns the already calculated identification rank for the given score
+     * type.
+     *
+     * @param scoreShort
+     * @return
+     */
+    Integer getCalculatedIdentificationRank(String scoreShort) {
         return identificationRanks.get(scoreShort);
     }
 
 
     /**
-     * Returns all the identificationRanks
+     * Returns all the identificationRanks, calculating the missing ones of
+     * the {@link IdentificationRankGroup}
      * @return
      */
     public Map<String, Integer> getIdentificationRanks() {
+        if (identificationRankGroup != null) {
+            identificationRankGroup.calculateAllRanks();
+        }
         return identificationRanks;
     }
 
 
+    /**
+     * Checks, whether the PSM has at most the given identification rank for
+     * the score, without calculating the ranks if possible.
+     *
+     * @param scoreShort
+     * @param topNumber
+     * @return
+     */
+    public boolean isTopIdentification(String scoreShort, int topNumber) {
+        if (identificationRankGroup != null) {
+            return identificationRankGroup.isTopIdentification(this, scoreShort, topNumber);
+        }
+
+        Integer rank = identificationRanks.get(scoreShort);
+        return (rank != null) && (rank <= topNumber);
+    }
+
+
+    /**
+     * Sets the group of PSMs of the same spectrum, which is used for the
+     * calculation of the identification ranks.
+     *
+     * @param identificationRankGroup
+     */
+    public void setIdentificationRankGroup(IdentificationRankGroup identificationRankGroup) {
+        this.identificationRankGroup = identificationRankGroup;
+    }
+
+
+    /**
+     * Returns the group of PSMs of the same spectrum, which is used for the
+     * calculation of the identification ranks, or null if the PSM is in no
+     * such group.
+     *
+     * @return
+     */
+    public IdentificationRankGroup getIdentificationRankGroup() {
+        return identificationRankGroup;
+    }
+
+
     @Override
     public void dumpFDRCalculation() {
         isFDRGood = false;
@@ -561,6 +629,21 @@ public class ReportPSM  implements PSMReportItem {
     }
 
 
+    /**
+     * Returns the {@link #getAvailableIdentificationKeySettings()} as
+     * {@link IdentificationKeySettingsMask}.
+     *
+     * @return
+     */
+    public IdentificationKeySettingsMask getAvailableIdentificationKeySettingsMask() {
+        if (maximalSpectraIdentificationSettingsMask == null) {
+            maximalSpectraIdentificationSettingsMask =
+                    IdentificationKeySettingsMask.of(maximalSpectraIdentificationSettings);
+        }
+        return maximalSpectraIdentificationSettingsMask;
+    }
+
+
     @Override
     public String getNiceSpectrumName() {
         return spectrum.getNiceSpectrumName();
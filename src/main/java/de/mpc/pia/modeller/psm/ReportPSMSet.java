@@ -1,6 +1,7 @@
 package de.mpc.pia.modeller.psm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -16,6 +17,7 @@ import de.mpc.pia.intermediate.Modification;
 import de.mpc.pia.intermediate.Peptide;
 import de.mpc.pia.intermediate.PeptideSpectrumMatch;
 import de.mpc.pia.modeller.IdentificationKeySettings;
+import de.mpc.pia.modeller.IdentificationKeySettingsMask;
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
 import de.mpc.pia.modeller.score.FDRData.DecoyStrategy;
@@ -74,6 +76,9 @@ public class ReportPSMSet implements PSMReportItem {
     /** the peptide identification String, set on the first call for it. this should not change afterwards, as the modifications in a PSM set should be consistent */
     private String peptideStringID;
 
+    /** the sorted IDs of the PSMs, used as fingerprint of the set's identity. built on demand, null if the PSMs changed */
+    private transient volatile long[] sortedPSMIDs;
+
 
     /** logger for this class */
     private static final Logger LOGGER = Logger.getLogger(ReportPSMSet.class);
@@ -180,6 +185,7 @@ public class ReportPSMSet implements PSMReportItem {
         String priorKey = getIdentificationKey(psmSetSettings);
 
         psmsList.add(psm);
+        sortedPSMIDs = null;
 
         if ((priorKey != null) &&
                 !psm.getIdentificationKey(psmSetSettings).equals(priorKey)) {
@@ -225,6 +231,21 @@ public class ReportPSMSet implements PSMReportItem {
     }
 
 
+    /**
+     * Sets the AFS directly, e.g. for a set restored from a snapshot. The AFS
+     * is removed by passing null.
+     *
+     * @param score
+     */
+    public void setAverageFDRScore(Double score) {
+        if (score != null) {
+            averageFDRScore = new ScoreModel(score, ScoreModelEnum.AVERAGE_FDR_SCORE);
+        } else {
+            averageFDRScore = null;
+        }
+    }
+
+
     /**
      * getter for the AverageFDRScore
      * @return
@@ -234,6 +255,17 @@ public class ReportPSMSet implements PSMReportItem {
     }
 
 
+    /**
+     * Getter for the {@link IdentificationKeySettings} used for creating this
+     * set, only the used settings are in the map.
+     *
+     * @return
+     */
+    public Map<String, Boolean> getPSMSetSettings() {
+        return psmSetSettings;
+    }
+
+
     /**
      * Getter for the PSMs
      * @return
@@ -243,6 +275,44 @@ public class ReportPSMSet implements PSMReportItem {
     }
 
 
+    /**
+     * Returns the sorted IDs of the PSMs in this set, which identify the set
+     * of PSMs independent of their order. The returned array must not be
+     * changed.
+     *
+     * @return
+     */
+    public long[] getPSMsFingerprint() {
+        long[] ids = sortedPSMIDs;
+        if (ids == null) {
+            ids = new long[psmsList.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = psmsList.get(i).getId();
+            }
+            Arrays.sort(ids);
+            sortedPSMIDs = ids;
+        }
+        return ids;
+    }
+
+
+    /**
+     * Checks, whether this set and the given set contain the PSMs with the
+     * same IDs.
+     *
+     * @param otherSet
+     * @return
+     */
+    public boolean hasSamePSMs(ReportPSMSet otherSet) {
+        if (otherSet == this) {
+            return true;
+        }
+
+        return (psmsList.size() == otherSet.psmsList.size())
+                && Arrays.equals(getPSMsFingerprint(), otherSet.getPSMsFingerprint());
+    }
+
+
     /**
      * Getter for the modifications.
      *
@@ -530,10 +600,11 @@ public class ReportPSMSet implements PSMReportItem {
             return false;
         }
 
+        IdentificationKeySettingsMask keySettings =
+                IdentificationKeySettingsMask.of(getAvailableIdentificationKeySettings());
         for (ReportPSM psm : psmsList) {
             if (nonScoringPSMs.contains(
-                    psm.getSpectrum().getSpectrumIdentificationKey(
-                            getAvailableIdentificationKeySettings()))) {
+                    psm.getSpectrum().getSpectrumIdentificationKey(keySettings))) {
                 return true;
             }
         }
@@ -660,11 +731,12 @@ public class ReportPSMSet implements PSMReportItem {
         }
 
         ScoreModel bestScoreModel = null;
+        IdentificationKeySettingsMask keySettings =
+                IdentificationKeySettingsMask.of(getAvailableIdentificationKeySettings());
         for (ReportPSM psm : psmsList) {
             if (!nsPSMs.contains(psm.getId()) &&
                     !nsSpectra.contains(
-                            psm.getSpectrum().getSpectrumIdentificationKey(
-                                    getAvailableIdentificationKeySettings()))) {
+                            psm.getSpectrum().getSpectrumIdentificationKey(keySettings))) {
                 ScoreModel newScoreModel = psm.getCompareScore(scoreShortName);
 
                 if ((newScoreModel != null)
@@ -268,6 +268,32 @@ public class FilterFactory {
     }
 
 
+    /**
+     * Returns a String, which is equal for two filter Lists, if they filter
+     * equally (i.e. same filters with the same settings in the same order).
+     * This can be used as key for caching the results of a filtering.
+     *
+     * @param filters
+     * @return
+     */
+    public static String getFiltersFingerprint(List<AbstractFilter> filters) {
+        if ((filters == null) || filters.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (AbstractFilter filter : filters) {
+            fingerprint.append(filter.getClass().getName()).append(':');
+            if (filter instanceof PSMScoreFilter) {
+                // the String representation only contains the score's name
+                fingerprint.append(((PSMScoreFilter) filter).getScoreShortName()).append(':');
+            }
+            fingerprint.append(filter).append('\n');
+        }
+        return fingerprint.toString();
+    }
+
+
     /**
      * Checks whether all the inference filters in the given List are satisfied
      * for the filterable object.
@@ -298,6 +298,32 @@ public class FDRData implements Serializable {
     }
 
 
+    /**
+     * Sets the results of an already performed FDR calculation, e.g. for FDR
+     * data restored from a snapshot. Results which were not calculated are
+     * given as null.
+     *
+     * @param nrItems
+     * @param nrTargets
+     * @param nrDecoys
+     * @param nrFDRGoodTargets
+     * @param nrFDRGoodDecoys
+     * @param scoreAtThreshold
+     * @param artificialDecoyFDR
+     */
+    public void setCalculationResults(Integer nrItems, Integer nrTargets, Integer nrDecoys,
+            Integer nrFDRGoodTargets, Integer nrFDRGoodDecoys, Double scoreAtThreshold,
+            Double artificialDecoyFDR) {
+        this.nrItems = nrItems;
+        this.nrTargets = nrTargets;
+        this.nrDecoys = nrDecoys;
+        this.nrFDRGoodTargets = nrFDRGoodTargets;
+        this.nrFDRGoodDecoys = nrFDRGoodDecoys;
+        this.scoreAtThreshold = scoreAtThreshold;
+        this.artificialDecoyFDR = artificialDecoyFDR;
+    }
+
+
     /**
      * Getter for the scoreAtThreshold.
      * @return
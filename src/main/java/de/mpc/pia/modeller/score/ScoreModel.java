@@ -62,6 +62,24 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
         this.cvLabel = cvLabel;
     }
 
+    /**
+     * Constructor with an already resolved type, e.g. to restore a score
+     * without looking up the type again.
+     *
+     * @param score
+     * @param type
+     * @param cvAccession
+     * @param name
+     * @param cvLabel
+     */
+    public ScoreModel(Double score, ScoreModelEnum type, String cvAccession, String name, String cvLabel) {
+        this.score = score;
+        this.type = type;
+        this.cvAccession = cvAccession;
+        this.name = name;
+        this.cvLabel = cvLabel;
+    }
+
     /**
      * Basic constructor, if the type is known.
      */
@@ -128,6 +146,25 @@ public class ScoreModel implements Serializable, Comparable<ScoreModel> {
         }
     }
 
+    /**
+     * Returns the instantiating cvAccession, regardless of the type.
+     *
+     * @return
+     */
+    public String getCvAccession() {
+        return cvAccession;
+    }
+
+
+    /**
+     * Returns the instantiating name, regardless of the type.
+     *
+     * @return
+     */
+    public String getCvName() {
+        return name;
+    }
+
     public String getCvLabel() {
         return cvLabel;
     }
@@ -3,7 +3,9 @@ package de.mpc.pia.modeller.score;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.mpc.pia.modeller.psm.PSMReportItemComparator;
 import de.mpc.pia.tools.OntologyConstants;
@@ -2308,6 +2310,10 @@ public enum ScoreModelEnum {
           );
 
 
+    /** the models by all their valid descriptors, used instead of checking each model */
+    private static final Map<String, ScoreModelEnum> modelsByDescriptor = createModelsByDescriptor();
+
+
     /**
      * The scores in this list should not be used for FDR estimation on PSM level
      */
@@ -2442,14 +2448,27 @@ public enum ScoreModelEnum {
      * @return
      */
     public static final ScoreModelEnum getModelByDescription(String desc) {
+        ScoreModelEnum model = modelsByDescriptor.get(desc);
+        return (model != null) ? model : UNKNOWN_SCORE;
+    }
+
+
+    /**
+     * Maps all valid descriptors to their models. If a descriptor is valid for
+     * several models, the first one in the order of the enumeration is used.
+     *
+     * @return
+     */
+    private static Map<String, ScoreModelEnum> createModelsByDescriptor() {
+        Map<String, ScoreModelEnum> models = new HashMap<>();
         for (ScoreModelEnum model : values()) {
-            if (!model.equals(UNKNOWN_SCORE) &&
-                    model.isValidDescriptor(desc)) {
-                return model;
+            if (!model.equals(UNKNOWN_SCORE)) {
+                for (String desc : model.getValidDescriptors()) {
+                    models.putIfAbsent(desc, model);
+                }
             }
         }
-
-        return UNKNOWN_SCORE;
+        return models;
     }
 
     /**
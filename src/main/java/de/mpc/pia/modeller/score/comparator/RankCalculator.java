@@ -1,11 +1,13 @@
 package de.mpc.pia.modeller.score.comparator;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 import de.mpc.pia.modeller.score.ScoreModel;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.tools.IndexSorter;
 
 
 
@@ -17,6 +19,13 @@ import de.mpc.pia.modeller.score.ScoreModelEnum;
  */
 public class RankCalculator {
 	
+	/** the sort category of items with a valid score value */
+	private static final byte CATEGORY_VALID = 0;
+	
+	/** the sort category of items without the score */
+	private static final byte CATEGORY_NO_SCORE = 1;
+	
+	
 	/**
 	 * We don't ever want to instantiate this class
 	 */
@@ -72,4 +81,186 @@ public class RankCalculator {
 		}
 	}
 	
+	
+	/**
+	 * Creates the ranking for a List of {@link Rankable}s regarding the
+	 * {@link ScoreModel} given by the scoreShortName, without changing the
+	 * List or the items. The ranks are the same as given by
+	 * {@link #calculateRanking(String, List, Comparator)} with a
+	 * {@link ScoreComparator}, but the items are sorted by a stable index sort
+	 * on the primitive score values, so each score is fetched only once.
+	 * <p>
+	 * If any item has a NaN or null score value or the score types differ, the
+	 * items are sorted by the {@link ScoreComparator} instead, as the ordering
+	 * of these values by the {@link ScoreModel} is not consistent and depends
+	 * on the sort algorithm.
+	 * 
+	 * @param <T>
+	 * @param scoreShortName
+	 * @param items
+	 * @return the ranking or null, if the list is null or the score is unknown
+	 */
+	public static <T extends Rankable> Ranking<T> createRanking(String scoreShortName, List<T> items) {
+		if ((items == null) ||
+				ScoreModelEnum.getModelByDescription(scoreShortName).equals(ScoreModelEnum.UNKNOWN_SCORE)) {
+			return null;
+		}
+		
+		int nrItems = items.size();
+		byte[] categories = new byte[nrItems];
+		double[] keys = new double[nrItems];
+		ScoreModelEnum type = null;
+		
+		for (int i = 0; i < nrItems; i++) {
+			ScoreModel score = items.get(i).getCompareScore(scoreShortName);
+			if (score == null) {
+				categories[i] = CATEGORY_NO_SCORE;
+			} else if ((score.getValue() == null) || score.getValue().isNaN()
+					|| (score.getType() == null)
+					|| ((type != null) && !type.equals(score.getType()))) {
+				// sort exactly like calculateRanking
+				List<T> sortedItems = new ArrayList<>(items);
+				sortedItems.sort(new ScoreComparator<>(scoreShortName));
+				return new Ranking<>(sortedItems, calculateRanks(scoreShortName, sortedItems));
+			} else {
+				categories[i] = CATEGORY_VALID;
+				type = score.getType();
+				
+				Boolean higherScoreBetter = score.getType().higherScoreBetter();
+				if (higherScoreBetter == null) {
+					// no order known, all values are equal
+					keys[i] = 0.0;
+				} else {
+					// adding 0.0 turns -0.0 into 0.0, as the scores compare them equal
+					keys[i] = (higherScoreBetter ? -score.getValue() : score.getValue()) + 0.0;
+				}
+			}
+		}
+		
+		int[] order = IndexSorter.sortedIndices(nrItems,
+				(idx1, idx2) -> compareIndices(idx1, idx2, categories, keys));
+		
+		List<T> sortedItems = new ArrayList<>(nrItems);
+		for (int idx : order) {
+			sortedItems.add(items.get(idx));
+		}
+		
+		return new Ranking<>(sortedItems, calculateRanks(scoreShortName, sortedItems));
+	}
+	
+	
+	/**
+	 * Calculates the ranks of the sorted items, equal scores get the same
+	 * rank. This follows exactly the ranking of
+	 * {@link #calculateRanking(String, List, Comparator)}.
+	 * 
+	 * @param scoreShortName
+	 * @param sortedItems
+	 * @return
+	 */
+	private static long[] calculateRanks(String scoreShortName, List<? extends Rankable> sortedItems) {
+		long[] ranks = new long[sortedItems.size()];
+		
+		long currRank = 0;
+		double rankScore = Double.NaN;
+		boolean rankScoreSet = true;
+		int nrRankItems = 1;
+		int rankStart = 0;
+		
+		for (int i = 0; i < ranks.length; i++) {
+			Double score = sortedItems.get(i).getScore(scoreShortName);
+			
+			if (!rankScoreSet || (score == null) || (Double.compare(rankScore, score) != 0)) {
+				// this is a new rank, set the old one
+				for (int j = rankStart; j < i; j++) {
+					ranks[j] = currRank;
+				}
+				
+				currRank += nrRankItems;
+				nrRankItems = 0;
+				rankScoreSet = (score != null);
+				rankScore = rankScoreSet ? score : Double.NaN;
+				rankStart = i;
+			}
+			
+			nrRankItems++;
+		}
+		
+		// set the last rankings
+		for (int j = rankStart; j < ranks.length; j++) {
+			ranks[j] = currRank;
+		}
+		
+		return ranks;
+	}
+	
+	
+	private static int compareIndices(int idx1, int idx2, byte[] categories, double[] keys) {
+		if (categories[idx1] != categories[idx2]) {
+			return (categories[idx1] < categories[idx2]) ? -1 : 1;
+		} else if (categories[idx1] != CATEGORY_VALID) {
+			return 0;
+		}
+		
+		if (keys[idx1] < keys[idx2]) {
+			return -1;
+		} else if (keys[idx1] > keys[idx2]) {
+			return 1;
+		}
+		return 0;
+	}
+	
+	
+	/**
+	 * The ranking of a List of {@link Rankable}s, i.e. the sorted items and
+	 * their ranks. The ranks are only set on the items by
+	 * {@link #applyRanks()}, so a ranking may be kept and re-applied.
+	 * 
+	 * @param <T>
+	 */
+	public static final class Ranking<T extends Rankable> {
+		
+		/** the ranked items in the order of their ranks */
+		private final List<T> sortedItems;
+		
+		/** the ranks of the sortedItems */
+		private final long[] ranks;
+		
+		
+		private Ranking(List<T> sortedItems, long[] ranks) {
+			this.sortedItems = Collections.unmodifiableList(sortedItems);
+			this.ranks = ranks;
+		}
+		
+		
+		/**
+		 * The ranked items in the order of their ranks.
+		 * 
+		 * @return
+		 */
+		public List<T> getSortedItems() {
+			return sortedItems;
+		}
+		
+		
+		/**
+		 * The rank of the item at the given index of the sorted items.
+		 * 
+		 * @param index
+		 * @return
+		 */
+		public long getRank(int index) {
+			return ranks[index];
+		}
+		
+		
+		/**
+		 * Sets the ranks on the items.
+		 */
+		public void applyRanks() {
+			for (int i = 0; i < ranks.length; i++) {
+				sortedItems.get(i).setRank(ranks[i]);
+			}
+		}
+	}
 }
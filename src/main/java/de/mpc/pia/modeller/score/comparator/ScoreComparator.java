@@ -46,6 +46,20 @@ public class ScoreComparator<T extends ScoreComparable> implements Comparator<T>
     }
 
 
+    public String getScoreModelName() {
+        return scoreModelName;
+    }
+
+
+    /**
+     * Whether a higher score is better, null if the compared scores decide
+     * by their type.
+     */
+    public Boolean getHigherScoreBetter() {
+        return higherScoreBetter;
+    }
+
+
     @Override
     public int compare(T o1, T o2) {
         ScoreModel score1 = null;
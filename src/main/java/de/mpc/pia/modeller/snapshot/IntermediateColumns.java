@@ -0,0 +1,860 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.AccessionOccurrence;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.Modification;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import uk.ac.ebi.jmzidml.model.mzidml.AbstractParam;
+import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectrumIdentification;
+import uk.ac.ebi.jmzidml.model.mzidml.UserParam;
+
+
+/**
+ * Writes and reads the objects of the intermediate structure column by
+ * column, i.e. first all IDs, then all sequences etc. Variable sized values
+ * (like the scores of a PSM) are written as a column of counts followed by
+ * the flattened values. References between the objects are written as IDs.
+ * <p>
+ * The objects are restored in the same way as by the
+ * {@link de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler}.
+ *
+ * @author julian
+ *
+ */
+final class IntermediateColumns {
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(IntermediateColumns.class);
+
+    /** written as count for null collections */
+    private static final int NULL_COUNT = -1;
+
+    // the bits of the PSM flags
+    private static final int FLAG_RETENTION_TIME = 1;
+    private static final int FLAG_DECOY_SET = 1 << 1;
+    private static final int FLAG_DECOY = 1 << 2;
+    private static final int FLAG_UNIQUE_SET = 1 << 3;
+    private static final int FLAG_UNIQUE = 1 << 4;
+    private static final int FLAG_FILE = 1 << 5;
+
+    // the bits of the score flags
+    private static final int FLAG_VALUE = 1;
+    private static final int FLAG_RESIDUE = 1 << 1;
+    private static final int FLAG_MASS = 1 << 2;
+
+    // the kinds of the params
+    private static final int PARAM_CV = 0;
+    private static final int PARAM_USER = 1;
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private IntermediateColumns() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Writes the columns of the accessions.
+     *
+     * @param out
+     * @param accessions
+     * @throws IOException
+     */
+    static void writeAccessions(SnapshotOutput out, Collection<Accession> accessions)
+            throws IOException {
+        out.writeInt(accessions.size());
+
+        for (Accession accession : accessions) {
+            out.writeLong(accession.getID());
+        }
+        for (Accession accession : accessions) {
+            out.writeString(accession.getAccession());
+        }
+        for (Accession accession : accessions) {
+            out.writeString(accession.getDbSequence());
+        }
+
+        for (Accession accession : accessions) {
+            out.writeInt(accession.getFiles().size());
+        }
+        for (Accession accession : accessions) {
+            for (Long fileID : accession.getFiles()) {
+                out.writeLong(fileID);
+            }
+        }
+
+        List<Map.Entry<Long, String>> descriptions = new ArrayList<>();
+        for (Accession accession : accessions) {
+            out.writeInt(accession.getDescriptions().size());
+            descriptions.addAll(accession.getDescriptions().entrySet());
+        }
+        for (Map.Entry<Long, String> description : descriptions) {
+            out.writeLong(description.getKey());
+        }
+        for (Map.Entry<Long, String> description : descriptions) {
+            out.writeString(description.getValue());
+        }
+
+        for (Accession accession : accessions) {
+            out.writeInt(accession.getSearchDatabaseRefs().size());
+        }
+        for (Accession accession : accessions) {
+            for (String dbRef : accession.getSearchDatabaseRefs()) {
+                out.writeString(dbRef);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the columns of the accessions. The groups of the accessions are
+     * set later by {@link #readGroups(SnapshotInput, Map, Map)}.
+     *
+     * @param in
+     * @return the accessions mapped by their IDs
+     * @throws IOException
+     */
+    static Map<Long, Accession> readAccessions(SnapshotInput in) throws IOException {
+        int nrAccessions = in.readInt();
+
+        long[] ids = in.readLongs(nrAccessions);
+        String[] accessionStrs = in.readStrings(nrAccessions);
+        String[] dbSequences = in.readStrings(nrAccessions);
+
+        int[] nrFiles = in.readInts(nrAccessions);
+        List<Set<Long>> files = new ArrayList<>(nrAccessions);
+        for (int count : nrFiles) {
+            Set<Long> fileIDs = new HashSet<>(count);
+            for (int i = 0; i < count; i++) {
+                fileIDs.add(in.readLong());
+            }
+            files.add(fileIDs);
+        }
+
+        int[] nrDescriptions = in.readInts(nrAccessions);
+        long[] descriptionFiles = in.readLongs(sum(nrDescriptions));
+        String[] descriptionValues = in.readStrings(descriptionFiles.length);
+
+        int[] nrDbRefs = in.readInts(nrAccessions);
+        String[] dbRefs = in.readStrings(sum(nrDbRefs));
+
+        Map<Long, Accession> accessions = new HashMap<>(nrAccessions);
+        int descriptionIdx = 0;
+        int dbRefIdx = 0;
+        for (int accIdx = 0; accIdx < nrAccessions; accIdx++) {
+            Map<Long, String> descriptions = new HashMap<>(nrDescriptions[accIdx]);
+            for (int i = 0; i < nrDescriptions[accIdx]; i++, descriptionIdx++) {
+                descriptions.put(descriptionFiles[descriptionIdx], descriptionValues[descriptionIdx]);
+            }
+
+            Set<String> searchDatabaseRefs = new HashSet<>(nrDbRefs[accIdx]);
+            for (int i = 0; i < nrDbRefs[accIdx]; i++, dbRefIdx++) {
+                searchDatabaseRefs.add(dbRefs[dbRefIdx]);
+            }
+
+            accessions.put(ids[accIdx], new Accession(ids[accIdx], accessionStrs[accIdx],
+                    files.get(accIdx), descriptions, dbSequences[accIdx], searchDatabaseRefs, null));
+        }
+
+        return accessions;
+    }
+
+
+    /**
+     * Writes the columns of the PSMs.
+     *
+     * @param out
+     * @param psms
+     * @throws IOException
+     */
+    static void writePSMs(SnapshotOutput out, Collection<PeptideSpectrumMatch> psms)
+            throws IOException {
+        out.writeInt(psms.size());
+
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeLong(psm.getID());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeInt(psm.getCharge());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeDouble(psm.getMassToCharge());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeDouble(psm.getDeltaMass());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeByte(getPSMFlags(psm));
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeDouble((psm.getRetentionTime() != null) ? psm.getRetentionTime() : Double.NaN);
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeString(psm.getSequence());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeInt(psm.getMissedCleavages());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeString(psm.getSourceID());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeString(psm.getSpectrumTitle());
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeLong((psm.getFile() != null) ? psm.getFile().getID() : 0L);
+        }
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeString((psm.getSpectrumIdentification() != null) ?
+                    psm.getSpectrumIdentification().getId() : null);
+        }
+
+        writePSMScores(out, psms);
+        writePSMModifications(out, psms);
+        writePSMParams(out, psms);
+    }
+
+
+    private static int getPSMFlags(PeptideSpectrumMatch psm) {
+        int flags = 0;
+        if (psm.getRetentionTime() != null) {
+            flags |= FLAG_RETENTION_TIME;
+        }
+        if (psm.getIsDecoy() != null) {
+            flags |= FLAG_DECOY_SET;
+            if (psm.getIsDecoy()) {
+                flags |= FLAG_DECOY;
+            }
+        }
+        if (psm.getIsUnique() != null) {
+            flags |= FLAG_UNIQUE_SET;
+            if (psm.getIsUnique()) {
+                flags |= FLAG_UNIQUE;
+            }
+        }
+        if (psm.getFile() != null) {
+            flags |= FLAG_FILE;
+        }
+        return flags;
+    }
+
+
+    private static void writePSMScores(SnapshotOutput out, Collection<PeptideSpectrumMatch> psms)
+            throws IOException {
+        List<ScoreModel> scores = new ArrayList<>();
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeInt(psm.getScores().size());
+            scores.addAll(psm.getScores());
+        }
+        writeScores(out, scores);
+    }
+
+
+    /**
+     * Writes the columns of the given scores, only the instantiating values
+     * are written.
+     */
+    private static void writeScores(SnapshotOutput out, List<ScoreModel> scores)
+            throws IOException {
+        for (ScoreModel score : scores) {
+            out.writeByte((score.getValue() != null) ? FLAG_VALUE : 0);
+        }
+        for (ScoreModel score : scores) {
+            out.writeDouble((score.getValue() != null) ? score.getValue() : Double.NaN);
+        }
+        for (ScoreModel score : scores) {
+            out.writeString(score.getCvAccession());
+        }
+        for (ScoreModel score : scores) {
+            out.writeString(score.getCvName());
+        }
+        for (ScoreModel score : scores) {
+            out.writeString(score.getCvLabel());
+        }
+    }
+
+
+    private static void writePSMModifications(SnapshotOutput out, Collection<PeptideSpectrumMatch> psms)
+            throws IOException {
+        List<Integer> positions = new ArrayList<>();
+        List<Modification> modifications = new ArrayList<>();
+        for (PeptideSpectrumMatch psm : psms) {
+            out.writeInt(psm.getModifications().size());
+            for (Map.Entry<Integer, Modification> modIt : psm.getModifications().entrySet()) {
+                positions.add(modIt.getKey());
+                modifications.add(modIt.getValue());
+            }
+        }
+
+        for (Integer position : positions) {
+            out.writeInt(position);
+        }
+        for (Modification mod : modifications) {
+            out.writeByte(((mod.getResidue() != null) ? FLAG_RESIDUE : 0)
+                    | ((mod.getMass() != null) ? FLAG_MASS : 0));
+        }
+        for (Modification mod : modifications) {
+            out.writeInt((mod.getResidue() != null) ? mod.getResidue() : 0);
+        }
+        for (Modification mod : modifications) {
+            out.writeDouble((mod.getMass() != null) ? mod.getMass() : Double.NaN);
+        }
+        for (Modification mod : modifications) {
+            out.writeString(mod.getDescription());
+        }
+        for (Modification mod : modifications) {
+            out.writeString(mod.getAccession());
+        }
+        for (Modification mod : modifications) {
+            out.writeString(mod.getCvLabel());
+        }
+
+        List<ScoreModel> probabilities = new ArrayList<>();
+        for (Modification mod : modifications) {
+            if (mod.getProbability() != null) {
+                out.writeInt(mod.getProbability().size());
+                probabilities.addAll(mod.getProbability());
+            } else {
+                out.writeInt(NULL_COUNT);
+            }
+        }
+        writeScores(out, probabilities);
+    }
+
+
+    /**
+     * Reads the columns of the PSMs.
+     *
+     * @param in
+     * @param files the already restored input files
+     * @return the PSMs mapped by their IDs
+     * @throws IOException
+     */
+    static Map<Long, PeptideSpectrumMatch> readPSMs(SnapshotInput in, Map<Long, PIAInputFile> files)
+            throws IOException {
+        int nrPSMs = in.readInt();
+
+        long[] ids = in.readLongs(nrPSMs);
+        int[] charges = in.readInts(nrPSMs);
+        double[] massToCharges = in.readDoubles(nrPSMs);
+        double[] deltaMasses = in.readDoubles(nrPSMs);
+        byte[] flags = new byte[nrPSMs];
+        in.readBytes(flags, 0, nrPSMs);
+        double[] retentionTimes = in.readDoubles(nrPSMs);
+        String[] sequences = in.readStrings(nrPSMs);
+        int[] missed = in.readInts(nrPSMs);
+        String[] sourceIDs = in.readStrings(nrPSMs);
+        String[] titles = in.readStrings(nrPSMs);
+        long[] fileIDs = in.readLongs(nrPSMs);
+        String[] spectrumIdentificationRefs = in.readStrings(nrPSMs);
+
+        Map<Long, Map<String, SpectrumIdentification>> fileSpectrumIdentifications =
+                mapSpectrumIdentifications(files);
+
+        PeptideSpectrumMatch[] psms = new PeptideSpectrumMatch[nrPSMs];
+        for (int idx = 0; idx < nrPSMs; idx++) {
+            PIAInputFile file = null;
+            SpectrumIdentification spectrumID = null;
+
+            if ((flags[idx] & FLAG_FILE) != 0) {
+                file = files.get(fileIDs[idx]);
+                if ((file != null) && (spectrumIdentificationRefs[idx] != null)) {
+                    spectrumID = fileSpectrumIdentifications.get(fileIDs[idx]).get(spectrumIdentificationRefs[idx]);
+                }
+            }
+
+            psms[idx] = new PeptideSpectrumMatch(ids[idx], charges[idx],
+                    massToCharges[idx], deltaMasses[idx],
+                    ((flags[idx] & FLAG_RETENTION_TIME) != 0) ? retentionTimes[idx] : null,
+                    sequences[idx], missed[idx], sourceIDs[idx], titles[idx],
+                    file, spectrumID);
+
+            if ((flags[idx] & FLAG_DECOY_SET) != 0) {
+                psms[idx].setIsDecoy((flags[idx] & FLAG_DECOY) != 0);
+            }
+            if ((flags[idx] & FLAG_UNIQUE_SET) != 0) {
+                psms[idx].setIsUnique((flags[idx] & FLAG_UNIQUE) != 0);
+            }
+        }
+
+        readPSMScores(in, psms);
+        readPSMModifications(in, psms);
+        readPSMParams(in, psms);
+
+        Map<Long, PeptideSpectrumMatch> psmMap = new HashMap<>(nrPSMs);
+        for (PeptideSpectrumMatch psm : psms) {
+            psmMap.put(psm.getID(), psm);
+        }
+        return psmMap;
+    }
+
+
+    /**
+     * Maps the {@link SpectrumIdentification}s of the files by their IDs,
+     * instead of searching them for each PSM.
+     */
+    private static Map<Long, Map<String, SpectrumIdentification>> mapSpectrumIdentifications(
+            Map<Long, PIAInputFile> files) {
+        Map<Long, Map<String, SpectrumIdentification>> fileSpectrumIdentifications = new HashMap<>(files.size());
+
+        for (PIAInputFile file : files.values()) {
+            Map<String, SpectrumIdentification> spectrumIdentifications = new HashMap<>();
+            if (file.getAnalysisCollection() != null) {
+                for (SpectrumIdentification si : file.getAnalysisCollection().getSpectrumIdentification()) {
+                    spectrumIdentifications.putIfAbsent(si.getId(), si);
+                }
+            }
+            fileSpectrumIdentifications.put(file.getID(), spectrumIdentifications);
+        }
+
+        return fileSpectrumIdentifications;
+    }
+
+
+    private static void readPSMScores(SnapshotInput in, PeptideSpectrumMatch[] psms)
+            throws IOException {
+        int[] nrScores = in.readInts(psms.length);
+        ScoreModel[] scores = readScores(in, sum(nrScores), false);
+
+        int scoreIdx = 0;
+        for (int psmIdx = 0; psmIdx < psms.length; psmIdx++) {
+            for (int i = 0; i < nrScores[psmIdx]; i++, scoreIdx++) {
+                psms[psmIdx].addScore(scores[scoreIdx]);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the columns of scores. The PSM scores are created by their
+     * accession and name (which determines the type), the probabilities of
+     * modifications with the cvLabel.
+     */
+    private static ScoreModel[] readScores(SnapshotInput in, int nrScores, boolean withCvLabel)
+            throws IOException {
+        byte[] flags = new byte[nrScores];
+        in.readBytes(flags, 0, nrScores);
+        double[] values = in.readDoubles(nrScores);
+        String[] cvAccessions = in.readStrings(nrScores);
+        String[] names = in.readStrings(nrScores);
+        String[] cvLabels = in.readStrings(nrScores);
+
+        // the lookup of the type is expensive, but there are only few different scores
+        Map<String, Map<String, ScoreModelEnum>> resolvedTypes = new HashMap<>();
+
+        ScoreModel[] scores = new ScoreModel[nrScores];
+        for (int idx = 0; idx < nrScores; idx++) {
+            Double value = ((flags[idx] & FLAG_VALUE) != 0) ? values[idx] : null;
+
+            if (withCvLabel) {
+                scores[idx] = new ScoreModel(value, cvAccessions[idx], names[idx], cvLabels[idx]);
+            } else {
+                String cvAccession = cvAccessions[idx];
+                String name = names[idx];
+                ScoreModelEnum type = resolvedTypes.computeIfAbsent(cvAccession, k -> new HashMap<>())
+                        .computeIfAbsent(name, k -> new ScoreModel(null, cvAccession, name).getType());
+
+                scores[idx] = new ScoreModel(value, type, cvAccession, name, cvLabels[idx]);
+            }
+        }
+        return scores;
+    }
+
+
+    private static void readPSMModifications(SnapshotInput in, PeptideSpectrumMatch[] psms)
+            throws IOException {
+        int[] nrModifications = in.readInts(psms.length);
+        int nrAllModifications = sum(nrModifications);
+
+        int[] positions = in.readInts(nrAllModifications);
+        byte[] flags = new byte[nrAllModifications];
+        in.readBytes(flags, 0, nrAllModifications);
+        int[] residues = in.readInts(nrAllModifications);
+        double[] masses = in.readDoubles(nrAllModifications);
+        String[] descriptions = in.readStrings(nrAllModifications);
+        String[] accessions = in.readStrings(nrAllModifications);
+        String[] cvLabels = in.readStrings(nrAllModifications);
+
+        int[] nrProbabilities = in.readInts(nrAllModifications);
+        int nrAllProbabilities = 0;
+        for (int count : nrProbabilities) {
+            if (count != NULL_COUNT) {
+                nrAllProbabilities += count;
+            }
+        }
+        ScoreModel[] probabilities = readScores(in, nrAllProbabilities, true);
+
+        int modIdx = 0;
+        int probabilityIdx = 0;
+        for (int psmIdx = 0; psmIdx < psms.length; psmIdx++) {
+            for (int i = 0; i < nrModifications[psmIdx]; i++, modIdx++) {
+                List<ScoreModel> probability = null;
+                if (nrProbabilities[modIdx] != NULL_COUNT) {
+                    probability = new ArrayList<>(nrProbabilities[modIdx]);
+                    for (int j = 0; j < nrProbabilities[modIdx]; j++, probabilityIdx++) {
+                        probability.add(probabilities[probabilityIdx]);
+                    }
+                }
+
+                Modification mod = new Modification(
+                        ((flags[modIdx] & FLAG_RESIDUE) != 0) ? (char) residues[modIdx] : null,
+                        ((flags[modIdx] & FLAG_MASS) != 0) ? masses[modIdx] : null,
+                        descriptions[modIdx],
+                        accessions[modIdx],
+                        cvLabels[modIdx],
+                        probability);
+
+                psms[psmIdx].addModification(positions[modIdx], mod);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the columns of the cvParams and userParams of the PSMs.
+     */
+    private static void writePSMParams(SnapshotOutput out, Collection<PeptideSpectrumMatch> psms)
+            throws IOException {
+        List<AbstractParam> params = new ArrayList<>();
+        for (PeptideSpectrumMatch psm : psms) {
+            int nrParams = 0;
+            for (AbstractParam param : psm.getParams()) {
+                if ((param instanceof CvParam) || (param instanceof UserParam)) {
+                    params.add(param);
+                    nrParams++;
+                } else {
+                    LOGGER.warn("Skipping param of unknown type " + param.getClass() + " for PSM " + psm.getID());
+                }
+            }
+            out.writeInt(nrParams);
+        }
+
+        for (AbstractParam param : params) {
+            out.writeByte((param instanceof CvParam) ? PARAM_CV : PARAM_USER);
+        }
+        for (AbstractParam param : params) {
+            out.writeString(param.getName());
+        }
+        for (AbstractParam param : params) {
+            out.writeString(param.getValue());
+        }
+        for (AbstractParam param : params) {
+            out.writeString(param.getUnitAccession());
+        }
+        for (AbstractParam param : params) {
+            out.writeString(param.getUnitName());
+        }
+        for (AbstractParam param : params) {
+            out.writeString(param.getUnitCvRef());
+        }
+        // the accession and cvRef of cvParams or the type of userParams
+        for (AbstractParam param : params) {
+            out.writeString((param instanceof CvParam) ?
+                    ((CvParam) param).getAccession() : ((UserParam) param).getType());
+        }
+        for (AbstractParam param : params) {
+            out.writeString((param instanceof CvParam) ? ((CvParam) param).getCvRef() : null);
+        }
+    }
+
+
+    private static void readPSMParams(SnapshotInput in, PeptideSpectrumMatch[] psms)
+            throws IOException {
+        int[] nrParams = in.readInts(psms.length);
+        int nrAllParams = sum(nrParams);
+
+        byte[] kinds = new byte[nrAllParams];
+        in.readBytes(kinds, 0, nrAllParams);
+        String[] names = in.readStrings(nrAllParams);
+        String[] values = in.readStrings(nrAllParams);
+        String[] unitAccessions = in.readStrings(nrAllParams);
+        String[] unitNames = in.readStrings(nrAllParams);
+        String[] unitCvRefs = in.readStrings(nrAllParams);
+        String[] accessionsOrTypes = in.readStrings(nrAllParams);
+        String[] cvRefs = in.readStrings(nrAllParams);
+
+        int paramIdx = 0;
+        for (int psmIdx = 0; psmIdx < psms.length; psmIdx++) {
+            for (int i = 0; i < nrParams[psmIdx]; i++, paramIdx++) {
+                AbstractParam param;
+                if (kinds[paramIdx] == PARAM_CV) {
+                    CvParam cvParam = new CvParam();
+                    cvParam.setAccession(accessionsOrTypes[paramIdx]);
+                    cvParam.setCvRef(cvRefs[paramIdx]);
+                    param = cvParam;
+                } else {
+                    UserParam userParam = new UserParam();
+                    userParam.setType(accessionsOrTypes[paramIdx]);
+                    param = userParam;
+                }
+
+                param.setName(names[paramIdx]);
+                param.setValue(values[paramIdx]);
+                param.setUnitAccession(unitAccessions[paramIdx]);
+                param.setUnitName(unitNames[paramIdx]);
+                param.setUnitCvRef(unitCvRefs[paramIdx]);
+
+                psms[psmIdx].addParam(param);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the columns of the peptides.
+     *
+     * @param out
+     * @param peptides
+     * @throws IOException
+     */
+    static void writePeptides(SnapshotOutput out, Collection<Peptide> peptides)
+            throws IOException {
+        out.writeInt(peptides.size());
+
+        for (Peptide peptide : peptides) {
+            out.writeLong(peptide.getID());
+        }
+        for (Peptide peptide : peptides) {
+            out.writeString(peptide.getSequence());
+        }
+
+        for (Peptide peptide : peptides) {
+            out.writeInt((peptide.getSpectra() != null) ? peptide.getSpectra().size() : NULL_COUNT);
+        }
+        for (Peptide peptide : peptides) {
+            if (peptide.getSpectra() != null) {
+                for (PeptideSpectrumMatch psm : peptide.getSpectra()) {
+                    out.writeLong(psm.getID());
+                }
+            }
+        }
+
+        List<AccessionOccurrence> occurrences = new ArrayList<>();
+        for (Peptide peptide : peptides) {
+            out.writeInt(peptide.getAccessionOccurrences().size());
+            occurrences.addAll(peptide.getAccessionOccurrences());
+        }
+        for (AccessionOccurrence occurrence : occurrences) {
+            out.writeLong(occurrence.getAccession().getID());
+        }
+        for (AccessionOccurrence occurrence : occurrences) {
+            out.writeInt(occurrence.getStart());
+        }
+        for (AccessionOccurrence occurrence : occurrences) {
+            out.writeInt(occurrence.getEnd());
+        }
+    }
+
+
+    /**
+     * Reads the columns of the peptides and sets the backlinks in the PSMs.
+     *
+     * @param in
+     * @param psms
+     * @param accessions
+     * @return the peptides mapped by their IDs
+     * @throws IOException
+     */
+    static Map<Long, Peptide> readPeptides(SnapshotInput in, Map<Long, PeptideSpectrumMatch> psms,
+            Map<Long, Accession> accessions) throws IOException {
+        int nrPeptides = in.readInt();
+
+        long[] ids = in.readLongs(nrPeptides);
+        String[] sequences = in.readStrings(nrPeptides);
+
+        Peptide[] peptides = new Peptide[nrPeptides];
+        for (int idx = 0; idx < nrPeptides; idx++) {
+            peptides[idx] = new Peptide(ids[idx], sequences[idx]);
+        }
+
+        int[] nrSpectra = in.readInts(nrPeptides);
+        for (int idx = 0; idx < nrPeptides; idx++) {
+            if (nrSpectra[idx] == NULL_COUNT) {
+                continue;
+            }
+
+            List<PeptideSpectrumMatch> psmList = new ArrayList<>(nrSpectra[idx]);
+            for (int i = 0; i < nrSpectra[idx]; i++) {
+                long psmID = in.readLong();
+                PeptideSpectrumMatch psm = psms.get(psmID);
+                if (psm != null) {
+                    psmList.add(psm);
+                    psm.setPeptide(peptides[idx]);
+                } else {
+                    LOGGER.warn("No spectrumMatch found for '" + psmID + '\'');
+                }
+            }
+            peptides[idx].setSpectra(psmList);
+        }
+
+        int[] nrOccurrences = in.readInts(nrPeptides);
+        int nrAllOccurrences = sum(nrOccurrences);
+        long[] accessionIDs = in.readLongs(nrAllOccurrences);
+        int[] starts = in.readInts(nrAllOccurrences);
+        int[] ends = in.readInts(nrAllOccurrences);
+
+        int occIdx = 0;
+        Map<Long, Peptide> peptideMap = new HashMap<>(nrPeptides);
+        for (int idx = 0; idx < nrPeptides; idx++) {
+            for (int i = 0; i < nrOccurrences[idx]; i++, occIdx++) {
+                Accession acc = accessions.get(accessionIDs[occIdx]);
+                if (acc != null) {
+                    peptides[idx].addAccessionOccurrence(acc, starts[occIdx], ends[occIdx]);
+                } else {
+                    LOGGER.warn("No accession found for occurrence '" + accessionIDs[occIdx] + '\'');
+                }
+            }
+            peptideMap.put(peptides[idx].getID(), peptides[idx]);
+        }
+
+        return peptideMap;
+    }
+
+
+    /**
+     * Writes the columns of the groups. The group tree is stored only by the
+     * children IDs, so no recursion is needed.
+     *
+     * @param out
+     * @param groups
+     * @throws IOException
+     */
+    static void writeGroups(SnapshotOutput out, Collection<Group> groups)
+            throws IOException {
+        out.writeInt(groups.size());
+
+        for (Group group : groups) {
+            out.writeLong(group.getID());
+        }
+        for (Group group : groups) {
+            out.writeLong(group.getTreeID());
+        }
+
+        for (Group group : groups) {
+            out.writeInt(group.getAccessions().size());
+        }
+        for (Group group : groups) {
+            for (Accession accession : group.getAccessions().values()) {
+                out.writeLong(accession.getID());
+            }
+        }
+
+        for (Group group : groups) {
+            out.writeInt(group.getPeptides().size());
+        }
+        for (Group group : groups) {
+            for (Peptide peptide : group.getPeptides().values()) {
+                out.writeLong(peptide.getID());
+            }
+        }
+
+        for (Group group : groups) {
+            out.writeInt(group.getChildren().size());
+        }
+        for (Group group : groups) {
+            for (Long childID : group.getChildren().keySet()) {
+                out.writeLong(childID);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the columns of the groups, sets the groups of the accessions and
+     * peptides and connects the groups' children and parents.
+     *
+     * @param in
+     * @param accessions
+     * @param peptides
+     * @return the groups mapped by their IDs
+     * @throws IOException
+     */
+    static Map<Long, Group> readGroups(SnapshotInput in, Map<Long, Accession> accessions,
+            Map<Long, Peptide> peptides) throws IOException {
+        int nrGroups = in.readInt();
+
+        long[] ids = in.readLongs(nrGroups);
+        long[] treeIDs = in.readLongs(nrGroups);
+
+        Group[] groups = new Group[nrGroups];
+        Map<Long, Group> groupMap = new HashMap<>(nrGroups);
+        for (int idx = 0; idx < nrGroups; idx++) {
+            groups[idx] = new Group(ids[idx]);
+            groups[idx].setTreeID(treeIDs[idx]);
+            groupMap.put(ids[idx], groups[idx]);
+        }
+
+        int[] nrAccessions = in.readInts(nrGroups);
+        for (int idx = 0; idx < nrGroups; idx++) {
+            for (int i = 0; i < nrAccessions[idx]; i++) {
+                long accessionID = in.readLong();
+                Accession accession = accessions.get(accessionID);
+                if (accession != null) {
+                    groups[idx].addAccession(accession);
+                    accession.setGroup(groups[idx]);
+                } else {
+                    LOGGER.warn("No accession found for groups reference '" + accessionID + '\'');
+                }
+            }
+        }
+
+        int[] nrPeptides = in.readInts(nrGroups);
+        for (int idx = 0; idx < nrGroups; idx++) {
+            for (int i = 0; i < nrPeptides[idx]; i++) {
+                long peptideID = in.readLong();
+                Peptide peptide = peptides.get(peptideID);
+                if (peptide != null) {
+                    groups[idx].addPeptide(peptide);
+                    peptide.setGroup(groups[idx]);
+                } else {
+                    LOGGER.warn("No peptide found for groups reference '" + peptideID + '\'');
+                }
+            }
+        }
+
+        // to get the "allAccessions" right, children are set after the accessions
+        int[] nrChildren = in.readInts(nrGroups);
+        for (int idx = 0; idx < nrGroups; idx++) {
+            for (int i = 0; i < nrChildren[idx]; i++) {
+                long childID = in.readLong();
+                Group child = groupMap.get(childID);
+                if (child != null) {
+                    groups[idx].addChild(child);
+                    child.addParent(groups[idx]);
+                } else {
+                    LOGGER.warn("No group found for child reference '" + childID + '\'');
+                }
+            }
+        }
+
+        return groupMap;
+    }
+
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+}
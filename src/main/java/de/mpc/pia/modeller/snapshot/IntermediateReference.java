@@ -0,0 +1,66 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.Serializable;
+
+
+/**
+ * Placeholder for an object of the intermediate structure, a report item or a
+ * setting in the serialized modeller state of a snapshot. These objects are
+ * stored in their own columnar sections, so the modellers only hold these
+ * references, which are resolved to the restored objects while reading.
+ *
+ * @author julian
+ *
+ */
+final class IntermediateReference implements Serializable {
+
+    private static final long serialVersionUID = 3374418823467101563L;
+
+
+    /** the types of the referenced objects */
+    enum Type {
+        FILE,
+        PSM,
+        PEPTIDE,
+        ACCESSION,
+        GROUP,
+        /** the whole map of the input files */
+        FILES_MAP,
+        /** the whole map of the groups */
+        GROUPS_MAP,
+        /** the whole map of the PSM set settings warnings */
+        WARNINGS_MAP,
+        REPORT_PSM,
+        REPORT_PSM_SET,
+        REPORT_PEPTIDE,
+        REPORT_PROTEIN,
+        FDR_DATA,
+        RANK_GROUP,
+        FILTER,
+        /** a score map, score comparator, protein inference or scoring */
+        SETTING,
+    }
+
+
+    /** the type of the referenced object */
+    private final Type type;
+
+    /** the ID of the referenced object (if it has one), or the index of a report item */
+    private final long id;
+
+
+    IntermediateReference(Type type, long id) {
+        this.type = type;
+        this.id = id;
+    }
+
+
+    Type getType() {
+        return type;
+    }
+
+
+    long getID() {
+        return id;
+    }
+}
@@ -0,0 +1,163 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Read-only memory mapping of a complete snapshot file. As a single mapping
+ * is limited to 2GB, the file is mapped in segments and values crossing a
+ * segment border are assembled byte-wise.
+ * <p>
+ * The values are read with absolute positions only, so the mapping can be
+ * shared by several threads.
+ *
+ * @author julian
+ *
+ */
+class MappedSnapshotFile implements Closeable {
+
+    /** the size of the mapped segments, a power of 2 */
+    private static final int SEGMENT_BITS = 30;
+
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+
+    /** the mapped channel */
+    private final FileChannel channel;
+
+    /** the mapped segments */
+    private final MappedByteBuffer[] segments;
+
+    /** the size of the mapped file */
+    private final long size;
+
+
+    /**
+     * Maps the complete given file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    MappedSnapshotFile(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+
+        int nrSegments = (int) ((size + SEGMENT_SIZE - 1) >> SEGMENT_BITS);
+        this.segments = new MappedByteBuffer[nrSegments];
+        try {
+            for (int i = 0; i < nrSegments; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE, size - start));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * The size of the mapped file in bytes.
+     *
+     * @return
+     */
+    long size() {
+        return size;
+    }
+
+
+    /**
+     * Copies bytes from the given position into the array.
+     *
+     * @param position
+     * @param dst
+     * @param offset
+     * @param length
+     */
+    void getBytes(long position, byte[] dst, int offset, int length) {
+        checkRange(position, length);
+
+        long pos = position;
+        int off = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            ByteBuffer segment = segments[(int) (pos >> SEGMENT_BITS)].duplicate();
+            int segmentPos = (int) (pos & SEGMENT_MASK);
+            int chunk = Math.min(remaining, segment.limit() - segmentPos);
+
+            segment.position(segmentPos);
+            segment.get(dst, off, chunk);
+
+            pos += chunk;
+            off += chunk;
+            remaining -= chunk;
+        }
+    }
+
+
+    /**
+     * Returns a heap buffer with a copy of the given range of the file.
+     *
+     * @param position
+     * @param length
+     * @return
+     */
+    ByteBuffer getBuffer(long position, int length) {
+        byte[] bytes = new byte[length];
+        getBytes(position, bytes, 0, length);
+        return ByteBuffer.wrap(bytes);
+    }
+
+
+    int getInt(long position) {
+        int segmentPos = (int) (position & SEGMENT_MASK);
+        MappedByteBuffer segment = segment(position, 4);
+        if (segmentPos + 4 <= segment.limit()) {
+            return segment.getInt(segmentPos);
+        }
+        return getBuffer(position, 4).getInt();
+    }
+
+
+    long getLong(long position) {
+        int segmentPos = (int) (position & SEGMENT_MASK);
+        MappedByteBuffer segment = segment(position, 8);
+        if (segmentPos + 8 <= segment.limit()) {
+            return segment.getLong(segmentPos);
+        }
+        return getBuffer(position, 8).getLong();
+    }
+
+
+    private MappedByteBuffer segment(long position, int length) {
+        checkRange(position, length);
+        return segments[(int) (position >> SEGMENT_BITS)];
+    }
+
+
+    private void checkRange(long position, int length) {
+        if ((position < 0) || (length < 0) || (position + length > size)) {
+            throw new IndexOutOfBoundsException("Invalid range [" + position
+                    + ", " + (position + length) + ") in snapshot of size " + size);
+        }
+    }
+
+
+    /**
+     * Closes the channel. The mapped segments are released by the garbage
+     * collection.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
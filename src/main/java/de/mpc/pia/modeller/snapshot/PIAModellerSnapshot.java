@@ -0,0 +1,717 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.intermediate.PIAInputFile;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.piaxml.FilesListXML;
+import de.mpc.pia.intermediate.piaxml.PIAInputFileXML;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.PeptideModeller;
+import de.mpc.pia.modeller.ProteinModeller;
+import de.mpc.pia.tools.JAXBContextCache;
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftware;
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftwareList;
+import uk.ac.ebi.jmzidml.model.mzidml.Inputs;
+import uk.ac.ebi.jmzidml.model.mzidml.SearchDatabase;
+import uk.ac.ebi.jmzidml.model.mzidml.SpectraData;
+import uk.ac.ebi.jmzidml.model.utils.ModelConstants;
+
+
+/**
+ * A versioned binary snapshot of the complete state of a
+ * {@link de.mpc.pia.modeller.PIAModeller}, i.e. the intermediate structure,
+ * the settings, filters and FDR results of the modellers and the inferred
+ * proteins.
+ * <p>
+ * The file starts with a header (magic bytes, format version and the position
+ * of the string dictionary) followed by typed sections, each with its length,
+ * so unknown sections can be skipped. The intermediate PSMs, peptides,
+ * accessions and groups as well as the report items of the modellers (PSMs,
+ * PSM sets, peptides, proteins and FDR data) are stored in columnar sections
+ * with all strings in one dictionary. The metadata (input files, spectra
+ * data, databases and software) is stored as PIA XML fragments. The filters
+ * are stored with their short name, comparator, value and negation, the score
+ * maps, score comparators and the applied inference and scoring as key/value
+ * columns.
+ * <p>
+ * Only the remaining plain fields of the modellers (like the flags and
+ * thresholds) are stored as serialized objects, in which all the intermediate
+ * objects, report items, filters and settings are replaced by references. So
+ * neither the large data nor the deep group trees go through the Java
+ * serialization.
+ *
+ * @author julian
+ *
+ */
+public final class PIAModellerSnapshot {
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PIAModellerSnapshot.class);
+
+    /** the magic bytes at the start of each snapshot file */
+    private static final byte[] MAGIC = {'P', 'I', 'A', 'S', 'N', 'A', 'P', 0};
+
+    /** the current version of the snapshot format */
+    public static final int FORMAT_VERSION = 3;
+
+    /** the length of the file header: magic, version and dictionary position */
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + 8;
+
+    /** the length of a section header: type and length */
+    static final int SECTION_HEADER_LENGTH = 4 + 8;
+
+    // the types of the sections
+    private static final int SECTION_METADATA = 1;
+    private static final int SECTION_ACCESSIONS = 2;
+    private static final int SECTION_PSMS = 3;
+    private static final int SECTION_PEPTIDES = 4;
+    private static final int SECTION_GROUPS = 5;
+    private static final int SECTION_MODELLERS = 6;
+    private static final int SECTION_REPORT_ITEMS = 7;
+    private static final int SECTION_FILTERS = 8;
+    private static final int SECTION_SETTINGS = 9;
+
+    /** written as count for null collections */
+    private static final int NULL_COUNT = -1;
+
+
+    /** the name of the PIA XML file of the modeller */
+    private final String fileName;
+
+    /** the intermediate structure */
+    private final PIAIntermediateJAXBHandler intermediateHandler;
+
+    /** the PSM modeller */
+    private final PSMModeller psmModeller;
+
+    /** the peptide modeller */
+    private final PeptideModeller peptideModeller;
+
+    /** the protein modeller */
+    private final ProteinModeller proteinModeller;
+
+
+    /**
+     * Creates a snapshot of the given state of a modeller.
+     *
+     * @param fileName
+     * @param intermediateHandler
+     * @param psmModeller
+     * @param peptideModeller
+     * @param proteinModeller
+     */
+    public PIAModellerSnapshot(String fileName, PIAIntermediateJAXBHandler intermediateHandler,
+            PSMModeller psmModeller, PeptideModeller peptideModeller, ProteinModeller proteinModeller) {
+        this.fileName = fileName;
+        this.intermediateHandler = intermediateHandler;
+        this.psmModeller = psmModeller;
+        this.peptideModeller = peptideModeller;
+        this.proteinModeller = proteinModeller;
+    }
+
+
+    public String getFileName() {
+        return fileName;
+    }
+
+
+    public PIAIntermediateJAXBHandler getIntermediateHandler() {
+        return intermediateHandler;
+    }
+
+
+    public PSMModeller getPSMModeller() {
+        return psmModeller;
+    }
+
+
+    public PeptideModeller getPeptideModeller() {
+        return peptideModeller;
+    }
+
+
+    public ProteinModeller getProteinModeller() {
+        return proteinModeller;
+    }
+
+
+    /**
+     * Writes the snapshot into the given file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeToFile(File file) throws IOException {
+        if (intermediateHandler == null) {
+            throw new IOException("No intermediate data loaded, nothing to write into a snapshot");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotOutput out = new SnapshotOutput(channel);
+
+            // the header, the dictionary position is set at the end
+            out.writeBytes(MAGIC, 0, MAGIC.length);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(0L);
+
+            long section = out.beginSection(SECTION_METADATA);
+            writeMetadata(out);
+            out.endSection(section);
+
+            section = out.beginSection(SECTION_ACCESSIONS);
+            IntermediateColumns.writeAccessions(out, intermediateHandler.getAccessions().values());
+            out.endSection(section);
+
+            section = out.beginSection(SECTION_PSMS);
+            IntermediateColumns.writePSMs(out, intermediateHandler.getPSMs().values());
+            out.endSection(section);
+
+            section = out.beginSection(SECTION_PEPTIDES);
+            IntermediateColumns.writePeptides(out, intermediateHandler.getPeptides().values());
+            out.endSection(section);
+
+            section = out.beginSection(SECTION_GROUPS);
+            IntermediateColumns.writeGroups(out, intermediateHandler.getGroups().values());
+            out.endSection(section);
+
+            // the modellers collect the report items and settings, which are written afterwards
+            ReportColumns.ReportItems reportItems = new ReportColumns.ReportItems();
+            SettingsColumns.Settings settings = new SettingsColumns.Settings();
+            section = out.beginSection(SECTION_MODELLERS);
+            writeModellers(out, reportItems, settings);
+            out.endSection(section);
+
+            reportItems.addReferencedItems();
+            section = out.beginSection(SECTION_REPORT_ITEMS);
+            ReportColumns.writeReportItems(out, reportItems);
+            out.endSection(section);
+
+            section = out.beginSection(SECTION_FILTERS);
+            SettingsColumns.writeFilters(out, settings);
+            out.endSection(section);
+
+            section = out.beginSection(SECTION_SETTINGS);
+            SettingsColumns.writeSettings(out, settings);
+            out.endSection(section);
+
+            long dictionaryPosition = out.position();
+            out.writeDictionary();
+            out.flush();
+
+            channel.position(MAGIC.length + 4L);
+            out.writeLong(dictionaryPosition);
+            out.flush();
+        }
+    }
+
+
+    /**
+     * Writes the metadata of the intermediate structure. The input files, the
+     * inputs and the analysis software are written as PIA XML fragments.
+     */
+    private void writeMetadata(SnapshotOutput out) throws IOException {
+        out.writeString(intermediateHandler.getProjectName());
+
+        FilesListXML filesListXML = new FilesListXML();
+        for (PIAInputFile file : intermediateHandler.getFiles().values()) {
+            PIAInputFileXML fileXML = new PIAInputFileXML();
+
+            fileXML.setId(file.getID());
+            fileXML.setName(file.getName());
+            fileXML.setFileName(file.getFileName());
+            fileXML.setFormat(file.getFormat());
+
+            fileXML.setAnalysisCollection(file.getAnalysisCollection());
+            fileXML.setAnalysisProtocolCollection(file.getAnalysisProtocolCollection());
+
+            filesListXML.getFiles().add(fileXML);
+        }
+        writeXML(out, filesListXML, FilesListXML.class);
+
+        Inputs inputs = new Inputs();
+        inputs.getSearchDatabase().addAll(intermediateHandler.getSearchDatabase().values());
+        inputs.getSpectraData().addAll(intermediateHandler.getSpectraData().values());
+        writeXML(out, new JAXBElement<>(ModelConstants.getQNameForClass(Inputs.class), Inputs.class, inputs),
+                Inputs.class);
+
+        AnalysisSoftwareList softwareList = new AnalysisSoftwareList();
+        softwareList.getAnalysisSoftware().addAll(intermediateHandler.getAnalysisSoftware().values());
+        writeXML(out, new JAXBElement<>(ModelConstants.getQNameForClass(AnalysisSoftwareList.class),
+                AnalysisSoftwareList.class, softwareList), AnalysisSoftwareList.class);
+
+        Map<String, Set<Long>> warnings = intermediateHandler.getPSMSetSettingsWarnings();
+        if (warnings == null) {
+            out.writeInt(NULL_COUNT);
+            return;
+        }
+        out.writeInt(warnings.size());
+        for (String setting : warnings.keySet()) {
+            out.writeString(setting);
+        }
+        for (Set<Long> psmIDs : warnings.values()) {
+            out.writeInt(psmIDs.size());
+        }
+        for (Set<Long> psmIDs : warnings.values()) {
+            for (Long psmID : psmIDs) {
+                out.writeLong(psmID);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the given JAXB element as XML with its length.
+     */
+    private static void writeXML(SnapshotOutput out, Object jaxbElement, Class<?> marshalClass)
+            throws IOException {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        try {
+            Marshaller m = JAXBContextCache.getMarshaller(marshalClass);
+            m.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
+            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+            m.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+            m.marshal(jaxbElement, xml);
+        } catch (JAXBException e) {
+            throw new IOException("Could not write the " + marshalClass.getSimpleName() + " into the snapshot", e);
+        }
+
+        out.writeInt(xml.size());
+        out.writeBytes(xml.toByteArray(), 0, xml.size());
+    }
+
+
+    /**
+     * Writes the modellers as serialized objects, with all intermediate
+     * objects, report items, filters and settings replaced by
+     * {@link IntermediateReference}s. The report items and the filters and
+     * settings are collected in the given reportItems and settings.
+     */
+    private void writeModellers(SnapshotOutput out, ReportColumns.ReportItems reportItems,
+            SettingsColumns.Settings settings) throws IOException {
+        try (ObjectOutputStream oos = new ReferencingObjectOutputStream(out.asOutputStream(),
+                intermediateHandler, reportItems, settings)) {
+            oos.writeObject(fileName);
+            oos.writeObject(psmModeller);
+            oos.writeObject(peptideModeller);
+            oos.writeObject(proteinModeller);
+        }
+    }
+
+
+    /**
+     * Reads a snapshot from the given file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PIAModellerSnapshot readFromFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            SnapshotInput in = new SnapshotInput(channel);
+
+            byte[] magic = new byte[MAGIC.length];
+            in.readBytes(magic, 0, magic.length);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException(file.getAbsolutePath() + " is no PIA snapshot file");
+            }
+
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("The snapshot " + file.getAbsolutePath() + " has the version "
+                        + version + ", only the version " + FORMAT_VERSION + " is supported");
+            }
+
+            long dictionaryPosition = in.readLong();
+            if (dictionaryPosition < HEADER_LENGTH) {
+                throw new IOException("The snapshot " + file.getAbsolutePath() + " is incomplete");
+            }
+            in.readDictionary(dictionaryPosition);
+
+            return new SnapshotReader(in).readSections(dictionaryPosition);
+        }
+    }
+
+
+    /**
+     * Reads the sections of a snapshot, holding the already restored parts.
+     */
+    private static class SnapshotReader {
+        private final SnapshotInput in;
+
+        private String projectName;
+        private Map<Long, PIAInputFile> files;
+        private Map<String, SpectraData> spectraData;
+        private Map<String, SearchDatabase> searchDatabases;
+        private Map<String, AnalysisSoftware> software;
+        private Map<String, Set<Long>> psmSetSettingsWarnings;
+
+        private Map<Long, Accession> accessions;
+        private Map<Long, PeptideSpectrumMatch> psms;
+        private Map<Long, Peptide> peptides;
+        private Map<Long, Group> groups;
+
+        private PIAIntermediateJAXBHandler intermediateHandler;
+        private ReportColumns.ReportItems reportItems;
+        private SettingsColumns.Settings settings;
+
+        /** the position of the modellers, which are read after the report items */
+        private long modellersPosition = -1;
+        private long modellersLength;
+
+
+        private SnapshotReader(SnapshotInput in) {
+            this.in = in;
+        }
+
+
+        private PIAModellerSnapshot readSections(long endPosition) throws IOException {
+            while (in.position() < endPosition) {
+                int type = in.readInt();
+                long length = in.readLong();
+                long sectionEnd = in.position() + length;
+
+                switch (type) {
+                case SECTION_METADATA:
+                    readMetadata();
+                    break;
+
+                case SECTION_ACCESSIONS:
+                    accessions = IntermediateColumns.readAccessions(in);
+                    break;
+
+                case SECTION_PSMS:
+                    requireSection(files, "metadata", "PSMs");
+                    psms = IntermediateColumns.readPSMs(in, files);
+                    break;
+
+                case SECTION_PEPTIDES:
+                    requireSection(psms, "PSMs", "peptides");
+                    requireSection(accessions, "accessions", "peptides");
+                    peptides = IntermediateColumns.readPeptides(in, psms, accessions);
+                    break;
+
+                case SECTION_GROUPS:
+                    requireSection(peptides, "peptides", "groups");
+                    groups = IntermediateColumns.readGroups(in, accessions, peptides);
+                    intermediateHandler = new PIAIntermediateJAXBHandler(projectName, files,
+                            spectraData, searchDatabases, software, psms, peptides, accessions,
+                            groups, psmSetSettingsWarnings);
+                    break;
+
+                case SECTION_MODELLERS:
+                    // the modellers reference the report items, which follow
+                    modellersPosition = in.position();
+                    modellersLength = length;
+                    break;
+
+                case SECTION_REPORT_ITEMS:
+                    requireSection(intermediateHandler, "groups", "report items");
+                    reportItems = ReportColumns.readReportItems(in, intermediateHandler);
+                    break;
+
+                case SECTION_FILTERS:
+                    settings = new SettingsColumns.Settings();
+                    SettingsColumns.readFilters(in, settings);
+                    break;
+
+                case SECTION_SETTINGS:
+                    requireSection(settings, "filters", "settings");
+                    SettingsColumns.readSettings(in, settings);
+                    break;
+
+                default:
+                    LOGGER.warn("Skipping unknown section of type " + type + " in snapshot");
+                    break;
+                }
+
+                if (in.position() != sectionEnd) {
+                    if (in.position() > sectionEnd) {
+                        throw new IOException("Corrupt section of type " + type + " in snapshot");
+                    }
+                    in.seek(sectionEnd);
+                }
+            }
+
+            if (modellersPosition < 0) {
+                throw new IOException("The snapshot contains no modellers");
+            }
+            requireSection(reportItems, "report items", "modellers");
+            requireSection(settings, "filters", "modellers");
+
+            in.seek(modellersPosition);
+            return readModellers();
+        }
+
+
+        private static void requireSection(Object readSection, String required, String current)
+                throws IOException {
+            if (readSection == null) {
+                throw new IOException("The " + required + " must be read before the " + current
+                        + " of a snapshot");
+            }
+        }
+
+
+        private void readMetadata() throws IOException {
+            projectName = in.readString();
+
+            FilesListXML filesListXML = readXML(FilesListXML.class);
+            files = new HashMap<>();
+            for (PIAInputFileXML fileXML : filesListXML.getFiles()) {
+                PIAInputFile file = new PIAInputFile(fileXML.getId(),
+                        fileXML.getName(), fileXML.getFileName(),
+                        fileXML.getFormat());
+
+                if (fileXML.getAnalysisCollection() != null) {
+                    fileXML.getAnalysisCollection().getSpectrumIdentification().forEach(file::addSpectrumIdentification);
+                }
+
+                if (fileXML.getAnalysisProtocolCollection() != null) {
+                    fileXML.getAnalysisProtocolCollection().getSpectrumIdentificationProtocol().forEach(file::addSpectrumIdentificationProtocol);
+                }
+
+                files.put(file.getID(), file);
+            }
+
+            Inputs inputs = readXML(Inputs.class);
+            spectraData = new HashMap<>();
+            for (SpectraData sd : inputs.getSpectraData()) {
+                spectraData.put(sd.getId(), sd);
+            }
+            searchDatabases = new HashMap<>();
+            for (SearchDatabase db : inputs.getSearchDatabase()) {
+                searchDatabases.put(db.getId(), db);
+            }
+
+            AnalysisSoftwareList softwareList = readXML(AnalysisSoftwareList.class);
+            software = new HashMap<>();
+            for (AnalysisSoftware sw : softwareList.getAnalysisSoftware()) {
+                software.put(sw.getId(), sw);
+            }
+
+            int nrWarnings = in.readInt();
+            if (nrWarnings == NULL_COUNT) {
+                psmSetSettingsWarnings = null;
+                return;
+            }
+            String[] settings = in.readStrings(nrWarnings);
+            int[] nrPSMs = in.readInts(nrWarnings);
+            psmSetSettingsWarnings = new HashMap<>(nrWarnings);
+            for (int idx = 0; idx < nrWarnings; idx++) {
+                Set<Long> psmIDs = new HashSet<>(nrPSMs[idx]);
+                for (long psmID : in.readLongs(nrPSMs[idx])) {
+                    psmIDs.add(psmID);
+                }
+                psmSetSettingsWarnings.put(settings[idx], psmIDs);
+            }
+        }
+
+
+        /**
+         * Reads a PIA XML fragment written by
+         * {@link PIAModellerSnapshot#writeXML(SnapshotOutput, Object, Class)}.
+         */
+        private <T> T readXML(Class<T> declaredType) throws IOException {
+            byte[] xml = new byte[in.readInt()];
+            in.readBytes(xml, 0, xml.length);
+
+            try {
+                Unmarshaller um = JAXBContextCache.getUnmarshaller(declaredType);
+                T value = um.unmarshal(new StreamSource(new ByteArrayInputStream(xml)), declaredType).getValue();
+                if (value == null) {
+                    throw new IOException("The " + declaredType.getSimpleName() + " of the snapshot is empty");
+                }
+                return value;
+            } catch (JAXBException e) {
+                throw new IOException("Could not read the " + declaredType.getSimpleName() + " of the snapshot", e);
+            }
+        }
+
+
+        private PIAModellerSnapshot readModellers() throws IOException {
+            try (ObjectInputStream ois = new ResolvingObjectInputStream(in.asInputStream(modellersLength),
+                    intermediateHandler, reportItems, settings)) {
+                String modelFileName = (String) ois.readObject();
+                PSMModeller psmModeller = (PSMModeller) ois.readObject();
+                PeptideModeller peptideModeller = (PeptideModeller) ois.readObject();
+                ProteinModeller proteinModeller = (ProteinModeller) ois.readObject();
+
+                return new PIAModellerSnapshot(modelFileName, intermediateHandler,
+                        psmModeller, peptideModeller, proteinModeller);
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new IOException("Could not read the modellers of the snapshot", e);
+            }
+        }
+    }
+
+
+    /**
+     * Replaces the objects of the intermediate structure, the report items and
+     * the settings by {@link IntermediateReference}s. Only the very objects
+     * held by the intermediate handler are replaced, others (like the overview
+     * file of the PSM modeller) are serialized as usual. The report items are
+     * added to the {@link ReportColumns.ReportItems}, the filters and settings
+     * to the {@link SettingsColumns.Settings}.
+     */
+    private static class ReferencingObjectOutputStream extends ObjectOutputStream {
+        private final PIAIntermediateJAXBHandler handler;
+        private final ReportColumns.ReportItems reportItems;
+        private final SettingsColumns.Settings settings;
+
+        private ReferencingObjectOutputStream(OutputStream out, PIAIntermediateJAXBHandler handler,
+                ReportColumns.ReportItems reportItems, SettingsColumns.Settings settings)
+                throws IOException {
+            super(out);
+            this.handler = handler;
+            this.reportItems = reportItems;
+            this.settings = settings;
+            enableReplaceObject(true);
+        }
+
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            IntermediateReference.Type reportType = ReportColumns.ReportItems.getReferenceType(obj);
+            if (reportType != null) {
+                return new IntermediateReference(reportType, reportItems.add(obj));
+            } else if (obj == handler.getFiles()) {
+                return new IntermediateReference(IntermediateReference.Type.FILES_MAP, 0);
+            } else if (obj == handler.getGroups()) {
+                return new IntermediateReference(IntermediateReference.Type.GROUPS_MAP, 0);
+            } else if (obj == handler.getPSMSetSettingsWarnings()) {
+                return new IntermediateReference(IntermediateReference.Type.WARNINGS_MAP, 0);
+            } else if (obj instanceof PeptideSpectrumMatch) {
+                return replaceIfHeld(obj, ((PeptideSpectrumMatch) obj).getID(),
+                        handler.getPSMs(), IntermediateReference.Type.PSM);
+            } else if (obj instanceof Peptide) {
+                return replaceIfHeld(obj, ((Peptide) obj).getID(),
+                        handler.getPeptides(), IntermediateReference.Type.PEPTIDE);
+            } else if (obj instanceof Accession) {
+                return replaceIfHeld(obj, ((Accession) obj).getID(),
+                        handler.getAccessions(), IntermediateReference.Type.ACCESSION);
+            } else if (obj instanceof Group) {
+                return replaceIfHeld(obj, ((Group) obj).getID(),
+                        handler.getGroups(), IntermediateReference.Type.GROUP);
+            } else if (obj instanceof PIAInputFile) {
+                return replaceIfHeld(obj, ((PIAInputFile) obj).getID(),
+                        handler.getFiles(), IntermediateReference.Type.FILE);
+            }
+
+            IntermediateReference.Type settingType = SettingsColumns.Settings.getReferenceType(obj);
+            if (settingType != null) {
+                return new IntermediateReference(settingType, settings.add(obj));
+            }
+
+            return obj;
+        }
+
+
+        private static Object replaceIfHeld(Object obj, Long id, Map<Long, ?> heldObjects,
+                IntermediateReference.Type type) {
+            if ((id != null) && (heldObjects.get(id) == obj)) {
+                return new IntermediateReference(type, id);
+            }
+            return obj;
+        }
+    }
+
+
+    /**
+     * Resolves the {@link IntermediateReference}s to the restored objects of
+     * the intermediate structure, the restored report items and settings.
+     */
+    private static class ResolvingObjectInputStream extends ObjectInputStream {
+        private final PIAIntermediateJAXBHandler handler;
+        private final ReportColumns.ReportItems reportItems;
+        private final SettingsColumns.Settings settings;
+
+        private ResolvingObjectInputStream(InputStream in, PIAIntermediateJAXBHandler handler,
+                ReportColumns.ReportItems reportItems, SettingsColumns.Settings settings)
+                throws IOException {
+            super(in);
+            this.handler = handler;
+            this.reportItems = reportItems;
+            this.settings = settings;
+            enableResolveObject(true);
+        }
+
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (!(obj instanceof IntermediateReference)) {
+                return obj;
+            }
+
+            IntermediateReference reference = (IntermediateReference) obj;
+            Object resolved;
+            switch (reference.getType()) {
+            case FILES_MAP:
+                resolved = handler.getFiles();
+                break;
+            case GROUPS_MAP:
+                resolved = handler.getGroups();
+                break;
+            case WARNINGS_MAP:
+                resolved = handler.getPSMSetSettingsWarnings();
+                break;
+            case FILE:
+                resolved = handler.getFiles().get(reference.getID());
+                break;
+            case PSM:
+                resolved = handler.getPSMs().get(reference.getID());
+                break;
+            case PEPTIDE:
+                resolved = handler.getPeptides().get(reference.getID());
+                break;
+            case ACCESSION:
+                resolved = handler.getAccessions().get(reference.getID());
+                break;
+            case GROUP:
+                resolved = handler.getGroups().get(reference.getID());
+                break;
+            case FILTER:
+            case SETTING:
+                resolved = settings.get(reference.getType(), reference.getID());
+                break;
+            default:
+                resolved = reportItems.get(reference.getType(), reference.getID());
+                break;
+            }
+
+            if (resolved == null) {
+                throw new IOException("Could not resolve the " + reference.getType()
+                        + " with ID " + reference.getID() + " in the snapshot");
+            }
+            return resolved;
+        }
+    }
+}
@@ -0,0 +1,886 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.PeptideModeller;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * Read-only access to the final (filtered) report of a {@link PIAModeller},
+ * which was written into an indexed snapshot file.
+ * <p>
+ * The file is memory mapped on opening, but only the header is read. The
+ * PSMs, peptides and proteins are decoded on demand by their index, page or
+ * ID, and the last recently used records are cached. So even very large
+ * projects are opened almost instantly and need only little heap.
+ * <p>
+ * The file consists of a fixed size header with the positions of the three
+ * tables, followed by the project metadata and the tables. Each table holds
+ * the variable length records, an offset array of the records and an ID
+ * index, sorted by the ID (or the hash of the string ID for peptides).
+ *
+ * @author julian
+ *
+ */
+public final class PIAReportSnapshot implements Closeable {
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PIAReportSnapshot.class);
+
+    /** the magic bytes at the start of every report snapshot */
+    private static final byte[] MAGIC = {'P', 'I', 'A', 'R', 'P', 'R', 'T', 0};
+
+    /** the current version of the format */
+    public static final int FORMAT_VERSION = 1;
+
+    /** the default number of cached records per table */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /** the length of a table's entry in the header: count, offsets and index position */
+    private static final int TABLE_HEADER_LENGTH = 4 + 8 + 8;
+
+    /** the length of the complete header */
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + 3 * TABLE_HEADER_LENGTH;
+
+    /** the length of an entry in the ID index: key and record index */
+    private static final int INDEX_ENTRY_LENGTH = 8 + 4;
+
+    private static final int FLAG_RANK = 1;
+    private static final int FLAG_RETENTION_TIME = 1 << 1;
+    private static final int FLAG_FDR_SCORE = 1 << 2;
+    private static final int FLAG_DECOY = 1 << 3;
+    private static final int FLAG_FDR_GOOD = 1 << 4;
+    private static final int FLAG_SCORE = 1 << 5;
+
+
+    /** the mapped file */
+    private final MappedSnapshotFile mappedFile;
+
+    /** the name of the project */
+    private final String projectName;
+
+    /** the name of the file, the modeller was created from */
+    private final String fileName;
+
+    private final Table<ReportPSMRecord> psms;
+
+    private final Table<ReportPeptideRecord> peptides;
+
+    private final Table<ReportProteinRecord> proteins;
+
+
+    private PIAReportSnapshot(MappedSnapshotFile mappedFile, int cacheSize) throws IOException {
+        this.mappedFile = mappedFile;
+
+        byte[] magic = new byte[MAGIC.length];
+        if (mappedFile.size() < HEADER_LENGTH) {
+            throw new IOException("File is too small for a PIA report snapshot");
+        }
+        mappedFile.getBytes(0, magic, 0, magic.length);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("File is no PIA report snapshot");
+        }
+
+        int version = mappedFile.getInt(MAGIC.length);
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported report snapshot version " + version
+                    + ", only versions up to " + FORMAT_VERSION + " are supported");
+        }
+
+        long pos = MAGIC.length + 4L;
+        psms = new Table<>(pos, cacheSize, this::decodePSM);
+        pos += TABLE_HEADER_LENGTH;
+        peptides = new Table<>(pos, cacheSize, this::decodePeptide);
+        pos += TABLE_HEADER_LENGTH;
+        proteins = new Table<>(pos, cacheSize, this::decodeProtein);
+
+        long metadataPos = HEADER_LENGTH;
+        projectName = readMappedString(metadataPos);
+        metadataPos += 4 + Math.max(0, mappedFile.getInt(metadataPos));
+        fileName = readMappedString(metadataPos);
+    }
+
+
+    /**
+     * Opens the given report snapshot with the {@link #DEFAULT_CACHE_SIZE}.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PIAReportSnapshot open(File file) throws IOException {
+        return open(file, DEFAULT_CACHE_SIZE);
+    }
+
+
+    /**
+     * Opens the given report snapshot, caching at most cacheSize decoded
+     * records per table.
+     *
+     * @param file
+     * @param cacheSize
+     * @return
+     * @throws IOException
+     */
+    public static PIAReportSnapshot open(File file, int cacheSize) throws IOException {
+        LOGGER.info("opening report snapshot " + file.getAbsolutePath());
+
+        MappedSnapshotFile mappedFile = new MappedSnapshotFile(file);
+        try {
+            return new PIAReportSnapshot(mappedFile, cacheSize);
+        } catch (IOException | RuntimeException e) {
+            mappedFile.close();
+            throw e;
+        }
+    }
+
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+
+    public String getFileName() {
+        return fileName;
+    }
+
+
+    public int getNrPSMs() {
+        return psms.count;
+    }
+
+
+    /**
+     * Returns the PSM at the given index of the report.
+     *
+     * @param index
+     * @return
+     */
+    public ReportPSMRecord getPSM(int index) {
+        return psms.get(index);
+    }
+
+
+    /**
+     * Returns the PSMs from the index from (inclusive) to the index to
+     * (exclusive).
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<ReportPSMRecord> getPSMs(int from, int to) {
+        return psms.getRange(from, to);
+    }
+
+
+    /**
+     * Returns the PSM with the given ID or null, if it is not in the report.
+     *
+     * @param id
+     * @return
+     */
+    public ReportPSMRecord getPSMByID(long id) {
+        int index = psms.findFirst(id);
+        return (index < 0) ? null : psms.get(index);
+    }
+
+
+    public int getNrPeptides() {
+        return peptides.count;
+    }
+
+
+    /**
+     * Returns the peptide at the given index of the report.
+     *
+     * @param index
+     * @return
+     */
+    public ReportPeptideRecord getPeptide(int index) {
+        return peptides.get(index);
+    }
+
+
+    /**
+     * Returns the peptides from the index from (inclusive) to the index to
+     * (exclusive).
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<ReportPeptideRecord> getPeptides(int from, int to) {
+        return peptides.getRange(from, to);
+    }
+
+
+    /**
+     * Returns the peptide with the given string ID or null, if it is not in
+     * the report.
+     *
+     * @param stringID
+     * @return
+     */
+    public ReportPeptideRecord getPeptideByStringID(String stringID) {
+        long hash = stringID.hashCode();
+        for (int index : peptides.findAll(hash)) {
+            ReportPeptideRecord peptide = peptides.get(index);
+            if (stringID.equals(peptide.getStringID())) {
+                return peptide;
+            }
+        }
+        return null;
+    }
+
+
+    public int getNrProteins() {
+        return proteins.count;
+    }
+
+
+    /**
+     * Returns the protein at the given index (i.e. in the order of the
+     * report).
+     *
+     * @param index
+     * @return
+     */
+    public ReportProteinRecord getProtein(int index) {
+        return proteins.get(index);
+    }
+
+
+    /**
+     * Returns the proteins from the index from (inclusive) to the index to
+     * (exclusive).
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<ReportProteinRecord> getProteins(int from, int to) {
+        return proteins.getRange(from, to);
+    }
+
+
+    /**
+     * Returns the protein with the given ID or null, if it is not in the
+     * report.
+     *
+     * @param id
+     * @return
+     */
+    public ReportProteinRecord getProteinByID(long id) {
+        int index = proteins.findFirst(id);
+        return (index < 0) ? null : proteins.get(index);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        psms.clearCache();
+        peptides.clearCache();
+        proteins.clearCache();
+        mappedFile.close();
+    }
+
+
+    /**
+     * Writes the final report of the given modeller into a report snapshot.
+     * These are the filtered PSMs of all input files, the filtered peptides of
+     * the overview and the filtered proteins.
+     *
+     * @param piaModeller
+     * @param file
+     * @throws IOException
+     */
+    public static void write(PIAModeller piaModeller, File file) throws IOException {
+        LOGGER.info("writing report snapshot to " + file.getAbsolutePath());
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotOutput out = new SnapshotOutput(channel);
+
+            out.writeBytes(MAGIC, 0, MAGIC.length);
+            out.writeInt(FORMAT_VERSION);
+            byte[] tableHeaders = new byte[3 * TABLE_HEADER_LENGTH];
+            out.writeBytes(tableHeaders, 0, tableHeaders.length);
+
+            out.writeInlineString(piaModeller.getProjectName());
+            out.writeInlineString(piaModeller.getFileName());
+
+            ByteBuffer header = ByteBuffer.wrap(tableHeaders);
+            writePSMs(piaModeller.getPSMModeller(), out, header);
+            writePeptides(piaModeller.getPeptideModeller(), out, header);
+            writeProteins(piaModeller.getProteinModeller().getFilteredReportProteins(
+                    piaModeller.getProteinModeller().getReportFilters()), out, header);
+            out.flush();
+
+            header.rewind();
+            long headerPos = MAGIC.length + 4L;
+            while (header.hasRemaining()) {
+                headerPos += channel.write(header, headerPos);
+            }
+        }
+
+        LOGGER.info("report snapshot written");
+    }
+
+
+    private static void writePSMs(PSMModeller psmModeller, SnapshotOutput out, ByteBuffer header)
+            throws IOException {
+        List<ReportPSM> reportPSMs = new ArrayList<>();
+        for (Long fileID : new TreeSet<>(psmModeller.getFiles().keySet())) {
+            if (fileID > 0) {
+                reportPSMs.addAll(psmModeller.getFilteredReportPSMs(fileID, psmModeller.getFilters(fileID)));
+            }
+        }
+
+        long[] offsets = new long[reportPSMs.size() + 1];
+        long[] keys = new long[reportPSMs.size()];
+        int index = 0;
+        for (ReportPSM psm : reportPSMs) {
+            offsets[index] = out.position();
+            keys[index] = psm.getId();
+            writePSM(psm, out);
+            index++;
+        }
+        offsets[index] = out.position();
+
+        writeTable(offsets, keys, out, header);
+        LOGGER.debug(reportPSMs.size() + " PSMs written");
+    }
+
+
+    private static void writePSM(ReportPSM psm, SnapshotOutput out) throws IOException {
+        ScoreModel fdrScore = psm.getFDRScore();
+        Double fdrScoreValue = (fdrScore != null) ? fdrScore.getValue() : null;
+
+        int flags = 0;
+        flags |= (psm.getRank() != null) ? FLAG_RANK : 0;
+        flags |= (psm.getRetentionTime() != null) ? FLAG_RETENTION_TIME : 0;
+        flags |= (fdrScoreValue != null) ? FLAG_FDR_SCORE : 0;
+        flags |= psm.getIsDecoy() ? FLAG_DECOY : 0;
+        flags |= psm.getIsFDRGood() ? FLAG_FDR_GOOD : 0;
+        out.writeByte(flags);
+
+        out.writeLong(psm.getId());
+        out.writeLong(psm.getFileID());
+        if (psm.getRank() != null) {
+            out.writeLong(psm.getRank());
+        }
+        out.writeInt(psm.getCharge());
+        out.writeDouble(psm.getMassToCharge());
+        out.writeDouble(psm.getDeltaMass());
+        out.writeDouble(psm.getDeltaPPM());
+        if (psm.getRetentionTime() != null) {
+            out.writeDouble(psm.getRetentionTime());
+        }
+        out.writeInt(psm.getMissedCleavages());
+        out.writeDouble(psm.getFDR());
+        out.writeDouble(psm.getQValue());
+        if (fdrScoreValue != null) {
+            out.writeDouble(fdrScoreValue);
+        }
+
+        out.writeInlineString(psm.getSequence());
+        out.writeInlineString(psm.getModificationsString());
+        out.writeInlineString(psm.getSourceID());
+        out.writeInlineString(psm.getSpectrumTitle());
+        writeAccessions(psm.getAccessions(), out);
+
+        out.writeInt(psm.getScores().size());
+        for (ScoreModel score : psm.getScores()) {
+            out.writeInlineString(score.getShortName());
+            out.writeByte((score.getValue() != null) ? FLAG_SCORE : 0);
+            if (score.getValue() != null) {
+                out.writeDouble(score.getValue());
+            }
+        }
+    }
+
+
+    private static void writePeptides(PeptideModeller peptideModeller, SnapshotOutput out, ByteBuffer header)
+            throws IOException {
+        List<ReportPeptide> reportPeptides = peptideModeller.getFilteredReportPeptides(0L,
+                peptideModeller.getFilters(0L));
+
+        long[] offsets = new long[reportPeptides.size() + 1];
+        long[] keys = new long[reportPeptides.size()];
+        int index = 0;
+        for (ReportPeptide peptide : reportPeptides) {
+            offsets[index] = out.position();
+            keys[index] = peptide.getStringID().hashCode();
+            writePeptide(peptide, out);
+            index++;
+        }
+        offsets[index] = out.position();
+
+        writeTable(offsets, keys, out, header);
+        LOGGER.debug(reportPeptides.size() + " peptides written");
+    }
+
+
+    private static void writePeptide(ReportPeptide peptide, SnapshotOutput out) throws IOException {
+        ScoreModel fdrScore = peptide.getFDRScore();
+        Double fdrScoreValue = (fdrScore != null) ? fdrScore.getValue() : null;
+
+        int flags = 0;
+        flags |= (peptide.getRank() != null) ? FLAG_RANK : 0;
+        flags |= (fdrScoreValue != null) ? FLAG_FDR_SCORE : 0;
+        flags |= peptide.getIsDecoy() ? FLAG_DECOY : 0;
+        flags |= peptide.getIsFDRGood() ? FLAG_FDR_GOOD : 0;
+
+        // the string ID is written first, it is read for the ID lookup
+        out.writeInlineString(peptide.getStringID());
+        out.writeByte(flags);
+        out.writeInlineString(peptide.getSequence());
+        if (peptide.getRank() != null) {
+            out.writeLong(peptide.getRank());
+        }
+        out.writeInt(peptide.getMissedCleavages());
+        out.writeInt(peptide.getNrPSMs());
+        out.writeInt(peptide.getNrSpectra());
+        out.writeDouble(peptide.getFDR());
+        out.writeDouble(peptide.getQValue());
+        if (fdrScoreValue != null) {
+            out.writeDouble(fdrScoreValue);
+        }
+        writeAccessions(peptide.getAccessions(), out);
+
+        List<Long> psmIDs = new ArrayList<>();
+        for (PSMReportItem psm : peptide.getPSMs()) {
+            if (psm instanceof ReportPSMSet) {
+                for (ReportPSM setPSM : ((ReportPSMSet) psm).getPSMs()) {
+                    psmIDs.add(setPSM.getId());
+                }
+            } else if (psm instanceof ReportPSM) {
+                psmIDs.add(((ReportPSM) psm).getId());
+            }
+        }
+        out.writeInt(psmIDs.size());
+        for (Long psmID : psmIDs) {
+            out.writeLong(psmID);
+        }
+    }
+
+
+    private static void writeProteins(List<ReportProtein> reportProteins, SnapshotOutput out, ByteBuffer header)
+            throws IOException {
+        List<ReportProtein> proteinList = (reportProteins != null) ? reportProteins : Collections.emptyList();
+
+        long[] offsets = new long[proteinList.size() + 1];
+        long[] keys = new long[proteinList.size()];
+        int index = 0;
+        for (ReportProtein protein : proteinList) {
+            offsets[index] = out.position();
+            keys[index] = protein.getID();
+            writeProtein(protein, out);
+            index++;
+        }
+        offsets[index] = out.position();
+
+        writeTable(offsets, keys, out, header);
+        LOGGER.debug(proteinList.size() + " proteins written");
+    }
+
+
+    private static void writeProtein(ReportProtein protein, SnapshotOutput out) throws IOException {
+        int flags = 0;
+        flags |= (protein.getRank() != null) ? FLAG_RANK : 0;
+        flags |= ((protein.getScore() != null) && !protein.getScore().isNaN()) ? FLAG_SCORE : 0;
+        flags |= protein.getIsDecoy() ? FLAG_DECOY : 0;
+        flags |= protein.getIsFDRGood() ? FLAG_FDR_GOOD : 0;
+        out.writeByte(flags);
+
+        out.writeLong(protein.getID());
+        if (protein.getRank() != null) {
+            out.writeLong(protein.getRank());
+        }
+        if ((flags & FLAG_SCORE) != 0) {
+            out.writeDouble(protein.getScore());
+        }
+        out.writeInt(protein.getNrPeptides());
+        out.writeInt(protein.getNrPSMs());
+        out.writeInt(protein.getNrSpectra());
+        out.writeDouble(protein.getFDR());
+        out.writeDouble(protein.getQValue());
+
+        Accession representative = protein.getRepresentative();
+        out.writeInlineString((representative != null) ? representative.getAccession() : null);
+        out.writeInt(protein.getAccessions().size());
+        for (Accession accession : protein.getAccessions()) {
+            out.writeInlineString(accession.getAccession());
+            out.writeInlineString(accession.getDescription(0L));
+        }
+
+        out.writeInt(protein.getPeptides().size());
+        for (ReportPeptide peptide : protein.getPeptides()) {
+            out.writeInlineString(peptide.getStringID());
+        }
+
+        out.writeInt(protein.getSubSets().size());
+        for (ReportProtein subSet : protein.getSubSets()) {
+            out.writeLong(subSet.getID());
+        }
+    }
+
+
+    private static void writeAccessions(List<Accession> accessions, SnapshotOutput out) throws IOException {
+        out.writeInt(accessions.size());
+        for (Accession accession : accessions) {
+            out.writeInlineString(accession.getAccession());
+        }
+    }
+
+
+    /**
+     * Writes the offsets and the ID index of a table (after its records) and
+     * puts the table's entry into the header.
+     */
+    private static void writeTable(long[] offsets, long[] keys, SnapshotOutput out, ByteBuffer header)
+            throws IOException {
+        long offsetsPos = out.position();
+        for (long offset : offsets) {
+            out.writeLong(offset);
+        }
+
+        // sort the keys without boxing: find each record's slot in the sorted keys
+        long[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+        int[] sortedIndices = new int[keys.length];
+        Arrays.fill(sortedIndices, -1);
+        for (int index = 0; index < keys.length; index++) {
+            int slot = lowerBound(sortedKeys, keys[index]);
+            while (sortedIndices[slot] >= 0) {
+                slot++;
+            }
+            sortedIndices[slot] = index;
+        }
+
+        long indexPos = out.position();
+        for (int slot = 0; slot < sortedKeys.length; slot++) {
+            out.writeLong(sortedKeys[slot]);
+            out.writeInt(sortedIndices[slot]);
+        }
+
+        header.putInt(keys.length);
+        header.putLong(offsetsPos);
+        header.putLong(indexPos);
+    }
+
+
+    private static int lowerBound(long[] sortedKeys, long key) {
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    private ReportPSMRecord decodePSM(ByteBuffer buffer) {
+        int flags = buffer.get();
+
+        long id = buffer.getLong();
+        long fileID = buffer.getLong();
+        Long rank = ((flags & FLAG_RANK) != 0) ? buffer.getLong() : null;
+        int charge = buffer.getInt();
+        double massToCharge = buffer.getDouble();
+        double deltaMass = buffer.getDouble();
+        double deltaPPM = buffer.getDouble();
+        Double retentionTime = ((flags & FLAG_RETENTION_TIME) != 0) ? buffer.getDouble() : null;
+        int missedCleavages = buffer.getInt();
+        double fdr = buffer.getDouble();
+        double qValue = buffer.getDouble();
+        Double fdrScore = ((flags & FLAG_FDR_SCORE) != 0) ? buffer.getDouble() : null;
+
+        String sequence = readString(buffer);
+        String modificationsString = readString(buffer);
+        String sourceID = readString(buffer);
+        String spectrumTitle = readString(buffer);
+        List<String> accessions = readStrings(buffer);
+
+        int nrScores = buffer.getInt();
+        Map<String, Double> scores = new LinkedHashMap<>(nrScores * 2);
+        for (int i = 0; i < nrScores; i++) {
+            String shortName = readString(buffer);
+            boolean hasValue = (buffer.get() & FLAG_SCORE) != 0;
+            scores.put(shortName, hasValue ? buffer.getDouble() : null);
+        }
+
+        return new ReportPSMRecord(id, fileID, rank, sequence, modificationsString, charge,
+                massToCharge, deltaMass, deltaPPM, retentionTime, missedCleavages, sourceID,
+                spectrumTitle, (flags & FLAG_DECOY) != 0, (flags & FLAG_FDR_GOOD) != 0, fdr,
+                qValue, fdrScore, accessions, scores);
+    }
+
+
+    private ReportPeptideRecord decodePeptide(ByteBuffer buffer) {
+        String stringID = readString(buffer);
+        int flags = buffer.get();
+        String sequence = readString(buffer);
+        Long rank = ((flags & FLAG_RANK) != 0) ? buffer.getLong() : null;
+        int missedCleavages = buffer.getInt();
+        int nrPSMs = buffer.getInt();
+        int nrSpectra = buffer.getInt();
+        double fdr = buffer.getDouble();
+        double qValue = buffer.getDouble();
+        Double fdrScore = ((flags & FLAG_FDR_SCORE) != 0) ? buffer.getDouble() : null;
+        List<String> accessions = readStrings(buffer);
+
+        int nrPSMIDs = buffer.getInt();
+        List<Long> psmIDs = new ArrayList<>(nrPSMIDs);
+        for (int i = 0; i < nrPSMIDs; i++) {
+            psmIDs.add(buffer.getLong());
+        }
+
+        return new ReportPeptideRecord(stringID, sequence, rank, missedCleavages, nrPSMs,
+                nrSpectra, (flags & FLAG_DECOY) != 0, (flags & FLAG_FDR_GOOD) != 0, fdr,
+                qValue, fdrScore, accessions, psmIDs);
+    }
+
+
+    private ReportProteinRecord decodeProtein(ByteBuffer buffer) {
+        int flags = buffer.get();
+
+        long id = buffer.getLong();
+        Long rank = ((flags & FLAG_RANK) != 0) ? buffer.getLong() : null;
+        Double score = ((flags & FLAG_SCORE) != 0) ? buffer.getDouble() : Double.NaN;
+        int nrPeptides = buffer.getInt();
+        int nrPSMs = buffer.getInt();
+        int nrSpectra = buffer.getInt();
+        double fdr = buffer.getDouble();
+        double qValue = buffer.getDouble();
+
+        String representative = readString(buffer);
+        int nrAccessions = buffer.getInt();
+        Map<String, String> accessionDescriptions = new LinkedHashMap<>(nrAccessions * 2);
+        for (int i = 0; i < nrAccessions; i++) {
+            accessionDescriptions.put(readString(buffer), readString(buffer));
+        }
+
+        List<String> peptideStringIDs = readStrings(buffer);
+
+        int nrSubSets = buffer.getInt();
+        List<Long> subSetIDs = new ArrayList<>(nrSubSets);
+        for (int i = 0; i < nrSubSets; i++) {
+            subSetIDs.add(buffer.getLong());
+        }
+
+        return new ReportProteinRecord(id, rank, score, nrPeptides, nrPSMs, nrSpectra,
+                (flags & FLAG_DECOY) != 0, (flags & FLAG_FDR_GOOD) != 0, fdr, qValue,
+                representative, accessionDescriptions, peptideStringIDs, subSetIDs);
+    }
+
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == SnapshotOutput.NULL_STRING) {
+            return null;
+        }
+
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+
+    private String readMappedString(long position) {
+        int length = mappedFile.getInt(position);
+        if (length == SnapshotOutput.NULL_STRING) {
+            return null;
+        }
+        return new String(mappedFile.getBuffer(position + 4, length).array(), StandardCharsets.UTF_8);
+    }
+
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+
+
+    /**
+     * Decodes a record of a table from a buffer holding exactly its bytes.
+     */
+    @FunctionalInterface
+    private interface RecordDecoder<T> {
+        T decode(ByteBuffer buffer);
+    }
+
+
+    /**
+     * A table of the snapshot, i.e. its records, offsets, ID index and the
+     * cache of the decoded records.
+     */
+    private final class Table<T> {
+
+        /** the number of records */
+        private final int count;
+
+        /** the position of the record offsets */
+        private final long offsetsPos;
+
+        /** the position of the ID index */
+        private final long indexPos;
+
+        private final RecordDecoder<T> decoder;
+
+        /** the LRU cache of the decoded records, mapped by their index */
+        private final Map<Integer, T> cache;
+
+
+        private Table(long headerPos, int cacheSize, RecordDecoder<T> decoder) throws IOException {
+            this.count = mappedFile.getInt(headerPos);
+            this.offsetsPos = mappedFile.getLong(headerPos + 4);
+            this.indexPos = mappedFile.getLong(headerPos + 12);
+            this.decoder = decoder;
+
+            if ((count < 0)
+                    || (offsetsPos + 8L * (count + 1) > mappedFile.size())
+                    || (indexPos + (long) INDEX_ENTRY_LENGTH * count > mappedFile.size())) {
+                throw new IOException("Corrupt table header in report snapshot");
+            }
+
+            this.cache = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
+
+        private T get(int index) {
+            if ((index < 0) || (index >= count)) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+
+            synchronized (cache) {
+                T record = cache.get(index);
+                if (record != null) {
+                    return record;
+                }
+            }
+
+            long start = mappedFile.getLong(offsetsPos + 8L * index);
+            long end = mappedFile.getLong(offsetsPos + 8L * (index + 1));
+            T record = decoder.decode(mappedFile.getBuffer(start, (int) (end - start)));
+
+            synchronized (cache) {
+                cache.put(index, record);
+            }
+            return record;
+        }
+
+
+        private List<T> getRange(int from, int to) {
+            if ((from < 0) || (to > count) || (from > to)) {
+                throw new IndexOutOfBoundsException("Range: [" + from + ", " + to + "), Size: " + count);
+            }
+
+            List<T> records = new ArrayList<>(to - from);
+            for (int index = from; index < to; index++) {
+                records.add(get(index));
+            }
+            return records;
+        }
+
+
+        private long keyAt(int slot) {
+            return mappedFile.getLong(indexPos + (long) INDEX_ENTRY_LENGTH * slot);
+        }
+
+
+        private int indexAt(int slot) {
+            return mappedFile.getInt(indexPos + (long) INDEX_ENTRY_LENGTH * slot + 8);
+        }
+
+
+        /**
+         * The first slot in the ID index with a key not smaller than the given
+         * one.
+         */
+        private int lowerBoundSlot(long key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keyAt(mid) < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+
+        /**
+         * Returns the index of the first record with the given key or -1, if
+         * there is none.
+         */
+        private int findFirst(long key) {
+            int slot = lowerBoundSlot(key);
+            return ((slot < count) && (keyAt(slot) == key)) ? indexAt(slot) : -1;
+        }
+
+
+        /**
+         * Returns the indices of all records with the given key.
+         */
+        private List<Integer> findAll(long key) {
+            List<Integer> indices = new ArrayList<>(1);
+            for (int slot = lowerBoundSlot(key); (slot < count) && (keyAt(slot) == key); slot++) {
+                indices.add(indexAt(slot));
+            }
+            return indices;
+        }
+
+
+        private void clearCache() {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,1029 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Peptide;
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.intermediate.xmlhandler.PIAIntermediateJAXBHandler;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.psm.IdentificationRankGroup;
+import de.mpc.pia.modeller.psm.PSMReportItem;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.score.FDRData;
+import de.mpc.pia.modeller.score.ScoreModel;
+
+
+/**
+ * Writes and reads the report items of the modellers (PSMs, PSM sets,
+ * peptides, proteins and their FDR data) column by column, in the same way as
+ * the {@link IntermediateColumns}. The report items reference each other and
+ * the intermediate structure by indices and IDs, and are restored by their
+ * public constructors and setters.
+ *
+ * @author julian
+ *
+ */
+final class ReportColumns {
+
+    /** logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(ReportColumns.class);
+
+    // the bits of the report item flags
+    private static final int FLAG_DECOY = 1;
+    private static final int FLAG_FDR_GOOD = 1 << 1;
+    private static final int FLAG_RANK = 1 << 2;
+    private static final int FLAG_FDR_SCORE = 1 << 3;
+    private static final int FLAG_AVERAGE_FDR_SCORE = 1 << 4;
+    private static final int FLAG_PEPTIDE = 1 << 5;
+
+    // the bits of the FDR data flags, marking the calculated values
+    private static final int FLAG_THRESHOLD = 1;
+    private static final int FLAG_NR_ITEMS = 1 << 1;
+    private static final int FLAG_NR_TARGETS = 1 << 2;
+    private static final int FLAG_NR_DECOYS = 1 << 3;
+    private static final int FLAG_NR_FDR_GOOD_TARGETS = 1 << 4;
+    private static final int FLAG_NR_FDR_GOOD_DECOYS = 1 << 5;
+    private static final int FLAG_SCORE_AT_THRESHOLD = 1 << 6;
+    private static final int FLAG_ARTIFICIAL_DECOY_FDR = 1 << 7;
+
+    // the kinds of the PSM items in a peptide
+    private static final int ITEM_PSM = 0;
+    private static final int ITEM_PSM_SET = 1;
+
+    // the values of nullable booleans
+    private static final int BOOLEAN_FALSE = 0;
+    private static final int BOOLEAN_TRUE = 1;
+    private static final int BOOLEAN_NULL = 2;
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private ReportColumns() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * The report items of a snapshot, indexed in the order in which they are
+     * written. The indices are the references from the modellers and between
+     * the items.
+     */
+    static final class ReportItems {
+        private final List<ReportPSM> psms = new ArrayList<>();
+        private final List<IdentificationRankGroup> rankGroups = new ArrayList<>();
+        private final List<ReportPSMSet> psmSets = new ArrayList<>();
+        private final List<ReportPeptide> peptides = new ArrayList<>();
+        private final List<ReportProtein> proteins = new ArrayList<>();
+        private final List<FDRData> fdrData = new ArrayList<>();
+
+        /** the indices of the items, by identity as the items override equals */
+        private final Map<Object, Integer> indices = new IdentityHashMap<>();
+
+
+        /**
+         * Returns the type of the reference for the given object, or null if
+         * it is no report item.
+         *
+         * @param obj
+         * @return
+         */
+        static IntermediateReference.Type getReferenceType(Object obj) {
+            if (obj instanceof ReportPSM) {
+                return IntermediateReference.Type.REPORT_PSM;
+            } else if (obj instanceof ReportPSMSet) {
+                return IntermediateReference.Type.REPORT_PSM_SET;
+            } else if (obj instanceof ReportPeptide) {
+                return IntermediateReference.Type.REPORT_PEPTIDE;
+            } else if (obj instanceof ReportProtein) {
+                return IntermediateReference.Type.REPORT_PROTEIN;
+            } else if (obj instanceof FDRData) {
+                return IntermediateReference.Type.FDR_DATA;
+            } else if (obj instanceof IdentificationRankGroup) {
+                return IntermediateReference.Type.RANK_GROUP;
+            }
+            return null;
+        }
+
+
+        /**
+         * Adds the given report item, if it is not yet added, and returns its
+         * index.
+         *
+         * @param item
+         * @return
+         */
+        int add(Object item) {
+            Integer index = indices.get(item);
+            if (index != null) {
+                return index;
+            }
+
+            List<Object> items = getItems(getReferenceType(item));
+            index = items.size();
+            items.add(item);
+            indices.put(item, index);
+            return index;
+        }
+
+
+        /**
+         * Returns the report item of the given type with the given index, or
+         * null if there is no such item.
+         *
+         * @param type
+         * @param index
+         * @return
+         */
+        Object get(IntermediateReference.Type type, long index) {
+            List<Object> items = getItems(type);
+            if ((items == null) || (index < 0) || (index >= items.size())) {
+                return null;
+            }
+            return items.get((int) index);
+        }
+
+
+        @SuppressWarnings("unchecked")
+        private List<Object> getItems(IntermediateReference.Type type) {
+            List<?> items;
+            switch (type) {
+            case REPORT_PSM:
+                items = psms;
+                break;
+            case REPORT_PSM_SET:
+                items = psmSets;
+                break;
+            case REPORT_PEPTIDE:
+                items = peptides;
+                break;
+            case REPORT_PROTEIN:
+                items = proteins;
+                break;
+            case FDR_DATA:
+                items = fdrData;
+                break;
+            case RANK_GROUP:
+                items = rankGroups;
+                break;
+            default:
+                items = null;
+                break;
+            }
+            return (List<Object>) items;
+        }
+
+
+        /**
+         * Adds all the items, which are referenced by the already added items,
+         * like the peptides of the proteins or the PSMs of the sets.
+         */
+        void addReferencedItems() {
+            int proteinIdx = 0;
+            int peptideIdx = 0;
+            int psmSetIdx = 0;
+            int psmIdx = 0;
+            int rankGroupIdx = 0;
+
+            boolean added = true;
+            while (added) {
+                added = false;
+
+                for (; proteinIdx < proteins.size(); proteinIdx++, added = true) {
+                    ReportProtein protein = proteins.get(proteinIdx);
+                    protein.getPeptides().forEach(this::add);
+                    protein.getSubSets().forEach(this::add);
+                }
+                for (; peptideIdx < peptides.size(); peptideIdx++, added = true) {
+                    peptides.get(peptideIdx).getPSMs().forEach(this::add);
+                }
+                for (; psmSetIdx < psmSets.size(); psmSetIdx++, added = true) {
+                    psmSets.get(psmSetIdx).getPSMs().forEach(this::add);
+                }
+                for (; psmIdx < psms.size(); psmIdx++, added = true) {
+                    IdentificationRankGroup rankGroup = psms.get(psmIdx).getIdentificationRankGroup();
+                    if (rankGroup != null) {
+                        add(rankGroup);
+                    }
+                }
+                for (; rankGroupIdx < rankGroups.size(); rankGroupIdx++, added = true) {
+                    rankGroups.get(rankGroupIdx).getPSMs().forEach(this::add);
+                }
+            }
+        }
+
+
+        private int indexOf(Object item) throws IOException {
+            Integer index = indices.get(item);
+            if (index == null) {
+                throw new IOException("The report item " + item + " was not added to the snapshot");
+            }
+            return index;
+        }
+    }
+
+
+    /**
+     * Writes the columns of all the report items, which must be complete, i.e.
+     * {@link ReportItems#addReferencedItems()} must be called before.
+     *
+     * @param out
+     * @param items
+     * @throws IOException
+     */
+    static void writeReportItems(SnapshotOutput out, ReportItems items) throws IOException {
+        writePSMs(out, items);
+        writeRankGroups(out, items);
+        writePSMSets(out, items);
+        writePeptides(out, items);
+        writeProteins(out, items);
+        writeFDRData(out, items.fdrData);
+    }
+
+
+    /**
+     * Reads the columns of all the report items.
+     *
+     * @param in
+     * @param handler the already restored intermediate structure
+     * @return
+     * @throws IOException
+     */
+    static ReportItems readReportItems(SnapshotInput in, PIAIntermediateJAXBHandler handler)
+            throws IOException {
+        ReportItems items = new ReportItems();
+
+        readPSMs(in, items, handler);
+        readRankGroups(in, items);
+        readPSMSets(in, items);
+        readPeptides(in, items, handler.getPeptides());
+        readProteins(in, items, handler.getAccessions());
+        readFDRData(in, items);
+
+        return items;
+    }
+
+
+    private static void writePSMs(SnapshotOutput out, ReportItems items) throws IOException {
+        List<ReportPSM> psms = items.psms;
+        out.writeInt(psms.size());
+
+        for (ReportPSM psm : psms) {
+            out.writeLong(psm.getId());
+        }
+        for (ReportPSM psm : psms) {
+            out.writeLong(psm.getSpectrum().getID());
+        }
+        for (ReportPSM psm : psms) {
+            out.writeByte(getFlags(psm, psm.getIsFDRGood()));
+        }
+        for (ReportPSM psm : psms) {
+            out.writeLong((psm.getRank() != null) ? psm.getRank() : 0L);
+        }
+        for (ReportPSM psm : psms) {
+            out.writeDouble(psm.getFDR());
+        }
+        for (ReportPSM psm : psms) {
+            out.writeDouble(psm.getQValue());
+        }
+        for (ReportPSM psm : psms) {
+            out.writeDouble(getValue(psm.getFDRScore()));
+        }
+
+        for (ReportPSM psm : psms) {
+            out.writeInt(psm.getAccessions().size());
+        }
+        for (ReportPSM psm : psms) {
+            for (Accession accession : psm.getAccessions()) {
+                out.writeLong(accession.getID());
+            }
+        }
+
+        // the ranks of the grouped PSMs are calculated by the groups on demand
+        List<Map.Entry<String, Integer>> ranks = new ArrayList<>();
+        for (ReportPSM psm : psms) {
+            int nrRanks = 0;
+            if (psm.getIdentificationRankGroup() == null) {
+                for (Map.Entry<String, Integer> rank : psm.getIdentificationRanks().entrySet()) {
+                    if (rank.getValue() != null) {
+                        ranks.add(rank);
+                        nrRanks++;
+                    }
+                }
+            }
+            out.writeInt(nrRanks);
+        }
+        for (Map.Entry<String, Integer> rank : ranks) {
+            out.writeString(rank.getKey());
+        }
+        for (Map.Entry<String, Integer> rank : ranks) {
+            out.writeInt(rank.getValue());
+        }
+    }
+
+
+    private static void readPSMs(SnapshotInput in, ReportItems items,
+            PIAIntermediateJAXBHandler handler) throws IOException {
+        int nrPSMs = in.readInt();
+
+        long[] ids = in.readLongs(nrPSMs);
+        long[] spectrumIDs = in.readLongs(nrPSMs);
+        byte[] flags = new byte[nrPSMs];
+        in.readBytes(flags, 0, nrPSMs);
+        long[] ranks = in.readLongs(nrPSMs);
+        double[] fdrValues = in.readDoubles(nrPSMs);
+        double[] qValues = in.readDoubles(nrPSMs);
+        double[] fdrScores = in.readDoubles(nrPSMs);
+
+        for (int idx = 0; idx < nrPSMs; idx++) {
+            PeptideSpectrumMatch spectrum = handler.getPSMs().get(spectrumIDs[idx]);
+            if (spectrum == null) {
+                throw new IOException("No spectrumMatch found for the report PSM '" + ids[idx] + '\'');
+            }
+
+            ReportPSM psm = new ReportPSM(ids[idx], spectrum);
+            psm.setIsDecoy((flags[idx] & FLAG_DECOY) != 0);
+            psm.setIsFDRGood((flags[idx] & FLAG_FDR_GOOD) != 0);
+            psm.setRank(((flags[idx] & FLAG_RANK) != 0) ? ranks[idx] : null);
+            psm.setFDR(fdrValues[idx]);
+            if (!Double.isNaN(qValues[idx])) {
+                psm.setQValue(qValues[idx]);
+            }
+            if ((flags[idx] & FLAG_FDR_SCORE) != 0) {
+                psm.setFDRScore(fdrScores[idx]);
+            }
+
+            items.add(psm);
+        }
+
+        int[] nrAccessions = in.readInts(nrPSMs);
+        for (int idx = 0; idx < nrPSMs; idx++) {
+            for (int i = 0; i < nrAccessions[idx]; i++) {
+                long accessionID = in.readLong();
+                Accession accession = handler.getAccessions().get(accessionID);
+                if (accession != null) {
+                    items.psms.get(idx).addAccession(accession);
+                } else {
+                    LOGGER.warn("No accession found for report PSM reference '" + accessionID + '\'');
+                }
+            }
+        }
+
+        int[] nrRanks = in.readInts(nrPSMs);
+        String[] rankScores = in.readStrings(sum(nrRanks));
+        int[] rankValues = in.readInts(rankScores.length);
+        int rankIdx = 0;
+        for (int idx = 0; idx < nrPSMs; idx++) {
+            for (int i = 0; i < nrRanks[idx]; i++, rankIdx++) {
+                items.psms.get(idx).setIdentificationRank(rankScores[rankIdx], rankValues[rankIdx]);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the identification rank groups. The orderings of the scores are
+     * usually shared by all groups, so each distinct map is written only once.
+     */
+    private static void writeRankGroups(SnapshotOutput out, ReportItems items) throws IOException {
+        List<IdentificationRankGroup> rankGroups = items.rankGroups;
+        out.writeInt(rankGroups.size());
+
+        Map<Map<String, Boolean>, Integer> orderings = new IdentityHashMap<>();
+        List<Map<String, Boolean>> orderingsList = new ArrayList<>();
+        for (IdentificationRankGroup rankGroup : rankGroups) {
+            Integer orderingIdx = orderings.get(rankGroup.getHigherScoreBetter());
+            if (orderingIdx == null) {
+                orderingIdx = orderingsList.size();
+                orderings.put(rankGroup.getHigherScoreBetter(), orderingIdx);
+                orderingsList.add(rankGroup.getHigherScoreBetter());
+            }
+            out.writeInt(orderingIdx);
+        }
+
+        for (IdentificationRankGroup rankGroup : rankGroups) {
+            out.writeInt(rankGroup.getPSMs().size());
+        }
+        for (IdentificationRankGroup rankGroup : rankGroups) {
+            for (ReportPSM psm : rankGroup.getPSMs()) {
+                out.writeInt(items.indexOf(psm));
+            }
+        }
+
+        out.writeInt(orderingsList.size());
+        for (Map<String, Boolean> ordering : orderingsList) {
+            out.writeInt(ordering.size());
+        }
+        for (Map<String, Boolean> ordering : orderingsList) {
+            for (String scoreShort : ordering.keySet()) {
+                out.writeString(scoreShort);
+            }
+        }
+        for (Map<String, Boolean> ordering : orderingsList) {
+            for (Boolean higherScoreBetter : ordering.values()) {
+                writeBoolean(out, higherScoreBetter);
+            }
+        }
+    }
+
+
+    private static void readRankGroups(SnapshotInput in, ReportItems items) throws IOException {
+        int nrGroups = in.readInt();
+
+        int[] orderingIndices = in.readInts(nrGroups);
+        int[] nrPSMs = in.readInts(nrGroups);
+        int[] psmIndices = in.readInts(sum(nrPSMs));
+
+        int nrOrderings = in.readInt();
+        int[] nrScores = in.readInts(nrOrderings);
+        String[] scoreShorts = in.readStrings(sum(nrScores));
+        List<Map<String, Boolean>> orderings = new ArrayList<>(nrOrderings);
+        int scoreIdx = 0;
+        for (int idx = 0; idx < nrOrderings; idx++) {
+            Map<String, Boolean> ordering = new HashMap<>(nrScores[idx]);
+            for (int i = 0; i < nrScores[idx]; i++, scoreIdx++) {
+                ordering.put(scoreShorts[scoreIdx], readBoolean(in));
+            }
+            orderings.add(ordering);
+        }
+
+        int psmIdx = 0;
+        for (int idx = 0; idx < nrGroups; idx++) {
+            List<ReportPSM> psms = new ArrayList<>(nrPSMs[idx]);
+            for (int i = 0; i < nrPSMs[idx]; i++, psmIdx++) {
+                psms.add(getItem(items.psms, psmIndices[psmIdx], "PSM"));
+            }
+            // the group sets itself in the PSMs, the ranks are calculated again on demand
+            items.add(new IdentificationRankGroup(psms, getItem(orderings, orderingIndices[idx], "ordering")));
+        }
+    }
+
+
+    private static void writePSMSets(SnapshotOutput out, ReportItems items) throws IOException {
+        List<ReportPSMSet> psmSets = items.psmSets;
+        out.writeInt(psmSets.size());
+
+        for (ReportPSMSet psmSet : psmSets) {
+            int flags = getFlags(psmSet, psmSet.getIsFDRGood());
+            flags |= (psmSet.getAverageFDRScore() != null) ? FLAG_AVERAGE_FDR_SCORE : 0;
+            out.writeByte(flags);
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeLong((psmSet.getRank() != null) ? psmSet.getRank() : 0L);
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeDouble(psmSet.getFDR());
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeDouble(psmSet.getQValue());
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeDouble(getValue(psmSet.getFDRScore()));
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeDouble(getValue(psmSet.getAverageFDRScore()));
+        }
+
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeInt(psmSet.getPSMs().size());
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            for (ReportPSM psm : psmSet.getPSMs()) {
+                out.writeInt(items.indexOf(psm));
+            }
+        }
+
+        // the sets only hold the used settings
+        for (ReportPSMSet psmSet : psmSets) {
+            out.writeInt(psmSet.getPSMSetSettings().size());
+        }
+        for (ReportPSMSet psmSet : psmSets) {
+            for (String setting : psmSet.getPSMSetSettings().keySet()) {
+                out.writeString(setting);
+            }
+        }
+    }
+
+
+    private static void readPSMSets(SnapshotInput in, ReportItems items) throws IOException {
+        int nrSets = in.readInt();
+
+        byte[] flags = new byte[nrSets];
+        in.readBytes(flags, 0, nrSets);
+        long[] ranks = in.readLongs(nrSets);
+        double[] fdrValues = in.readDoubles(nrSets);
+        double[] qValues = in.readDoubles(nrSets);
+        double[] fdrScores = in.readDoubles(nrSets);
+        double[] averageFDRScores = in.readDoubles(nrSets);
+
+        int[] nrPSMs = in.readInts(nrSets);
+        int[] psmIndices = in.readInts(sum(nrPSMs));
+
+        int[] nrSettings = in.readInts(nrSets);
+        String[] settings = in.readStrings(sum(nrSettings));
+
+        int psmIdx = 0;
+        int settingIdx = 0;
+        for (int idx = 0; idx < nrSets; idx++) {
+            List<ReportPSM> psms = new ArrayList<>(nrPSMs[idx]);
+            for (int i = 0; i < nrPSMs[idx]; i++, psmIdx++) {
+                psms.add(getItem(items.psms, psmIndices[psmIdx], "PSM"));
+            }
+
+            Map<String, Boolean> psmSetSettings = new HashMap<>(nrSettings[idx]);
+            for (int i = 0; i < nrSettings[idx]; i++, settingIdx++) {
+                psmSetSettings.put(settings[settingIdx], true);
+            }
+
+            ReportPSMSet psmSet = new ReportPSMSet(psms, psmSetSettings);
+            psmSet.setIsDecoy((flags[idx] & FLAG_DECOY) != 0);
+            psmSet.setIsFDRGood((flags[idx] & FLAG_FDR_GOOD) != 0);
+            psmSet.setRank(((flags[idx] & FLAG_RANK) != 0) ? ranks[idx] : null);
+            psmSet.setFDR(fdrValues[idx]);
+            if (!Double.isNaN(qValues[idx])) {
+                psmSet.setQValue(qValues[idx]);
+            }
+            if ((flags[idx] & FLAG_FDR_SCORE) != 0) {
+                psmSet.setFDRScore(fdrScores[idx]);
+            }
+            if ((flags[idx] & FLAG_AVERAGE_FDR_SCORE) != 0) {
+                psmSet.setAverageFDRScore(averageFDRScores[idx]);
+            }
+
+            items.add(psmSet);
+        }
+    }
+
+
+    private static void writePeptides(SnapshotOutput out, ReportItems items) throws IOException {
+        List<ReportPeptide> peptides = items.peptides;
+        out.writeInt(peptides.size());
+
+        for (ReportPeptide peptide : peptides) {
+            out.writeString(peptide.getStringID());
+        }
+        for (ReportPeptide peptide : peptides) {
+            out.writeString(peptide.getSequence());
+        }
+        for (ReportPeptide peptide : peptides) {
+            int flags = getFlags(peptide);
+            flags |= (peptide.getPeptide() != null) ? FLAG_PEPTIDE : 0;
+            out.writeByte(flags);
+        }
+        for (ReportPeptide peptide : peptides) {
+            out.writeLong((peptide.getPeptide() != null) ? peptide.getPeptide().getID() : 0L);
+        }
+        for (ReportPeptide peptide : peptides) {
+            out.writeLong((peptide.getRank() != null) ? peptide.getRank() : 0L);
+        }
+        for (ReportPeptide peptide : peptides) {
+            out.writeDouble(peptide.getFDR());
+        }
+        for (ReportPeptide peptide : peptides) {
+            out.writeDouble(peptide.getQValue());
+        }
+        for (ReportPeptide peptide : peptides) {
+            out.writeDouble(getValue(peptide.getFDRScore()));
+        }
+
+        for (ReportPeptide peptide : peptides) {
+            out.writeInt(peptide.getPSMs().size());
+        }
+        for (ReportPeptide peptide : peptides) {
+            for (PSMReportItem psm : peptide.getPSMs()) {
+                out.writeByte((psm instanceof ReportPSMSet) ? ITEM_PSM_SET : ITEM_PSM);
+            }
+        }
+        for (ReportPeptide peptide : peptides) {
+            for (PSMReportItem psm : peptide.getPSMs()) {
+                out.writeInt(items.indexOf(psm));
+            }
+        }
+
+        for (ReportPeptide peptide : peptides) {
+            out.writeInt(peptide.getNonScoringPSMIDs().size());
+        }
+        for (ReportPeptide peptide : peptides) {
+            for (Long psmID : peptide.getNonScoringPSMIDs()) {
+                out.writeLong(psmID);
+            }
+        }
+
+        for (ReportPeptide peptide : peptides) {
+            out.writeInt(peptide.getNonScoringSpectraIDKeys().size());
+        }
+        for (ReportPeptide peptide : peptides) {
+            for (String spectrumKey : peptide.getNonScoringSpectraIDKeys()) {
+                out.writeString(spectrumKey);
+            }
+        }
+    }
+
+
+    private static void readPeptides(SnapshotInput in, ReportItems items,
+            Map<Long, Peptide> intermediatePeptides) throws IOException {
+        int nrPeptides = in.readInt();
+
+        String[] stringIDs = in.readStrings(nrPeptides);
+        String[] sequences = in.readStrings(nrPeptides);
+        byte[] flags = new byte[nrPeptides];
+        in.readBytes(flags, 0, nrPeptides);
+        long[] peptideIDs = in.readLongs(nrPeptides);
+        long[] ranks = in.readLongs(nrPeptides);
+        double[] fdrValues = in.readDoubles(nrPeptides);
+        double[] qValues = in.readDoubles(nrPeptides);
+        double[] fdrScores = in.readDoubles(nrPeptides);
+
+        for (int idx = 0; idx < nrPeptides; idx++) {
+            Peptide intermediatePeptide = null;
+            if ((flags[idx] & FLAG_PEPTIDE) != 0) {
+                intermediatePeptide = intermediatePeptides.get(peptideIDs[idx]);
+                if (intermediatePeptide == null) {
+                    LOGGER.warn("No peptide found for report peptide reference '" + peptideIDs[idx] + '\'');
+                }
+            }
+
+            items.add(new ReportPeptide(sequences[idx], stringIDs[idx], intermediatePeptide));
+        }
+
+        int[] nrPSMs = in.readInts(nrPeptides);
+        int nrAllPSMs = sum(nrPSMs);
+        byte[] psmKinds = new byte[nrAllPSMs];
+        in.readBytes(psmKinds, 0, nrAllPSMs);
+        int[] psmIndices = in.readInts(nrAllPSMs);
+
+        int psmIdx = 0;
+        for (int idx = 0; idx < nrPeptides; idx++) {
+            ReportPeptide peptide = items.peptides.get(idx);
+            for (int i = 0; i < nrPSMs[idx]; i++, psmIdx++) {
+                if (psmKinds[psmIdx] == ITEM_PSM_SET) {
+                    peptide.addPSM(getItem(items.psmSets, psmIndices[psmIdx], "PSM set"));
+                } else {
+                    peptide.addPSM(getItem(items.psms, psmIndices[psmIdx], "PSM"));
+                }
+            }
+        }
+
+        int[] nrNonScoringPSMs = in.readInts(nrPeptides);
+        long[] nonScoringPSMIDs = in.readLongs(sum(nrNonScoringPSMs));
+        int[] nrNonScoringSpectra = in.readInts(nrPeptides);
+        String[] nonScoringSpectra = in.readStrings(sum(nrNonScoringSpectra));
+
+        int nonScoringPSMIdx = 0;
+        int nonScoringSpectrumIdx = 0;
+        for (int idx = 0; idx < nrPeptides; idx++) {
+            ReportPeptide peptide = items.peptides.get(idx);
+            for (int i = 0; i < nrNonScoringPSMs[idx]; i++, nonScoringPSMIdx++) {
+                peptide.addToNonScoringPSMs(nonScoringPSMIDs[nonScoringPSMIdx]);
+            }
+            for (int i = 0; i < nrNonScoringSpectra[idx]; i++, nonScoringSpectrumIdx++) {
+                peptide.addToNonScoringSpectra(nonScoringSpectra[nonScoringSpectrumIdx]);
+            }
+
+            peptide.setIsDecoy((flags[idx] & FLAG_DECOY) != 0);
+            peptide.setIsFDRGood((flags[idx] & FLAG_FDR_GOOD) != 0);
+            peptide.setRank(((flags[idx] & FLAG_RANK) != 0) ? ranks[idx] : null);
+            peptide.setFDR(fdrValues[idx]);
+            if (!Double.isNaN(qValues[idx])) {
+                peptide.setQValue(qValues[idx]);
+            }
+            if ((flags[idx] & FLAG_FDR_SCORE) != 0) {
+                peptide.setFDRScore(fdrScores[idx]);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the columns of the proteins. The coverages are not written, they
+     * are calculated again from the accessions and peptides.
+     */
+    private static void writeProteins(SnapshotOutput out, ReportItems items) throws IOException {
+        List<ReportProtein> proteins = items.proteins;
+        out.writeInt(proteins.size());
+
+        for (ReportProtein protein : proteins) {
+            out.writeLong(protein.getID());
+        }
+        for (ReportProtein protein : proteins) {
+            out.writeByte(getFlags(protein));
+        }
+        for (ReportProtein protein : proteins) {
+            out.writeLong((protein.getRank() != null) ? protein.getRank() : 0L);
+        }
+        for (ReportProtein protein : proteins) {
+            out.writeDouble((protein.getScore() != null) ? protein.getScore() : Double.NaN);
+        }
+        for (ReportProtein protein : proteins) {
+            out.writeDouble(protein.getFDR());
+        }
+        for (ReportProtein protein : proteins) {
+            out.writeDouble(protein.getQValue());
+        }
+
+        // the representative is the first added accession, so it is written first
+        List<List<Accession>> proteinsAccessions = new ArrayList<>(proteins.size());
+        for (ReportProtein protein : proteins) {
+            List<Accession> accessions = new ArrayList<>(protein.getAccessions());
+            Accession representative = protein.getRepresentative();
+            if ((representative != null) && accessions.remove(representative)) {
+                accessions.add(0, representative);
+            }
+            proteinsAccessions.add(accessions);
+            out.writeInt(accessions.size());
+        }
+        for (List<Accession> accessions : proteinsAccessions) {
+            for (Accession accession : accessions) {
+                out.writeLong(accession.getID());
+            }
+        }
+        for (int idx = 0; idx < proteins.size(); idx++) {
+            for (Accession accession : proteinsAccessions.get(idx)) {
+                writeBoolean(out, proteins.get(idx).getAccessionDecoyState(accession.getAccession()));
+            }
+        }
+
+        for (ReportProtein protein : proteins) {
+            out.writeInt(protein.getPeptides().size());
+        }
+        for (ReportProtein protein : proteins) {
+            for (ReportPeptide peptide : protein.getPeptides()) {
+                out.writeInt(items.indexOf(peptide));
+            }
+        }
+
+        for (ReportProtein protein : proteins) {
+            out.writeInt(protein.getSubSets().size());
+        }
+        for (ReportProtein protein : proteins) {
+            for (ReportProtein subSet : protein.getSubSets()) {
+                out.writeInt(items.indexOf(subSet));
+            }
+        }
+    }
+
+
+    private static void readProteins(SnapshotInput in, ReportItems items,
+            Map<Long, Accession> intermediateAccessions) throws IOException {
+        int nrProteins = in.readInt();
+
+        long[] ids = in.readLongs(nrProteins);
+        byte[] flags = new byte[nrProteins];
+        in.readBytes(flags, 0, nrProteins);
+        long[] ranks = in.readLongs(nrProteins);
+        double[] scores = in.readDoubles(nrProteins);
+        double[] fdrValues = in.readDoubles(nrProteins);
+        double[] qValues = in.readDoubles(nrProteins);
+
+        for (int idx = 0; idx < nrProteins; idx++) {
+            ReportProtein protein = new ReportProtein(ids[idx]);
+            protein.setIsDecoy((flags[idx] & FLAG_DECOY) != 0);
+            protein.setIsFDRGood((flags[idx] & FLAG_FDR_GOOD) != 0);
+            protein.setRank(((flags[idx] & FLAG_RANK) != 0) ? ranks[idx] : null);
+            protein.setScore(scores[idx]);
+            protein.setFDR(fdrValues[idx]);
+            protein.setQValue(qValues[idx]);
+
+            items.add(protein);
+        }
+
+        int[] nrAccessions = in.readInts(nrProteins);
+        long[] accessionIDs = in.readLongs(sum(nrAccessions));
+        int accessionIdx = 0;
+        for (int idx = 0; idx < nrProteins; idx++) {
+            ReportProtein protein = items.proteins.get(idx);
+            for (int i = 0; i < nrAccessions[idx]; i++, accessionIdx++) {
+                Accession accession = intermediateAccessions.get(accessionIDs[accessionIdx]);
+                if (accession != null) {
+                    protein.addAccession(accession);
+                } else {
+                    LOGGER.warn("No accession found for report protein reference '"
+                            + accessionIDs[accessionIdx] + '\'');
+                }
+            }
+        }
+
+        accessionIdx = 0;
+        for (int idx = 0; idx < nrProteins; idx++) {
+            ReportProtein protein = items.proteins.get(idx);
+            for (int i = 0; i < nrAccessions[idx]; i++, accessionIdx++) {
+                Boolean isDecoy = readBoolean(in);
+                Accession accession = intermediateAccessions.get(accessionIDs[accessionIdx]);
+                if (accession != null) {
+                    protein.setAccessionDecoyState(accession.getAccession(), isDecoy);
+                }
+            }
+        }
+
+        int[] nrPeptides = in.readInts(nrProteins);
+        int[] peptideIndices = in.readInts(sum(nrPeptides));
+        int peptideIdx = 0;
+        for (int idx = 0; idx < nrProteins; idx++) {
+            ReportProtein protein = items.proteins.get(idx);
+            for (int i = 0; i < nrPeptides[idx]; i++, peptideIdx++) {
+                protein.addPeptide(getItem(items.peptides, peptideIndices[peptideIdx], "peptide"));
+            }
+        }
+
+        int[] nrSubSets = in.readInts(nrProteins);
+        int[] subSetIndices = in.readInts(sum(nrSubSets));
+        int subSetIdx = 0;
+        for (int idx = 0; idx < nrProteins; idx++) {
+            ReportProtein protein = items.proteins.get(idx);
+            for (int i = 0; i < nrSubSets[idx]; i++, subSetIdx++) {
+                protein.addToSubsets(getItem(items.proteins, subSetIndices[subSetIdx], "protein"));
+            }
+        }
+    }
+
+
+    private static void writeFDRData(SnapshotOutput out, List<FDRData> fdrData) throws IOException {
+        out.writeInt(fdrData.size());
+
+        for (FDRData data : fdrData) {
+            out.writeString((data.getDecoyStrategy() != null) ? data.getDecoyStrategy().name() : null);
+        }
+        for (FDRData data : fdrData) {
+            out.writeString(data.getDecoyPattern());
+        }
+        for (FDRData data : fdrData) {
+            out.writeString(data.getScoreShortName());
+        }
+        for (FDRData data : fdrData) {
+            out.writeByte(getFlags(data));
+        }
+        for (FDRData data : fdrData) {
+            out.writeDouble(valueOrNaN(data.getFDRThreshold()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeInt(valueOrZero(data.getNrItems()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeInt(valueOrZero(data.getNrTargets()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeInt(valueOrZero(data.getNrDecoys()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeInt(valueOrZero(data.getNrFDRGoodTargets()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeInt(valueOrZero(data.getNrFDRGoodDecoys()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeDouble(valueOrNaN(data.getScoreAtThreshold()));
+        }
+        for (FDRData data : fdrData) {
+            out.writeDouble(valueOrNaN(data.getArtificialDecoyFDR()));
+        }
+    }
+
+
+    private static void readFDRData(SnapshotInput in, ReportItems items) throws IOException {
+        int nrData = in.readInt();
+
+        String[] strategies = in.readStrings(nrData);
+        String[] patterns = in.readStrings(nrData);
+        String[] scoreShorts = in.readStrings(nrData);
+        byte[] flags = new byte[nrData];
+        in.readBytes(flags, 0, nrData);
+        double[] thresholds = in.readDoubles(nrData);
+        int[] nrItems = in.readInts(nrData);
+        int[] nrTargets = in.readInts(nrData);
+        int[] nrDecoys = in.readInts(nrData);
+        int[] nrFDRGoodTargets = in.readInts(nrData);
+        int[] nrFDRGoodDecoys = in.readInts(nrData);
+        double[] scoresAtThreshold = in.readDoubles(nrData);
+        double[] artificialDecoyFDRs = in.readDoubles(nrData);
+
+        for (int idx = 0; idx < nrData; idx++) {
+            FDRData.DecoyStrategy strategy = null;
+            if (strategies[idx] != null) {
+                try {
+                    strategy = FDRData.DecoyStrategy.valueOf(strategies[idx]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown decoy strategy '" + strategies[idx] + "' in snapshot", e);
+                }
+            }
+
+            int flag = flags[idx];
+            FDRData data = new FDRData(strategy, patterns[idx],
+                    ((flag & FLAG_THRESHOLD) != 0) ? thresholds[idx] : null);
+            data.setScoreShortName(scoreShorts[idx]);
+            data.setCalculationResults(
+                    ((flag & FLAG_NR_ITEMS) != 0) ? nrItems[idx] : null,
+                    ((flag & FLAG_NR_TARGETS) != 0) ? nrTargets[idx] : null,
+                    ((flag & FLAG_NR_DECOYS) != 0) ? nrDecoys[idx] : null,
+                    ((flag & FLAG_NR_FDR_GOOD_TARGETS) != 0) ? nrFDRGoodTargets[idx] : null,
+                    ((flag & FLAG_NR_FDR_GOOD_DECOYS) != 0) ? nrFDRGoodDecoys[idx] : null,
+                    ((flag & FLAG_SCORE_AT_THRESHOLD) != 0) ? scoresAtThreshold[idx] : null,
+                    ((flag & FLAG_ARTIFICIAL_DECOY_FDR) != 0) ? artificialDecoyFDRs[idx] : null);
+
+            items.add(data);
+        }
+    }
+
+
+    private static int getFlags(PSMReportItem psm, boolean isFDRGood) {
+        int flags = 0;
+        flags |= psm.getIsDecoy() ? FLAG_DECOY : 0;
+        flags |= isFDRGood ? FLAG_FDR_GOOD : 0;
+        flags |= (psm.getRank() != null) ? FLAG_RANK : 0;
+        flags |= (psm.getFDRScore() != null) ? FLAG_FDR_SCORE : 0;
+        return flags;
+    }
+
+
+    private static int getFlags(ReportPeptide peptide) {
+        int flags = 0;
+        flags |= peptide.getIsDecoy() ? FLAG_DECOY : 0;
+        flags |= peptide.getIsFDRGood() ? FLAG_FDR_GOOD : 0;
+        flags |= (peptide.getRank() != null) ? FLAG_RANK : 0;
+        flags |= (peptide.getFDRScore() != null) ? FLAG_FDR_SCORE : 0;
+        return flags;
+    }
+
+
+    private static int getFlags(ReportProtein protein) {
+        int flags = 0;
+        flags |= protein.getIsDecoy() ? FLAG_DECOY : 0;
+        flags |= protein.getIsFDRGood() ? FLAG_FDR_GOOD : 0;
+        flags |= (protein.getRank() != null) ? FLAG_RANK : 0;
+        return flags;
+    }
+
+
+    private static int getFlags(FDRData data) {
+        int flags = 0;
+        flags |= (data.getFDRThreshold() != null) ? FLAG_THRESHOLD : 0;
+        flags |= (data.getNrItems() != null) ? FLAG_NR_ITEMS : 0;
+        flags |= (data.getNrTargets() != null) ? FLAG_NR_TARGETS : 0;
+        flags |= (data.getNrDecoys() != null) ? FLAG_NR_DECOYS : 0;
+        flags |= (data.getNrFDRGoodTargets() != null) ? FLAG_NR_FDR_GOOD_TARGETS : 0;
+        flags |= (data.getNrFDRGoodDecoys() != null) ? FLAG_NR_FDR_GOOD_DECOYS : 0;
+        flags |= (data.getScoreAtThreshold() != null) ? FLAG_SCORE_AT_THRESHOLD : 0;
+        flags |= (data.getArtificialDecoyFDR() != null) ? FLAG_ARTIFICIAL_DECOY_FDR : 0;
+        return flags;
+    }
+
+
+    private static double getValue(ScoreModel score) {
+        return (score != null) ? valueOrNaN(score.getValue()) : Double.NaN;
+    }
+
+
+    private static double valueOrNaN(Double value) {
+        return (value != null) ? value : Double.NaN;
+    }
+
+
+    private static int valueOrZero(Integer value) {
+        return (value != null) ? value : 0;
+    }
+
+
+    private static void writeBoolean(SnapshotOutput out, Boolean value) throws IOException {
+        if (value == null) {
+            out.writeByte(BOOLEAN_NULL);
+        } else {
+            out.writeByte(value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        }
+    }
+
+
+    private static Boolean readBoolean(SnapshotInput in) throws IOException {
+        byte value = in.readByte();
+        if (value == BOOLEAN_NULL) {
+            return null;
+        }
+        return value == BOOLEAN_TRUE;
+    }
+
+
+    private static <T> T getItem(List<T> items, int index, String itemName) throws IOException {
+        if ((index < 0) || (index >= items.size())) {
+            throw new IOException("Invalid reference to the " + itemName + " with index " + index
+                    + " in the snapshot");
+        }
+        return items.get(index);
+    }
+
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+}
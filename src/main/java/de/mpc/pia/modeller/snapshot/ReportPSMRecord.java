@@ -0,0 +1,181 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A read-only PSM of a {@link PIAReportSnapshot}, holding the values of the
+ * {@link de.mpc.pia.modeller.psm.ReportPSM} at the time the snapshot was
+ * written.
+ *
+ * @author julian
+ *
+ */
+public final class ReportPSMRecord {
+
+    private final long id;
+    private final long fileID;
+    private final Long rank;
+    private final String sequence;
+    private final String modificationsString;
+    private final int charge;
+    private final double massToCharge;
+    private final double deltaMass;
+    private final double deltaPPM;
+    private final Double retentionTime;
+    private final int missedCleavages;
+    private final String sourceID;
+    private final String spectrumTitle;
+    private final boolean isDecoy;
+    private final boolean isFDRGood;
+    private final double fdr;
+    private final double qValue;
+    private final Double fdrScore;
+    private final List<String> accessions;
+    private final Map<String, Double> scores;
+
+
+    ReportPSMRecord(long id, long fileID, Long rank, String sequence, String modificationsString,
+            int charge, double massToCharge, double deltaMass, double deltaPPM, Double retentionTime,
+            int missedCleavages, String sourceID, String spectrumTitle, boolean isDecoy,
+            boolean isFDRGood, double fdr, double qValue, Double fdrScore, List<String> accessions,
+            Map<String, Double> scores) {
+        this.id = id;
+        this.fileID = fileID;
+        this.rank = rank;
+        this.sequence = sequence;
+        this.modificationsString = modificationsString;
+        this.charge = charge;
+        this.massToCharge = massToCharge;
+        this.deltaMass = deltaMass;
+        this.deltaPPM = deltaPPM;
+        this.retentionTime = retentionTime;
+        this.missedCleavages = missedCleavages;
+        this.sourceID = sourceID;
+        this.spectrumTitle = spectrumTitle;
+        this.isDecoy = isDecoy;
+        this.isFDRGood = isFDRGood;
+        this.fdr = fdr;
+        this.qValue = qValue;
+        this.fdrScore = fdrScore;
+        this.accessions = Collections.unmodifiableList(accessions);
+        this.scores = Collections.unmodifiableMap(scores);
+    }
+
+
+    public long getID() {
+        return id;
+    }
+
+
+    public long getFileID() {
+        return fileID;
+    }
+
+
+    public Long getRank() {
+        return rank;
+    }
+
+
+    public String getSequence() {
+        return sequence;
+    }
+
+
+    public String getModificationsString() {
+        return modificationsString;
+    }
+
+
+    public int getCharge() {
+        return charge;
+    }
+
+
+    public double getMassToCharge() {
+        return massToCharge;
+    }
+
+
+    public double getDeltaMass() {
+        return deltaMass;
+    }
+
+
+    public double getDeltaPPM() {
+        return deltaPPM;
+    }
+
+
+    public Double getRetentionTime() {
+        return retentionTime;
+    }
+
+
+    public int getMissedCleavages() {
+        return missedCleavages;
+    }
+
+
+    public String getSourceID() {
+        return sourceID;
+    }
+
+
+    public String getSpectrumTitle() {
+        return spectrumTitle;
+    }
+
+
+    public boolean getIsDecoy() {
+        return isDecoy;
+    }
+
+
+    public boolean getIsFDRGood() {
+        return isFDRGood;
+    }
+
+
+    public double getFDR() {
+        return fdr;
+    }
+
+
+    public double getQValue() {
+        return qValue;
+    }
+
+
+    /**
+     * The FDR score or null, if none was calculated
+     *
+     * @return
+     */
+    public Double getFDRScore() {
+        return fdrScore;
+    }
+
+
+    /**
+     * The accession strings
+     *
+     * @return
+     */
+    public List<String> getAccessions() {
+        return accessions;
+    }
+
+
+    /**
+     * The scores, mapped by their short names
+     *
+     * @return
+     */
+    public Map<String, Double> getScores() {
+        return scores;
+    }
+}
@@ -0,0 +1,130 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A read-only peptide of a {@link PIAReportSnapshot}, holding the values of
+ * the {@link de.mpc.pia.modeller.peptide.ReportPeptide} at the time the
+ * snapshot was written.
+ *
+ * @author julian
+ *
+ */
+public final class ReportPeptideRecord {
+
+    private final String stringID;
+    private final String sequence;
+    private final Long rank;
+    private final int missedCleavages;
+    private final int nrPSMs;
+    private final int nrSpectra;
+    private final boolean isDecoy;
+    private final boolean isFDRGood;
+    private final double fdr;
+    private final double qValue;
+    private final Double fdrScore;
+    private final List<String> accessions;
+    private final List<Long> psmIDs;
+
+
+    ReportPeptideRecord(String stringID, String sequence, Long rank, int missedCleavages,
+            int nrPSMs, int nrSpectra, boolean isDecoy, boolean isFDRGood, double fdr,
+            double qValue, Double fdrScore, List<String> accessions, List<Long> psmIDs) {
+        this.stringID = stringID;
+        this.sequence = sequence;
+        this.rank = rank;
+        this.missedCleavages = missedCleavages;
+        this.nrPSMs = nrPSMs;
+        this.nrSpectra = nrSpectra;
+        this.isDecoy = isDecoy;
+        this.isFDRGood = isFDRGood;
+        this.fdr = fdr;
+        this.qValue = qValue;
+        this.fdrScore = fdrScore;
+        this.accessions = Collections.unmodifiableList(accessions);
+        this.psmIDs = Collections.unmodifiableList(psmIDs);
+    }
+
+
+    public String getStringID() {
+        return stringID;
+    }
+
+
+    public String getSequence() {
+        return sequence;
+    }
+
+
+    public Long getRank() {
+        return rank;
+    }
+
+
+    public int getMissedCleavages() {
+        return missedCleavages;
+    }
+
+
+    public int getNrPSMs() {
+        return nrPSMs;
+    }
+
+
+    public int getNrSpectra() {
+        return nrSpectra;
+    }
+
+
+    public boolean getIsDecoy() {
+        return isDecoy;
+    }
+
+
+    public boolean getIsFDRGood() {
+        return isFDRGood;
+    }
+
+
+    public double getFDR() {
+        return fdr;
+    }
+
+
+    public double getQValue() {
+        return qValue;
+    }
+
+
+    /**
+     * The FDR score or null, if none was calculated
+     *
+     * @return
+     */
+    public Double getFDRScore() {
+        return fdrScore;
+    }
+
+
+    /**
+     * The accession strings
+     *
+     * @return
+     */
+    public List<String> getAccessions() {
+        return accessions;
+    }
+
+
+    /**
+     * The IDs of the PSMs of this peptide, use
+     * {@link PIAReportSnapshot#getPSMByID(long)} to get them.
+     *
+     * @return
+     */
+    public List<Long> getPSMIDs() {
+        return psmIDs;
+    }
+}
@@ -0,0 +1,145 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A read-only protein of a {@link PIAReportSnapshot}, holding the values of
+ * the {@link de.mpc.pia.modeller.protein.ReportProtein} at the time the
+ * snapshot was written.
+ *
+ * @author julian
+ *
+ */
+public final class ReportProteinRecord {
+
+    private final long id;
+    private final Long rank;
+    private final Double score;
+    private final int nrPeptides;
+    private final int nrPSMs;
+    private final int nrSpectra;
+    private final boolean isDecoy;
+    private final boolean isFDRGood;
+    private final double fdr;
+    private final double qValue;
+    private final String representative;
+    private final Map<String, String> accessionDescriptions;
+    private final List<String> peptideStringIDs;
+    private final List<Long> subSetIDs;
+
+
+    ReportProteinRecord(long id, Long rank, Double score, int nrPeptides, int nrPSMs,
+            int nrSpectra, boolean isDecoy, boolean isFDRGood, double fdr, double qValue,
+            String representative, Map<String, String> accessionDescriptions,
+            List<String> peptideStringIDs, List<Long> subSetIDs) {
+        this.id = id;
+        this.rank = rank;
+        this.score = score;
+        this.nrPeptides = nrPeptides;
+        this.nrPSMs = nrPSMs;
+        this.nrSpectra = nrSpectra;
+        this.isDecoy = isDecoy;
+        this.isFDRGood = isFDRGood;
+        this.fdr = fdr;
+        this.qValue = qValue;
+        this.representative = representative;
+        this.accessionDescriptions = Collections.unmodifiableMap(accessionDescriptions);
+        this.peptideStringIDs = Collections.unmodifiableList(peptideStringIDs);
+        this.subSetIDs = Collections.unmodifiableList(subSetIDs);
+    }
+
+
+    public long getID() {
+        return id;
+    }
+
+
+    public Long getRank() {
+        return rank;
+    }
+
+
+    public Double getScore() {
+        return score;
+    }
+
+
+    public int getNrPeptides() {
+        return nrPeptides;
+    }
+
+
+    public int getNrPSMs() {
+        return nrPSMs;
+    }
+
+
+    public int getNrSpectra() {
+        return nrSpectra;
+    }
+
+
+    public boolean getIsDecoy() {
+        return isDecoy;
+    }
+
+
+    public boolean getIsFDRGood() {
+        return isFDRGood;
+    }
+
+
+    public double getFDR() {
+        return fdr;
+    }
+
+
+    public double getQValue() {
+        return qValue;
+    }
+
+
+    /**
+     * The representative accession string
+     *
+     * @return
+     */
+    public String getRepresentative() {
+        return representative;
+    }
+
+
+    /**
+     * The descriptions of all accessions, mapped by the accession strings (in
+     * the order of the protein)
+     *
+     * @return
+     */
+    public Map<String, String> getAccessionDescriptions() {
+        return accessionDescriptions;
+    }
+
+
+    /**
+     * The string IDs of the protein's peptides, use
+     * {@link PIAReportSnapshot#getPeptideByStringID(String)} to get them.
+     *
+     * @return
+     */
+    public List<String> getPeptideStringIDs() {
+        return peptideStringIDs;
+    }
+
+
+    /**
+     * The IDs of the sub-set proteins
+     *
+     * @return
+     */
+    public List<Long> getSubSetIDs() {
+        return subSetIDs;
+    }
+}
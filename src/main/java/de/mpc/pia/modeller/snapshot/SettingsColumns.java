@@ -0,0 +1,561 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.mpc.pia.modeller.protein.inference.AbstractProteinInference;
+import de.mpc.pia.modeller.protein.inference.ProteinInferenceFactory;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.ProteinScoringFactory;
+import de.mpc.pia.modeller.psm.PSMReportItemComparator;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.FilterFactory;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.report.filter.impl.PSMTopIdentificationFilter;
+import de.mpc.pia.modeller.report.filter.impl.PeptideScoreFilter;
+import de.mpc.pia.modeller.report.settings.Setting;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+/**
+ * Writes and reads the settings of the modellers column by column, like the
+ * {@link ReportColumns}. The filters are stored with their short name,
+ * comparator, value and negation and restored by the {@link FilterFactory}.
+ * The score maps, the score comparators and the applied protein inference
+ * and scoring are stored as key/value pairs and restored by their factories.
+ *
+ * @author julian
+ *
+ */
+final class SettingsColumns {
+
+    // the kinds of the settings
+    private static final int KIND_STRING_MAP = 0;
+    private static final int KIND_BOOLEAN_MAP = 1;
+    private static final int KIND_COMPARATOR_MAP = 2;
+    private static final int KIND_COMPARATOR = 3;
+    private static final int KIND_INFERENCE = 4;
+    private static final int KIND_SCORING = 5;
+
+    // the keys of the settings, besides the keys of the maps
+    private static final String KEY_SHORT_NAME = "short_name";
+    private static final String KEY_SORT_NAME = "sort_name";
+    private static final String KEY_SCORE_SHORT = "score_short";
+    private static final String KEY_HIGHER_SCORE_BETTER = "higher_score_better";
+    private static final String KEY_SCORE_NAMES = "score_names";
+    private static final String KEY_ALLOWED_THREADS = "allowed_threads";
+    private static final String KEY_SCORING = "scoring";
+    private static final String KEY_AVAILABLE_SCORES = "available_scores";
+    private static final String KEY_FILTER = "filter";
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private SettingsColumns() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * The filters and settings of a snapshot, indexed in the order in which
+     * they are written. A setting is always added after the settings and
+     * filters it references, so they can be restored in this order.
+     */
+    static final class Settings {
+        private final List<AbstractFilter> filters = new ArrayList<>();
+        private final List<Object> settings = new ArrayList<>();
+
+        /** the indices of the filters and settings, by identity as the maps override equals */
+        private final Map<Object, Integer> indices = new IdentityHashMap<>();
+
+
+        /**
+         * Returns the type of the reference for the given object, or null if
+         * it is neither a filter nor a setting.
+         *
+         * @param obj
+         * @return
+         */
+        static IntermediateReference.Type getReferenceType(Object obj) {
+            if (obj instanceof AbstractFilter) {
+                return IntermediateReference.Type.FILTER;
+            } else if (getKind(obj) != null) {
+                return IntermediateReference.Type.SETTING;
+            }
+            return null;
+        }
+
+
+        /**
+         * Adds the given filter or setting and all the settings it references,
+         * if they are not yet added, and returns its index.
+         *
+         * @param obj
+         * @return
+         */
+        int add(Object obj) {
+            Integer index = indices.get(obj);
+            if (index != null) {
+                return index;
+            }
+
+            if (obj instanceof AbstractFilter) {
+                index = filters.size();
+                filters.add((AbstractFilter) obj);
+            } else {
+                getReferencedObjects(obj).forEach(this::add);
+                index = settings.size();
+                settings.add(obj);
+            }
+            indices.put(obj, index);
+            return index;
+        }
+
+
+        /**
+         * Returns the filter or setting of the given type with the given
+         * index, or null if there is no such object.
+         *
+         * @param type
+         * @param index
+         * @return
+         */
+        Object get(IntermediateReference.Type type, long index) {
+            List<?> objects = (type == IntermediateReference.Type.FILTER) ? filters : settings;
+            if ((index < 0) || (index >= objects.size())) {
+                return null;
+            }
+            return objects.get((int) index);
+        }
+
+
+        private String indexOf(Object obj) throws IOException {
+            Integer index = indices.get(obj);
+            if (index == null) {
+                throw new IOException("The setting " + obj + " was not added to the snapshot");
+            }
+            return Integer.toString(index);
+        }
+    }
+
+
+    /**
+     * Returns the kind of the given setting, or null if it is none. Only plain
+     * {@link HashMap}s with String keys and either String, Boolean or
+     * comparator values are stored as settings, so the restored maps have the
+     * same class.
+     */
+    private static Integer getKind(Object obj) {
+        if (obj instanceof AbstractProteinInference) {
+            return KIND_INFERENCE;
+        } else if (obj instanceof AbstractScoring) {
+            return KIND_SCORING;
+        } else if (isComparator(obj)) {
+            return KIND_COMPARATOR;
+        } else if ((obj != null) && (obj.getClass() == HashMap.class)) {
+            return getMapKind((Map<?, ?>) obj);
+        }
+        return null;
+    }
+
+
+    private static boolean isComparator(Object obj) {
+        return (obj instanceof PSMReportItemComparator)
+                || ((obj != null) && (obj.getClass() == ScoreComparator.class));
+    }
+
+
+    private static Integer getMapKind(Map<?, ?> map) {
+        boolean strings = true;
+        boolean booleans = true;
+        boolean comparators = true;
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String)) {
+                return null;
+            }
+            Object value = entry.getValue();
+            if (value != null) {
+                strings &= value instanceof String;
+                booleans &= value instanceof Boolean;
+                comparators &= isComparator(value);
+            }
+        }
+
+        if (strings) {
+            return KIND_STRING_MAP;
+        } else if (booleans) {
+            return KIND_BOOLEAN_MAP;
+        } else if (comparators) {
+            return KIND_COMPARATOR_MAP;
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the filters and settings, which are referenced by the given
+     * setting.
+     */
+    private static List<Object> getReferencedObjects(Object setting) {
+        List<Object> referenced = new ArrayList<>();
+
+        if (setting instanceof AbstractProteinInference) {
+            AbstractProteinInference inference = (AbstractProteinInference) setting;
+            if (inference.getScoring() != null) {
+                referenced.add(inference.getScoring());
+            }
+            if (inference.getAvailableScoreShorts() != null) {
+                referenced.add(inference.getAvailableScoreShorts());
+            }
+            referenced.addAll(inference.getFilters());
+        } else if (setting instanceof AbstractScoring) {
+            referenced.add(((AbstractScoring) setting).getScoreSetting().getTypedParams());
+        } else if (setting instanceof Map) {
+            for (Object value : ((Map<?, ?>) setting).values()) {
+                if (isComparator(value)) {
+                    referenced.add(value);
+                }
+            }
+        }
+
+        return referenced;
+    }
+
+
+    /**
+     * Writes the columns of all the filters, i.e. the short name, comparator,
+     * value and negation of each filter.
+     *
+     * @param out
+     * @param items
+     * @throws IOException
+     */
+    static void writeFilters(SnapshotOutput out, Settings items) throws IOException {
+        List<AbstractFilter> filters = items.filters;
+        out.writeInt(filters.size());
+
+        for (AbstractFilter filter : filters) {
+            out.writeString(getFilterShortName(filter));
+        }
+        for (AbstractFilter filter : filters) {
+            out.writeString(filter.getFilterComparator().getName());
+        }
+        for (AbstractFilter filter : filters) {
+            Object value = filter.getFilterValue();
+            out.writeString((value != null) ? value.toString() : null);
+        }
+        for (AbstractFilter filter : filters) {
+            out.writeByte(filter.getFilterNegate() ? 1 : 0);
+        }
+    }
+
+
+    /**
+     * Returns the short name, by which the {@link FilterFactory} creates the
+     * given filter. For the score bound filters, this contains the score.
+     */
+    private static String getFilterShortName(AbstractFilter filter) {
+        if (filter instanceof PSMScoreFilter) {
+            return PSMScoreFilter.PREFIX + ((PSMScoreFilter) filter).getScoreShortName();
+        } else if (filter instanceof PeptideScoreFilter) {
+            return PeptideScoreFilter.PREFIX + ((PeptideScoreFilter) filter).getScoreShortName();
+        } else if (filter instanceof PSMTopIdentificationFilter) {
+            return PSMTopIdentificationFilter.PREFIX + ((PSMTopIdentificationFilter) filter).getScoreShortName();
+        }
+        return filter.getShortName();
+    }
+
+
+    /**
+     * Reads the columns of all the filters into the given settings.
+     *
+     * @param in
+     * @param items
+     * @throws IOException
+     */
+    static void readFilters(SnapshotInput in, Settings items) throws IOException {
+        int nrFilters = in.readInt();
+
+        String[] shortNames = in.readStrings(nrFilters);
+        String[] comparators = in.readStrings(nrFilters);
+        String[] values = in.readStrings(nrFilters);
+
+        for (int idx = 0; idx < nrFilters; idx++) {
+            boolean negate = in.readByte() != 0;
+
+            StringBuilder messages = new StringBuilder();
+            AbstractFilter filter = FilterFactory.newInstanceOf(shortNames[idx],
+                    FilterComparator.getFilterComparatorByName(comparators[idx]), values[idx],
+                    negate, messages);
+            if (filter == null) {
+                throw new IOException("Could not restore the filter " + shortNames[idx] + ' '
+                        + comparators[idx] + ' ' + values[idx] + " of the snapshot: " + messages);
+            }
+            items.add(filter);
+        }
+    }
+
+
+    /**
+     * Writes all the settings as key/value columns. The filters and other
+     * settings referenced by a setting are written as their indices.
+     *
+     * @param out
+     * @param items
+     * @throws IOException
+     */
+    static void writeSettings(SnapshotOutput out, Settings items) throws IOException {
+        List<Object> settings = items.settings;
+        out.writeInt(settings.size());
+
+        List<List<String[]>> entries = new ArrayList<>(settings.size());
+        for (Object setting : settings) {
+            out.writeInt(getKind(setting));
+            entries.add(getEntries(setting, items));
+        }
+
+        for (List<String[]> settingEntries : entries) {
+            out.writeInt(settingEntries.size());
+        }
+        for (List<String[]> settingEntries : entries) {
+            for (String[] entry : settingEntries) {
+                out.writeString(entry[0]);
+            }
+        }
+        for (List<String[]> settingEntries : entries) {
+            for (String[] entry : settingEntries) {
+                out.writeString(entry[1]);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the key/value pairs of the given setting.
+     */
+    private static List<String[]> getEntries(Object setting, Settings items) throws IOException {
+        List<String[]> entries = new ArrayList<>();
+
+        if (setting instanceof AbstractProteinInference) {
+            AbstractProteinInference inference = (AbstractProteinInference) setting;
+            entries.add(new String[] {KEY_SHORT_NAME, inference.getShortName()});
+            entries.add(new String[] {KEY_ALLOWED_THREADS, Integer.toString(inference.getAllowedThreads())});
+            if (inference.getScoring() != null) {
+                entries.add(new String[] {KEY_SCORING, items.indexOf(inference.getScoring())});
+            }
+            if (inference.getAvailableScoreShorts() != null) {
+                entries.add(new String[] {KEY_AVAILABLE_SCORES, items.indexOf(inference.getAvailableScoreShorts())});
+            }
+            for (AbstractFilter filter : inference.getFilters()) {
+                entries.add(new String[] {KEY_FILTER, items.indexOf(filter)});
+            }
+        } else if (setting instanceof AbstractScoring) {
+            AbstractScoring scoring = (AbstractScoring) setting;
+            entries.add(new String[] {KEY_SHORT_NAME, scoring.getShortName()});
+            entries.add(new String[] {KEY_SCORE_NAMES, items.indexOf(scoring.getScoreSetting().getTypedParams())});
+            for (Setting<HashMap<String, String>> scoringSetting : scoring.getSettings()) {
+                entries.add(new String[] {scoringSetting.getShortName(), scoringSetting.getValue()});
+            }
+        } else if (setting instanceof PSMReportItemComparator) {
+            entries.add(new String[] {KEY_SORT_NAME, ((PSMReportItemComparator) setting).name()});
+        } else if (setting instanceof ScoreComparator) {
+            ScoreComparator<?> comparator = (ScoreComparator<?>) setting;
+            entries.add(new String[] {KEY_SCORE_SHORT, comparator.getScoreModelName()});
+            entries.add(new String[] {KEY_HIGHER_SCORE_BETTER, toString(comparator.getHigherScoreBetter())});
+        } else {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) setting).entrySet()) {
+                Object value = entry.getValue();
+                entries.add(new String[] {(String) entry.getKey(),
+                        isComparator(value) ? items.indexOf(value) : toString(value)});
+            }
+        }
+
+        return entries;
+    }
+
+
+    private static String toString(Object value) {
+        return (value != null) ? value.toString() : null;
+    }
+
+
+    /**
+     * Reads all the settings, the filters must be read before.
+     *
+     * @param in
+     * @param items
+     * @throws IOException
+     */
+    static void readSettings(SnapshotInput in, Settings items) throws IOException {
+        int nrSettings = in.readInt();
+
+        int[] kinds = in.readInts(nrSettings);
+        int[] nrEntries = in.readInts(nrSettings);
+        String[] keys = in.readStrings(sum(nrEntries));
+        String[] values = in.readStrings(keys.length);
+
+        int entryIdx = 0;
+        for (int idx = 0; idx < nrSettings; idx++) {
+            List<String[]> entries = new ArrayList<>(nrEntries[idx]);
+            for (int i = 0; i < nrEntries[idx]; i++, entryIdx++) {
+                entries.add(new String[] {keys[entryIdx], values[entryIdx]});
+            }
+            items.add(createSetting(kinds[idx], entries, items));
+        }
+    }
+
+
+    /**
+     * Creates the setting of the given kind from its key/value pairs.
+     */
+    private static Object createSetting(int kind, List<String[]> entries, Settings items)
+            throws IOException {
+        switch (kind) {
+        case KIND_STRING_MAP:
+        case KIND_BOOLEAN_MAP:
+        case KIND_COMPARATOR_MAP:
+            HashMap<String, Object> map = new HashMap<>(entries.size());
+            for (String[] entry : entries) {
+                Object value = entry[1];
+                if ((kind == KIND_BOOLEAN_MAP) && (value != null)) {
+                    value = Boolean.valueOf(entry[1]);
+                } else if ((kind == KIND_COMPARATOR_MAP) && (value != null)) {
+                    value = getSetting(items, entry[1], Comparator.class);
+                }
+                map.put(entry[0], value);
+            }
+            return map;
+
+        case KIND_COMPARATOR:
+            return createComparator(entries);
+
+        case KIND_SCORING:
+            return createScoring(entries, items);
+
+        case KIND_INFERENCE:
+            return createInference(entries, items);
+
+        default:
+            throw new IOException("Unknown kind of setting " + kind + " in the snapshot");
+        }
+    }
+
+
+    private static Object createComparator(List<String[]> entries) throws IOException {
+        String sortName = getValue(entries, KEY_SORT_NAME);
+        if (sortName != null) {
+            try {
+                return PSMReportItemComparator.valueOf(sortName);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown comparator " + sortName + " in the snapshot", e);
+            }
+        }
+
+        String higherScoreBetter = getValue(entries, KEY_HIGHER_SCORE_BETTER);
+        if (higherScoreBetter == null) {
+            return new ScoreComparator<>(getValue(entries, KEY_SCORE_SHORT));
+        }
+        return new ScoreComparator<>(getValue(entries, KEY_SCORE_SHORT), Boolean.parseBoolean(higherScoreBetter));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static AbstractScoring createScoring(List<String[]> entries, Settings items) throws IOException {
+        String shortName = getValue(entries, KEY_SHORT_NAME);
+        AbstractScoring scoring = ProteinScoringFactory.getNewInstanceByName(shortName,
+                getSetting(items, getValue(entries, KEY_SCORE_NAMES), Map.class));
+        if (scoring == null) {
+            throw new IOException("Unknown protein scoring " + shortName + " in the snapshot");
+        }
+
+        for (String[] entry : entries) {
+            if (!KEY_SHORT_NAME.equals(entry[0]) && !KEY_SCORE_NAMES.equals(entry[0])) {
+                scoring.setSetting(entry[0], entry[1]);
+            }
+        }
+        return scoring;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static AbstractProteinInference createInference(List<String[]> entries, Settings items)
+            throws IOException {
+        String shortName = getValue(entries, KEY_SHORT_NAME);
+        AbstractProteinInference inference = ProteinInferenceFactory.createInstanceOf(shortName);
+        if (inference == null) {
+            throw new IOException("Unknown protein inference " + shortName + " in the snapshot");
+        }
+
+        for (String[] entry : entries) {
+            switch (entry[0]) {
+            case KEY_ALLOWED_THREADS:
+                inference.setAllowedThreads(Integer.parseInt(entry[1]));
+                break;
+            case KEY_SCORING:
+                inference.setScoring(getSetting(items, entry[1], AbstractScoring.class));
+                break;
+            case KEY_AVAILABLE_SCORES:
+                inference.setAvailableScoreShorts(getSetting(items, entry[1], Map.class));
+                break;
+            case KEY_FILTER:
+                inference.addFilter((AbstractFilter) getObject(items, IntermediateReference.Type.FILTER, entry[1]));
+                break;
+            default:
+                break;
+            }
+        }
+        return inference;
+    }
+
+
+    private static String getValue(List<String[]> entries, String key) {
+        for (String[] entry : entries) {
+            if (key.equals(entry[0])) {
+                return entry[1];
+            }
+        }
+        return null;
+    }
+
+
+    private static <T> T getSetting(Settings items, String index, Class<T> settingClass) throws IOException {
+        Object setting = getObject(items, IntermediateReference.Type.SETTING, index);
+        if (!settingClass.isInstance(setting)) {
+            throw new IOException("The setting with index " + index + " in the snapshot is no "
+                    + settingClass.getSimpleName());
+        }
+        return settingClass.cast(setting);
+    }
+
+
+    private static Object getObject(Settings items, IntermediateReference.Type type, String index)
+            throws IOException {
+        Object obj = null;
+        try {
+            obj = items.get(type, Long.parseLong(index));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid reference to the " + type + ' ' + index + " in the snapshot", e);
+        }
+        if (obj == null) {
+            throw new IOException("Invalid reference to the " + type + ' ' + index + " in the snapshot");
+        }
+        return obj;
+    }
+
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,248 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Buffered reader of the primitive values of a snapshot from a
+ * {@link FileChannel}, the counterpart of {@link SnapshotOutput}.
+ *
+ * @author julian
+ *
+ */
+class SnapshotInput {
+
+    /** the size of the read buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+
+    /** the read channel */
+    private final FileChannel channel;
+
+    /** the read buffer, always in "get" mode */
+    private final ByteBuffer buffer;
+
+    /** the string dictionary */
+    private String[] dictionary;
+
+
+    /**
+     * Creates a reader at the current position of the channel.
+     *
+     * @param channel
+     */
+    SnapshotInput(FileChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.limit(0);
+        this.dictionary = new String[0];
+    }
+
+
+    /**
+     * The current read position in the file.
+     *
+     * @return
+     * @throws IOException
+     */
+    long position() throws IOException {
+        return channel.position() - buffer.remaining();
+    }
+
+
+    /**
+     * Sets the read position in the file.
+     *
+     * @param position
+     * @throws IOException
+     */
+    void seek(long position) throws IOException {
+        channel.position(position);
+        buffer.clear();
+        buffer.limit(0);
+    }
+
+
+    /**
+     * Skips the given number of bytes.
+     *
+     * @param bytes
+     * @throws IOException
+     */
+    void skip(long bytes) throws IOException {
+        seek(position() + bytes);
+    }
+
+
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of the snapshot file");
+                }
+            }
+            buffer.flip();
+        }
+    }
+
+
+    byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+
+    int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+
+    long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+
+    double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+
+    void readBytes(byte[] bytes, int offset, int length) throws IOException {
+        int pos = offset;
+        int end = offset + length;
+        while (pos < end) {
+            require(1);
+            int chunk = Math.min(buffer.remaining(), end - pos);
+            buffer.get(bytes, pos, chunk);
+            pos += chunk;
+        }
+    }
+
+
+    int[] readInts(int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readInt();
+        }
+        return values;
+    }
+
+
+    long[] readLongs(int count) throws IOException {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readLong();
+        }
+        return values;
+    }
+
+
+    double[] readDoubles(int count) throws IOException {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readDouble();
+        }
+        return values;
+    }
+
+
+    /**
+     * Reads a string, which was written by its dictionary index.
+     *
+     * @return
+     * @throws IOException
+     */
+    String readString() throws IOException {
+        int index = readInt();
+        if (index == SnapshotOutput.NULL_STRING) {
+            return null;
+        }
+        if ((index < 0) || (index >= dictionary.length)) {
+            throw new IOException("Invalid string index in snapshot: " + index);
+        }
+        return dictionary[index];
+    }
+
+
+    String[] readStrings(int count) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readString();
+        }
+        return values;
+    }
+
+
+    /**
+     * Reads the string dictionary at the given position and returns to the
+     * current position afterwards.
+     *
+     * @param dictionaryPosition
+     * @throws IOException
+     */
+    void readDictionary(long dictionaryPosition) throws IOException {
+        long currentPosition = position();
+        seek(dictionaryPosition);
+
+        String[] strings = new String[readInt()];
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = readInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+            }
+            readBytes(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        dictionary = strings;
+
+        seek(currentPosition);
+    }
+
+
+    /**
+     * Returns an {@link InputStream} view on the next length bytes, e.g. for
+     * embedded serialized objects. Closing the stream does not close the
+     * channel.
+     *
+     * @param length
+     * @return
+     */
+    InputStream asInputStream(long length) {
+        return new InputStream() {
+            private long left = length;
+
+            @Override
+            public int read() throws IOException {
+                if (left <= 0) {
+                    return -1;
+                }
+                left--;
+                return readByte() & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (left <= 0) {
+                    return -1;
+                }
+                int chunk = (int) Math.min(len, left);
+                readBytes(b, off, chunk);
+                left -= chunk;
+                return chunk;
+            }
+        };
+    }
+}
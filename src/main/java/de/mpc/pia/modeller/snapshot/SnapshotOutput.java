@@ -0,0 +1,240 @@
+package de.mpc.pia.modeller.snapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Buffered writer of the primitive values of a snapshot into a
+ * {@link FileChannel}. Strings are not written directly, but stored in a
+ * dictionary and only their index is written. The dictionary is written at
+ * the end of the snapshot by {@link #writeDictionary()}.
+ *
+ * @author julian
+ *
+ */
+class SnapshotOutput {
+
+    /** the size of the write buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** the index written for null strings */
+    static final int NULL_STRING = -1;
+
+
+    /** the written channel */
+    private final FileChannel channel;
+
+    /** the write buffer */
+    private final ByteBuffer buffer;
+
+    /** the indices of the strings in the dictionary */
+    private final Map<String, Integer> stringIndices;
+
+    /** the strings of the dictionary, in the order of their indices */
+    private final List<String> strings;
+
+
+    /**
+     * Creates a writer at the current position of the channel.
+     *
+     * @param channel
+     */
+    SnapshotOutput(FileChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.stringIndices = new HashMap<>();
+        this.strings = new ArrayList<>();
+    }
+
+
+    /**
+     * The current position in the file, including buffered bytes.
+     *
+     * @return
+     * @throws IOException
+     */
+    long position() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+
+    /**
+     * Writes all buffered bytes to the channel.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+
+    void writeByte(int value) throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte) value);
+    }
+
+
+    void writeInt(int value) throws IOException {
+        ensureRemaining(4);
+        buffer.putInt(value);
+    }
+
+
+    void writeLong(long value) throws IOException {
+        ensureRemaining(8);
+        buffer.putLong(value);
+    }
+
+
+    void writeDouble(double value) throws IOException {
+        ensureRemaining(8);
+        buffer.putDouble(value);
+    }
+
+
+    void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        int pos = offset;
+        int end = offset + length;
+        while (pos < end) {
+            ensureRemaining(1);
+            int chunk = Math.min(buffer.remaining(), end - pos);
+            buffer.put(bytes, pos, chunk);
+            pos += chunk;
+        }
+    }
+
+
+    /**
+     * Writes the dictionary index of the string, adding it to the dictionary
+     * if necessary.
+     *
+     * @param value
+     * @throws IOException
+     */
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeInt(NULL_STRING);
+            return;
+        }
+
+        Integer index = stringIndices.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndices.put(value, index);
+        }
+        writeInt(index);
+    }
+
+
+    /**
+     * Writes the string inline as its UTF-8 length and bytes, without using
+     * the dictionary. Null is written as the length {@link #NULL_STRING}.
+     *
+     * @param value
+     * @throws IOException
+     */
+    void writeInlineString(String value) throws IOException {
+        if (value == null) {
+            writeInt(NULL_STRING);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * Starts a new section of the given type. The length of the section is
+     * set by {@link #endSection(long)}.
+     *
+     * @param type
+     * @return the start position of the section
+     * @throws IOException
+     */
+    long beginSection(int type) throws IOException {
+        long start = position();
+        writeInt(type);
+        writeLong(0L);
+        return start;
+    }
+
+
+    /**
+     * Ends the section, which started at the given position, and writes its
+     * length into the section header.
+     *
+     * @param start
+     * @throws IOException
+     */
+    void endSection(long start) throws IOException {
+        flush();
+        long length = channel.position() - start - PIAModellerSnapshot.SECTION_HEADER_LENGTH;
+
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(8);
+        lengthBuffer.putLong(length);
+        lengthBuffer.flip();
+
+        long lengthPosition = start + 4;
+        while (lengthBuffer.hasRemaining()) {
+            lengthPosition += channel.write(lengthBuffer, lengthPosition);
+        }
+    }
+
+
+    /**
+     * Writes the string dictionary at the current position.
+     *
+     * @throws IOException
+     */
+    void writeDictionary() throws IOException {
+        writeInt(strings.size());
+        for (String value : strings) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+
+    /**
+     * Returns an {@link OutputStream} view on this writer, e.g. for embedded
+     * serialized objects. Closing the stream does not close the channel.
+     *
+     * @return
+     */
+    OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeBytes(b, off, len);
+            }
+        };
+    }
+}
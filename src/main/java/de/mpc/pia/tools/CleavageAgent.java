@@ -312,6 +312,16 @@ public enum CleavageAgent {
     public abstract String getSiteRegexp();
 
 
+    /**
+     * Returns the shared {@link CleavageSiteMatcher} of the cleavage agent,
+     * which finds the sites given by {@link #getSiteRegexp()}.
+     * @return
+     */
+    public CleavageSiteMatcher getSiteMatcher() {
+        return CleavageSiteMatcher.getForRegexp(getSiteRegexp());
+    }
+
+
     /**
      * Returns a list of all alternative names of the enzyme, including the
      * original name.
@@ -0,0 +1,255 @@
+package de.mpc.pia.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Finds the cleavage sites of an enzyme, given by its site regexp, in
+ * sequences. All methods return the same results as the respective
+ * {@link String#split(String)} calls with the site regexp.
+ * <p>
+ * Most enzyme rules are only lookarounds on single residues (like
+ * <code>(?&lt;=[KR])(?!P)</code> for trypsin), i.e. whether a site is
+ * between two residues depends only on these two residues. For these rules
+ * a lookup table over all residue pairs is created once and the sequences are
+ * scanned without any regular expression matching or allocations. All other
+ * rules fall back to the compiled regular expression.
+ * <p>
+ * The matchers are immutable and thread-safe, they are shared via
+ * {@link #getForRegexp(String)}.
+ *
+ * @author julian
+ *
+ */
+public final class CleavageSiteMatcher {
+
+    /** the already created matchers, mapped by their regexps */
+    private static final Map<String, CleavageSiteMatcher> MATCHERS = new ConcurrentHashMap<>();
+
+    /** the residues (chars) covered by the lookup table */
+    private static final int TABLE_RESIDUES = 128;
+
+    /** a lookaround on exactly one residue, like (?<=[KR]) or (?!P) */
+    private static final Pattern SINGLE_RESIDUE_LOOKAROUND =
+            Pattern.compile("\\(\\?<?[=!](\\[[A-Za-z]+\\]|[A-Za-z])\\)");
+
+    /** what may remain of a rule after removing the single residue lookarounds */
+    private static final Pattern LOOKAROUND_COMBINATION = Pattern.compile("[()|]*");
+
+
+    /** the site regexp */
+    private final String siteRegexp;
+
+    /** the compiled site regexp */
+    private final Pattern sitePattern;
+
+    /** whether there is a site between the residues, indexed by (previous * TABLE_RESIDUES + next), null for regexp fallback */
+    private final boolean[] siteTable;
+
+
+    /**
+     * Creates the matcher for the given site regexp, use
+     * {@link #getForRegexp(String)} to get a shared instance.
+     *
+     * @param siteRegexp
+     */
+    private CleavageSiteMatcher(String siteRegexp) {
+        this.siteRegexp = siteRegexp;
+        this.sitePattern = Pattern.compile(siteRegexp);
+        this.siteTable = isResiduePairRule(siteRegexp) ? createSiteTable(sitePattern) : null;
+    }
+
+
+    /**
+     * Returns the shared matcher for the given site regexp.
+     *
+     * @param siteRegexp
+     * @return
+     */
+    public static CleavageSiteMatcher getForRegexp(String siteRegexp) {
+        return MATCHERS.computeIfAbsent(siteRegexp, CleavageSiteMatcher::new);
+    }
+
+
+    /**
+     * Checks, whether the rule consists only of (alternatives of) lookarounds
+     * on single residues.
+     */
+    private static boolean isResiduePairRule(String siteRegexp) {
+        Matcher matcher = SINGLE_RESIDUE_LOOKAROUND.matcher(siteRegexp);
+        if (!matcher.find()) {
+            return false;
+        }
+
+        return LOOKAROUND_COMBINATION.matcher(matcher.replaceAll("")).matches();
+    }
+
+
+    /**
+     * Creates the lookup table by matching the rule on all pairs of residues.
+     */
+    private static boolean[] createSiteTable(Pattern sitePattern) {
+        boolean[] table = new boolean[TABLE_RESIDUES * TABLE_RESIDUES];
+        char[] pair = new char[2];
+        Matcher matcher = sitePattern.matcher("");
+
+        for (int prev = 0; prev < TABLE_RESIDUES; prev++) {
+            for (int next = 0; next < TABLE_RESIDUES; next++) {
+                pair[0] = (char) prev;
+                pair[1] = (char) next;
+                matcher.reset(new String(pair));
+                table[prev * TABLE_RESIDUES + next] = matcher.find(1) && (matcher.start() == 1);
+            }
+        }
+
+        return table;
+    }
+
+
+    /**
+     * The site regexp of this matcher
+     *
+     * @return
+     */
+    public String getSiteRegexp() {
+        return siteRegexp;
+    }
+
+
+    /**
+     * The compiled site regexp of this matcher
+     *
+     * @return
+     */
+    public Pattern getSitePattern() {
+        return sitePattern;
+    }
+
+
+    /**
+     * Whether the sites are found by the residue pair lookup table (or by the
+     * regexp fallback).
+     *
+     * @return
+     */
+    public boolean usesLookupTable() {
+        return siteTable != null;
+    }
+
+
+    /**
+     * Checks whether there is a site between the residues at pos-1 and pos.
+     * Must only be called with a lookup table and residues within the table.
+     */
+    private boolean isSite(CharSequence sequence, int pos) {
+        return siteTable[sequence.charAt(pos - 1) * TABLE_RESIDUES + sequence.charAt(pos)];
+    }
+
+
+    /**
+     * Checks, whether all residues of the sequence are covered by the lookup
+     * table.
+     */
+    private static boolean inTable(CharSequence sequence) {
+        for (int pos = 0; pos < sequence.length(); pos++) {
+            if (sequence.charAt(pos) >= TABLE_RESIDUES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Counts the missed cleavages in the given sequence. The result is
+     * identical to <code>sequence.split(siteRegexp).length - 1</code>.
+     *
+     * @param sequence
+     * @return
+     */
+    public int countMissedCleavages(CharSequence sequence) {
+        if ((siteTable == null) || !inTable(sequence)) {
+            return countMissedCleavagesByRegexp(sequence);
+        }
+
+        // as all sites are zero-width, only the inner sites split the sequence
+        int missed = 0;
+        for (int pos = 1; pos < sequence.length(); pos++) {
+            if (isSite(sequence, pos)) {
+                missed++;
+            }
+        }
+        return missed;
+    }
+
+
+    /**
+     * Counts the missed cleavages with the regexp, emulating the behaviour of
+     * {@link String#split(String)} without creating the substrings.
+     */
+    private int countMissedCleavagesByRegexp(CharSequence sequence) {
+        Matcher matcher = sitePattern.matcher(sequence);
+
+        boolean matched = false;
+        int index = 0;
+        int nrSegments = 0;
+        int lastNonEmptySegment = 0;
+
+        while (matcher.find()) {
+            if ((index == 0) && (matcher.start() == 0) && (matcher.end() == 0)) {
+                // a zero-width match at the beginning creates no segment
+                continue;
+            }
+
+            matched = true;
+            nrSegments++;
+            if (matcher.start() > index) {
+                lastNonEmptySegment = nrSegments;
+            }
+            index = matcher.end();
+        }
+
+        if (!matched) {
+            return 0;
+        }
+
+        // the trailing segment, empty trailing segments are not counted
+        nrSegments++;
+        if (sequence.length() > index) {
+            lastNonEmptySegment = nrSegments;
+        }
+
+        return lastNonEmptySegment - 1;
+    }
+
+
+    /**
+     * Splits the sequence at the cleavage sites, i.e. digests it. The result
+     * is identical to <code>sequence.split(siteRegexp)</code>.
+     *
+     * @param sequence
+     * @return
+     */
+    public String[] split(String sequence) {
+        if ((siteTable == null) || !inTable(sequence)) {
+            return sitePattern.split(sequence);
+        }
+
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int pos = 1; pos < sequence.length(); pos++) {
+            if (isSite(sequence, pos)) {
+                segments.add(sequence.substring(start, pos));
+                start = pos;
+            }
+        }
+        segments.add(sequence.substring(start));
+
+        return segments.toArray(new String[segments.size()]);
+    }
+}
@@ -0,0 +1,224 @@
+package de.mpc.pia.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+
+/**
+ * Groups items by a composite key without creating a key object per item.
+ * <p>
+ * For each item, the key's components are hashed into a 128 bit
+ * {@link KeyHash}, which is kept in primitive arrays. The items are grouped by
+ * sorting their indices by the hashes, and equal hashes are verified by the
+ * given equality of the keys, so hash collisions never merge different keys.
+ *
+ * @author julian
+ *
+ */
+public final class CompositeKeyGrouping {
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private CompositeKeyGrouping() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Adds the key components of an item to the {@link KeyHash}.
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface KeyHasher<T> {
+        void hashKey(T item, KeyHash hash);
+    }
+
+
+    /**
+     * A 128 bit hash of the components of a composite key, built from two
+     * independently mixed 64 bit values.
+     */
+    public static final class KeyHash {
+
+        private static final long SEED_HIGH = 0x9E3779B97F4A7C15L;
+        private static final long SEED_LOW = 0xC2B2AE3D27D4EB4FL;
+
+        /** marks a null component, so that it differs from any empty value */
+        private static final long NULL_COMPONENT = 0x5BD1E9955BD1E995L;
+
+        private long high;
+        private long low;
+
+
+        private KeyHash() {
+            reset();
+        }
+
+
+        private void reset() {
+            high = SEED_HIGH;
+            low = SEED_LOW;
+        }
+
+
+        public KeyHash add(long value) {
+            high = Long.rotateLeft((high ^ value) * 0x87C37B91114253D5L, 31);
+            low = Long.rotateLeft((low + value) * 0x4CF5AD432745937FL, 27) ^ high;
+            return this;
+        }
+
+
+        public KeyHash add(int value) {
+            return add((long) value);
+        }
+
+
+        public KeyHash add(double value) {
+            return add(Double.doubleToLongBits(value));
+        }
+
+
+        public KeyHash add(Double value) {
+            return (value == null) ? add(NULL_COMPONENT) : add(value.doubleValue());
+        }
+
+
+        public KeyHash add(String value) {
+            if (value == null) {
+                return add(NULL_COMPONENT);
+            }
+
+            int length = value.length();
+            add(length);
+
+            // four chars fit into one component
+            int pos = 0;
+            for (; pos + 4 <= length; pos += 4) {
+                add(((long) value.charAt(pos) << 48) | ((long) value.charAt(pos + 1) << 32)
+                        | ((long) value.charAt(pos + 2) << 16) | value.charAt(pos + 3));
+            }
+            long rest = 0;
+            for (; pos < length; pos++) {
+                rest = (rest << 16) | value.charAt(pos);
+            }
+            return add(rest);
+        }
+
+
+        private long high() {
+            return finalMix(high ^ low);
+        }
+
+
+        private long low() {
+            return finalMix(low + high);
+        }
+
+
+        private static long finalMix(long value) {
+            long mixed = value;
+            mixed ^= mixed >>> 33;
+            mixed *= 0xFF51AFD7ED558CCDL;
+            mixed ^= mixed >>> 33;
+            mixed *= 0xC4CEB9FE1A85EC53L;
+            mixed ^= mixed >>> 33;
+            return mixed;
+        }
+    }
+
+
+    /**
+     * Groups the items by their keys, given by the hasher and the equality of
+     * the keys. The items of a group keep their order and the groups are
+     * ordered by their first item.
+     *
+     * @param items
+     * @param hasher adds the components of the item's key to the hash
+     * @param sameKey true, if the two items have equal keys
+     * @return
+     */
+    public static <T> List<List<T>> group(List<T> items, KeyHasher<? super T> hasher,
+            BiPredicate<? super T, ? super T> sameKey) {
+        int nrItems = items.size();
+        long[] highs = new long[nrItems];
+        long[] lows = new long[nrItems];
+
+        KeyHash hash = new KeyHash();
+        for (int i = 0; i < nrItems; i++) {
+            hash.reset();
+            hasher.hashKey(items.get(i), hash);
+            highs[i] = hash.high();
+            lows[i] = hash.low();
+        }
+
+        int[] order = IndexSorter.sortedIndices(nrItems,
+                (idx1, idx2) -> compare(highs, lows, idx1, idx2));
+
+        // the groups by the index of their first item
+        List<List<T>> groupsByFirst = new ArrayList<>(Collections.nCopies(nrItems, (List<T>) null));
+        int start = 0;
+        while (start < nrItems) {
+            int end = start + 1;
+            while ((end < nrItems)
+                    && (highs[order[end]] == highs[order[start]])
+                    && (lows[order[end]] == lows[order[start]])) {
+                end++;
+            }
+
+            if (end - start == 1) {
+                List<T> single = new ArrayList<>(1);
+                single.add(items.get(order[start]));
+                groupsByFirst.set(order[start], single);
+            } else {
+                groupRun(items, order, start, end, sameKey, groupsByFirst);
+            }
+            start = end;
+        }
+
+        List<List<T>> groups = new ArrayList<>();
+        for (List<T> group : groupsByFirst) {
+            if (group != null) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+
+    /**
+     * Groups a run of items with equal hashes, verifying the keys.
+     */
+    private static <T> void groupRun(List<T> items, int[] order, int start, int end,
+            BiPredicate<? super T, ? super T> sameKey, List<List<T>> groupsByFirst) {
+        List<List<T>> runGroups = new ArrayList<>(1);
+        for (int pos = start; pos < end; pos++) {
+            T item = items.get(order[pos]);
+
+            List<T> itemGroup = null;
+            for (List<T> group : runGroups) {
+                if (sameKey.test(group.get(0), item)) {
+                    itemGroup = group;
+                    break;
+                }
+            }
+
+            if (itemGroup == null) {
+                itemGroup = new ArrayList<>(end - pos);
+                runGroups.add(itemGroup);
+                // the sort is stable, so this is the group's first index
+                groupsByFirst.set(order[pos], itemGroup);
+            }
+            itemGroup.add(item);
+        }
+    }
+
+
+    private static int compare(long[] highs, long[] lows, int a, int b) {
+        int cmp = Long.compare(highs[a], highs[b]);
+        return (cmp != 0) ? cmp : Long.compare(lows[a], lows[b]);
+    }
+}
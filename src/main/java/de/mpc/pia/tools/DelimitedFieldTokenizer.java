@@ -0,0 +1,529 @@
+package de.mpc.pia.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+
+/**
+ * A tokenizer for line based, delimited text files (like TSV or simple CSV
+ * files without quoting).
+ * <p>
+ * The file is read block-wise into a {@link CharBuffer} and the lines are
+ * tokenized directly in this buffer, without creating Strings for the lines
+ * or unused fields. Only the start and end offsets of the (projected)
+ * columns are stored, the fields can then be accessed as zero-copy
+ * {@link CharSequence}s or be parsed into numbers. The returned
+ * {@link CharSequence}s are only valid until the next call of
+ * {@link #nextLine()}.
+ *
+ * @author julian
+ *
+ */
+public class DelimitedFieldTokenizer implements Closeable {
+
+    /** the default size of the read buffer */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** the maximal number of significant digits for the direct double parsing, below 2^53 */
+    private static final int MAX_FAST_DOUBLE_DIGITS = 15;
+
+    /** the maximal decimal exponent for the direct double parsing */
+    private static final int MAX_FAST_DOUBLE_EXPONENT = 22;
+
+    /** the exactly representable powers of ten */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+
+    /** the underlying reader */
+    private Reader reader;
+
+    /** the separator of the fields */
+    private char separator;
+
+    /** the buffer, containing the current line */
+    private char[] buffer;
+
+    /** the wrapping buffer, used for the zero-copy field views */
+    private CharBuffer charBuffer;
+
+    /** the number of valid chars in the buffer */
+    private int bufferFill;
+
+    /** start of the current line in the buffer */
+    private int lineStart;
+
+    /** end (exclusive, without line breaks) of the current line in the buffer */
+    private int lineEnd;
+
+    /** start of the next line in the buffer */
+    private int nextLineStart;
+
+    /** whether the end of the reader was reached */
+    private boolean eof;
+
+    /** the number of the current line (1-based) */
+    private long lineNumber;
+
+    /** whether a column should be tokenized, null for all columns */
+    private boolean[] projection;
+
+    /** the highest projected column */
+    private int maxProjectedColumn;
+
+    /** the start offsets of the fields in the current line */
+    private int[] fieldStarts;
+
+    /** the end offsets of the fields in the current line */
+    private int[] fieldEnds;
+
+    /** number of tokenized fields in the current line */
+    private int nrFields;
+
+
+    /**
+     * Creates a tokenizer for the given reader and separator. The reader is
+     * closed by {@link #close()}.
+     *
+     * @param reader
+     * @param separator
+     */
+    public DelimitedFieldTokenizer(Reader reader, char separator) {
+        this.reader = reader;
+        this.separator = separator;
+        this.buffer = new char[DEFAULT_BUFFER_SIZE];
+        this.charBuffer = CharBuffer.wrap(buffer);
+        this.bufferFill = 0;
+        this.lineStart = 0;
+        this.lineEnd = 0;
+        this.nextLineStart = 0;
+        this.eof = false;
+        this.lineNumber = 0;
+        this.projection = null;
+        this.maxProjectedColumn = Integer.MAX_VALUE;
+        this.fieldStarts = new int[32];
+        this.fieldEnds = new int[32];
+        this.nrFields = 0;
+    }
+
+
+    /**
+     * Sets the columns (0-based), which should be tokenized in the following
+     * lines. All other columns are skipped and cannot be accessed. Passing
+     * null tokenizes all columns again.
+     *
+     * @param columns
+     */
+    public void setProjection(int... columns) {
+        if (columns == null) {
+            projection = null;
+            maxProjectedColumn = Integer.MAX_VALUE;
+            return;
+        }
+
+        maxProjectedColumn = -1;
+        for (int col : columns) {
+            maxProjectedColumn = Math.max(maxProjectedColumn, col);
+        }
+
+        projection = new boolean[maxProjectedColumn + 1];
+        for (int col : columns) {
+            if (col > -1) {
+                projection[col] = true;
+            }
+        }
+    }
+
+
+    /**
+     * Advances to the next line and tokenizes it.
+     *
+     * @return false, if there are no more lines
+     * @throws IOException
+     */
+    public boolean nextLine() throws IOException {
+        if (!findNextLine()) {
+            return false;
+        }
+
+        lineNumber++;
+        tokenizeLine();
+        return true;
+    }
+
+
+    /**
+     * Searches the end of the next line, refilling the buffer if necessary.
+     */
+    private boolean findNextLine() throws IOException {
+        int pos = nextLineStart;
+
+        while (true) {
+            while (pos < bufferFill) {
+                char c = buffer[pos];
+                if ((c == '\n') || (c == '\r')) {
+                    lineStart = nextLineStart;
+                    lineEnd = pos;
+
+                    if ((c == '\r') && (pos + 1 >= bufferFill) && !eof) {
+                        // the '\n' of a "\r\n" may be in the next block
+                        int shift = compactBuffer();
+                        pos -= shift;
+                        lineStart -= shift;
+                        lineEnd -= shift;
+                        fillBuffer();
+                    }
+
+                    nextLineStart = pos + 1;
+                    if ((c == '\r') && (nextLineStart < bufferFill) && (buffer[nextLineStart] == '\n')) {
+                        nextLineStart++;
+                    }
+                    return true;
+                }
+                pos++;
+            }
+
+            if (eof) {
+                if (nextLineStart < bufferFill) {
+                    // last line without line break
+                    lineStart = nextLineStart;
+                    lineEnd = bufferFill;
+                    nextLineStart = bufferFill;
+                    return true;
+                }
+                return false;
+            }
+
+            int shift = compactBuffer();
+            pos -= shift;
+            fillBuffer();
+        }
+    }
+
+
+    /**
+     * Moves the not yet processed chars to the beginning of the buffer (and
+     * grows it, if it is full).
+     *
+     * @return the number of positions, the data was shifted to the left
+     */
+    private int compactBuffer() {
+        int shift = nextLineStart;
+        int remaining = bufferFill - nextLineStart;
+
+        if (shift > 0) {
+            System.arraycopy(buffer, nextLineStart, buffer, 0, remaining);
+            bufferFill = remaining;
+            nextLineStart = 0;
+        }
+
+        if (bufferFill == buffer.length) {
+            // a very long line, grow the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            charBuffer = CharBuffer.wrap(buffer);
+        }
+
+        return shift;
+    }
+
+
+    /**
+     * Reads the next chunk of data into the free part of the buffer
+     */
+    private void fillBuffer() throws IOException {
+        int read = reader.read(buffer, bufferFill, buffer.length - bufferFill);
+        if (read < 0) {
+            eof = true;
+        } else {
+            bufferFill += read;
+        }
+    }
+
+
+    /**
+     * Tokenizes the current line, only the projected columns are stored.
+     */
+    private void tokenizeLine() {
+        nrFields = 0;
+        int fieldStart = lineStart;
+        int column = 0;
+
+        for (int pos = lineStart; pos <= lineEnd; pos++) {
+            if ((pos == lineEnd) || (buffer[pos] == separator)) {
+                storeField(column, fieldStart, pos);
+                column++;
+                fieldStart = pos + 1;
+
+                if (column > maxProjectedColumn) {
+                    break;
+                }
+            }
+        }
+    }
+
+
+    private void storeField(int column, int start, int end) {
+        if (column >= fieldStarts.length) {
+            int newSize = Math.max(fieldStarts.length * 2, column + 1);
+            fieldStarts = Arrays.copyOf(fieldStarts, newSize);
+            fieldEnds = Arrays.copyOf(fieldEnds, newSize);
+        }
+
+        if ((projection == null) || ((column < projection.length) && projection[column])) {
+            fieldStarts[column] = start;
+            fieldEnds[column] = end;
+        } else {
+            fieldStarts[column] = -1;
+            fieldEnds[column] = -1;
+        }
+        nrFields = column + 1;
+    }
+
+
+    /**
+     * The number of the current line (1-based).
+     *
+     * @return
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+
+    /**
+     * The number of fields in the current line. If a projection is set, this
+     * is at most the highest projected column + 1.
+     *
+     * @return
+     */
+    public int getNrFields() {
+        return nrFields;
+    }
+
+
+    /**
+     * Checks whether the given column exists and was tokenized in the current
+     * line.
+     *
+     * @param column
+     * @return
+     */
+    public boolean hasField(int column) {
+        return (column > -1) && (column < nrFields) && (fieldStarts[column] > -1);
+    }
+
+
+    private void checkField(int column) {
+        if (!hasField(column)) {
+            throw new IndexOutOfBoundsException("column " + column + " not available in line " + lineNumber);
+        }
+    }
+
+
+    /**
+     * Returns a zero-copy view on the field of the given column, which is
+     * only valid until the next line is read.
+     *
+     * @param column
+     * @return
+     */
+    public CharSequence getField(int column) {
+        checkField(column);
+        return charBuffer.subSequence(fieldStarts[column], fieldEnds[column]);
+    }
+
+
+    /**
+     * Returns the field of the given column as a new String.
+     *
+     * @param column
+     * @return
+     */
+    public String getFieldString(int column) {
+        checkField(column);
+        return new String(buffer, fieldStarts[column], fieldEnds[column] - fieldStarts[column]);
+    }
+
+
+    /**
+     * Returns all fields of the current line as Strings, e.g. for the header
+     * line. Not tokenized fields are null.
+     *
+     * @return
+     */
+    public String[] getFieldStrings() {
+        String[] fields = new String[nrFields];
+        for (int col = 0; col < nrFields; col++) {
+            if (fieldStarts[col] > -1) {
+                fields[col] = getFieldString(col);
+            }
+        }
+        return fields;
+    }
+
+
+    /**
+     * Parses the field of the given column as a (decimal) integer without
+     * creating a String, accepting the same input as
+     * {@link Integer#parseInt(String)}.
+     *
+     * @param column
+     * @return
+     * @throws NumberFormatException if the field is not a valid integer
+     */
+    public int parseIntField(int column) {
+        checkField(column);
+
+        int pos = fieldStarts[column];
+        int end = fieldEnds[column];
+
+        if (pos == end) {
+            throw new NumberFormatException("empty field in column " + column);
+        }
+
+        boolean negative = false;
+        if ((buffer[pos] == '-') || (buffer[pos] == '+')) {
+            negative = buffer[pos] == '-';
+            pos++;
+            if (pos == end) {
+                throw new NumberFormatException("no digits in column " + column);
+            }
+        }
+
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = buffer[pos] - '0';
+            if ((digit < 0) || (digit > 9)) {
+                throw new NumberFormatException("invalid integer in column " + column + ": "
+                        + getFieldString(column));
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("integer out of range in column " + column);
+            }
+        }
+
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("integer out of range in column " + column);
+        }
+
+        return (int) value;
+    }
+
+
+    /**
+     * Parses the field of the given column as a double, exactly like
+     * {@link Double#parseDouble(String)}.
+     * <p>
+     * Plain decimal numbers with up to 15 significant digits and a small
+     * exponent (which covers the usual score and m/z values) are parsed
+     * directly in the buffer: the digits and the power of ten are both
+     * exactly representable, so one multiplication or division gives the
+     * correctly rounded result. Only all other fields (like "NaN", hex values
+     * or very long numbers) are parsed via a String.
+     *
+     * @param column
+     * @return
+     * @throws NumberFormatException if the field is not a valid double
+     */
+    public double parseDoubleField(int column) {
+        checkField(column);
+
+        int pos = fieldStarts[column];
+        int end = fieldEnds[column];
+
+        boolean negative = false;
+        if ((pos < end) && ((buffer[pos] == '-') || (buffer[pos] == '+'))) {
+            negative = buffer[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int nrDigits = 0;
+        int nrSignificant = 0;
+        int exponent = 0;
+        boolean inFraction = false;
+
+        for (; pos < end; pos++) {
+            char c = buffer[pos];
+            if ((c >= '0') && (c <= '9')) {
+                nrDigits++;
+                if ((mantissa > 0) || (c != '0')) {
+                    nrSignificant++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (inFraction) {
+                    exponent--;
+                }
+                if (nrSignificant > MAX_FAST_DOUBLE_DIGITS) {
+                    return parseDoubleFieldFromString(column);
+                }
+            } else if ((c == '.') && !inFraction) {
+                inFraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (nrDigits == 0) {
+            return parseDoubleFieldFromString(column);
+        }
+
+        if ((pos < end) && ((buffer[pos] == 'e') || (buffer[pos] == 'E'))) {
+            pos++;
+            boolean negativeExponent = false;
+            if ((pos < end) && ((buffer[pos] == '-') || (buffer[pos] == '+'))) {
+                negativeExponent = buffer[pos] == '-';
+                pos++;
+            }
+
+            int exponentStart = pos;
+            int fieldExponent = 0;
+            for (; (pos < end) && (buffer[pos] >= '0') && (buffer[pos] <= '9'); pos++) {
+                fieldExponent = fieldExponent * 10 + (buffer[pos] - '0');
+                if (fieldExponent > MAX_FAST_DOUBLE_EXPONENT) {
+                    return parseDoubleFieldFromString(column);
+                }
+            }
+            if (pos == exponentStart) {
+                return parseDoubleFieldFromString(column);
+            }
+            exponent += negativeExponent ? -fieldExponent : fieldExponent;
+        }
+
+        if ((pos != end) || (Math.abs(exponent) > MAX_FAST_DOUBLE_EXPONENT)) {
+            // trailing characters (like whitespace or type suffixes) or an exponent too large
+            return parseDoubleFieldFromString(column);
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            value *= POWERS_OF_TEN[exponent];
+        }
+
+        return negative ? -value : value;
+    }
+
+
+    /**
+     * Parses the field via a String with {@link Double#parseDouble(String)}.
+     */
+    private double parseDoubleFieldFromString(int column) {
+        return Double.parseDouble(getFieldString(column));
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
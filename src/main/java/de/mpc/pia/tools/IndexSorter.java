@@ -0,0 +1,105 @@
+package de.mpc.pia.tools;
+
+
+/**
+ * Sorts indices of items stably by an {@link IndexComparator}, which
+ * compares the items given by their indices, e.g. by keys extracted into
+ * primitive arrays. This avoids boxing the indices or accessing the items on
+ * each comparison.
+ *
+ * @author julian
+ *
+ */
+public final class IndexSorter {
+
+    /** below this size, the index sort uses an insertion sort */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private IndexSorter() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Compares two items given by their indices.
+     */
+    @FunctionalInterface
+    public interface IndexComparator {
+        int compare(int idx1, int idx2);
+    }
+
+
+    /**
+     * Returns the indices from 0 (inclusive) to length (exclusive) stably
+     * sorted by the comparator.
+     *
+     * @param length
+     * @param comparator
+     * @return
+     */
+    public static int[] sortedIndices(int length, IndexComparator comparator) {
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = i;
+        }
+        sort(indices, comparator);
+        return indices;
+    }
+
+
+    /**
+     * Sorts the given indices stably in place by the comparator.
+     *
+     * @param indices
+     * @param comparator
+     */
+    public static void sort(int[] indices, IndexComparator comparator) {
+        sort(indices, new int[indices.length], 0, indices.length, comparator);
+    }
+
+
+    /**
+     * A stable merge sort of the indices from (inclusive) to (exclusive),
+     * using the buffer of the same size.
+     */
+    private static void sort(int[] indices, int[] buffer, int from, int to,
+            IndexComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int idx = indices[i];
+                int j = i - 1;
+                while ((j >= from) && (comparator.compare(indices[j], idx) > 0)) {
+                    indices[j + 1] = indices[j];
+                    j--;
+                }
+                indices[j + 1] = idx;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        sort(indices, buffer, from, mid, comparator);
+        sort(indices, buffer, mid, to, comparator);
+
+        if (comparator.compare(indices[mid - 1], indices[mid]) <= 0) {
+            // already in order
+            return;
+        }
+
+        System.arraycopy(indices, from, buffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if ((right >= to)
+                    || ((left < mid) && (comparator.compare(buffer[left], buffer[right]) <= 0))) {
+                indices[i] = buffer[left++];
+            } else {
+                indices[i] = buffer[right++];
+            }
+        }
+    }
+}
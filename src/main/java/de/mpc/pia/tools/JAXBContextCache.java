@@ -0,0 +1,149 @@
+package de.mpc.pia.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+
+/**
+ * Process-wide cache of the {@link JAXBContext}s for the PIA XML, CTD, idXML
+ * and Unimod schemas. Creating a context is expensive, so each one is created
+ * only once and afterwards shared, as the contexts are thread-safe.
+ * <p>
+ * The {@link Marshaller}s and {@link Unmarshaller}s are not thread-safe, but
+ * may be reused sequentially. Therefore they are cached per thread. A caller
+ * must set all the marshaller properties it relies on, as another caller on
+ * the same thread may have changed them.
+ *
+ * @author julian
+ *
+ */
+public final class JAXBContextCache {
+
+    /** the contexts by their bound class */
+    private static final Map<Class<?>, JAXBContext> CLASS_CONTEXTS = new ConcurrentHashMap<>();
+
+    /** the contexts by their context path (i.e. the package names) */
+    private static final Map<String, JAXBContext> PATH_CONTEXTS = new ConcurrentHashMap<>();
+
+    /** the unmarshallers of the current thread by the contexts */
+    private static final ThreadLocal<Map<JAXBContext, Unmarshaller>> UNMARSHALLERS =
+            ThreadLocal.withInitial(HashMap::new);
+
+    /** the marshallers of the current thread by the contexts */
+    private static final ThreadLocal<Map<JAXBContext, Marshaller>> MARSHALLERS =
+            ThreadLocal.withInitial(HashMap::new);
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private JAXBContextCache() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Returns the shared context for the given class, which is created on the
+     * first call.
+     *
+     * @param boundClass
+     * @return
+     * @throws JAXBException
+     */
+    public static JAXBContext getContext(Class<?> boundClass) throws JAXBException {
+        JAXBContext context = CLASS_CONTEXTS.get(boundClass);
+        if (context == null) {
+            // creating the context twice in a race is harmless, only one is kept
+            JAXBContext newContext = JAXBContext.newInstance(boundClass);
+            context = CLASS_CONTEXTS.putIfAbsent(boundClass, newContext);
+            if (context == null) {
+                context = newContext;
+            }
+        }
+        return context;
+    }
+
+
+    /**
+     * Returns the shared context for the given context path, which is created
+     * on the first call.
+     *
+     * @param contextPath
+     * @return
+     * @throws JAXBException
+     */
+    public static JAXBContext getContext(String contextPath) throws JAXBException {
+        JAXBContext context = PATH_CONTEXTS.get(contextPath);
+        if (context == null) {
+            JAXBContext newContext = JAXBContext.newInstance(contextPath);
+            context = PATH_CONTEXTS.putIfAbsent(contextPath, newContext);
+            if (context == null) {
+                context = newContext;
+            }
+        }
+        return context;
+    }
+
+
+    /**
+     * Returns the unmarshaller of the current thread for the given class.
+     *
+     * @param boundClass
+     * @return
+     * @throws JAXBException
+     */
+    public static Unmarshaller getUnmarshaller(Class<?> boundClass) throws JAXBException {
+        return getUnmarshaller(getContext(boundClass));
+    }
+
+
+    /**
+     * Returns the unmarshaller of the current thread for the given context
+     * path.
+     *
+     * @param contextPath
+     * @return
+     * @throws JAXBException
+     */
+    public static Unmarshaller getUnmarshaller(String contextPath) throws JAXBException {
+        return getUnmarshaller(getContext(contextPath));
+    }
+
+
+    /**
+     * Returns the marshaller of the current thread for the given class.
+     *
+     * @param boundClass
+     * @return
+     * @throws JAXBException
+     */
+    public static Marshaller getMarshaller(Class<?> boundClass) throws JAXBException {
+        Map<JAXBContext, Marshaller> marshallers = MARSHALLERS.get();
+        JAXBContext context = getContext(boundClass);
+
+        Marshaller marshaller = marshallers.get(context);
+        if (marshaller == null) {
+            marshaller = context.createMarshaller();
+            marshallers.put(context, marshaller);
+        }
+        return marshaller;
+    }
+
+
+    private static Unmarshaller getUnmarshaller(JAXBContext context) throws JAXBException {
+        Map<JAXBContext, Unmarshaller> unmarshallers = UNMARSHALLERS.get();
+
+        Unmarshaller unmarshaller = unmarshallers.get(context);
+        if (unmarshaller == null) {
+            unmarshaller = context.createUnmarshaller();
+            unmarshallers.put(context, unmarshaller);
+        }
+        return unmarshaller;
+    }
+}
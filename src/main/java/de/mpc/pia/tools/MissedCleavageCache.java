@@ -0,0 +1,100 @@
+package de.mpc.pia.tools;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A bounded LRU cache of the missed cleavages of peptide sequences, which is
+ * shared by the parsers of a compilation. The same peptide sequences are
+ * usually reported many times (in many PSMs and files), so the missed
+ * cleavages are calculated only once per sequence and enzyme rule.
+ *
+ * @author julian
+ *
+ */
+public class MissedCleavageCache {
+
+    /** the default maximal number of cached sequences per site regexp */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+
+    /** the maximal number of cached sequences per site regexp */
+    private final int maxSize;
+
+    /** the cached missed cleavages, mapped by the site regexp and the sequence */
+    private final Map<String, Map<String, Integer>> cache;
+
+
+    /**
+     * Creates a cache with the {@link #DEFAULT_MAX_SIZE}
+     */
+    public MissedCleavageCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+
+    /**
+     * Creates a cache, which holds at most maxSize sequences per site regexp.
+     *
+     * @param maxSize
+     */
+    public MissedCleavageCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.cache = new HashMap<>();
+    }
+
+
+    /**
+     * Returns the missed cleavages of the sequence for the given site
+     * regexp, i.e. <code>sequence.split(siteRegexp).length - 1</code>.
+     *
+     * @param sequence
+     * @param siteRegexp
+     * @return
+     */
+    public synchronized int getMissedCleavages(String sequence, String siteRegexp) {
+        Map<String, Integer> regexpCache = cache.computeIfAbsent(siteRegexp, k -> createLRUMap());
+
+        Integer missed = regexpCache.get(sequence);
+        if (missed == null) {
+            missed = CleavageSiteMatcher.getForRegexp(siteRegexp).countMissedCleavages(sequence);
+            regexpCache.put(sequence, missed);
+        }
+
+        return missed;
+    }
+
+
+    /**
+     * Returns the missed cleavages of the sequence for the given enzyme.
+     *
+     * @param sequence
+     * @param enzyme
+     * @return
+     */
+    public int getMissedCleavages(String sequence, CleavageAgent enzyme) {
+        return getMissedCleavages(sequence, enzyme.getSiteRegexp());
+    }
+
+
+    private Map<String, Integer> createLRUMap() {
+        return new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * Removes all cached values.
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+}
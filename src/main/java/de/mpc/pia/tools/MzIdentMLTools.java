@@ -2,12 +2,9 @@ package de.mpc.pia.tools;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.biojava.nbio.ontology.Term;
-import org.biojava.nbio.ontology.Triple;
 
 import de.mpc.pia.tools.obo.OBOMapper;
 import uk.ac.ebi.jmzidml.model.mzidml.AbstractParam;
@@ -537,6 +534,24 @@ public class MzIdentMLTools {
      */
     public static int calculateMissedCleavages(String sequence, Enzymes enzymes,
             Map<String, String> enzymesToRegexes, OBOMapper oboMapper) {
+        return calculateMissedCleavages(sequence, enzymes, enzymesToRegexes, oboMapper, null);
+    }
+
+
+    /**
+     * Calculates the missed cleavages like
+     * {@link #calculateMissedCleavages(String, Enzymes, Map, OBOMapper)}, but
+     * uses and fills the given cache, if it is not null.
+     *
+     * @param sequence
+     * @param enzymes
+     * @param enzymesToRegexes
+     * @param missedCleavageCache
+     * @return
+     */
+    public static int calculateMissedCleavages(String sequence, Enzymes enzymes,
+            Map<String, String> enzymesToRegexes, OBOMapper oboMapper,
+            MissedCleavageCache missedCleavageCache) {
         int missed = 0;
         if (enzymes != null) {
             for (Enzyme enzyme : enzymes.getEnzyme()) {
@@ -555,18 +570,9 @@ public class MzIdentMLTools {
                                 // try to get the regular expression for this enzyme and put it into the map
                                 Term oboTerm = oboMapper.getTerm(oboID);
                                 if (oboTerm != null) {
-                                    Set<Triple> tripleSet = oboMapper.getTriples(oboTerm, null, null);
-
-                                    for (Triple triple : tripleSet) {
-                                        if (triple.getPredicate().getName().equals(OBOMapper.OBO_RELATIONSHIP) &&
-                                                triple.getObject().getName().startsWith(OBOMapper.OBO_HAS_REGEXP)) {
-                                            String regExpID = triple.getObject().getName().substring(11).trim();
-                                            Term regExpTerm = oboMapper.getTerm(regExpID);
-                                            if (regExpTerm != null) {
-                                                regExp = StringEscapeUtils.unescapeJava(regExpTerm.getDescription());
-                                                enzymesToRegexes.put(oboID, regExp);
-                                            }
-                                        }
+                                    regExp = oboMapper.getEnzymeRegexp(oboTerm);
+                                    if (regExp != null) {
+                                        enzymesToRegexes.put(oboID, regExp);
                                     }
                                 }
                             }
@@ -579,7 +585,11 @@ public class MzIdentMLTools {
                     return -1;
                 }
 
-                missed += sequence.split(regExp).length - 1;
+                if (missedCleavageCache != null) {
+                    missed += missedCleavageCache.getMissedCleavages(sequence, regExp);
+                } else {
+                    missed += CleavageSiteMatcher.getForRegexp(regExp).countMissedCleavages(sequence);
+                }
             }
         }
 
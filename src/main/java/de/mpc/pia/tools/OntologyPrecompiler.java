@@ -0,0 +1,76 @@
+package de.mpc.pia.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.tools.obo.OBOMapper;
+import de.mpc.pia.tools.obo.PrecompiledOntology;
+import de.mpc.pia.tools.obo.PsiModParser;
+import de.mpc.pia.tools.unimod.PrecompiledUnimod;
+import de.mpc.pia.tools.unimod.UnimodParser;
+
+
+/**
+ * Parses the shipped psi-ms.obo, PSI-MOD.obo and unimod.xml and writes their
+ * pre-parsed binary forms next to them. This is called during the build (in
+ * the process-classes phase) with the classes output directory as argument,
+ * so the pre-parsed files are on the classpath and packaged into the jar.
+ *
+ * @author julian
+ *
+ */
+public final class OntologyPrecompiler {
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(OntologyPrecompiler.class);
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private OntologyPrecompiler() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Writes the pre-parsed files into the given output directory.
+     *
+     * @param args the output directory
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            LOGGER.error("usage: " + OntologyPrecompiler.class.getName() + " <outputDirectory>");
+            System.exit(1);
+        }
+
+        File outputDir = new File(args[0]);
+
+        LOGGER.info("Pre-parsing PSI-MS ontology...");
+        PrecompiledOntology.write(OBOMapper.parseShippedOntology(),
+                getOutputFile(outputDir, OBOMapper.PATH_TO_PRECOMPILED_OBO));
+
+        LOGGER.info("Pre-parsing PSI-MOD ontology...");
+        PrecompiledOntology.write(PsiModParser.parseShippedOntology(),
+                getOutputFile(outputDir, PsiModParser.PATH_TO_PRECOMPILED_OBO));
+
+        LOGGER.info("Pre-parsing unimod...");
+        PrecompiledUnimod.write(UnimodParser.parseShippedModifications(),
+                getOutputFile(outputDir, UnimodParser.PATH_TO_PRECOMPILED_UNIMOD));
+
+        LOGGER.info("pre-parsed files written to " + outputDir.getAbsolutePath());
+    }
+
+
+    private static File getOutputFile(File outputDir, String resourcePath) throws IOException {
+        File file = new File(outputDir, resourcePath.substring(1));
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create the directory " + parent.getAbsolutePath());
+        }
+        return file;
+    }
+}
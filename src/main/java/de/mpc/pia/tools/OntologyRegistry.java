@@ -0,0 +1,130 @@
+package de.mpc.pia.tools;
+
+import org.apache.log4j.Logger;
+
+import de.mpc.pia.tools.obo.OBOMapper;
+import de.mpc.pia.tools.obo.PsiModParser;
+import de.mpc.pia.tools.unimod.UnimodParser;
+
+
+/**
+ * Process-wide registry of the ontologies (PSI-MS, PSI-MOD and Unimod). Each
+ * one is created only once on its first request and afterwards shared by all
+ * compilers, modellers and exporters. The parsers are only read after their
+ * creation, so the shared instances are thread-safe.
+ * <p>
+ * By default the shipped ontologies are used in their pre-parsed binary form,
+ * which is generated at build time by the {@link OntologyPrecompiler} and
+ * memory mapped. So a freshly started JVM does not parse the OBO files and
+ * unimod.xml and decodes only the terms and modifications it uses. Setting
+ * the system property {@value #USE_ONLINE_PROPERTY} to true uses the online
+ * versions instead, which must be downloaded and parsed by every JVM.
+ *
+ * @author julian
+ *
+ */
+public final class OntologyRegistry {
+
+    /** the system property to use the online ontologies instead of the shipped ones */
+    public static final String USE_ONLINE_PROPERTY = "pia.ontologies.online";
+
+    /** the shared mapper for the PSI-MS ontology */
+    private static volatile OBOMapper oboMapper;
+
+    /** the shared parser for the PSI-MOD ontology */
+    private static volatile PsiModParser psiModParser;
+
+    /** the shared parser for Unimod */
+    private static volatile UnimodParser unimodParser;
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(OntologyRegistry.class);
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private OntologyRegistry() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Whether the online ontologies should be used, set by the system property
+     * {@value #USE_ONLINE_PROPERTY}.
+     *
+     * @return
+     */
+    private static boolean useOnline() {
+        return Boolean.getBoolean(USE_ONLINE_PROPERTY);
+    }
+
+
+    /**
+     * Returns the shared {@link OBOMapper}, which is created on the first
+     * call.
+     *
+     * @return
+     */
+    public static OBOMapper getOBOMapper() {
+        OBOMapper mapper = oboMapper;
+        if (mapper == null) {
+            synchronized (OntologyRegistry.class) {
+                mapper = oboMapper;
+                if (mapper == null) {
+                    LOGGER.info("Initializing PSI-MS ontology...");
+                    mapper = new OBOMapper(useOnline());
+                    oboMapper = mapper;
+                    LOGGER.info("PSI-MS ontology initialized");
+                }
+            }
+        }
+        return mapper;
+    }
+
+
+    /**
+     * Returns the shared {@link PsiModParser}, which is created on the first
+     * call.
+     *
+     * @return
+     */
+    public static PsiModParser getPsiModParser() {
+        PsiModParser parser = psiModParser;
+        if (parser == null) {
+            synchronized (OntologyRegistry.class) {
+                parser = psiModParser;
+                if (parser == null) {
+                    LOGGER.info("Initializing PSI-MOD ontology...");
+                    parser = new PsiModParser(useOnline());
+                    psiModParser = parser;
+                    LOGGER.info("PSI-MOD ontology initialized");
+                }
+            }
+        }
+        return parser;
+    }
+
+
+    /**
+     * Returns the shared {@link UnimodParser}, which is created on the first
+     * call.
+     *
+     * @return
+     */
+    public static UnimodParser getUnimodParser() {
+        UnimodParser parser = unimodParser;
+        if (parser == null) {
+            synchronized (OntologyRegistry.class) {
+                parser = unimodParser;
+                if (parser == null) {
+                    LOGGER.info("Initializing unimod parser...");
+                    parser = new UnimodParser(useOnline());
+                    unimodParser = parser;
+                    LOGGER.info("unimod parser initialized");
+                }
+            }
+        }
+        return parser;
+    }
+}
@@ -70,6 +70,8 @@ public class PIAConstants {
     public static final String PSM_EXPORT_OPTION = "psmExport";
     public static final String PEPTIDE_EXPORT_OPTION = "peptideExport";
     public static final String PROTEIN_EXPORT_OPTION = "proteinExport";
+    public static final String BATCH_INPUT_FILES_OPTION = "batchInfiles";
+    public static final String BATCH_THREADS_OPTION = "batchThreads";
 
     /** helper description */
     public static final String HELP_DESCRIPTION =
@@ -0,0 +1,241 @@
+package de.mpc.pia.tools;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Helpers for the pre-parsed binary forms of the shipped ontologies, which
+ * are generated at build time by the {@link OntologyPrecompiler}.
+ * <p>
+ * The files are memory mapped for reading. A file inside a jar cannot be
+ * mapped, so it is extracted once into a cache directory in the temporary
+ * directory and mapped from there by all following JVMs.
+ *
+ * @author julian
+ *
+ */
+public final class PrecompiledFiles {
+
+    /** the logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PrecompiledFiles.class);
+
+    /** the directory for the extracted files, inside the temporary directory */
+    private static final String CACHE_DIRECTORY = "pia-precompiled";
+
+    /** the length of the header, i.e. the magic bytes and the version */
+    public static final int HEADER_LENGTH = 8 + 4;
+
+    /** the length written for a null string */
+    private static final int NULL_LENGTH = -1;
+
+
+    /**
+     * We don't ever want to instantiate this class
+     */
+    private PrecompiledFiles() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Maps the pre-parsed file at the given classpath resource and checks its
+     * header. Returns null, if there is no such resource (e.g. when running
+     * without the build step) or it has not the given magic bytes and
+     * version.
+     *
+     * @param resourcePath
+     * @param magic
+     * @param version
+     * @return
+     */
+    public static ByteBuffer mapResource(String resourcePath, byte[] magic, int version) {
+        URL url = PrecompiledFiles.class.getResource(resourcePath);
+        if (url == null) {
+            LOGGER.debug("no pre-parsed file at " + resourcePath);
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer;
+            if ("file".equals(url.getProtocol())) {
+                buffer = mapFile(new File(url.toURI()));
+            } else {
+                buffer = mapExtracted(url, resourcePath);
+            }
+
+            if (!hasHeader(buffer, magic, version)) {
+                LOGGER.warn("the pre-parsed file at " + resourcePath + " has an unknown format, it is ignored");
+                return null;
+            }
+            return buffer;
+        } catch (IOException | URISyntaxException e) {
+            LOGGER.warn("could not map the pre-parsed file at " + resourcePath, e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Maps the complete given file read-only.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuffer mapFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+
+    /**
+     * Extracts the resource into the cache directory, if it is not yet there,
+     * and maps the extracted file. The size and modification time of the
+     * resource are part of the file name, so a changed resource is extracted
+     * again. If the cache directory is not writable, the resource is read
+     * into the heap instead.
+     *
+     * @param url
+     * @param resourcePath
+     * @return
+     * @throws IOException
+     */
+    private static ByteBuffer mapExtracted(URL url, String resourcePath) throws IOException {
+        URLConnection connection = url.openConnection();
+        String name = resourcePath.substring(resourcePath.lastIndexOf('/') + 1);
+        Path cacheDir = new File(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY).toPath();
+        Path cachedFile = cacheDir.resolve(connection.getContentLengthLong() + "-"
+                + connection.getLastModified() + "-" + name);
+
+        if (!Files.isRegularFile(cachedFile)) {
+            try {
+                Files.createDirectories(cacheDir);
+                Path tmpFile = Files.createTempFile(cacheDir, name, ".tmp");
+                try (InputStream inStream = connection.getInputStream()) {
+                    Files.copy(inStream, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                // other JVMs may extract the same file concurrently, the move is atomic
+                Files.move(tmpFile, cachedFile, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                LOGGER.debug("could not extract " + resourcePath + " into " + cacheDir + ", reading it into memory", e);
+                try (InputStream inStream = url.openStream()) {
+                    return ByteBuffer.wrap(readFully(inStream));
+                }
+            }
+        }
+
+        return mapFile(cachedFile.toFile());
+    }
+
+
+    private static byte[] readFully(InputStream inStream) throws IOException {
+        byte[] bytes = new byte[1 << 16];
+        int length = 0;
+        int read;
+        while ((read = inStream.read(bytes, length, bytes.length - length)) >= 0) {
+            length += read;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+
+    private static boolean hasHeader(ByteBuffer buffer, byte[] magic, int version) {
+        if (buffer.limit() < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(i) != magic[i]) {
+                return false;
+            }
+        }
+        return buffer.getInt(magic.length) == version;
+    }
+
+
+    /**
+     * Writes the header with the magic bytes (8 bytes) and version.
+     *
+     * @param out
+     * @param magic
+     * @param version
+     * @throws IOException
+     */
+    public static void writeHeader(DataOutputStream out, byte[] magic, int version) throws IOException {
+        out.write(magic);
+        out.writeInt(version);
+    }
+
+
+    /**
+     * Writes the string as its length in bytes and the UTF-8 bytes, or
+     * {@link #NULL_LENGTH} for null.
+     *
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}
+     * at the buffer's position and advances the position.
+     *
+     * @param buffer
+     * @return
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}
+     * at the given absolute position, without changing the buffer's position.
+     *
+     * @param buffer
+     * @param position
+     * @return
+     */
+    public static String getString(ByteBuffer buffer, int position) {
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(position);
+        return readString(reader);
+    }
+}
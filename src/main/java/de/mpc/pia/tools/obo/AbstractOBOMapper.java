@@ -1,11 +1,18 @@
 package de.mpc.pia.tools.obo;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Synonym;
 import org.biojava.nbio.ontology.Term;
 import org.biojava.nbio.ontology.Triple;
 
@@ -25,6 +32,25 @@ public abstract class AbstractOBOMapper {
     public static final String OBO_IS_A = "is_a";
 
 
+    /** the terms by their descriptions (i.e. the names in the OBO file), built on first use */
+    private volatile Map<String, Term> termsByDescription;
+
+    /** the terms by their synonyms, built on first use */
+    private volatile Map<String, Term> termsBySynonym;
+
+    /** the triples of the terms as subject, by the terms' accessions */
+    private final Map<String, Set<Triple>> subjectTriples = new ConcurrentHashMap<>();
+
+    /** the accessions of the direct is_a parents, by the terms' accessions */
+    private final Map<String, Set<String>> parentAccessions = new ConcurrentHashMap<>();
+
+    /** the objects of the relationship relations, by the terms' accessions */
+    private final Map<String, Set<String>> relationships = new ConcurrentHashMap<>();
+
+    /** the accessions of all is_a ancestors, by the terms' accessions */
+    private final Map<String, Set<String>> ancestorAccessions = new ConcurrentHashMap<>();
+
+
     /**
      * Returns the currently used ontology. Usual either a shipped file or online version.
      *
@@ -33,6 +59,18 @@ public abstract class AbstractOBOMapper {
     public abstract Ontology getCurrentOntology();
 
 
+    /**
+     * Returns the pre-parsed ontology, if the mapper uses the shipped
+     * pre-parsed form instead of a parsed biojava ontology. All lookups are
+     * then delegated to it. The default returns null.
+     *
+     * @return
+     */
+    protected PrecompiledOntology getPrecompiledOntology() {
+        return null;
+    }
+
+
     /**
      * Fetch {@link Term} with specified accession
      *
@@ -40,6 +78,11 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Term getTerm(String accession) {
+        PrecompiledOntology precompiled = getPrecompiledOntology();
+        if (precompiled != null) {
+            return precompiled.getTerm(accession);
+        }
+
         try {
             return getCurrentOntology().getTerm(accession);
         } catch (NoSuchElementException e) {
@@ -55,6 +98,11 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Set<Term> getTerms() {
+        PrecompiledOntology precompiled = getPrecompiledOntology();
+        if (precompiled != null) {
+            return precompiled.getTerms();
+        }
+
         try {
             return getCurrentOntology().getTerms();
         } catch (NoSuchElementException e) {
@@ -75,10 +123,107 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Set<Triple> getTriples(Term subject, Term object, Term predicate) {
+        if ((subject != null) && (object == null) && (predicate == null)) {
+            // the usual query for all relations of a term is cached
+            return subjectTriples.computeIfAbsent(subject.getName(),
+                    k -> Collections.unmodifiableSet(queryTriples(subject, null, null)));
+        }
+        return queryTriples(subject, object, predicate);
+    }
+
+
+    private Set<Triple> queryTriples(Term subject, Term object, Term predicate) {
+        PrecompiledOntology precompiled = getPrecompiledOntology();
+        if (precompiled != null) {
+            return precompiled.getTriples(subject, object, predicate);
+        }
         return getCurrentOntology().getTriples(subject, object, predicate);
     }
 
 
+    /**
+     * Returns the accessions of the direct parents of the given term, i.e.
+     * the objects of the term's is_a relations.
+     *
+     * @param term
+     * @return
+     */
+    public Set<String> getParentAccessions(Term term) {
+        return parentAccessions.computeIfAbsent(term.getName(), k -> {
+            Set<String> parents = new LinkedHashSet<>();
+            for (Triple triple : getTriples(term, null, null)) {
+                if (triple.getPredicate().getName().equals(OBO_IS_A)) {
+                    parents.add(triple.getObject().getName());
+                }
+            }
+            return Collections.unmodifiableSet(parents);
+        });
+    }
+
+
+    /**
+     * Returns the objects of the relationship relations of the given term,
+     * e.g. "has_order MS:1002108" or "has_regexp MS:1001187".
+     *
+     * @param term
+     * @return
+     */
+    public Set<String> getRelationships(Term term) {
+        return relationships.computeIfAbsent(term.getName(), k -> {
+            Set<String> objects = new LinkedHashSet<>();
+            for (Triple triple : getTriples(term, null, null)) {
+                if (triple.getPredicate().getName().equals(OBO_RELATIONSHIP)) {
+                    objects.add(triple.getObject().getName());
+                }
+            }
+            return Collections.unmodifiableSet(objects);
+        });
+    }
+
+
+    /**
+     * Returns the accessions of all ancestors of the given term, following
+     * the is_a relations transitively.
+     *
+     * @param term
+     * @return
+     */
+    public Set<String> getAncestorAccessions(Term term) {
+        Set<String> ancestors = ancestorAccessions.get(term.getName());
+        if (ancestors == null) {
+            ancestors = new LinkedHashSet<>();
+            Deque<Term> toProcess = new ArrayDeque<>();
+            toProcess.add(term);
+
+            while (!toProcess.isEmpty()) {
+                for (String parentAccession : getParentAccessions(toProcess.poll())) {
+                    Term parent = getTerm(parentAccession);
+                    if (ancestors.add(parentAccession) && (parent != null)) {
+                        toProcess.add(parent);
+                    }
+                }
+            }
+
+            ancestors = Collections.unmodifiableSet(ancestors);
+            ancestorAccessions.putIfAbsent(term.getName(), ancestors);
+        }
+        return ancestors;
+    }
+
+
+    /**
+     * Whether the given term is a (direct or indirect) child of the term with
+     * the given accession.
+     *
+     * @param term
+     * @param parentAccession
+     * @return
+     */
+    public boolean isA(Term term, String parentAccession) {
+        return getAncestorAccessions(term).contains(parentAccession);
+    }
+
+
     /**
      * Gets the entry in the OBO with the given name. If none is found, returns
      * null.
@@ -87,13 +232,65 @@ public abstract class AbstractOBOMapper {
      * @return
      */
     public Term getTermByName(String name) {
-        Set<Term> keys = getTerms();
-        for (Term term : keys) {
-            if (name.equals(term.getDescription())) {
-                return term;
+        PrecompiledOntology precompiled = getPrecompiledOntology();
+        if (precompiled != null) {
+            return precompiled.getTermByDescription(name);
+        }
+
+        Map<String, Term> terms = termsByDescription;
+        if (terms == null) {
+            synchronized (this) {
+                terms = termsByDescription;
+                if (terms == null) {
+                    terms = new HashMap<>();
+                    for (Term term : getTerms()) {
+                        if (term.getDescription() != null) {
+                            terms.putIfAbsent(term.getDescription(), term);
+                        }
+                    }
+                    termsByDescription = terms;
+                }
             }
         }
 
-        return null;
+        return terms.get(name);
+    }
+
+
+    /**
+     * Gets the entry in the OBO with the given synonym. If none is found,
+     * returns null.
+     *
+     * @param synonym
+     * @return
+     */
+    public Term getTermBySynonym(String synonym) {
+        PrecompiledOntology precompiled = getPrecompiledOntology();
+        if (precompiled != null) {
+            return precompiled.getTermBySynonym(synonym);
+        }
+
+        Map<String, Term> terms = termsBySynonym;
+        if (terms == null) {
+            synchronized (this) {
+                terms = termsBySynonym;
+                if (terms == null) {
+                    terms = new HashMap<>();
+                    for (Term term : getTerms()) {
+                        for (Object termSynonym : term.getSynonyms()) {
+                            String synonymName = (termSynonym instanceof Synonym)
+                                    ? ((Synonym) termSynonym).getName()
+                                    : String.valueOf(termSynonym);
+                            if (synonymName != null) {
+                                terms.putIfAbsent(synonymName, term);
+                            }
+                        }
+                    }
+                    termsBySynonym = terms;
+                }
+            }
+        }
+
+        return terms.get(synonym);
     }
 }
@@ -5,9 +5,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.text.ParseException;
 
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Term;
 import org.biojava.nbio.ontology.io.OboParser;
 
 import de.mpc.pia.tools.OntologyConstants;
@@ -30,11 +33,23 @@ public class OBOMapper extends AbstractOBOMapper {
     /** the actual ontology in the OBO file */
     private Ontology shippedOntology;
 
+    /** the pre-parsed shipped ontology, used instead of parsing the shipped file */
+    private PrecompiledOntology precompiledOntology;
+
     // some statics
     public static final String OBO_HAS_REGEXP = "has_regexp";
     public static final String OBO_HAS_ORDER_HIGHERSCOREBETTER = "has_order MS:1002108";
     public static final String OBO_HAS_ORDER_LOWERSCOREBETTER = "has_order MS:1002109";
 
+    /** the path to the shipped OBO file */
+    private static final String PATH_TO_SHIPPED_OBO = "/de/mpc/pia/psi-ms.obo";
+
+    /** the path to the pre-parsed form of the shipped OBO file, generated at build time */
+    public static final String PATH_TO_PRECOMPILED_OBO = "/de/mpc/pia/psi-ms.obo.bin";
+
+    private static final String ONTOLOGY_NAME = "PSI-MS";
+    private static final String ONTOLOGY_DESCRIPTION = "MS ontology of the HUPO-PSI";
+
 
     /**
      * Constructor for the OBOMapper. Uses the online OBO file (if accessible)
@@ -47,47 +62,99 @@ public class OBOMapper extends AbstractOBOMapper {
 
 
     /**
-     * Creates a new OBOMapper, using the online OBO or the shipped only.
+     * Creates a new OBOMapper, using the online OBO or the shipped only. The
+     * shipped OBO is read from its pre-parsed form, if this is available.
      *
      * @param useOnline whether to use the online OBO
      */
     public OBOMapper(boolean useOnline) {
-        try (InputStream inStreamOffline = OBOMapper.class.getResourceAsStream("/de/mpc/pia/psi-ms.obo")) {
-            // get the shipped ontology
-            OboParser parser = new OboParser();
-            BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStreamOffline));
-
-            shippedOntology = parser.parseOBO(oboFile, "PSI-MS", "MS ontology of the HUPO-PSI");
-
-            // get the online ontology
-            if (useOnline) {
-                try (InputStream inStreamOnline = new URL(OntologyConstants.PSI_MS_OBO_URL).openStream()) {
-                    parser = new OboParser();
-                    oboFile = new BufferedReader(new InputStreamReader(inStreamOnline));
-
-                    onlineOntology = parser.parseOBO(oboFile, "PSI-MS", "MS ontology of the HUPO-PSI");
-                }
-            } else {
+        // get the online ontology
+        if (useOnline) {
+            try (InputStream inStreamOnline = new URL(OntologyConstants.PSI_MS_OBO_URL).openStream()) {
+                onlineOntology = parseOntology(inStreamOnline);
+            } catch (IOException e) {
                 onlineOntology = null;
+                LOGGER.warn("could not use remote obo file, check internet connection", e);
+            } catch (Exception e) {
+                LOGGER.error(e);
+                throw new AssertionError(e);
             }
-        } catch (IOException e) {
+        } else {
             onlineOntology = null;
-            if (useOnline) {
-                LOGGER.warn("could not use remote obo file, check internet connection", e);
+        }
+
+        // get the shipped ontology
+        if (onlineOntology == null) {
+            precompiledOntology = PrecompiledOntology.loadResource(PATH_TO_PRECOMPILED_OBO,
+                    ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+            if (precompiledOntology == null) {
+                try {
+                    shippedOntology = parseShippedOntology();
+                } catch (Exception e) {
+                    LOGGER.error(e);
+                    throw new AssertionError(e);
+                }
             }
-        } catch (Exception e) {
-            LOGGER.error(e);
-            throw new AssertionError(e);
         }
     }
 
 
+    /**
+     * Parses the shipped OBO file.
+     *
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static Ontology parseShippedOntology() throws IOException, ParseException {
+        try (InputStream inStreamOffline = OBOMapper.class.getResourceAsStream(PATH_TO_SHIPPED_OBO)) {
+            return parseOntology(inStreamOffline);
+        }
+    }
+
+
+    private static Ontology parseOntology(InputStream inStream) throws IOException, ParseException {
+        OboParser parser = new OboParser();
+        BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
+        return parser.parseOBO(oboFile, ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+    }
+
+
     @Override
     public Ontology getCurrentOntology() {
         if (onlineOntology != null) {
             return onlineOntology;
+        } else if (precompiledOntology != null) {
+            return precompiledOntology.getOntology();
         } else {
             return shippedOntology;
         }
     }
+
+
+    @Override
+    protected PrecompiledOntology getPrecompiledOntology() {
+        return precompiledOntology;
+    }
+
+
+    /**
+     * Returns the regular expression of the cleavage sites of the given
+     * enzyme term, i.e. the description of the term referenced by its first
+     * has_regexp relationship. Returns null, if the enzyme has none.
+     *
+     * @param enzymeTerm
+     * @return
+     */
+    public String getEnzymeRegexp(Term enzymeTerm) {
+        for (String relationship : getRelationships(enzymeTerm)) {
+            if (relationship.startsWith(OBO_HAS_REGEXP)) {
+                Term regExpTerm = getTerm(relationship.substring(OBO_HAS_REGEXP.length()).trim());
+                if (regExpTerm != null) {
+                    return StringEscapeUtils.unescapeJava(regExpTerm.getDescription());
+                }
+            }
+        }
+        return null;
+    }
 }
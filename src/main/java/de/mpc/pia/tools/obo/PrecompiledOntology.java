@@ -0,0 +1,511 @@
+package de.mpc.pia.tools.obo;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.biojava.nbio.ontology.OntoTools;
+import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Synonym;
+import org.biojava.nbio.ontology.Term;
+import org.biojava.nbio.ontology.Triple;
+import org.biojava.nbio.ontology.utils.Annotation;
+
+import de.mpc.pia.tools.PrecompiledFiles;
+
+
+/**
+ * Read-only access to an OBO ontology in the pre-parsed binary form, which is
+ * generated at build time from the shipped OBO files.
+ * <p>
+ * The file is memory mapped and only the header is read on opening. The terms
+ * are sorted by their accession (name) and found by binary search, the same
+ * is done for the descriptions and synonyms. The {@link Term}s and
+ * {@link Triple}s are created only when they are requested and belong to an
+ * otherwise empty {@link Ontology}, so a short run needs to decode only the
+ * few terms it actually uses.
+ * <p>
+ * The file consists of the header, the sorted offsets of the term records,
+ * the description and synonym indexes (each entry the position of the string
+ * and the index of its term) and the term records. Each record holds the
+ * name, description, synonyms, the annotations as strings and the triples of
+ * the term as subject.
+ *
+ * @author julian
+ *
+ */
+public final class PrecompiledOntology {
+
+    /** the magic bytes at the start of every pre-parsed ontology */
+    private static final byte[] MAGIC = {'P', 'I', 'A', 'O', 'B', 'O', 0, 0};
+
+    /** the current version of the format */
+    public static final int FORMAT_VERSION = 1;
+
+    /** the length of an entry in the description and synonym indexes */
+    private static final int INDEX_ENTRY_LENGTH = 4 + 4;
+
+
+    /** the mapped file */
+    private final ByteBuffer buffer;
+
+    /** the number of terms */
+    private final int nrTerms;
+
+    /** the position of the term offsets */
+    private final int termOffsetsPosition;
+
+    /** the number of entries in the description index */
+    private final int nrDescriptions;
+
+    /** the position of the description index */
+    private final int descriptionsPosition;
+
+    /** the number of entries in the synonym index */
+    private final int nrSynonyms;
+
+    /** the position of the synonym index */
+    private final int synonymsPosition;
+
+    /** the ontology holding the created terms and triples */
+    private final Ontology ontology;
+
+    /** the already created terms by their index */
+    private final Term[] terms;
+
+    /** the already created triples of the terms as subject by their index */
+    private final List<Set<Triple>> triples;
+
+    /** whether all terms and triples are created */
+    private boolean complete;
+
+
+    /**
+     * Reads the header of the given mapped file.
+     *
+     * @param buffer
+     * @param name the name of the ontology
+     * @param description the description of the ontology
+     */
+    PrecompiledOntology(ByteBuffer buffer, String name, String description) {
+        this.buffer = buffer;
+
+        int position = PrecompiledFiles.HEADER_LENGTH;
+        nrTerms = buffer.getInt(position);
+        termOffsetsPosition = position + 4;
+
+        position = termOffsetsPosition + 4 * nrTerms;
+        nrDescriptions = buffer.getInt(position);
+        descriptionsPosition = position + 4;
+
+        position = descriptionsPosition + INDEX_ENTRY_LENGTH * nrDescriptions;
+        nrSynonyms = buffer.getInt(position);
+        synonymsPosition = position + 4;
+
+        try {
+            ontology = OntoTools.getDefaultFactory().createOntology(name, description);
+        } catch (Exception e) {
+            throw new IllegalStateException("could not create the ontology " + name, e);
+        }
+        terms = new Term[nrTerms];
+        triples = new ArrayList<>(Collections.nCopies(nrTerms, null));
+        complete = false;
+    }
+
+
+    /**
+     * Maps the pre-parsed ontology at the given classpath resource. Returns
+     * null, if the resource is not available.
+     *
+     * @param resourcePath
+     * @param name the name of the ontology
+     * @param description the description of the ontology
+     * @return
+     */
+    public static PrecompiledOntology loadResource(String resourcePath, String name, String description) {
+        ByteBuffer buffer = PrecompiledFiles.mapResource(resourcePath, MAGIC, FORMAT_VERSION);
+        return (buffer != null) ? new PrecompiledOntology(buffer, name, description) : null;
+    }
+
+
+    /**
+     * Returns the term with the given accession or null, if there is none.
+     *
+     * @param accession
+     * @return
+     */
+    public Term getTerm(String accession) {
+        int termIdx = findTerm(accession);
+        return (termIdx >= 0) ? getTerm(termIdx) : null;
+    }
+
+
+    /**
+     * Returns the first term with the given description (i.e. the name in the
+     * OBO file) or null, if there is none.
+     *
+     * @param description
+     * @return
+     */
+    public Term getTermByDescription(String description) {
+        int termIdx = findInIndex(descriptionsPosition, nrDescriptions, description);
+        return (termIdx >= 0) ? getTerm(termIdx) : null;
+    }
+
+
+    /**
+     * Returns the first term with the given synonym or null, if there is
+     * none.
+     *
+     * @param synonym
+     * @return
+     */
+    public Term getTermBySynonym(String synonym) {
+        int termIdx = findInIndex(synonymsPosition, nrSynonyms, synonym);
+        return (termIdx >= 0) ? getTerm(termIdx) : null;
+    }
+
+
+    /**
+     * Returns all terms of the ontology, which are all created by this call.
+     *
+     * @return
+     */
+    public Set<Term> getTerms() {
+        Set<Term> allTerms = new LinkedHashSet<>(2 * nrTerms);
+        for (int idx = 0; idx < nrTerms; idx++) {
+            allTerms.add(getTerm(idx));
+        }
+        return allTerms;
+    }
+
+
+    /**
+     * Returns the triples matching the given pattern, null parameters are
+     * treated as wildcards.
+     *
+     * @param subject
+     * @param object
+     * @param predicate
+     * @return
+     */
+    public Set<Triple> getTriples(Term subject, Term object, Term predicate) {
+        Set<Triple> matches = new LinkedHashSet<>();
+        if (subject != null) {
+            int termIdx = findTerm(subject.getName());
+            if (termIdx >= 0) {
+                addMatchingTriples(getTriples(termIdx), object, predicate, matches);
+            }
+        } else {
+            for (int idx = 0; idx < nrTerms; idx++) {
+                addMatchingTriples(getTriples(idx), object, predicate, matches);
+            }
+        }
+        return matches;
+    }
+
+
+    private static void addMatchingTriples(Set<Triple> termTriples, Term object, Term predicate,
+            Set<Triple> matches) {
+        for (Triple triple : termTriples) {
+            if (((object == null) || triple.getObject().getName().equals(object.getName()))
+                    && ((predicate == null) || triple.getPredicate().getName().equals(predicate.getName()))) {
+                matches.add(triple);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the complete biojava ontology, for which all terms and triples
+     * are created on the first call.
+     *
+     * @return
+     */
+    public synchronized Ontology getOntology() {
+        if (!complete) {
+            for (int idx = 0; idx < nrTerms; idx++) {
+                getTriples(idx);
+            }
+            complete = true;
+        }
+        return ontology;
+    }
+
+
+    private int termOffset(int termIdx) {
+        return buffer.getInt(termOffsetsPosition + 4 * termIdx);
+    }
+
+
+    private int findTerm(String accession) {
+        int low = 0;
+        int high = nrTerms - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = PrecompiledFiles.getString(buffer, termOffset(mid)).compareTo(accession);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the term index of the first entry with the given key in the
+     * description or synonym index, or -1 if there is none.
+     */
+    private int findInIndex(int indexPosition, int nrEntries, String key) {
+        if (key == null) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = nrEntries;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (PrecompiledFiles.getString(buffer, buffer.getInt(indexPosition + INDEX_ENTRY_LENGTH * mid))
+                    .compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        if ((low < nrEntries) && PrecompiledFiles.getString(buffer,
+                buffer.getInt(indexPosition + INDEX_ENTRY_LENGTH * low)).equals(key)) {
+            return buffer.getInt(indexPosition + INDEX_ENTRY_LENGTH * low + 4);
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the term with the given index, creating it on the first call.
+     */
+    private synchronized Term getTerm(int termIdx) {
+        Term term = terms[termIdx];
+        if (term != null) {
+            return term;
+        }
+
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(termOffset(termIdx));
+        String name = PrecompiledFiles.readString(reader);
+        String description = PrecompiledFiles.readString(reader);
+
+        Object[] synonyms = new Object[reader.getInt()];
+        for (int i = 0; i < synonyms.length; i++) {
+            Synonym synonym = new Synonym();
+            synonym.setName(PrecompiledFiles.readString(reader));
+            synonyms[i] = synonym;
+        }
+
+        try {
+            term = ontology.createTerm(name, description, synonyms);
+        } catch (Exception e) {
+            throw new IllegalStateException("could not create the term " + name, e);
+        }
+
+        int nrAnnotations = reader.getInt();
+        if (nrAnnotations > 0) {
+            Annotation annotation = term.getAnnotation();
+            for (int i = 0; i < nrAnnotations; i++) {
+                annotation.setProperty(PrecompiledFiles.readString(reader), PrecompiledFiles.readString(reader));
+            }
+        }
+
+        terms[termIdx] = term;
+        return term;
+    }
+
+
+    /**
+     * Returns the term with the given name, creating it in the ontology, if
+     * it is not in the pre-parsed terms.
+     */
+    private synchronized Term getOrCreateTerm(String name) {
+        int termIdx = findTerm(name);
+        if (termIdx >= 0) {
+            return getTerm(termIdx);
+        }
+
+        try {
+            return ontology.containsTerm(name) ? ontology.getTerm(name) : ontology.createTerm(name);
+        } catch (Exception e) {
+            throw new IllegalStateException("could not create the term " + name, e);
+        }
+    }
+
+
+    /**
+     * Returns the triples of the term with the given index as subject,
+     * creating them on the first call.
+     */
+    private synchronized Set<Triple> getTriples(int termIdx) {
+        Set<Triple> termTriples = triples.get(termIdx);
+        if (termTriples != null) {
+            return termTriples;
+        }
+
+        Term subject = getTerm(termIdx);
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(termOffset(termIdx));
+        // skip name, description, synonyms and annotations
+        PrecompiledFiles.readString(reader);
+        PrecompiledFiles.readString(reader);
+        int nrStrings = reader.getInt();
+        for (int i = 0; i < nrStrings; i++) {
+            PrecompiledFiles.readString(reader);
+        }
+        nrStrings = 2 * reader.getInt();
+        for (int i = 0; i < nrStrings; i++) {
+            PrecompiledFiles.readString(reader);
+        }
+
+        int nrTriples = reader.getInt();
+        termTriples = new LinkedHashSet<>(2 * nrTriples);
+        for (int i = 0; i < nrTriples; i++) {
+            Term predicate = getOrCreateTerm(PrecompiledFiles.readString(reader));
+            Term object = getOrCreateTerm(PrecompiledFiles.readString(reader));
+            String tripleName = PrecompiledFiles.readString(reader);
+            String tripleDescription = PrecompiledFiles.readString(reader);
+
+            try {
+                termTriples.add(ontology.createTriple(subject, object, predicate, tripleName, tripleDescription));
+            } catch (Exception e) {
+                throw new IllegalStateException("could not create the triple " + tripleName, e);
+            }
+        }
+
+        termTriples = Collections.unmodifiableSet(termTriples);
+        triples.set(termIdx, termTriples);
+        return termTriples;
+    }
+
+
+    /**
+     * Writes the given parsed ontology in the pre-parsed form into the file.
+     *
+     * @param parsedOntology
+     * @param file
+     * @throws IOException
+     */
+    public static void write(Ontology parsedOntology, File file) throws IOException {
+        List<Term> sortedTerms = new ArrayList<>();
+        for (Term term : parsedOntology.getTerms()) {
+            if (!(term instanceof Triple)) {
+                sortedTerms.add(term);
+            }
+        }
+        sortedTerms.sort(Comparator.comparing(Term::getName));
+
+        // the records and the relative positions of the terms and their index strings
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int[] termPositions = new int[sortedTerms.size()];
+        List<IndexEntry> descriptions = new ArrayList<>();
+        List<IndexEntry> synonyms = new ArrayList<>();
+
+        for (int idx = 0; idx < sortedTerms.size(); idx++) {
+            Term term = sortedTerms.get(idx);
+            termPositions[idx] = records.size();
+
+            PrecompiledFiles.writeString(records, term.getName());
+            if (term.getDescription() != null) {
+                descriptions.add(new IndexEntry(term.getDescription(), records.size(), idx));
+            }
+            PrecompiledFiles.writeString(records, term.getDescription());
+
+            Object[] termSynonyms = term.getSynonyms();
+            records.writeInt(termSynonyms.length);
+            for (Object termSynonym : termSynonyms) {
+                String synonymName = (termSynonym instanceof Synonym)
+                        ? ((Synonym) termSynonym).getName()
+                        : String.valueOf(termSynonym);
+                if (synonymName != null) {
+                    synonyms.add(new IndexEntry(synonymName, records.size(), idx));
+                }
+                PrecompiledFiles.writeString(records, synonymName);
+            }
+
+            Annotation annotation = term.getAnnotation();
+            records.writeInt(annotation.keys().size());
+            for (Object key : annotation.keys()) {
+                PrecompiledFiles.writeString(records, key.toString());
+                PrecompiledFiles.writeString(records, String.valueOf(annotation.getProperty(key)));
+            }
+
+            Set<Triple> termTriples = parsedOntology.getTriples(term, null, null);
+            records.writeInt(termTriples.size());
+            for (Triple triple : termTriples) {
+                PrecompiledFiles.writeString(records, triple.getPredicate().getName());
+                PrecompiledFiles.writeString(records, triple.getObject().getName());
+                PrecompiledFiles.writeString(records, triple.getName());
+                PrecompiledFiles.writeString(records, triple.getDescription());
+            }
+        }
+        records.flush();
+
+        // the stable sort keeps the first term for equal keys first
+        Comparator<IndexEntry> byKey = Comparator.comparing(entry -> entry.key);
+        descriptions.sort(byKey);
+        synonyms.sort(byKey);
+
+        int recordsPosition = PrecompiledFiles.HEADER_LENGTH
+                + 4 + 4 * termPositions.length
+                + 4 + INDEX_ENTRY_LENGTH * descriptions.size()
+                + 4 + INDEX_ENTRY_LENGTH * synonyms.size();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            PrecompiledFiles.writeHeader(out, MAGIC, FORMAT_VERSION);
+
+            out.writeInt(termPositions.length);
+            for (int termPosition : termPositions) {
+                out.writeInt(recordsPosition + termPosition);
+            }
+
+            for (List<IndexEntry> index : Arrays.asList(descriptions, synonyms)) {
+                out.writeInt(index.size());
+                for (IndexEntry entry : index) {
+                    out.writeInt(recordsPosition + entry.position);
+                    out.writeInt(entry.termIdx);
+                }
+            }
+
+            recordBytes.writeTo(out);
+        }
+    }
+
+
+    /**
+     * An entry of the description or synonym index while writing.
+     */
+    private static class IndexEntry {
+        private final String key;
+        private final int position;
+        private final int termIdx;
+
+        private IndexEntry(String key, int position, int termIdx) {
+            this.key = key;
+            this.position = position;
+            this.termIdx = termIdx;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -38,9 +39,21 @@ public class PsiModParser extends AbstractOBOMapper {
     /** the actual ontology in the OBO file */
     private Ontology ontology;
 
+    /** the pre-parsed shipped ontology, used instead of parsing the shipped file */
+    private PrecompiledOntology precompiledOntology;
+
     /** pattern to identify the unimod id in a definition */
     private static Pattern unimodInDescription = Pattern.compile(".+\\[.*UniMod:([^, ]+).*\\].*$");
 
+    /** the path to the shipped OBO file */
+    private static final String PATH_TO_SHIPPED_OBO = "/de/mpc/pia/PSI-MOD.obo";
+
+    /** the path to the pre-parsed form of the shipped OBO file, generated at build time */
+    public static final String PATH_TO_PRECOMPILED_OBO = "/de/mpc/pia/PSI-MOD.obo.bin";
+
+    private static final String ONTOLOGY_NAME = "PSI-MOD";
+    private static final String ONTOLOGY_DESCRIPTION = "modifications defined by the HUPO-PSI";
+
 
     /**
      * Constructor for the PsiModParser. Uses the online OBO file (if accessible)
@@ -53,36 +66,17 @@ public class PsiModParser extends AbstractOBOMapper {
 
 
     /**
-     * Creates a new PsiModParser, using the online OBO or the shipped file only.
+     * Creates a new PsiModParser, using the online OBO or the shipped file
+     * only. The shipped OBO is read from its pre-parsed form, if this is
+     * available.
      *
      * @param useOnline whether to use the online OBO
      */
     public PsiModParser(boolean useOnline) {
-
-
-        // get the shipped ontology
-        try (InputStream inStream = OBOMapper.class.getResourceAsStream("/de/mpc/pia/PSI-MOD.obo")) {
-            OboParser parser = new OboParser();
-            BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
-
-            ontology = parser.parseOBO(oboFile, "PSI-MOD", "modifications defined by the HUPO-PSI");
-        } catch (IOException e) {
-            if (!useOnline) {
-                LOGGER.warn("could not read local obo file", e);
-            }
-        } catch (Exception e) {
-            if (!useOnline) {
-                LOGGER.error(e);
-            }
-        }
-
         if (useOnline) {
             // get the online ontology
             try (InputStream inStream = new URL(OntologyConstants.PSI_MOD_OBO_URL).openStream()) {
-                OboParser parser = new OboParser();
-                BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
-
-                ontology = parser.parseOBO(oboFile, "PSI-MOD", "modifications defined by the HUPO-PSI");
+                ontology = parseOntology(inStream);
             } catch (IOException e) {
                 LOGGER.warn("Could not read online obo file, check internet connection.", e);
             } catch (Exception e) {
@@ -91,17 +85,62 @@ public class PsiModParser extends AbstractOBOMapper {
         }
 
         if (ontology == null) {
+            // get the shipped ontology
+            precompiledOntology = PrecompiledOntology.loadResource(PATH_TO_PRECOMPILED_OBO,
+                    ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+            if (precompiledOntology == null) {
+                try {
+                    ontology = parseShippedOntology();
+                } catch (IOException e) {
+                    LOGGER.warn("could not read local obo file", e);
+                } catch (Exception e) {
+                    LOGGER.error(e);
+                }
+            }
+        }
+
+        if ((ontology == null) && (precompiledOntology == null)) {
             throw new AssertionError("Could not read ontology file.");
         }
     }
 
 
+    /**
+     * Parses the shipped OBO file.
+     *
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static Ontology parseShippedOntology() throws IOException, ParseException {
+        try (InputStream inStream = PsiModParser.class.getResourceAsStream(PATH_TO_SHIPPED_OBO)) {
+            return parseOntology(inStream);
+        }
+    }
+
+
+    private static Ontology parseOntology(InputStream inStream) throws IOException, ParseException {
+        OboParser parser = new OboParser();
+        BufferedReader oboFile = new BufferedReader(new InputStreamReader(inStream));
+        return parser.parseOBO(oboFile, ONTOLOGY_NAME, ONTOLOGY_DESCRIPTION);
+    }
+
+
     @Override
     public Ontology getCurrentOntology() {
+        if (precompiledOntology != null) {
+            return precompiledOntology.getOntology();
+        }
         return ontology;
     }
 
 
+    @Override
+    protected PrecompiledOntology getPrecompiledOntology() {
+        return precompiledOntology;
+    }
+
+
     /**
      * Gets and returns the equivalent of the given Term from Unimod.
      *
@@ -4,12 +4,12 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.List;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
 import org.apache.log4j.Logger;
 
+import de.mpc.pia.tools.JAXBContextCache;
 import de.mpc.pia.tools.openms.jaxb.IdXML;
 import de.mpc.pia.tools.openms.jaxb.IdentificationRun;
 import de.mpc.pia.tools.openms.jaxb.SearchParameters;
@@ -45,8 +45,7 @@ public class IdXMLParser {
      */
     public IdXMLParser(String idXMLFileName)
             throws JAXBException, FileNotFoundException {
-        JAXBContext context = JAXBContext.newInstance(IdXML.class);
-        Unmarshaller um = context.createUnmarshaller();
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(IdXML.class);
 
         IdXML idXML = (IdXML)um.unmarshal(new FileReader(idXMLFileName));
 
@@ -0,0 +1,272 @@
+package de.mpc.pia.tools.unimod;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.mpc.pia.tools.PrecompiledFiles;
+import de.mpc.pia.tools.unimod.jaxb.CompositionT;
+import de.mpc.pia.tools.unimod.jaxb.ModT;
+import de.mpc.pia.tools.unimod.jaxb.PositionT;
+import de.mpc.pia.tools.unimod.jaxb.SpecificityT;
+
+
+/**
+ * Read-only access to Unimod in the pre-parsed binary form, which is
+ * generated at build time from the shipped unimod.xml.
+ * <p>
+ * The file is memory mapped and holds the {@link UnimodIndex} followed by the
+ * offsets of the modification records and the records. On opening only the
+ * index is read, a {@link ModT} is decoded when a lookup returns it the first
+ * time. Each modification is decoded only once, so lookups return the same
+ * instance like for the parsed unimod.xml.
+ * <p>
+ * The records hold the record ID, title, full name, approval, alternative
+ * names, the delta and the specificities (without neutral losses) of the
+ * modifications, the other elements of unimod.xml are not used by PIA and
+ * not part of the pre-parsed form.
+ *
+ * @author julian
+ *
+ */
+public final class PrecompiledUnimod {
+
+    /** the magic bytes at the start of every pre-parsed Unimod */
+    private static final byte[] MAGIC = {'P', 'I', 'A', 'U', 'N', 'I', 'M', 0};
+
+    /** the current version of the format */
+    public static final int FORMAT_VERSION = 1;
+
+    /** the values for a nullable boolean */
+    private static final byte BOOLEAN_NULL = -1;
+    private static final byte BOOLEAN_FALSE = 0;
+    private static final byte BOOLEAN_TRUE = 1;
+
+
+    /** the mapped file */
+    private final ByteBuffer buffer;
+
+    /** the position of the offsets of the modification records */
+    private final int offsetsPosition;
+
+    /** the already decoded modifications */
+    private final AtomicReferenceArray<ModT> modifications;
+
+    /** the indexes of the modifications */
+    private final UnimodIndex index;
+
+
+    /**
+     * Reads the index of the given mapped file.
+     *
+     * @param buffer
+     */
+    PrecompiledUnimod(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(PrecompiledFiles.HEADER_LENGTH);
+        index = new UnimodIndex(reader, this::getModification);
+
+        int nrMods = reader.getInt();
+        offsetsPosition = reader.position();
+        modifications = new AtomicReferenceArray<>(nrMods);
+    }
+
+
+    /**
+     * Maps the pre-parsed Unimod at the given classpath resource. Returns
+     * null, if the resource is not available.
+     *
+     * @param resourcePath
+     * @return
+     */
+    static PrecompiledUnimod loadResource(String resourcePath) {
+        ByteBuffer buffer = PrecompiledFiles.mapResource(resourcePath, MAGIC, FORMAT_VERSION);
+        return (buffer != null) ? new PrecompiledUnimod(buffer) : null;
+    }
+
+
+    /**
+     * The indexes for the lookups, which decode the returned modifications.
+     *
+     * @return
+     */
+    UnimodIndex getIndex() {
+        return index;
+    }
+
+
+    /**
+     * Returns the modification with the given index, decoding it on the first
+     * call.
+     *
+     * @param idx
+     * @return
+     */
+    ModT getModification(int idx) {
+        ModT mod = modifications.get(idx);
+        if (mod == null) {
+            modifications.compareAndSet(idx, null, readModification(idx));
+            mod = modifications.get(idx);
+        }
+        return mod;
+    }
+
+
+    private ModT readModification(int idx) {
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(buffer.getInt(offsetsPosition + 4 * idx));
+
+        ModT mod = new ModT();
+        if (reader.get() != 0) {
+            mod.setRecordId(reader.getLong());
+        }
+        mod.setTitle(PrecompiledFiles.readString(reader));
+        mod.setFullName(PrecompiledFiles.readString(reader));
+        mod.setApproved(readBoolean(reader));
+
+        int nrAltNames = reader.getInt();
+        for (int i = 0; i < nrAltNames; i++) {
+            mod.getAltName().add(PrecompiledFiles.readString(reader));
+        }
+
+        if (reader.get() != 0) {
+            CompositionT delta = new CompositionT();
+            delta.setComposition(PrecompiledFiles.readString(reader));
+            delta.setMonoMass(readDouble(reader));
+            delta.setAvgeMass(readDouble(reader));
+            mod.setDelta(delta);
+        }
+
+        int nrSpecificities = reader.getInt();
+        for (int i = 0; i < nrSpecificities; i++) {
+            SpecificityT spec = new SpecificityT();
+            spec.setSite(PrecompiledFiles.readString(reader));
+            String position = PrecompiledFiles.readString(reader);
+            if (position != null) {
+                spec.setPosition(PositionT.fromValue(position));
+            }
+            spec.setHidden(readBoolean(reader));
+            spec.setClassification(PrecompiledFiles.readString(reader));
+            String specGroup = PrecompiledFiles.readString(reader);
+            if (specGroup != null) {
+                spec.setSpecGroup(new BigInteger(specGroup));
+            }
+            mod.getSpecificity().add(spec);
+        }
+
+        return mod;
+    }
+
+
+    private static Boolean readBoolean(ByteBuffer reader) {
+        byte value = reader.get();
+        return (value == BOOLEAN_NULL) ? null : (value == BOOLEAN_TRUE);
+    }
+
+
+    private static Double readDouble(ByteBuffer reader) {
+        return (reader.get() != 0) ? reader.getDouble() : null;
+    }
+
+
+    /**
+     * Writes the given parsed modifications in the pre-parsed form into the
+     * file.
+     *
+     * @param parsedModifications
+     * @param file
+     * @throws IOException
+     */
+    public static void write(List<ModT> parsedModifications, File file) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int[] recordPositions = new int[parsedModifications.size()];
+
+        for (int idx = 0; idx < parsedModifications.size(); idx++) {
+            recordPositions[idx] = records.size();
+            writeModification(records, parsedModifications.get(idx));
+        }
+        records.flush();
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(indexBytes);
+        new UnimodIndex(parsedModifications).write(indexOut);
+        indexOut.flush();
+
+        int recordsPosition = PrecompiledFiles.HEADER_LENGTH + indexBytes.size()
+                + 4 + 4 * recordPositions.length;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            PrecompiledFiles.writeHeader(out, MAGIC, FORMAT_VERSION);
+            indexBytes.writeTo(out);
+
+            out.writeInt(recordPositions.length);
+            for (int recordPosition : recordPositions) {
+                out.writeInt(recordsPosition + recordPosition);
+            }
+
+            recordBytes.writeTo(out);
+        }
+    }
+
+
+    private static void writeModification(DataOutputStream out, ModT mod) throws IOException {
+        if (mod.getRecordId() != null) {
+            out.writeByte(1);
+            out.writeLong(mod.getRecordId());
+        } else {
+            out.writeByte(0);
+        }
+        PrecompiledFiles.writeString(out, mod.getTitle());
+        PrecompiledFiles.writeString(out, mod.getFullName());
+        writeBoolean(out, mod.isApproved());
+
+        out.writeInt(mod.getAltName().size());
+        for (String altName : mod.getAltName()) {
+            PrecompiledFiles.writeString(out, altName);
+        }
+
+        CompositionT delta = mod.getDelta();
+        out.writeByte((delta != null) ? 1 : 0);
+        if (delta != null) {
+            PrecompiledFiles.writeString(out, delta.getComposition());
+            writeDouble(out, delta.getMonoMass());
+            writeDouble(out, delta.getAvgeMass());
+        }
+
+        out.writeInt(mod.getSpecificity().size());
+        for (SpecificityT spec : mod.getSpecificity()) {
+            PrecompiledFiles.writeString(out, spec.getSite());
+            PrecompiledFiles.writeString(out, (spec.getPosition() != null) ? spec.getPosition().value() : null);
+            writeBoolean(out, spec.isHidden());
+            PrecompiledFiles.writeString(out, spec.getClassification());
+            PrecompiledFiles.writeString(out, spec.getSpecGroup().toString());
+        }
+    }
+
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        if (value == null) {
+            out.writeByte(BOOLEAN_NULL);
+        } else {
+            out.writeByte(value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        }
+    }
+
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeByte((value != null) ? 1 : 0);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+}
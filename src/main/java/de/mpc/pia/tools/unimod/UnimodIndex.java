@@ -0,0 +1,457 @@
+package de.mpc.pia.tools.unimod;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import de.mpc.pia.tools.PrecompiledFiles;
+import de.mpc.pia.tools.unimod.jaxb.ModT;
+import de.mpc.pia.tools.unimod.jaxb.SpecificityT;
+
+
+/**
+ * Indexes of the Unimod modifications by record ID, name and mono-isotopic
+ * mass, which are used by the {@link UnimodParser} instead of scanning all
+ * modifications. All lookups return the first matching modification in the
+ * order of the indexed list, i.e. the same as a scan over the list would.
+ * <p>
+ * The indexes only hold the modifications' indices, so they can be written
+ * into the pre-parsed Unimod and the modifications of the pre-parsed Unimod
+ * are only decoded, when a lookup returns them.
+ *
+ * @author julian
+ *
+ */
+final class UnimodIndex {
+
+    private static final int[] NO_INDICES = new int[0];
+
+
+    /** the indexed modifications by their indices */
+    private final IntFunction<ModT> modifications;
+
+    /** the indices of the modifications by their record IDs */
+    private final Map<Long, Integer> recordIDs;
+
+    /** the ascending indices of the modifications by their normalized names (title, full name and alternative names) */
+    private final Map<String, int[]> names;
+
+    /** the mono-isotopic masses of the modifications, NaN for modifications without one */
+    private final double[] monoMasses;
+
+    /** the mono-isotopic masses of the modifications, sorted ascending */
+    private final double[] sortedMasses;
+
+    /** the indices of the modifications in the order of the sortedMasses */
+    private final int[] massIndices;
+
+    /** the single letter residue sites (A-Z) of each modification as bitmask */
+    private final int[] residueMasks;
+
+    /** the other sites of each modification, which are no single letter residue */
+    private final List<Set<String>> otherSites;
+
+    /** whether any of the modification's sites is a terminus, which allows all residues */
+    private final boolean[] anyTerminal;
+
+
+    UnimodIndex(List<ModT> modifications) {
+        this.modifications = modifications::get;
+
+        int nrMods = modifications.size();
+        recordIDs = new HashMap<>(2 * nrMods);
+        monoMasses = new double[nrMods];
+        residueMasks = new int[nrMods];
+        otherSites = new ArrayList<>(nrMods);
+        anyTerminal = new boolean[nrMods];
+
+        Map<String, List<Integer>> nameLists = new HashMap<>(4 * nrMods);
+        List<Integer> massList = new ArrayList<>(nrMods);
+
+        for (int idx = 0; idx < nrMods; idx++) {
+            ModT mod = modifications.get(idx);
+
+            if (mod.getRecordId() != null) {
+                recordIDs.putIfAbsent(mod.getRecordId(), idx);
+            }
+
+            Set<String> modNames = new LinkedHashSet<>();
+            addNormalizedName(mod.getTitle(), modNames);
+            addNormalizedName(mod.getFullName(), modNames);
+            for (String altName : mod.getAltName()) {
+                addNormalizedName(altName, modNames);
+            }
+            for (String name : modNames) {
+                nameLists.computeIfAbsent(name, k -> new ArrayList<>(1)).add(idx);
+            }
+
+            if ((mod.getDelta() != null) && (mod.getDelta().getMonoMass() != null)) {
+                monoMasses[idx] = mod.getDelta().getMonoMass();
+                massList.add(idx);
+            } else {
+                monoMasses[idx] = Double.NaN;
+            }
+
+            indexSites(idx, mod);
+        }
+
+        names = new HashMap<>(2 * nameLists.size());
+        for (Map.Entry<String, List<Integer>> nameIt : nameLists.entrySet()) {
+            names.put(nameIt.getKey(), nameIt.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        massList.sort((i1, i2) -> Double.compare(monoMasses[i1], monoMasses[i2]));
+        massIndices = massList.stream().mapToInt(Integer::intValue).toArray();
+        sortedMasses = createSortedMasses(monoMasses, massIndices);
+    }
+
+
+    /**
+     * Reads the indexes written by {@link #write(DataOutputStream)} at the
+     * buffer's position.
+     *
+     * @param buffer
+     * @param modifications the modifications by their indices
+     */
+    UnimodIndex(ByteBuffer buffer, IntFunction<ModT> modifications) {
+        this.modifications = modifications;
+
+        int nrMods = buffer.getInt();
+        monoMasses = new double[nrMods];
+        residueMasks = new int[nrMods];
+        anyTerminal = new boolean[nrMods];
+        otherSites = new ArrayList<>(nrMods);
+        for (int idx = 0; idx < nrMods; idx++) {
+            monoMasses[idx] = buffer.getDouble();
+            residueMasks[idx] = buffer.getInt();
+            anyTerminal[idx] = (buffer.get() != 0);
+
+            int nrOthers = buffer.getInt();
+            Set<String> others = (nrOthers > 0) ? new HashSet<>(2 * nrOthers) : Collections.emptySet();
+            for (int i = 0; i < nrOthers; i++) {
+                others.add(PrecompiledFiles.readString(buffer));
+            }
+            otherSites.add(others);
+        }
+
+        int nrRecordIDs = buffer.getInt();
+        recordIDs = new HashMap<>(2 * nrRecordIDs);
+        for (int i = 0; i < nrRecordIDs; i++) {
+            recordIDs.put(buffer.getLong(), buffer.getInt());
+        }
+
+        int nrNames = buffer.getInt();
+        names = new HashMap<>(2 * nrNames);
+        for (int i = 0; i < nrNames; i++) {
+            String name = PrecompiledFiles.readString(buffer);
+            int[] indices = new int[buffer.getInt()];
+            for (int j = 0; j < indices.length; j++) {
+                indices[j] = buffer.getInt();
+            }
+            names.put(name, indices);
+        }
+
+        massIndices = new int[buffer.getInt()];
+        for (int i = 0; i < massIndices.length; i++) {
+            massIndices[i] = buffer.getInt();
+        }
+        sortedMasses = createSortedMasses(monoMasses, massIndices);
+    }
+
+
+    private static double[] createSortedMasses(double[] monoMasses, int[] massIndices) {
+        double[] masses = new double[massIndices.length];
+        for (int i = 0; i < massIndices.length; i++) {
+            masses[i] = monoMasses[massIndices[i]];
+        }
+        return masses;
+    }
+
+
+    /**
+     * Writes the indexes, which can be read again by
+     * {@link #UnimodIndex(ByteBuffer, IntFunction)}.
+     *
+     * @param out
+     * @throws IOException
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(monoMasses.length);
+        for (int idx = 0; idx < monoMasses.length; idx++) {
+            out.writeDouble(monoMasses[idx]);
+            out.writeInt(residueMasks[idx]);
+            out.writeByte(anyTerminal[idx] ? 1 : 0);
+
+            out.writeInt(otherSites.get(idx).size());
+            for (String site : otherSites.get(idx)) {
+                PrecompiledFiles.writeString(out, site);
+            }
+        }
+
+        out.writeInt(recordIDs.size());
+        for (Map.Entry<Long, Integer> recordIt : recordIDs.entrySet()) {
+            out.writeLong(recordIt.getKey());
+            out.writeInt(recordIt.getValue());
+        }
+
+        out.writeInt(names.size());
+        for (Map.Entry<String, int[]> nameIt : names.entrySet()) {
+            PrecompiledFiles.writeString(out, nameIt.getKey());
+            out.writeInt(nameIt.getValue().length);
+            for (int idx : nameIt.getValue()) {
+                out.writeInt(idx);
+            }
+        }
+
+        out.writeInt(massIndices.length);
+        for (int idx : massIndices) {
+            out.writeInt(idx);
+        }
+    }
+
+
+    /**
+     * Stores the sites of the modification with the given index.
+     *
+     * @param idx
+     * @param mod
+     */
+    private void indexSites(int idx, ModT mod) {
+        int mask = 0;
+        Set<String> others = null;
+
+        for (SpecificityT spec : mod.getSpecificity()) {
+            String site = spec.getSite();
+
+            // TODO: make this more sophisticated
+            if ("N-term".equalsIgnoreCase(site) || "C-Term".equalsIgnoreCase(site)) {
+                anyTerminal[idx] = true;
+            }
+
+            int bit = residueBit(site);
+            if (bit != 0) {
+                mask |= bit;
+            } else {
+                if (others == null) {
+                    others = new HashSet<>(2);
+                }
+                others.add(site);
+            }
+        }
+
+        residueMasks[idx] = mask;
+        otherSites.add((others != null) ? others : Collections.emptySet());
+    }
+
+
+    /**
+     * Returns the bit of a single letter residue A-Z or 0 for any other site.
+     *
+     * @param site
+     * @return
+     */
+    private static int residueBit(String site) {
+        if ((site != null) && (site.length() == 1)) {
+            char residue = site.charAt(0);
+            if ((residue >= 'A') && (residue <= 'Z')) {
+                return 1 << (residue - 'A');
+            }
+        }
+        return 0;
+    }
+
+
+    /**
+     * Normalizes the name for case insensitive comparison, two names are
+     * normalized equally, if and only if {@link String#equalsIgnoreCase(String)}
+     * is true for them.
+     *
+     * @param name
+     * @return
+     */
+    private static String normalizeName(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+
+    private static void addNormalizedName(String name, Set<String> modNames) {
+        if (name != null) {
+            modNames.add(normalizeName(name));
+        }
+    }
+
+
+    /**
+     * Returns the modification with the given record ID or null, if there is
+     * none.
+     *
+     * @param recordID
+     * @return
+     */
+    ModT getByRecordID(Long recordID) {
+        Integer idx = recordIDs.get(recordID);
+        return (idx != null) ? modifications.apply(idx) : null;
+    }
+
+
+    /**
+     * Returns the first modification with the given name (title, full name or
+     * alternative name) allowing all the residues.
+     *
+     * @param query
+     * @param residues
+     * @return
+     */
+    ModT getByName(String query, List<String> residues) {
+        for (int idx : getNameIndices(query)) {
+            if (checkResidues(idx, residues)) {
+                return modifications.apply(idx);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the first modification with the given name, a mono-isotopic
+     * mass within the {@link UnimodParser#UNIMOD_MASS_TOLERANCE} and allowing
+     * all the residues.
+     *
+     * @param query
+     * @param massdelta
+     * @param residues
+     * @return
+     */
+    ModT getByNameAndMass(String query, double massdelta, List<String> residues) {
+        for (int idx : getNameIndices(query)) {
+            if (!Double.isNaN(monoMasses[idx])
+                    && isInTolerance(monoMasses[idx], massdelta)
+                    && checkResidues(idx, residues)) {
+                return modifications.apply(idx);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the first modification with a mono-isotopic mass within the
+     * {@link UnimodParser#UNIMOD_MASS_TOLERANCE} and allowing all the
+     * residues.
+     *
+     * @param massdelta
+     * @param residues
+     * @return
+     */
+    ModT getByMass(double massdelta, List<String> residues) {
+        if (Double.isNaN(massdelta)) {
+            return null;
+        }
+
+        // the range is a little wider than the tolerance, the exact check is done per candidate
+        double lowerMass = massdelta - 2 * UnimodParser.UNIMOD_MASS_TOLERANCE;
+        double upperMass = massdelta + 2 * UnimodParser.UNIMOD_MASS_TOLERANCE;
+
+        int pos = lowerBound(lowerMass);
+        int[] candidates = new int[8];
+        int nrCandidates = 0;
+        while ((pos < sortedMasses.length) && (sortedMasses[pos] <= upperMass)) {
+            if (isInTolerance(sortedMasses[pos], massdelta)) {
+                if (nrCandidates == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, 2 * nrCandidates);
+                }
+                candidates[nrCandidates++] = massIndices[pos];
+            }
+            pos++;
+        }
+
+        Arrays.sort(candidates, 0, nrCandidates);
+        for (int i = 0; i < nrCandidates; i++) {
+            if (checkResidues(candidates[i], residues)) {
+                return modifications.apply(candidates[i]);
+            }
+        }
+        return null;
+    }
+
+
+    private static boolean isInTolerance(double mass, double massdelta) {
+        return Math.abs(mass - massdelta) <= UnimodParser.UNIMOD_MASS_TOLERANCE;
+    }
+
+
+    /**
+     * Returns the position of the first mass in the sortedMasses, which is not
+     * smaller than the given mass.
+     *
+     * @param mass
+     * @return
+     */
+    private int lowerBound(double mass) {
+        int low = 0;
+        int high = sortedMasses.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedMasses[mid] < mass) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    private int[] getNameIndices(String query) {
+        if (query == null) {
+            return NO_INDICES;
+        }
+
+        int[] indices = names.get(normalizeName(query));
+        return (indices != null) ? indices : NO_INDICES;
+    }
+
+
+    /**
+     * Checks for the given residues whether all of them are allowed for the
+     * modification with the given index. Any terminal site allows all
+     * residues.
+     *
+     * @param idx
+     * @param residues
+     * @return
+     */
+    private boolean checkResidues(int idx, List<String> residues) {
+        if (anyTerminal[idx]) {
+            return true;
+        }
+
+        for (String residue : residues) {
+            if (!".".equals(residue)) {
+                int bit = residueBit(residue);
+                boolean allowed = (bit != 0)
+                        ? ((residueMasks[idx] & bit) != 0)
+                        : otherSites.get(idx).contains(residue);
+                if (!allowed) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+}
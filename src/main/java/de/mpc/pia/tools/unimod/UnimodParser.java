@@ -4,12 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
 import org.apache.log4j.Logger;
@@ -18,8 +16,8 @@ import uk.ac.ebi.jmzidml.model.mzidml.Cv;
 import uk.ac.ebi.jmzidml.model.mzidml.CvParam;
 import uk.ac.ebi.jmzidml.model.mzidml.Modification;
 
+import de.mpc.pia.tools.JAXBContextCache;
 import de.mpc.pia.tools.unimod.jaxb.ModT;
-import de.mpc.pia.tools.unimod.jaxb.SpecificityT;
 import de.mpc.pia.tools.unimod.jaxb.UnimodT;
 
 
@@ -31,6 +29,9 @@ public class UnimodParser {
     /** the path to the packaged unimod */
     private static final String PATH_TO_SHIPPED_UNIMOD =  "/de/mpc/pia/unimod.xml";
 
+    /** the path to the pre-parsed form of the packaged unimod, generated at build time */
+    public static final String PATH_TO_PRECOMPILED_UNIMOD = "/de/mpc/pia/unimod.xml.bin";
+
     /** designation for the position anywhere */
     public static final String UNIMOD_ANYWHERE = "Anywhere";
     /** designation for the position any n-term */
@@ -54,8 +55,8 @@ public class UnimodParser {
         cvUnimod.setUri("http://www.unimod.org/obo/unimod.obo");
     }
 
-    /** the modifications from the unimod */
-    private List<ModT> modifications;
+    /** the indexes for fast lookups of the modifications */
+    private UnimodIndex index;
 
 
     /** logger for this class */
@@ -67,6 +68,13 @@ public class UnimodParser {
     }
 
 
+    /**
+     * Creates a new UnimodParser, using the online unimod.xml or the shipped
+     * only. The shipped unimod.xml is read from its pre-parsed form, if this
+     * is available.
+     *
+     * @param useOnline whether to use the online unimod.xml
+     */
     public UnimodParser(boolean useOnline) {
         InputStream inStream = null;
 
@@ -80,16 +88,18 @@ public class UnimodParser {
             }
 
             if (inStream == null) {
+                // try the pre-parsed shipped version
+                PrecompiledUnimod precompiled = PrecompiledUnimod.loadResource(PATH_TO_PRECOMPILED_UNIMOD);
+                if (precompiled != null) {
+                    index = precompiled.getIndex();
+                    return;
+                }
+
                 // try shipped version
                 inStream = this.getClass().getResourceAsStream(PATH_TO_SHIPPED_UNIMOD);
             }
 
-            JAXBContext context = JAXBContext.newInstance(UnimodT.class.getPackage().getName());
-            Unmarshaller um = context.createUnmarshaller();
-            @SuppressWarnings("unchecked")
-            JAXBElement<UnimodT> doc = (JAXBElement<UnimodT>)um.unmarshal(inStream);
-
-            modifications = doc.getValue().getModifications().getMod();
+            index = new UnimodIndex(parseModifications(inStream));
         } catch (Exception e) {
             LOGGER.error("could not parse unimod.xml file", e);
             throw new AssertionError(e);
@@ -105,6 +115,29 @@ public class UnimodParser {
     }
 
 
+    /**
+     * Parses the modifications of the shipped unimod.xml.
+     *
+     * @return
+     * @throws IOException
+     * @throws JAXBException
+     */
+    public static List<ModT> parseShippedModifications() throws IOException, JAXBException {
+        try (InputStream inStream = UnimodParser.class.getResourceAsStream(PATH_TO_SHIPPED_UNIMOD)) {
+            return parseModifications(inStream);
+        }
+    }
+
+
+    private static List<ModT> parseModifications(InputStream inStream) throws JAXBException {
+        Unmarshaller um = JAXBContextCache.getUnmarshaller(UnimodT.class.getPackage().getName());
+        @SuppressWarnings("unchecked")
+        JAXBElement<UnimodT> doc = (JAXBElement<UnimodT>)um.unmarshal(inStream);
+
+        return doc.getValue().getModifications().getMod();
+    }
+
+
     /**
      * Returns the Cv definition for unimod
      * @return
@@ -187,12 +220,7 @@ public class UnimodParser {
         }
 
         try {
-            Long id = Long.parseLong(idStr);
-            for (ModT mod : modifications) {
-                if (mod.getRecordId().equals(id)) {
-                    return mod;
-                }
-            }
+            return index.getByRecordID(Long.parseLong(idStr));
         } catch (NumberFormatException e) {
             LOGGER.error("Could not parse accession in UniMod: " + idStr, e);
         }
@@ -208,16 +236,7 @@ public class UnimodParser {
      * @return
      */
     public ModT getModificationByName(String query, List<String> residues) {
-
-        for (ModT mod : modifications) {
-            boolean nameFound = isAnyName(query, mod);
-
-            if (nameFound && checkResidues(mod, residues)) {
-                return mod;
-            }
-        }
-
-        return null;
+        return index.getByName(query, residues);
     }
 
 
@@ -246,18 +265,7 @@ public class UnimodParser {
      */
     public ModT getModificationByNameAndMass(String query, Double massdelta,
             List<String> residues) {
-
-        for (ModT mod : modifications) {
-            boolean nameFound = isAnyName(query, mod);
-
-            if (nameFound &&
-                    (Math.abs(mod.getDelta().getMonoMass() - massdelta) <= UNIMOD_MASS_TOLERANCE) &&
-                    checkResidues(mod, residues)) {
-                return mod;
-            }
-        }
-
-        return null;
+        return index.getByNameAndMass(query, massdelta, residues);
     }
 
 
@@ -319,45 +327,6 @@ public class UnimodParser {
      * @return
      */
     public ModT getModificationByMass(Double massdelta, List<String> residues) {
-        for (ModT mod : modifications) {
-            if ((Math.abs(mod.getDelta().getMonoMass() - massdelta) <= UNIMOD_MASS_TOLERANCE)
-                    && checkResidues(mod, residues)) {
-                return mod;
-            }
-        }
-
-        return null;
-    }
-
-
-    /**
-     * Checks for the given residues whether all of them are allowed for the
-     * given modification.
-     *
-     * @param modification
-     * @param residues
-     * @return
-     */
-    private static boolean checkResidues(ModT modification, List<String> residues) {
-        Set<String> specificities =
-                new HashSet<>(modification.getSpecificity().size());
-        for (SpecificityT spec : modification.getSpecificity()) {
-            specificities.add(spec.getSite());
-
-            // TODO: make this more sophisticated
-            if (  "N-term".equalsIgnoreCase(spec.getSite())
-                    || "C-Term".equalsIgnoreCase(spec.getSite())) {
-                return true;
-            }
-        }
-
-        boolean residuesOK = true;
-        for (String residue : residues) {
-            if (!".".equals(residue)) {
-                residuesOK &= specificities.contains(residue);
-            }
-        }
-
-        return residuesOK;
+        return index.getByMass(massdelta, residues);
     }
 }
@@ -0,0 +1,129 @@
+package de.mpc.pia.intermediate;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import uk.ac.ebi.jmzidml.model.mzidml.AnalysisSoftwareList;
+import uk.ac.ebi.jmzidml.model.mzidml.Inputs;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import de.mpc.pia.intermediate.piaxml.AccessionXML;
+import de.mpc.pia.intermediate.piaxml.FilesListXML;
+import de.mpc.pia.intermediate.piaxml.GroupXML;
+import de.mpc.pia.intermediate.piaxml.PeptideXML;
+import de.mpc.pia.intermediate.piaxml.SpectrumMatchXML;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.tools.JAXBContextCache;
+
+
+/**
+ * JMH benchmark of repeatedly loading and writing a small PIA XML file, where
+ * the creation of the JAXB contexts dominated before they were cached. The
+ * creation of the contexts for all PIA XML sections is measured separately,
+ * once uncached (as formerly done on each load) and once from the
+ * {@link JAXBContextCache}.
+ * This is no unit test, run it via the main method from the test classpath.
+ *
+ * @author julian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PIAXMLJAXBBenchmark {
+
+    /** the classes, for which a context was created on each load of a PIA XML file */
+    private static final Class<?>[] PIA_XML_CLASSES = {FilesListXML.class, Inputs.class,
+            AnalysisSoftwareList.class, SpectrumMatchXML.class, AccessionXML.class,
+            PeptideXML.class, GroupXML.class};
+
+    private PIACompiler piaCompiler;
+
+    private File piaXMLFile;
+
+
+    @Setup(Level.Trial)
+    public void createPIAXMLFile() throws IOException, URISyntaxException {
+        File tandemFile = new File(PIAXMLJAXBBenchmark.class.getClassLoader().getResource("test-datasets/test-xtandem.xml").toURI());
+
+        piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile(tandemFile.getName(), tandemFile.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.TANDEM_INPUT.getFileTypeShort());
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+
+        piaXMLFile = File.createTempFile("pia-jaxb-benchmark", ".pia.xml");
+        piaCompiler.writeOutXML(piaXMLFile);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        piaCompiler.finish();
+        piaXMLFile.delete();
+    }
+
+
+    @Benchmark
+    public PIAModeller loadPIAXML() {
+        return new PIAModeller(piaXMLFile.getAbsolutePath());
+    }
+
+
+    @Benchmark
+    public void writePIAXML() throws IOException {
+        piaCompiler.writeOutXML(piaXMLFile);
+    }
+
+
+    @Benchmark
+    public void createContextsUncached(Blackhole blackhole) throws JAXBException {
+        for (Class<?> piaXMLClass : PIA_XML_CLASSES) {
+            blackhole.consume(JAXBContext.newInstance(piaXMLClass).createUnmarshaller());
+        }
+    }
+
+
+    @Benchmark
+    public void createContextsCached(Blackhole blackhole) throws JAXBException {
+        for (Class<?> piaXMLClass : PIA_XML_CLASSES) {
+            blackhole.consume(JAXBContextCache.getUnmarshaller(piaXMLClass));
+        }
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PIAXMLJAXBBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
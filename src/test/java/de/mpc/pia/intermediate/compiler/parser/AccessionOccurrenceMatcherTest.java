@@ -0,0 +1,130 @@
+package de.mpc.pia.intermediate.compiler.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.intermediate.Peptide;
+
+
+public class AccessionOccurrenceMatcherTest {
+
+    private Accession protein;
+    private Accession proteinWithX;
+
+
+    @Before
+    public void setUp() {
+        protein = new Accession(1L, "protein", "MKAAKAAKPEPTIDEKAAK");
+        proteinWithX = new Accession(2L, "proteinWithX", "aakaakxxPEPTIDEK");
+    }
+
+
+    @Test
+    public void testOverlappingOccurrences() {
+        Peptide aak = new Peptide(1, "AAK");
+        Peptide kaak = new Peptide(2, "KAAK");
+
+        AccessionOccurrenceMatcher matcher = new AccessionOccurrenceMatcher();
+        matcher.addPeptideAccessionConnection(aak, protein);
+        matcher.addPeptideAccessionConnection(kaak, protein);
+
+        assertEquals(6, matcher.resolveOccurrences());
+
+        Set<Integer> starts = getStartSites(kaak, protein);
+        assertEquals(3, starts.size());
+        assertTrue(starts.contains(2));
+        assertTrue(starts.contains(5));
+        assertTrue(starts.contains(16));
+
+        kaak.getAccessionOccurrences().forEach(occ -> assertEquals(occ.getStart() + 3, occ.getEnd().intValue()));
+    }
+
+
+    @Test
+    public void testOnlyConnectedAccessions() {
+        Peptide aak = new Peptide(1, "AAK");
+        Peptide peptide = new Peptide(2, "PEPTIDEK");
+
+        AccessionOccurrenceMatcher matcher = new AccessionOccurrenceMatcher();
+        matcher.addPeptideAccessionConnection(aak, proteinWithX);
+        matcher.addPeptideAccessionConnection(peptide, protein);
+        matcher.resolveOccurrences();
+
+        assertTrue(getStartSites(aak, protein).isEmpty());
+        assertEquals(2, getStartSites(aak, proteinWithX).size());
+        assertTrue(getStartSites(peptide, protein).contains(9));
+        assertTrue(getStartSites(peptide, proteinWithX).isEmpty());
+    }
+
+
+    @Test
+    public void testWildcards() {
+        Peptide wildcardPeptide = new Peptide(1, "PXPT");
+        Peptide kaak = new Peptide(2, "KAAK");
+        Peptide peptide = new Peptide(3, "KXPEPTIDEK");
+
+        AccessionOccurrenceMatcher matcher = new AccessionOccurrenceMatcher();
+        matcher.addPeptideAccessionConnection(wildcardPeptide, protein);
+        matcher.addPeptideAccessionConnection(kaak, proteinWithX);
+        matcher.addPeptideAccessionConnection(peptide, proteinWithX);
+        matcher.resolveOccurrences();
+
+        Set<Integer> starts = getStartSites(wildcardPeptide, protein);
+        assertEquals(1, starts.size());
+        assertTrue(starts.contains(9));
+
+        // the X in the protein may match any amino acid
+        starts = getStartSites(kaak, proteinWithX);
+        assertEquals(1, starts.size());
+        assertTrue(starts.contains(3));
+
+        starts = getStartSites(peptide, proteinWithX);
+        assertEquals(1, starts.size());
+        assertTrue(starts.contains(7));
+    }
+
+
+    @Test
+    public void testExactMatching() {
+        Peptide aak = new Peptide(1, "AAK");
+        Peptide kaak = new Peptide(2, "KAAK");
+        Peptide peptide = new Peptide(3, "KXPEPTIDEK");
+        Peptide wildcardPeptide = new Peptide(4, "PXPT");
+
+        AccessionOccurrenceMatcher matcher = new AccessionOccurrenceMatcher(true);
+        matcher.addPeptideAccessionConnection(aak, protein);
+        matcher.addPeptideAccessionConnection(aak, proteinWithX);
+        matcher.addPeptideAccessionConnection(kaak, protein);
+        matcher.addPeptideAccessionConnection(peptide, proteinWithX);
+        matcher.addPeptideAccessionConnection(wildcardPeptide, protein);
+        matcher.resolveOccurrences();
+
+        // overlapping occurrences are reported like by indexOf
+        assertEquals(3, getStartSites(aak, protein).size());
+        Set<Integer> starts = getStartSites(kaak, protein);
+        assertEquals(3, starts.size());
+        assertTrue(starts.contains(2));
+        assertTrue(starts.contains(5));
+        assertTrue(starts.contains(16));
+
+        // the sequences are compared case sensitively and X is no wildcard
+        assertTrue(getStartSites(aak, proteinWithX).isEmpty());
+        assertTrue(getStartSites(peptide, proteinWithX).isEmpty());
+        assertTrue(getStartSites(wildcardPeptide, protein).isEmpty());
+    }
+
+
+    private static Set<Integer> getStartSites(Peptide peptide, Accession accession) {
+        return peptide.getAccessionOccurrences().stream()
+                .filter(occ -> occ.getAccession().getID().equals(accession.getID()))
+                .map(occ -> occ.getStart())
+                .collect(Collectors.toSet());
+    }
+}
@@ -36,6 +36,8 @@ public class ThermoMSFFileParserTest {
         boolean ok = compiler.getDataFromFile(msfFile.getName(), msfFile.getAbsolutePath(), null,
                 InputFileParserFactory.InputFileTypes.THERMO_MSF_INPUT.getFileTypeShort());
         assertTrue("Could not get data from MSF file", ok);
+        assertEquals("Wrong number of PSMs", 42, compiler.getNrPeptideSpectrumMatches());
+        assertEquals("Wrong number of peptides", 29, compiler.getNrPeptides());
         compiler.buildClusterList();
         compiler.buildIntermediateStructure();
 
@@ -0,0 +1,185 @@
+package de.mpc.pia.intermediate.compiler.parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.searchengines.TideTXTFileParser;
+import de.mpc.pia.tools.CleavageAgent;
+import de.mpc.pia.tools.DelimitedFieldTokenizer;
+
+
+/**
+ * JMH benchmark for the parsing of Tide TXT files on a synthetic file. This
+ * is no unit test, run it via the main method from the test classpath.
+ *
+ * @author julian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TideTXTFileParserBenchmark {
+
+    private static final String HEADER = "file\tscan\tcharge\tspectrum precursor m/z\tspectrum neutral mass\t"
+            + "peptide mass\tdelta_cn\txcorr score\txcorr rank\tdistinct matches/spectrum\tsequence\t"
+            + "cleavage type\tprotein id\tflanking aa\toriginal target sequence";
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    /** the column of the sequence in the synthetic file */
+    private static final int COL_SEQUENCE = 10;
+
+    /** the column of the protein IDs in the synthetic file */
+    private static final int COL_PROTEINID = 12;
+
+    @Param({"100000"})
+    private int nrLines;
+
+    private File tideFile;
+
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        tideFile = File.createTempFile("pia-tide-benchmark", ".txt");
+        Random random = new Random(42);
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tideFile))) {
+            writer.write(HEADER);
+            writer.newLine();
+
+            for (int line = 0; line < nrLines; line++) {
+                String sequence = randomSequence(random, 7 + random.nextInt(20));
+
+                writer.write("../RAW_and_peakfiles/synthetic.mzML\t");
+                writer.write(Integer.toString(line / 5));
+                writer.write('\t');
+                writer.write(Integer.toString(2 + random.nextInt(3)));
+                writer.write('\t');
+                writer.write(Double.toString(300 + random.nextDouble() * 1500));
+                writer.write('\t');
+                writer.write(Double.toString(600 + random.nextDouble() * 3000));
+                writer.write('\t');
+                writer.write(Double.toString(600 + random.nextDouble() * 3000));
+                writer.write('\t');
+                writer.write(Double.toString(random.nextDouble()));
+                writer.write('\t');
+                writer.write(Double.toString(random.nextDouble() * 5));
+                writer.write('\t');
+                writer.write(Integer.toString(1 + (line % 5)));
+                writer.write("\t37\t");
+                writer.write(sequence);
+                writer.write("\ttrypsin-full-digest\t");
+
+                int nrProteins = 1 + random.nextInt(4);
+                for (int prot = 0; prot < nrProteins; prot++) {
+                    if (prot > 0) {
+                        writer.write(',');
+                    }
+                    writer.write("sp|P" + random.nextInt(nrLines / 10 + 1) + "|SYNTH_HUMAN(" + random.nextInt(500) + ')');
+                }
+
+                writer.write("\tKR\t");
+                writer.write(sequence);
+                writer.newLine();
+            }
+        }
+    }
+
+
+    private static String randomSequence(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+        }
+        return sb.toString();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        if (!tideFile.delete()) {
+            tideFile.deleteOnExit();
+        }
+    }
+
+
+    /**
+     * The former tokenization: regex split of lines, accessions and sequences
+     */
+    @Benchmark
+    public void splitTokenization(Blackhole blackhole) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(tideFile))) {
+            String line = br.readLine();
+            while ((line = br.readLine()) != null) {
+                String[] columns = line.split(TideTXTFileParser.SEPARATOR_STRING);
+                blackhole.consume(columns[COL_SEQUENCE].split(CleavageAgent.TRYPSIN.getSiteRegexp()).length - 1);
+                blackhole.consume(columns[COL_PROTEINID].split(","));
+            }
+        }
+    }
+
+
+    /**
+     * The projected tokenization with the precompiled cleavage site scanner
+     */
+    @Benchmark
+    public void fieldTokenization(Blackhole blackhole) throws IOException {
+        try (DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(new FileReader(tideFile), '\t')) {
+            tokenizer.nextLine();
+            tokenizer.setProjection(COL_SEQUENCE, COL_PROTEINID);
+            while (tokenizer.nextLine()) {
+                blackhole.consume(CleavageAgent.TRYPSIN.getSiteMatcher().countMissedCleavages(tokenizer.getField(COL_SEQUENCE)));
+                blackhole.consume(tokenizer.getField(COL_PROTEINID));
+            }
+        }
+    }
+
+
+    /**
+     * Parsing of the complete file into a compiler
+     */
+    @Benchmark
+    public void parseIntoCompiler(Blackhole blackhole) {
+        PIACompiler compiler = new PIASimpleCompiler();
+        blackhole.consume(TideTXTFileParser.getDataFromTideTXTFile("tide", tideFile.getAbsolutePath(), compiler));
+        blackhole.consume(compiler.getNrPeptideSpectrumMatches());
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TideTXTFileParserBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
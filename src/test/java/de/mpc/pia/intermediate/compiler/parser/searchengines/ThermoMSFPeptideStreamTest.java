@@ -0,0 +1,105 @@
+package de.mpc.pia.intermediate.compiler.parser.searchengines;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ThermoMSFPeptideStreamTest {
+
+    private File msfFile;
+
+    private Connection connection;
+
+
+    /**
+     * Creates a minimal MSF file with target tables, but only the peptides
+     * table of the decoys.
+     */
+    @Before
+    public void setUp() throws Exception {
+        msfFile = File.createTempFile("pia_msf_stream", ".msf");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + msfFile.getAbsolutePath());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE MassPeaks (MassPeakID INTEGER, Mass DOUBLE, FileID INTEGER)");
+            statement.executeUpdate("CREATE TABLE SpectrumHeaders (SpectrumID INTEGER, MassPeakID INTEGER, "
+                    + "Charge INTEGER, FirstScan INTEGER, Mass DOUBLE, RetentionTime DOUBLE)");
+            statement.executeUpdate("CREATE TABLE AminoAcidModifications (AminoAcidModificationID INTEGER, "
+                    + "ModificationName TEXT, DeltaMass DOUBLE, PositionType INTEGER)");
+            statement.executeUpdate("INSERT INTO MassPeaks VALUES (1, 500.25, 1)");
+            statement.executeUpdate("INSERT INTO SpectrumHeaders VALUES (1, 1, 2, 100, 998.49, 12.5)");
+
+            for (String suffix : Arrays.asList("", "_decoy")) {
+                statement.executeUpdate("CREATE TABLE Peptides" + suffix + " (PeptideID INTEGER, "
+                        + "ProcessingNodeNumber INTEGER, SpectrumID INTEGER, Sequence TEXT, MissedCleavages INTEGER)");
+                statement.executeUpdate("INSERT INTO Peptides" + suffix + " VALUES (1, 2, 1, 'PEPTIDEK', 0)");
+            }
+
+            statement.executeUpdate("CREATE TABLE PeptideScores (PeptideID INTEGER, ScoreID INTEGER, ScoreValue DOUBLE)");
+            statement.executeUpdate("CREATE TABLE PeptidesAminoAcidModifications (PeptideID INTEGER, "
+                    + "Position INTEGER, AminoAcidModificationID INTEGER)");
+            statement.executeUpdate("CREATE TABLE PeptidesTerminalModifications (PeptideID INTEGER, "
+                    + "TerminalModificationID INTEGER)");
+            statement.executeUpdate("CREATE TABLE PeptidesProteins (PeptideID INTEGER, ProteinID INTEGER)");
+            statement.executeUpdate("INSERT INTO PeptideScores VALUES (1, 1, 42.0)");
+            statement.executeUpdate("INSERT INTO PeptidesProteins VALUES (1, 7)");
+
+            statement.executeUpdate("CREATE TABLE Proteins (ProteinID INTEGER, Sequence TEXT)");
+            statement.executeUpdate("CREATE TABLE ProteinAnnotations (ProteinID INTEGER, Description TEXT)");
+        }
+    }
+
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+        msfFile.delete();
+    }
+
+
+    @Test
+    public void testPeptideTablesNeedOnlyPeptides() throws Exception {
+        assertTrue(ThermoMSFPeptideStream.hasPeptideTables(connection, false));
+        assertTrue(ThermoMSFPeptideStream.hasPeptideTables(connection, true));
+
+        assertTrue(ThermoMSFPeptideStream.getMissingDataTables(connection, false).isEmpty());
+        assertEquals(Arrays.asList("PeptideScores_decoy", "PeptidesAminoAcidModifications_decoy",
+                "PeptidesTerminalModifications_decoy", "PeptidesProteins_decoy"),
+                ThermoMSFPeptideStream.getMissingDataTables(connection, true));
+    }
+
+
+    @Test
+    public void testMissingDecoyTablesAreEmpty() throws Exception {
+        try (ThermoMSFPeptideStream stream = new ThermoMSFPeptideStream(connection, true)) {
+            assertTrue(stream.hasNext());
+
+            ThermoMSFPeptideStream.MSFPeptide peptide = stream.next();
+            assertEquals(1L, peptide.getPeptideID());
+            assertEquals("PEPTIDEK", peptide.getSequence());
+            assertTrue(peptide.getScoreIDs().isEmpty());
+            assertTrue(peptide.getModifications().isEmpty());
+            assertTrue(peptide.getTerminalModifications().isEmpty());
+            assertTrue(peptide.getProteinIDs().isEmpty());
+
+            assertFalse(stream.hasNext());
+        }
+
+        try (ThermoMSFPeptideStream stream = new ThermoMSFPeptideStream(connection, false)) {
+            ThermoMSFPeptideStream.MSFPeptide peptide = stream.next();
+            assertEquals(Arrays.asList(1L), peptide.getScoreIDs());
+            assertEquals(Arrays.asList(7L), peptide.getProteinIDs());
+        }
+    }
+}
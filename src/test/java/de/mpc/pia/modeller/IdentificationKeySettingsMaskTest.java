@@ -0,0 +1,57 @@
+package de.mpc.pia.modeller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+
+
+public class IdentificationKeySettingsMaskTest {
+
+    @Test
+    public void testMapConversion() {
+        Map<String, Boolean> settings = new HashMap<>();
+        settings.put(IdentificationKeySettings.SEQUENCE.name(), true);
+        settings.put(IdentificationKeySettings.CHARGE.name(), true);
+        settings.put(IdentificationKeySettings.FILE_ID.name(), false);
+        settings.put("NOT_A_SETTING", true);
+
+        IdentificationKeySettingsMask mask = IdentificationKeySettingsMask.of(settings);
+        assertTrue(mask.contains(IdentificationKeySettings.SEQUENCE));
+        assertTrue(mask.contains(IdentificationKeySettings.CHARGE));
+        assertFalse(mask.contains(IdentificationKeySettings.FILE_ID));
+
+        assertSame(mask, IdentificationKeySettingsMask.of(
+                IdentificationKeySettings.CHARGE, IdentificationKeySettings.SEQUENCE));
+        assertSame(mask, IdentificationKeySettingsMask.of(mask.toMap()));
+        assertSame(IdentificationKeySettingsMask.of(IdentificationKeySettings.CHARGE),
+                mask.without(IdentificationKeySettings.SEQUENCE, IdentificationKeySettings.MODIFICATIONS));
+        assertSame(IdentificationKeySettingsMask.EMPTY, IdentificationKeySettingsMask.of(new HashMap<>()));
+    }
+
+
+    @Test
+    public void testIdentificationKeyOrder() {
+        Map<String, Boolean> settings = new HashMap<>();
+        for (IdentificationKeySettings setting : IdentificationKeySettings.values()) {
+            settings.put(setting.name(), true);
+        }
+
+        // the values are sorted by the names of the settings
+        assertEquals("2:1:500.123:[1,15.9949]:1234.0:PEPTIDE:index=5:title",
+                PeptideSpectrumMatch.getIdentificationKey(settings, "PEPTIDE", "[1,15.9949]", 2,
+                        500.12345, 1234.4, "index=5", "title", 1L));
+
+        settings.put(IdentificationKeySettings.MASSTOCHARGE.name(), false);
+        assertEquals("2:1:1234.0:PEPTIDE:title",
+                PeptideSpectrumMatch.getIdentificationKey(IdentificationKeySettingsMask.of(settings),
+                        "PEPTIDE", null, 2, 500.12345, 1234.4, null, "title", 1L));
+    }
+}
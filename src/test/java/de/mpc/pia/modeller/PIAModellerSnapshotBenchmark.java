@@ -0,0 +1,143 @@
+package de.mpc.pia.modeller;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import de.mpc.pia.modeller.protein.inference.SpectrumExtractorInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * JMH benchmark comparing the Java serialization of a complete
+ * {@link PIAModeller} with the binary snapshot, on the bundled test datasets.
+ * This is no unit test, run it via the main method from the test classpath.
+ *
+ * @author julian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PIAModellerSnapshotBenchmark {
+
+    private File piaXMLFile;
+
+    private PIAModeller piaModeller;
+
+    private File serializedFile;
+
+    private File snapshotFile;
+
+
+    @Setup(Level.Trial)
+    public void createModeller() throws IOException, URISyntaxException {
+        File mzidFile = new File(PIAModellerSnapshotBenchmark.class.getClassLoader().getResource("test-datasets/test-msgf.mzid").toURI());
+        File tandemFile = new File(PIAModellerSnapshotBenchmark.class.getClassLoader().getResource("test-datasets/test-xtandem.xml").toURI());
+
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile(mzidFile.getName(), mzidFile.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
+        piaCompiler.getDataFromFile(tandemFile.getName(), tandemFile.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.TANDEM_INPUT.getFileTypeShort());
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+
+        piaXMLFile = File.createTempFile("pia-snapshot-benchmark", ".pia.xml");
+        piaCompiler.writeOutXML(piaXMLFile);
+        piaCompiler.finish();
+
+        piaModeller = new PIAModeller(piaXMLFile.getAbsolutePath());
+        piaModeller.setCreatePSMSets(true);
+        piaModeller.getPSMModeller().setAllDecoyPattern(".*_REVERSED.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+
+        SpectrumExtractorInference seInference = new SpectrumExtractorInference();
+        seInference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName());
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, PSMForScoring.ONLY_BEST.getShortName());
+        piaModeller.getProteinModeller().infereProteins(seInference);
+
+        serializedFile = File.createTempFile("pia-snapshot-benchmark", ".ser.gz");
+        PIAModeller.serializeToFile(piaModeller, serializedFile);
+
+        snapshotFile = File.createTempFile("pia-snapshot-benchmark", ".pias");
+        PIAModeller.writeSnapshot(piaModeller, snapshotFile);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        piaXMLFile.delete();
+        serializedFile.delete();
+        snapshotFile.delete();
+    }
+
+
+    @Benchmark
+    public PIAModeller loadPIAXML() {
+        return new PIAModeller(piaXMLFile.getAbsolutePath());
+    }
+
+
+    @Benchmark
+    public void serializeToFile() throws IOException {
+        PIAModeller.serializeToFile(piaModeller, serializedFile);
+    }
+
+
+    @Benchmark
+    public PIAModeller deSerializeFromFile() throws IOException {
+        return PIAModeller.deSerializeFromFile(serializedFile);
+    }
+
+
+    @Benchmark
+    public void writeSnapshot() throws IOException {
+        PIAModeller.writeSnapshot(piaModeller, snapshotFile);
+    }
+
+
+    @Benchmark
+    public PIAModeller readSnapshot() throws IOException {
+        return PIAModeller.readSnapshot(snapshotFile);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PIAModellerSnapshotBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
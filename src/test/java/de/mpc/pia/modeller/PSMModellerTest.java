@@ -3,12 +3,20 @@ package de.mpc.pia.modeller;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+
 public class PSMModellerTest {
 
     private static File piaFile;
@@ -48,4 +56,37 @@ public class PSMModellerTest {
         assertFalse(psmSetSettings.get(IdentificationKeySettings.SOURCE_ID.toString()));
         assertTrue(psmSetSettings.get(IdentificationKeySettings.FILE_ID.toString()));
     }
+
+
+    @Test
+    public void testCachedRanking() {
+        Long fileID = 1L;
+        List<String> scoreShorts = psmModeller.getFilesAvailableScoreShortsForRanking(fileID);
+        assertTrue(scoreShorts.size() > 1);
+
+        psmModeller.calculateRanking(fileID, scoreShorts.get(0), null);
+        Map<ReportPSM, Long> ranks = new IdentityHashMap<>();
+        psmModeller.getFilteredReportPSMs(fileID, null).forEach(psm -> ranks.put(psm, psm.getRank()));
+        assertTrue(ranks.values().stream().allMatch(rank -> rank >= 0));
+
+        // rank by another score and re-apply the cached ranking
+        psmModeller.calculateRanking(fileID, scoreShorts.get(1), null);
+        psmModeller.calculateRanking(fileID, scoreShorts.get(0), null);
+        for (ReportPSM psm : psmModeller.getFilteredReportPSMs(fileID, null)) {
+            assertEquals(ranks.get(psm), psm.getRank());
+        }
+
+        // only the filtered PSMs are ranked
+        List<AbstractFilter> filters = Collections.singletonList(
+                RegisteredFilters.PSM_SEQUENCE_FILTER.newInstanceOf(FilterComparator.equal,
+                        psmModeller.getFilteredReportPSMs(fileID, null).get(0).getSequence(), false));
+        psmModeller.calculateRanking(fileID, scoreShorts.get(0), filters);
+        for (ReportPSM psm : psmModeller.getFilteredReportPSMs(fileID, null)) {
+            if (filters.get(0).satisfiesFilter(psm, fileID)) {
+                assertTrue(psm.getRank() >= 0);
+            } else {
+                assertEquals(Long.valueOf(-1L), psm.getRank());
+            }
+        }
+    }
 }
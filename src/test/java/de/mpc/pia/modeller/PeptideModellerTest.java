@@ -155,4 +155,165 @@ public class PeptideModellerTest {
     }
 
 
+    @Test
+    public void testIncrementalFiltering() {
+        setUpPSMLevel(piaModeller);
+        PeptideModeller peptideModeller = piaModeller.getPeptideModeller();
+        Long fileID = 0L;
+
+        Map<String, ReportPeptide> allPeptides = getPeptidesByStringID(peptideModeller, fileID);
+        int nrAllPeptides = allPeptides.size();
+
+        peptideModeller.addFilter(fileID, new PSMScoreFilter(FilterComparator.less_equal, false, 0.5,
+                ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+        Map<String, ReportPeptide> filteredPeptides = getPeptidesByStringID(peptideModeller, fileID);
+        assertEquals("Wrong number of filtered peptides", 8, filteredPeptides.size());
+
+        // only the peptides with changed PSMs are rebuilt, all others are reused
+        for (Map.Entry<String, ReportPeptide> peptideIt : filteredPeptides.entrySet()) {
+            ReportPeptide previous = allPeptides.get(peptideIt.getKey());
+            if ((previous != null) && samePSMs(previous.getPSMs(), peptideIt.getValue().getPSMs())) {
+                assertSame(previous, peptideIt.getValue());
+            } else {
+                assertNotSame(previous, peptideIt.getValue());
+            }
+        }
+
+        // the incrementally filtered peptides must equal newly inferred ones
+        PIAModeller otherModeller = new PIAModeller(piaFile.getAbsolutePath());
+        setUpPSMLevel(otherModeller);
+        otherModeller.getPeptideModeller().addFilter(fileID, new PSMScoreFilter(FilterComparator.less_equal,
+                false, 0.5, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+        assertEquals(getNrPSMsOfPeptides(otherModeller.getPeptideModeller(), fileID),
+                getNrPSMsOfPeptides(peptideModeller, fileID));
+
+        // a filter, which removes no further PSMs, rebuilds no peptide
+        peptideModeller.addFilter(fileID, new PSMScoreFilter(FilterComparator.less_equal, false, 0.5,
+                ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+        Map<String, ReportPeptide> refilteredPeptides = getPeptidesByStringID(peptideModeller, fileID);
+        assertEquals(filteredPeptides.keySet(), refilteredPeptides.keySet());
+        for (Map.Entry<String, ReportPeptide> peptideIt : refilteredPeptides.entrySet()) {
+            assertSame(filteredPeptides.get(peptideIt.getKey()), peptideIt.getValue());
+        }
+
+        peptideModeller.removeFilter(fileID, 1);
+        peptideModeller.removeFilter(fileID, 0);
+        assertEquals("Wrong number of unfiltered peptides", nrAllPeptides,
+                peptideModeller.getFilteredReportPeptides(fileID, peptideModeller.getFilters(fileID)).size());
+    }
+
+
+    @Test
+    public void testBestScoresAfterPSMFDRRecalculation() {
+        setUpPSMLevel(piaModeller);
+        PeptideModeller peptideModeller = piaModeller.getPeptideModeller();
+        Long fileID = 1L;
+        String fdrScoreShort = ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName();
+
+        List<ReportPeptide> peptides = peptideModeller.getFilteredReportPeptides(fileID, null);
+        Map<String, Double> oldBestScores = getBestScoresOfPeptides(peptides, fdrScoreShort);
+
+        // recalculate the PSM FDR with fewer decoys, the same peptides must return the new best scores
+        long generation = piaModeller.getPSMModeller().getPSMScoresGeneration();
+        piaModeller.getPSMModeller().setAllDecoyPattern("Rnd1.*");
+        piaModeller.getPSMModeller().calculateFDR(fileID);
+        assertNotEquals(generation, piaModeller.getPSMModeller().getPSMScoresGeneration());
+
+        assertSame(peptides, peptideModeller.getFilteredReportPeptides(fileID, null));
+        Map<String, Double> newBestScores = getBestScoresOfPeptides(peptides, fdrScoreShort);
+        assertNotEquals(oldBestScores, newBestScores);
+
+        // the PSM scores of another modeller do not concern this one's peptides
+        generation = piaModeller.getPSMModeller().getPSMScoresGeneration();
+        PIAModeller otherModeller = new PIAModeller(piaFile.getAbsolutePath());
+        otherModeller.setCreatePSMSets(true);
+        otherModeller.getPSMModeller().setAllDecoyPattern("Rnd1.*");
+        otherModeller.getPSMModeller().setAllTopIdentifications(1);
+        otherModeller.getPSMModeller().calculateFDR(fileID);
+        assertEquals(generation, piaModeller.getPSMModeller().getPSMScoresGeneration());
+        assertEquals(getBestScoresOfPeptides(
+                otherModeller.getPeptideModeller().getFilteredReportPeptides(fileID, null), fdrScoreShort),
+                newBestScores);
+    }
+
+
+    @Test
+    public void testInferePeptidesForAllFiles() {
+        setUpPSMLevel(piaModeller);
+        PeptideModeller peptideModeller = piaModeller.getPeptideModeller();
+        assertTrue(PeptideModeller.processCLI(peptideModeller, piaModeller, new String[] {"InferePeptides=yes"}));
+
+        // the same as inferring and calculating the FDR serially
+        PIAModeller serialModeller = new PIAModeller(piaFile.getAbsolutePath());
+        setUpPSMLevel(serialModeller);
+        PeptideModeller serialPeptideModeller = serialModeller.getPeptideModeller();
+
+        for (Long fileID : serialPeptideModeller.getFiles().keySet()) {
+            serialPeptideModeller.calculateFDR(fileID);
+
+            assertEquals(serialPeptideModeller.isFDRCalculated(fileID), peptideModeller.isFDRCalculated(fileID));
+            assertEquals(getQValuesOfPeptides(serialPeptideModeller, fileID),
+                    getQValuesOfPeptides(peptideModeller, fileID));
+        }
+    }
+
+
+    private static void setUpPSMLevel(PIAModeller modeller) {
+        modeller.setCreatePSMSets(true);
+        modeller.getPSMModeller().setAllDecoyPattern("Rnd.*");
+        modeller.getPSMModeller().setAllTopIdentifications(1);
+        modeller.getPSMModeller().calculateAllFDR();
+        modeller.getPSMModeller().calculateCombinedFDRScore();
+    }
+
+
+    private static Map<String, ReportPeptide> getPeptidesByStringID(PeptideModeller peptideModeller, Long fileID) {
+        Map<String, ReportPeptide> peptides = new HashMap<>();
+        for (ReportPeptide peptide : peptideModeller.getFilteredReportPeptides(fileID,
+                peptideModeller.getFilters(fileID))) {
+            peptides.put(peptide.getStringID(), peptide);
+        }
+        return peptides;
+    }
+
+
+    private static boolean samePSMs(List<PSMReportItem> psms, List<PSMReportItem> otherPSMs) {
+        if (psms.size() != otherPSMs.size()) {
+            return false;
+        }
+        for (int i = 0; i < psms.size(); i++) {
+            if (psms.get(i) != otherPSMs.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static Map<String, Integer> getNrPSMsOfPeptides(PeptideModeller peptideModeller, Long fileID) {
+        Map<String, Integer> nrPSMs = new HashMap<>();
+        for (ReportPeptide peptide : peptideModeller.getFilteredReportPeptides(fileID,
+                peptideModeller.getFilters(fileID))) {
+            nrPSMs.put(peptide.getStringID(), peptide.getNrPSMs());
+        }
+        return nrPSMs;
+    }
+
+
+    private static Map<String, Double> getBestScoresOfPeptides(List<ReportPeptide> peptides, String scoreShort) {
+        Map<String, Double> bestScores = new HashMap<>();
+        for (ReportPeptide peptide : peptides) {
+            bestScores.put(peptide.getStringID(), peptide.getBestScore(scoreShort));
+        }
+        return bestScores;
+    }
+
+
+    private static Map<String, Double> getQValuesOfPeptides(PeptideModeller peptideModeller, Long fileID) {
+        Map<String, Double> qValues = new HashMap<>();
+        for (ReportPeptide peptide : peptideModeller.getFilteredReportPeptides(fileID, null)) {
+            qValues.put(peptide.getStringID(), peptide.getQValue());
+        }
+        return qValues;
+    }
 }
@@ -8,7 +8,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -17,14 +19,27 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import de.mpc.pia.intermediate.compiler.PIACompiler;
 import de.mpc.pia.intermediate.compiler.PIACompilerTest;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.intermediate.compiler.parser.InputFileParserFactory;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
 import de.mpc.pia.modeller.protein.inference.SpectrumExtractorInference;
 import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
 import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
 import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.psm.ReportPSM;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
 import de.mpc.pia.modeller.report.filter.FilterComparator;
 import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.FDRData;
 import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.snapshot.PIAReportSnapshot;
+import de.mpc.pia.modeller.snapshot.ReportPSMRecord;
+import de.mpc.pia.modeller.snapshot.ReportPeptideRecord;
+import de.mpc.pia.modeller.snapshot.ReportProteinRecord;
 
 public class SerializationTest {
 
@@ -117,6 +132,214 @@ public class SerializationTest {
     }
 
 
+    @Test
+    public void testSnapshotWritingReading() throws IOException, URISyntaxException {
+        File piaXMLFile = File.createTempFile("pia_snapshot", ".pia.xml");
+        PIAModeller piaModeller = createInferredModeller(piaXMLFile);
+
+        File snapshotFile = File.createTempFile("pia_snapshot", ".pias");
+        PIAModeller.writeSnapshot(piaModeller, snapshotFile);
+
+        PIAModeller readModeller = PIAModeller.readSnapshot(snapshotFile);
+
+        assertEquals(piaModeller.getFileName(), readModeller.getFileName());
+        assertEquals(piaModeller.getProjectName(), readModeller.getProjectName());
+        assertEquals(piaModeller.getFiles().keySet(), readModeller.getFiles().keySet());
+        assertEquals(piaModeller.getGroups().keySet(), readModeller.getGroups().keySet());
+        assertEquals(true, readModeller.getCreatePSMSets());
+
+        for (Long fileID : piaModeller.getPSMModeller().getFiles().keySet()) {
+            assertEquals(piaModeller.getPSMModeller().getNrReportPSMs(fileID),
+                    readModeller.getPSMModeller().getNrReportPSMs(fileID));
+        }
+
+        assertEquals(piaModeller.getPSMModeller().getFilesFDRData(0L).getNrDecoys(),
+                readModeller.getPSMModeller().getFilesFDRData(0L).getNrDecoys());
+        assertEquals(piaModeller.getPSMModeller().getFilteredReportPSMSets(piaModeller.getPSMModeller().getFilters(0L)).size(),
+                readModeller.getPSMModeller().getFilteredReportPSMSets(readModeller.getPSMModeller().getFilters(0L)).size());
+
+        for (Long fileID : piaModeller.getPSMModeller().getFiles().keySet()) {
+            FDRData fdrData = piaModeller.getPSMModeller().getFilesFDRData(fileID);
+            FDRData readFDRData = readModeller.getPSMModeller().getFilesFDRData(fileID);
+            assertEquals(fdrData.getDecoyPattern(), readFDRData.getDecoyPattern());
+            assertEquals(fdrData.getScoreShortName(), readFDRData.getScoreShortName());
+            assertEquals(fdrData.getNrFDRGoodTargets(), readFDRData.getNrFDRGoodTargets());
+            assertEquals(fdrData.getScoreAtThreshold(), readFDRData.getScoreAtThreshold());
+            assertEquals(fdrData.getArtificialDecoyFDR(), readFDRData.getArtificialDecoyFDR());
+        }
+
+        List<ReportPSM> psms = piaModeller.getPSMModeller().getFilteredReportPSMs(1L, null);
+        List<ReportPSM> readPSMs = readModeller.getPSMModeller().getFilteredReportPSMs(1L, null);
+        assertEquals(psms.size(), readPSMs.size());
+        for (int i = 0; i < psms.size(); i++) {
+            assertEquals(psms.get(i).getId(), readPSMs.get(i).getId());
+            assertEquals(psms.get(i).getIsDecoy(), readPSMs.get(i).getIsDecoy());
+            assertEquals(psms.get(i).getQValue(), readPSMs.get(i).getQValue(), 0.0);
+            assertEquals(psms.get(i).getScore(ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()),
+                    readPSMs.get(i).getScore(ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+            assertEquals(psms.get(i).getIdentificationRanks(), readPSMs.get(i).getIdentificationRanks());
+        }
+
+        String combinedFDRScoreShort = ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName();
+        List<ReportPSMSet> psmSets = piaModeller.getPSMModeller().getReportPSMSetList();
+        List<ReportPSMSet> readPSMSets = readModeller.getPSMModeller().getReportPSMSetList();
+        assertEquals(psmSets.size(), readPSMSets.size());
+        for (int i = 0; i < psmSets.size(); i++) {
+            assertEquals(psmSets.get(i).getPSMSetSettings(), readPSMSets.get(i).getPSMSetSettings());
+            assertArrayEquals(psmSets.get(i).getPSMsFingerprint(), readPSMSets.get(i).getPSMsFingerprint());
+            assertEquals(psmSets.get(i).getIsFDRGood(), readPSMSets.get(i).getIsFDRGood());
+            assertEquals(psmSets.get(i).getScore(combinedFDRScoreShort), readPSMSets.get(i).getScore(combinedFDRScoreShort));
+            assertEquals(psmSets.get(i).getScore(ScoreModelEnum.AVERAGE_FDR_SCORE.getShortName()),
+                    readPSMSets.get(i).getScore(ScoreModelEnum.AVERAGE_FDR_SCORE.getShortName()));
+        }
+
+        List<ReportProtein> proteins = piaModeller.getProteinModeller().getFilteredReportProteins(null);
+        List<ReportProtein> readProteins = readModeller.getProteinModeller().getFilteredReportProteins(null);
+        assertEquals(proteins.size(), readProteins.size());
+        for (int i = 0; i < proteins.size(); i++) {
+            assertEquals(proteins.get(i).getRepresentative().getAccession(),
+                    readProteins.get(i).getRepresentative().getAccession());
+            // the report must use the restored intermediate structure
+            assertSame(readModeller.getGroups().get(readProteins.get(i).getRepresentative().getGroup().getID()),
+                    readProteins.get(i).getRepresentative().getGroup());
+            assertEquals(proteins.get(i).getScore(), readProteins.get(i).getScore());
+            assertEquals(proteins.get(i).getNrPSMs(), readProteins.get(i).getNrPSMs());
+            assertEquals(proteins.get(i).getIsDecoy(), readProteins.get(i).getIsDecoy());
+            assertEquals(proteins.get(i).getQValue(), readProteins.get(i).getQValue(), 0.0);
+            assertEquals(proteins.get(i).getSubSets().size(), readProteins.get(i).getSubSets().size());
+            assertEquals(proteins.get(i).getCoverage(proteins.get(i).getRepresentative().getAccession()),
+                    readProteins.get(i).getCoverage(readProteins.get(i).getRepresentative().getAccession()));
+        }
+
+        assertEquals("Wrong inference method", "Spectrum Extractor",
+                readModeller.getProteinModeller().getAppliedProteinInference().getName());
+
+        // the filters and settings are restored from their own sections
+        AbstractFilter filter = piaModeller.getPSMModeller().getFilters(0L).get(0);
+        AbstractFilter readFilter = readModeller.getPSMModeller().getFilters(0L).get(0);
+        assertEquals(filter.getClass(), readFilter.getClass());
+        assertEquals(filter.getFilterComparator(), readFilter.getFilterComparator());
+        assertEquals(filter.getFilterValue(), readFilter.getFilterValue());
+        assertEquals(filter.getFilterNegate(), readFilter.getFilterNegate());
+        assertEquals(((PSMScoreFilter) filter).getScoreShortName(), ((PSMScoreFilter) readFilter).getScoreShortName());
+
+        AbstractScoring scoring = piaModeller.getProteinModeller().getAppliedProteinInference().getScoring();
+        AbstractScoring readScoring = readModeller.getProteinModeller().getAppliedProteinInference().getScoring();
+        assertEquals(scoring.getShortName(), readScoring.getShortName());
+        assertEquals(scoring.getScoreSetting().getValue(), readScoring.getScoreSetting().getValue());
+        assertEquals(scoring.getPSMForScoringSetting().getValue(), readScoring.getPSMForScoringSetting().getValue());
+        assertEquals(piaModeller.getProteinModeller().getAppliedProteinInference().getFilters().size(),
+                readModeller.getProteinModeller().getAppliedProteinInference().getFilters().size());
+
+        assertEquals(piaModeller.getPSMModeller().getScoreShortsToScoreNames(),
+                readModeller.getPSMModeller().getScoreShortsToScoreNames());
+        for (String scoreShort : piaModeller.getPSMModeller().getScoreShortsToScoreNames().keySet()) {
+            assertEquals(piaModeller.getPSMModeller().getHigherScoreBetterForScore(scoreShort),
+                    readModeller.getPSMModeller().getHigherScoreBetterForScore(scoreShort));
+            assertEquals(String.valueOf(piaModeller.getPSMModeller().getScoreComparator(scoreShort)),
+                    String.valueOf(readModeller.getPSMModeller().getScoreComparator(scoreShort)));
+        }
+
+        snapshotFile.delete();
+        piaXMLFile.delete();
+    }
+
+
+    /**
+     * Compiles the MS-GF+ and X!Tandem test datasets into the given file and
+     * returns a modeller with calculated FDRs and inferred proteins.
+     */
+    private static PIAModeller createInferredModeller(File piaXMLFile) throws IOException, URISyntaxException {
+        File mzidFile = new File(SerializationTest.class.getClassLoader().getResource("test-datasets/test-msgf.mzid").toURI());
+        File tandemFile = new File(SerializationTest.class.getClassLoader().getResource("test-datasets/test-xtandem.xml").toURI());
+
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile(mzidFile.getName(), mzidFile.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.MZIDENTML_INPUT.getFileTypeShort());
+        piaCompiler.getDataFromFile(tandemFile.getName(), tandemFile.getAbsolutePath(), null,
+                InputFileParserFactory.InputFileTypes.TANDEM_INPUT.getFileTypeShort());
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+
+        piaCompiler.writeOutXML(piaXMLFile);
+        piaCompiler.finish();
+
+        PIAModeller piaModeller = new PIAModeller(piaXMLFile.getAbsolutePath());
+        piaModeller.setCreatePSMSets(true);
+        piaModeller.getPSMModeller().setAllDecoyPattern(".*_REVERSED.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+        piaModeller.getPSMModeller().addFilter(0L,
+                new PSMScoreFilter(FilterComparator.less_equal, false, 0.1, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+
+        SpectrumExtractorInference seInference = new SpectrumExtractorInference();
+        seInference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID, ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName());
+        seInference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, PSMForScoring.ONLY_BEST.getShortName());
+        piaModeller.getProteinModeller().infereProteins(seInference);
+
+        return piaModeller;
+    }
+
+
+    @Test
+    public void testReportSnapshot() throws IOException, URISyntaxException {
+        File piaXMLFile = File.createTempFile("pia_report", ".pia.xml");
+        PIAModeller piaModeller = createInferredModeller(piaXMLFile);
+
+        File reportFile = File.createTempFile("pia_report", ".piar");
+        PIAModeller.writeReportSnapshot(piaModeller, reportFile);
+
+        try (PIAReportSnapshot report = PIAModeller.openReportSnapshot(reportFile)) {
+            assertEquals(piaModeller.getProjectName(), report.getProjectName());
+            assertEquals(piaModeller.getFileName(), report.getFileName());
+
+            PSMModeller psmModeller = piaModeller.getPSMModeller();
+            List<ReportPSM> psms = psmModeller.getFilteredReportPSMs(1L, psmModeller.getFilters(1L));
+            assertTrue(report.getNrPSMs() >= psms.size());
+            for (ReportPSM psm : psms) {
+                ReportPSMRecord record = report.getPSMByID(psm.getId());
+                assertNotNull(record);
+                assertEquals(psm.getFileID().longValue(), record.getFileID());
+                assertEquals(psm.getSequence(), record.getSequence());
+                assertEquals(psm.getModificationsString(), record.getModificationsString());
+                assertEquals(psm.getCharge(), record.getCharge());
+                assertEquals(psm.getMassToCharge(), record.getMassToCharge(), 0.0);
+                assertEquals(psm.getSourceID(), record.getSourceID());
+                assertEquals(psm.getIsDecoy(), record.getIsDecoy());
+                assertEquals(psm.getFDR(), record.getFDR(), 0.0);
+                assertEquals(psm.getScores().size(), record.getScores().size());
+            }
+            assertEquals(10, report.getPSMs(0, 10).size());
+
+            List<ReportPeptide> peptides = piaModeller.getPeptideModeller().getFilteredReportPeptides(0L,
+                    piaModeller.getPeptideModeller().getFilters(0L));
+            assertEquals(peptides.size(), report.getNrPeptides());
+            for (int i = 0; i < peptides.size(); i++) {
+                ReportPeptideRecord record = report.getPeptide(i);
+                assertEquals(peptides.get(i).getStringID(), record.getStringID());
+                assertSame(record, report.getPeptideByStringID(record.getStringID()));
+            }
+            assertNull(report.getPeptideByStringID("no such peptide"));
+
+            List<ReportProtein> proteins = piaModeller.getProteinModeller().getFilteredReportProteins(null);
+            assertEquals(proteins.size(), report.getNrProteins());
+            for (int i = 0; i < proteins.size(); i++) {
+                ReportProteinRecord record = report.getProteinByID(proteins.get(i).getID());
+                assertSame(report.getProtein(i), record);
+                assertEquals(proteins.get(i).getRepresentative().getAccession(), record.getRepresentative());
+                assertEquals(proteins.get(i).getScore(), record.getScore());
+                assertEquals(proteins.get(i).getNrPSMs().intValue(), record.getNrPSMs());
+                assertEquals(proteins.get(i).getPeptides().size(), record.getPeptideStringIDs().size());
+            }
+        }
+
+        reportFile.delete();
+        piaXMLFile.delete();
+    }
+
+
     @Ignore
     @Test
     public void testSerializingCustom() throws IOException {
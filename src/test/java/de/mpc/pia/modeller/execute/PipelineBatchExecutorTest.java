@@ -0,0 +1,52 @@
+package de.mpc.pia.modeller.execute;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class PipelineBatchExecutorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void testResolveInputFiles() throws IOException {
+        File first = folder.newFile("b.pia.xml");
+        File second = folder.newFile("a.pia.xml");
+        folder.newFile("other.txt");
+
+        File listFile = folder.newFile("inputs.txt");
+        Files.write(listFile.toPath(), Arrays.asList("list1.pia.xml", "", "list2.pia.xml"), StandardCharsets.UTF_8);
+
+        List<String> inputs = PipelineBatchExecutor.resolveInputFiles(new String[] {
+                folder.getRoot().getAbsolutePath() + File.separator + "*.pia.xml",
+                PipelineBatchExecutor.LIST_FILE_PREFIX + listFile.getAbsolutePath(),
+                "single.pia.xml"});
+
+        assertEquals(Arrays.asList(second.getAbsolutePath(), first.getAbsolutePath(),
+                "list1.pia.xml", "list2.pia.xml", "single.pia.xml"), inputs);
+    }
+
+
+    @Test
+    public void testApplyOutputTemplate() {
+        assertEquals("out/sample-proteins-3.mztab",
+                PipelineBatchExecutor.applyOutputTemplate("out/{name}-proteins-{index}.mztab",
+                        "/data/sample.pia.xml", 3));
+        assertEquals("sample.csv",
+                PipelineBatchExecutor.applyOutputTemplate("{name}.csv", "sample.XML", 1));
+        assertEquals("fixed.csv",
+                PipelineBatchExecutor.applyOutputTemplate("fixed.csv", "sample.pia.xml", 1));
+    }
+}
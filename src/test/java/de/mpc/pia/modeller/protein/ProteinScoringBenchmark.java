@@ -0,0 +1,125 @@
+package de.mpc.pia.modeller.protein;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.protein.inference.OccamsRazorInference;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+/**
+ * JMH benchmark of the protein scoring with the best PSM per peptide, for an
+ * Occam's razor inference on the largest bundled dataset.
+ * This is no unit test, run it via the main method from the test classpath.
+ *
+ * @author julian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProteinScoringBenchmark {
+
+    private File piaXMLFile;
+
+    private PIAModeller piaModeller;
+
+    private AbstractScoring scoring;
+
+
+    @Setup(Level.Trial)
+    public void createModeller() throws IOException, URISyntaxException {
+        File idXMLFile = new File(ProteinScoringBenchmark.class.getClassLoader().getResource("merge1-msgf-fdr_filtered-015.idXML").toURI());
+
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile("msgf", idXMLFile.getAbsolutePath(), null, null);
+        piaCompiler.buildClusterList();
+        piaCompiler.buildIntermediateStructure();
+
+        piaXMLFile = File.createTempFile("pia-scoring-benchmark", ".pia.xml");
+        piaCompiler.writeOutXML(piaXMLFile);
+        piaCompiler.finish();
+
+        piaModeller = new PIAModeller(piaXMLFile.getAbsolutePath());
+        piaModeller.setCreatePSMSets(true);
+        piaModeller.getPSMModeller().setAllDecoyPattern("s.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+
+        scoring = new MultiplicativeScoring(new HashMap<>());
+        scoring.setSetting(AbstractScoring.SCORING_SETTING_ID, ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName());
+        scoring.setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, PSMForScoring.ONLY_BEST.getShortName());
+
+        piaModeller.getProteinModeller().infereProteins(createOccamsRazorInference());
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        piaXMLFile.delete();
+    }
+
+
+    private OccamsRazorInference createOccamsRazorInference() {
+        OccamsRazorInference occamsRazor = new OccamsRazorInference();
+        occamsRazor.addFilter(new PSMScoreFilter(FilterComparator.less_equal, false, 0.01,
+                ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName()));
+        occamsRazor.setScoring(scoring);
+        return occamsRazor;
+    }
+
+
+    @Benchmark
+    public List<ReportProtein> infereOccamsRazor() {
+        piaModeller.getProteinModeller().infereProteins(createOccamsRazorInference());
+        return piaModeller.getProteinModeller().getFilteredReportProteins(null);
+    }
+
+
+    @Benchmark
+    public List<ReportProtein> applyScoring() {
+        piaModeller.getProteinModeller().applyScoring(scoring);
+        return piaModeller.getProteinModeller().getFilteredReportProteins(null);
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProteinScoringBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
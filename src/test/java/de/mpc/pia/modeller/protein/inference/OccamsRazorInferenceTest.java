@@ -0,0 +1,151 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.Accession;
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PIAModellerTest;
+import de.mpc.pia.modeller.PeptideModeller;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.scoring.AbstractScoring;
+import de.mpc.pia.modeller.protein.scoring.MultiplicativeScoring;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class OccamsRazorInferenceTest {
+
+    private static PIAModeller piaModeller;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        File piaFile = new File(PIAModellerTest.class.getResource("/55merge_mascot_tandem.pia.xml").getPath());
+        piaModeller = new PIAModeller(piaFile.getAbsolutePath());
+
+        piaModeller.setCreatePSMSets(true);
+        piaModeller.getPSMModeller().setAllDecoyPattern("Rnd.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+    }
+
+
+    @Test
+    public void testProteinGroupsEqualPreviousInference() {
+        for (boolean filtered : new boolean[] {false, true}) {
+            List<String> proteins = describeProteins(calculateInference(createInference(filtered, 0)));
+            List<String> expected = describeProteins(calculateReferenceInference(createInference(filtered, 0)));
+
+            assertFalse(expected.isEmpty());
+            Collections.sort(proteins);
+            Collections.sort(expected);
+            assertEquals(expected, proteins);
+        }
+    }
+
+
+    @Test
+    public void testSchedulingIndependentOfThreads() {
+        List<String> expected = describeProteins(calculateReferenceInference(createInference(false, 1)));
+        Collections.sort(expected);
+
+        List<String> serialProteins = describeProteins(calculateInference(createInference(false, 1)));
+        for (int nrThreads : new int[] {2, 4, 8}) {
+            OccamsRazorInference inference = createInference(false, nrThreads);
+            List<String> proteins = describeProteins(calculateInference(inference));
+
+            // the proteins are reported in the order of the schedule, whichever thread processed the trees
+            assertEquals(serialProteins, proteins);
+            assertNull(inference.getNextTree());
+            assertNull(inference.getNextScheduledTree());
+        }
+
+        Collections.sort(serialProteins);
+        assertEquals(expected, serialProteins);
+    }
+
+
+    /**
+     * Creates the inference with a multiplicative scoring of the PSM FDR
+     * Scores and optionally a PSM filter on the combined FDR Score.
+     */
+    static OccamsRazorInference createInference(boolean filtered, int nrThreads) {
+        OccamsRazorInference inference = new OccamsRazorInference();
+        if (filtered) {
+            inference.addFilter(new PSMScoreFilter(FilterComparator.less_equal, false, 0.5,
+                    ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName()));
+        }
+
+        inference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID,
+                ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName());
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID,
+                PSMForScoring.ONLY_BEST.getShortName());
+
+        inference.setAllowedThreads(nrThreads);
+        return inference;
+    }
+
+
+    static List<ReportProtein> calculateInference(OccamsRazorInference inference) {
+        PeptideModeller peptideModeller = piaModeller.getPeptideModeller();
+        return inference.calculateInference(piaModeller.getGroups(),
+                piaModeller.getPSMModeller().getReportPSMSets(),
+                peptideModeller.getConsiderModifications(),
+                piaModeller.getPSMSetSettings(),
+                peptideModeller.getFilteredReportPeptides(0L, peptideModeller.getFilters(0L)));
+    }
+
+
+    static List<ReportProtein> calculateReferenceInference(OccamsRazorInference inference) {
+        PeptideModeller peptideModeller = piaModeller.getPeptideModeller();
+        return OccamsRazorReference.calculateInference(inference, piaModeller.getGroups(),
+                piaModeller.getPSMModeller().getReportPSMSets(),
+                peptideModeller.getConsiderModifications(),
+                piaModeller.getPSMSetSettings(),
+                peptideModeller.getFilteredReportPeptides(0L, peptideModeller.getFilters(0L)));
+    }
+
+
+    /**
+     * Describes each protein by its accessions, peptides, score and subsets.
+     */
+    static List<String> describeProteins(List<ReportProtein> proteins) {
+        List<String> descriptions = new ArrayList<>(proteins.size());
+        for (ReportProtein protein : proteins) {
+            List<String> subSets = new ArrayList<>();
+            for (ReportProtein subSet : protein.getSubSets()) {
+                subSets.add(describeProtein(subSet));
+            }
+            Collections.sort(subSets);
+
+            descriptions.add(describeProtein(protein) + " score=" + protein.getScore() + " subsets=" + subSets);
+        }
+        return descriptions;
+    }
+
+
+    private static String describeProtein(ReportProtein protein) {
+        List<String> accessions = protein.getAccessions().stream()
+                .map(Accession::getAccession).sorted().collect(Collectors.toList());
+        List<String> peptides = protein.getPeptides().stream()
+                .map(ReportPeptide::getStringID).sorted().collect(Collectors.toList());
+        return accessions + " " + peptides;
+    }
+}
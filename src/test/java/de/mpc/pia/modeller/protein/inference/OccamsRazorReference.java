@@ -0,0 +1,223 @@
+package de.mpc.pia.modeller.protein.inference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import de.mpc.pia.intermediate.Group;
+import de.mpc.pia.modeller.peptide.ReportPeptide;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.psm.ReportPSMSet;
+import de.mpc.pia.modeller.report.filter.FilterFactory;
+
+
+/**
+ * The Occam's Razor inference as it was implemented before the peptide
+ * bitsets and the scheduling of the trees, processing the trees serially
+ * with the peptide keys as sets of strings. Used as reference for the
+ * protein groups of the {@link OccamsRazorInference}.
+ */
+final class OccamsRazorReference {
+
+    private OccamsRazorReference() {
+        throw new AssertionError();
+    }
+
+
+    /**
+     * Infers the proteins with the filters and scoring of the given inference.
+     */
+    static List<ReportProtein> calculateInference(OccamsRazorInference inference,
+            Map<Long, Group> groupMap,
+            Map<String, ReportPSMSet> reportPSMSetMap,
+            boolean considerModifications,
+            Map<String, Boolean> psmSetSettings,
+            Collection<ReportPeptide> reportPeptides) {
+        Map<Long, Map<Long, Group>> treeGroupMap = new HashMap<>();
+        for (Map.Entry<Long, Group> groupIt : groupMap.entrySet()) {
+            treeGroupMap.computeIfAbsent(groupIt.getValue().getTreeID(), k -> new HashMap<>())
+                    .put(groupIt.getKey(), groupIt.getValue());
+        }
+
+        Map<String, ReportPeptide> reportPeptidesMap = inference.sortPeptidesInMap(reportPeptides);
+
+        List<ReportProtein> reportProteins = new ArrayList<>();
+        for (Map<Long, Group> treeGroups : treeGroupMap.values()) {
+            reportProteins.addAll(processTree(inference, treeGroups, reportPSMSetMap,
+                    considerModifications, psmSetSettings, reportPeptidesMap));
+        }
+        return reportProteins;
+    }
+
+
+    private static List<ReportProtein> processTree(OccamsRazorInference parent,
+            Map<Long, Group> groupMap,
+            Map<String, ReportPSMSet> reportPSMSetMap,
+            boolean considerModifications,
+            Map<String, Boolean> psmSetSettings,
+            Map<String, ReportPeptide> inferredReportPeptides) {
+        Map<Long, List<ReportPeptide>> reportPeptidesMap =
+                parent.createFilteredReportPeptides(groupMap, reportPSMSetMap,
+                        considerModifications, psmSetSettings, inferredReportPeptides);
+
+        Map<Long, ReportProtein> proteins = new HashMap<>(reportPeptidesMap.size());
+        Map<Long, Set<String>> peptideKeysMap = new HashMap<>();
+        Map<Long, Set<Long>> sameSetMap = new HashMap<>(reportPeptidesMap.size());
+
+        for (Map.Entry<Long, Group> groupIt : groupMap.entrySet()) {
+            if ((groupIt.getValue().getAccessions().size() == 0) ||
+                    !parent.groupHasReportPeptides(groupIt.getValue(), reportPeptidesMap)) {
+                continue;
+            }
+
+            ReportProtein protein = new ReportProtein(groupIt.getKey());
+            groupIt.getValue().getAccessions().values().forEach(protein::addAccession);
+
+            Set<Long> pepGroupIDs = new HashSet<>();
+            Set<String> peptideKeys = new HashSet<>();
+            pepGroupIDs.add(groupIt.getKey());
+            pepGroupIDs.addAll(groupIt.getValue().getAllPeptideChildren().keySet());
+            pepGroupIDs.stream().filter(reportPeptidesMap::containsKey).forEach(pepGroupID -> {
+                for (ReportPeptide peptide : reportPeptidesMap.get(pepGroupID)) {
+                    if (peptideKeys.add(peptide.getStringID())) {
+                        protein.addPeptide(peptide);
+                    }
+                }
+            });
+
+            Set<Long> sameSet = new HashSet<>();
+            peptideKeysMap.entrySet().stream()
+                    .filter(peptideKeyIt -> peptideKeyIt.getValue().equals(peptideKeys))
+                    .forEach(peptideKeyIt -> {
+                        sameSet.add(peptideKeyIt.getKey());
+                        sameSetMap.get(peptideKeyIt.getKey()).add(groupIt.getKey());
+                    });
+            sameSetMap.put(groupIt.getKey(), sameSet);
+
+            peptideKeysMap.put(groupIt.getKey(), peptideKeys);
+            proteins.put(protein.getID(), protein);
+        }
+
+        List<ReportProtein> reportProteins = new ArrayList<>();
+        if (proteins.size() < 1) {
+            return reportProteins;
+        }
+
+        for (Map.Entry<Long, Set<Long>> sameSetIt : sameSetMap.entrySet()) {
+            Long protID = sameSetIt.getKey();
+            ReportProtein protein = proteins.get(protID);
+            if (protein != null) {
+                sameSetIt.getValue().stream().filter(sameID -> !Objects.equals(sameID, protID)).forEach(sameID -> {
+                    ReportProtein sameProtein = proteins.get(sameID);
+                    if (sameProtein != null) {
+                        sameProtein.getAccessions().forEach(protein::addAccession);
+                        proteins.remove(sameID);
+                        peptideKeysMap.remove(sameID);
+                        sameSetMap.get(sameID).remove(protID);
+                    }
+                });
+            }
+        }
+
+        Set<Long> removeProteins = new HashSet<>(proteins.size());
+        for (ReportProtein protein : proteins.values()) {
+            protein.setScore(parent.getScoring().calculateProteinScore(protein));
+            if (!FilterFactory.satisfiesFilterList(protein, 0L, parent.getFilters())) {
+                removeProteins.add(protein.getID());
+            }
+        }
+        for (Long rID : removeProteins) {
+            proteins.remove(rID);
+            peptideKeysMap.remove(rID);
+        }
+
+        HashMap<Long, ReportProtein> unreportedProteins = new HashMap<>(proteins);
+
+        Map<Long, Set<Long>> subProteinMap = new HashMap<>(reportPeptidesMap.size());
+        Set<Long> isSubProtein = new HashSet<>();
+        Set<String> reportedPeptides = new HashSet<>();
+        for (Map.Entry<Long, ReportProtein> proteinIt : proteins.entrySet()) {
+            Set<String> peptideKeys = peptideKeysMap.get(proteinIt.getKey());
+
+            Set<Long> subProteins = new HashSet<>();
+            subProteinMap.put(proteinIt.getKey(), subProteins);
+            Set<Long> intersectingProteins = new HashSet<>();
+
+            for (Long subProtID : proteins.keySet()) {
+                if (Objects.equals(proteinIt.getKey(), subProtID)) {
+                    continue;
+                }
+
+                Set<String> intersection = new HashSet<>(peptideKeysMap.get(subProtID));
+                intersection.retainAll(peptideKeys);
+
+                if (intersection.size() > 0) {
+                    if (intersection.size() == peptideKeysMap.get(subProtID).size()) {
+                        subProteins.add(subProtID);
+                    } else if (intersection.size() == peptideKeys.size()) {
+                        isSubProtein.add(proteinIt.getKey());
+                    } else {
+                        intersectingProteins.add(subProtID);
+                    }
+                }
+            }
+
+            if (intersectingProteins.isEmpty() && !isSubProtein.contains(proteinIt.getKey())) {
+                ReportProtein protein = proteinIt.getValue();
+
+                reportProteins.add(protein);
+                reportedPeptides.addAll(peptideKeysMap.get(proteinIt.getKey()));
+                unreportedProteins.remove(proteinIt.getKey());
+
+                for (Long subID : subProteins) {
+                    protein.addToSubsets(proteins.get(subID));
+                    unreportedProteins.remove(subID);
+                }
+            }
+        }
+
+        while (unreportedProteins.size() > 0) {
+            Set<Long> mostPepsIDs = null;
+            Set<String> mostCanReport = null;
+            int nrMostPeps = -1;
+
+            for (ReportProtein protein : unreportedProteins.values()) {
+                if (isSubProtein.contains(protein.getID())) {
+                    continue;
+                }
+                Set<String> canReport = peptideKeysMap.get(protein.getID());
+                canReport.removeAll(reportedPeptides);
+
+                if (canReport.size() > nrMostPeps) {
+                    mostPepsIDs = new HashSet<>();
+                    mostPepsIDs.add(protein.getID());
+                    nrMostPeps = canReport.size();
+                    mostCanReport = canReport;
+                } else if ((canReport.size() == nrMostPeps) && canReport.equals(mostCanReport)) {
+                    mostPepsIDs.add(protein.getID());
+                }
+            }
+
+            for (Long protID : mostPepsIDs) {
+                ReportProtein protein = proteins.get(protID);
+                if (nrMostPeps > 0) {
+                    reportProteins.add(protein);
+                    reportedPeptides.addAll(peptideKeysMap.get(protID));
+                }
+                unreportedProteins.remove(protID);
+
+                for (Long subID : subProteinMap.get(protID)) {
+                    protein.addToSubsets(proteins.get(subID));
+                    unreportedProteins.remove(subID);
+                }
+            }
+        }
+
+        return reportProteins;
+    }
+}
@@ -0,0 +1,160 @@
+package de.mpc.pia.modeller.protein.scoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PIAModellerTest;
+import de.mpc.pia.modeller.protein.ReportProtein;
+import de.mpc.pia.modeller.protein.inference.OccamsRazorInference;
+import de.mpc.pia.modeller.protein.scoring.settings.PSMForScoring;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class ProteinScoringTest {
+
+    /** the number of proteins, from which on they are scored in parallel */
+    private static final int PARALLEL_SCORING_MIN_PROTEINS = 1000;
+
+    /** the inferred proteins and their subsets */
+    private static List<ReportProtein> proteins;
+
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        File piaFile = new File(PIAModellerTest.class.getResource("/55merge_mascot_tandem.pia.xml").getPath());
+        PIAModeller piaModeller = new PIAModeller(piaFile.getAbsolutePath());
+
+        piaModeller.setCreatePSMSets(true);
+        piaModeller.getPSMModeller().setAllDecoyPattern("Rnd.*");
+        piaModeller.getPSMModeller().setAllTopIdentifications(0);
+        piaModeller.getPSMModeller().calculateAllFDR();
+        piaModeller.getPSMModeller().calculateCombinedFDRScore();
+
+        OccamsRazorInference inference = new OccamsRazorInference();
+        inference.setScoring(new MultiplicativeScoring(new HashMap<>()));
+        inference.getScoring().setSetting(AbstractScoring.SCORING_SETTING_ID,
+                ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName());
+        piaModeller.getProteinModeller().infereProteins(inference);
+
+        Map<Long, ReportProtein> proteinMap = new LinkedHashMap<>();
+        for (ReportProtein protein : piaModeller.getProteinModeller().getFilteredReportProteins(null)) {
+            proteinMap.put(protein.getID(), protein);
+            protein.getSubSets().forEach(subSet -> proteinMap.putIfAbsent(subSet.getID(), subSet));
+        }
+        proteins = new ArrayList<>(proteinMap.values());
+    }
+
+
+    @Test
+    public void testScoresEqualPreviousScoring() {
+        assertFalse(proteins.isEmpty());
+        assertTrue("the sequential scoring needs fewer proteins", proteins.size() < PARALLEL_SCORING_MIN_PROTEINS);
+
+        // copies of the proteins, which are scored in parallel
+        List<ReportProtein> copies = new ArrayList<>();
+        long copyID = 1;
+        while (copies.size() < PARALLEL_SCORING_MIN_PROTEINS) {
+            for (ReportProtein protein : proteins) {
+                ReportProtein copy = new ReportProtein(copyID++);
+                protein.getAccessions().forEach(copy::addAccession);
+                protein.getPeptides().forEach(copy::addPeptide);
+                copies.add(copy);
+            }
+        }
+
+        for (String scoreShort : Arrays.asList(ScoreModelEnum.PSM_LEVEL_FDR_SCORE.getShortName(),
+                ScoreModelEnum.PSM_LEVEL_COMBINED_FDR_SCORE.getShortName(),
+                ScoreModelEnum.MASCOT_SCORE.getShortName())) {
+            for (PSMForScoring psmForScoring : PSMForScoring.values()) {
+                for (AbstractScoring scoring : Arrays.asList(new MultiplicativeScoring(new HashMap<>()),
+                        new AdditiveScoring(new HashMap<>()), new GeometricMeanScoring(new HashMap<>()))) {
+                    scoring.setSetting(AbstractScoring.SCORING_SETTING_ID, scoreShort);
+                    scoring.setSetting(AbstractScoring.SCORING_SPECTRA_SETTING_ID, psmForScoring.getShortName());
+                    String message = scoring.getShortName() + ", " + scoreShort + ", " + psmForScoring.getShortName();
+
+                    // the subsets are in the list, so they are scored only once
+                    scoring.calculateProteinScores(proteins);
+                    for (ReportProtein protein : proteins) {
+                        assertEquals(message, calculatePreviousScore(scoring, protein), protein.getScore());
+                    }
+
+                    scoring.calculateProteinScores(copies);
+                    for (ReportProtein copy : copies) {
+                        assertEquals(message, calculatePreviousScore(scoring, copy), copy.getScore());
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Calculates the protein score like the scorings did on the List of
+     * {@link ScoreModel}s given by
+     * {@link PSMForScoring#getProteinsScores(String, ReportProtein, String)}.
+     */
+    private static Double calculatePreviousScore(AbstractScoring scoring, ReportProtein protein) {
+        List<ScoreModel> scores = PSMForScoring.getProteinsScores(
+                scoring.getPSMForScoringSetting().getValue(), protein,
+                scoring.getScoreSetting().getValue());
+
+        if (scores.isEmpty()) {
+            return Double.NaN;
+        }
+
+        int nrScores = 0;
+        for (ScoreModel score : scores) {
+            if (!score.getValue().equals(Double.NaN)) {
+                nrScores++;
+            }
+        }
+        double exp = 1.0 / (double) nrScores;
+
+        Double proteinScore = Double.NaN;
+        for (ScoreModel score : scores) {
+            Double value = score.getValue();
+            if (value.equals(Double.NaN)) {
+                continue;
+            }
+
+            boolean lowerScoreBetter = (score.getType().higherScoreBetter() != null)
+                    && !score.getType().higherScoreBetter();
+            boolean initialize = proteinScore.equals(Double.NaN);
+
+            if (scoring instanceof MultiplicativeScoring) {
+                if (lowerScoreBetter) {
+                    proteinScore = initialize ? -Math.log10(value) : proteinScore - Math.log10(value);
+                } else {
+                    proteinScore = initialize ? value : proteinScore * value;
+                }
+            } else if (scoring instanceof AdditiveScoring) {
+                proteinScore = initialize ? value : proteinScore + value;
+            } else if (scoring instanceof GeometricMeanScoring) {
+                if (lowerScoreBetter) {
+                    proteinScore = initialize ? -Math.log10(Math.pow(value, exp))
+                            : proteinScore - Math.log10(Math.pow(value, exp));
+                } else {
+                    proteinScore = initialize ? Math.pow(value, exp) : proteinScore * Math.pow(value, exp);
+                }
+            } else {
+                throw new IllegalArgumentException("unknown scoring " + scoring.getShortName());
+            }
+        }
+
+        return proteinScore;
+    }
+}
@@ -0,0 +1,172 @@
+package de.mpc.pia.modeller.psm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.mpc.pia.intermediate.PeptideSpectrumMatch;
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+public class IdentificationRankGroupTest {
+
+    private static final List<ScoreModelEnum> SCORES =
+            Arrays.asList(ScoreModelEnum.MASCOT_SCORE, ScoreModelEnum.MASCOT_EXPECT);
+
+
+    @Test
+    public void testRanksEqualSortedRanks() {
+        Random random = new Random(42);
+        Map<String, Boolean> higherScoreBetter = createHigherScoreBetter();
+
+        for (int spectrum = 0; spectrum < 200; spectrum++) {
+            List<ReportPSM> psms = createPSMs(random, 1 + random.nextInt(20));
+            new IdentificationRankGroup(psms, higherScoreBetter);
+
+            for (ScoreModelEnum score : SCORES) {
+                Map<ReportPSM, Integer> sortedRanks = calculateSortedRanks(psms, score);
+                for (ReportPSM psm : psms) {
+                    assertEquals(sortedRanks.get(psm), psm.getIdentificationRank(score.getShortName()));
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testTopIdentificationsEqualRanks() {
+        Random random = new Random(4711);
+        Map<String, Boolean> higherScoreBetter = createHigherScoreBetter();
+
+        for (int spectrum = 0; spectrum < 200; spectrum++) {
+            List<ReportPSM> psms = createPSMs(random, 1 + random.nextInt(20));
+            new IdentificationRankGroup(psms, higherScoreBetter);
+
+            for (ScoreModelEnum score : SCORES) {
+                Map<ReportPSM, Integer> sortedRanks = calculateSortedRanks(psms, score);
+                for (int topNumber = 1; topNumber <= 3; topNumber++) {
+                    for (ReportPSM psm : psms) {
+                        Integer rank = sortedRanks.get(psm);
+                        assertEquals((rank != null) && (rank <= topNumber),
+                                psm.isTopIdentification(score.getShortName(), topNumber));
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testUnrankableScores() {
+        Map<String, Boolean> higherScoreBetter = new HashMap<>();
+        higherScoreBetter.put(ScoreModelEnum.MASCOT_SCORE.getShortName(), true);
+
+        List<ReportPSM> psms = createPSMs(new Random(1), 3);
+        new IdentificationRankGroup(psms, higherScoreBetter);
+
+        String expectShort = ScoreModelEnum.MASCOT_EXPECT.getShortName();
+        for (ReportPSM psm : psms) {
+            if (psm.getSpectrum().getScore(expectShort) != null) {
+                assertEquals(Integer.valueOf(-1), psm.getIdentificationRank(expectShort));
+                assertTrue(psm.isTopIdentification(expectShort, 1));
+            } else {
+                assertNull(psm.getIdentificationRank(expectShort));
+                assertFalse(psm.isTopIdentification(expectShort, 1));
+            }
+        }
+    }
+
+
+    @Test
+    public void testNaNScoresLast() {
+        List<ReportPSM> psms = new ArrayList<>();
+        for (double value : new double[] {Double.NaN, 10.0, 50.0, Double.NaN, 10.0}) {
+            PeptideSpectrumMatch spectrum = new PeptideSpectrumMatch(psms.size(), 2, 500.0, 0.0, 100.0,
+                    "PEPTIDE", 0, "index=1", "spectrum 1", null, null);
+            spectrum.addScore(new ScoreModel(value, ScoreModelEnum.MASCOT_SCORE));
+            psms.add(new ReportPSM((long) psms.size(), spectrum));
+        }
+        new IdentificationRankGroup(psms, createHigherScoreBetter());
+
+        String scoreShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+        assertFalse(psms.get(0).isTopIdentification(scoreShort, 2));
+        assertTrue(psms.get(0).isTopIdentification(scoreShort, 3));
+        assertTrue(psms.get(4).isTopIdentification(scoreShort, 2));
+
+        assertEquals(Integer.valueOf(3), psms.get(0).getIdentificationRank(scoreShort));
+        assertEquals(Integer.valueOf(2), psms.get(1).getIdentificationRank(scoreShort));
+        assertEquals(Integer.valueOf(1), psms.get(2).getIdentificationRank(scoreShort));
+        assertEquals(Integer.valueOf(3), psms.get(3).getIdentificationRank(scoreShort));
+    }
+
+
+    private static Map<String, Boolean> createHigherScoreBetter() {
+        Map<String, Boolean> higherScoreBetter = new HashMap<>();
+        for (ScoreModelEnum score : SCORES) {
+            higherScoreBetter.put(score.getShortName(), score.higherScoreBetter());
+        }
+        return higherScoreBetter;
+    }
+
+
+    /**
+     * Creates PSMs of one spectrum with many ties and some missing scores.
+     */
+    private static List<ReportPSM> createPSMs(Random random, int nrPSMs) {
+        List<ReportPSM> psms = new ArrayList<>(nrPSMs);
+        for (int i = 0; i < nrPSMs; i++) {
+            PeptideSpectrumMatch spectrum = new PeptideSpectrumMatch(i, 2, 500.0, 0.0, 100.0,
+                    "PEPTIDE", 0, "index=1", "spectrum 1", null, null);
+
+            for (ScoreModelEnum score : SCORES) {
+                if (random.nextInt(10) > 0) {
+                    spectrum.addScore(new ScoreModel((double) random.nextInt(5), score));
+                }
+            }
+
+            psms.add(new ReportPSM((long) i, spectrum));
+        }
+        return psms;
+    }
+
+
+    /**
+     * Calculates the ranks like formerly done, by sorting the PSMs with the
+     * score.
+     */
+    private static Map<ReportPSM, Integer> calculateSortedRanks(List<ReportPSM> psms, ScoreModelEnum score) {
+        String scoreShort = score.getShortName();
+        List<ReportPSM> sorted = new ArrayList<>();
+        for (ReportPSM psm : psms) {
+            if (psm.getSpectrum().getScore(scoreShort) != null) {
+                sorted.add(psm);
+            }
+        }
+        sorted.sort(new ScoreComparator<>(scoreShort, score.higherScoreBetter()));
+
+        Map<ReportPSM, Integer> ranks = new HashMap<>();
+        Double lastScore = null;
+        int rank = 0;
+        for (ReportPSM psm : sorted) {
+            Double thisScore = psm.getScore(scoreShort);
+            if (!thisScore.equals(lastScore)) {
+                rank++;
+            }
+            ranks.put(psm, rank);
+            lastScore = thisScore;
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,74 @@
+package de.mpc.pia.modeller.psm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PIAModellerTest;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.report.SortOrder;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+import de.mpc.pia.modeller.score.comparator.ScoreComparator;
+
+
+public class PSMReportItemSorterTest {
+
+    private static final Long FILE_ID = 1L;
+
+    private PSMModeller psmModeller;
+
+
+    @Before
+    public void setUp() {
+        File piaFile = new File(PIAModellerTest.class.getResource("/55merge_mascot_tandem.pia.xml").getPath());
+        psmModeller = new PIAModeller(piaFile.getAbsolutePath()).getPSMModeller();
+    }
+
+
+    @Test
+    public void testSortEqualsComparatorSort() {
+        String mascotShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+
+        List<List<Comparator<PSMReportItem>>> comparatorLists = new ArrayList<>();
+        comparatorLists.add(Arrays.asList(
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.CHARGE_SORT.toString(), SortOrder.descending),
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.SEQUENCE_SORT.toString(), SortOrder.ascending)));
+        comparatorLists.add(Arrays.asList(
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.SOURCE_ID_SORT.toString(), SortOrder.descending),
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.RETENTION_TIME_SORT.toString(), SortOrder.ascending)));
+        comparatorLists.add(Arrays.asList(
+                new ScoreComparator<>(mascotShort, true),
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.MASS_TO_CHARGE_SORT.toString(), SortOrder.ascending)));
+        comparatorLists.add(Collections.singletonList(
+                PSMReportItemComparator.descending(new ScoreComparator<>(mascotShort, true))));
+        comparatorLists.add(Arrays.asList(
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.RANK_SORT.toString(), SortOrder.ascending),
+                PSMReportItemComparator.getComparatorByName(
+                        PSMReportItemComparator.DELTA_PPM_SORT.toString(), SortOrder.descending)));
+
+        for (List<Comparator<PSMReportItem>> comparators : comparatorLists) {
+            List<ReportPSM> expected = new ArrayList<>(psmModeller.getFilteredReportPSMs(FILE_ID, null));
+            expected.sort(PSMReportItemComparator.getComparator(comparators));
+
+            List<ReportPSM> sorted = new ArrayList<>(psmModeller.getFilteredReportPSMs(FILE_ID, null));
+            PSMReportItemSorter.sort(sorted, comparators);
+
+            assertEquals(expected, sorted);
+        }
+    }
+}
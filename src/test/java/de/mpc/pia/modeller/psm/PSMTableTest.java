@@ -0,0 +1,117 @@
+package de.mpc.pia.modeller.psm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpc.pia.modeller.PIAModeller;
+import de.mpc.pia.modeller.PIAModellerTest;
+import de.mpc.pia.modeller.PSMModeller;
+import de.mpc.pia.modeller.report.SortOrder;
+import de.mpc.pia.modeller.report.filter.AbstractFilter;
+import de.mpc.pia.modeller.report.filter.FilterComparator;
+import de.mpc.pia.modeller.report.filter.RegisteredFilters;
+import de.mpc.pia.modeller.report.filter.impl.PSMScoreFilter;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class PSMTableTest {
+
+    private static final Long FILE_ID = 1L;
+
+    private PSMModeller psmModeller;
+
+    private PSMTable<ReportPSM> table;
+
+
+    @Before
+    public void setUp() {
+        File piaFile = new File(PIAModellerTest.class.getResource("/55merge_mascot_tandem.pia.xml").getPath());
+        psmModeller = new PIAModeller(piaFile.getAbsolutePath()).getPSMModeller();
+        table = psmModeller.createPSMTable(FILE_ID);
+    }
+
+
+    @Test
+    public void testColumns() {
+        List<ReportPSM> psms = psmModeller.getFilteredReportPSMs(FILE_ID, null);
+        assertEquals(psms.size(), table.size());
+        assertFalse(psms.isEmpty());
+
+        for (int row = 0; row < table.size(); row++) {
+            ReportPSM psm = psms.get(row);
+            assertEquals(psm, table.getItem(row));
+            assertEquals(psm.getCharge(), table.getCharge(row));
+            assertEquals(psm.getMassToCharge(), table.getMassToCharge(row), 0.0);
+            assertEquals(psm.getDeltaMass(), table.getDeltaMass(row), 0.0);
+            assertEquals(psm.getRetentionTime(), table.getRetentionTime(row));
+            assertEquals(psm.getSequence(), table.getSequence(row));
+            assertEquals(psm.getFileID().longValue(), table.getFileID(row));
+            assertEquals(psm.getIsDecoy(), table.getIsDecoy(row));
+        }
+    }
+
+
+    @Test
+    public void testFiltersEqualFilteredReport() {
+        List<ReportPSM> psms = psmModeller.getFilteredReportPSMs(FILE_ID, null);
+        String scoreShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+
+        List<List<AbstractFilter>> filterLists = new ArrayList<>();
+        filterLists.add(Collections.singletonList(
+                RegisteredFilters.CHARGE_FILTER.newInstanceOf(FilterComparator.equal, 2, false)));
+        filterLists.add(Collections.singletonList(
+                RegisteredFilters.MZ_FILTER.newInstanceOf(FilterComparator.greater, 600.0, true)));
+        filterLists.add(Collections.singletonList(
+                RegisteredFilters.PSM_SEQUENCE_FILTER.newInstanceOf(FilterComparator.contains, "K", false)));
+        filterLists.add(Collections.singletonList(
+                new PSMScoreFilter(FilterComparator.greater_equal, false, 20.0, scoreShort)));
+        filterLists.add(Arrays.asList(
+                RegisteredFilters.PSM_MISSED_CLEAVAGES_FILTER.newInstanceOf(FilterComparator.less_equal, 1, false),
+                RegisteredFilters.PSM_UNIQUE_FILTER.newInstanceOf(FilterComparator.equal, true, false),
+                RegisteredFilters.DELTA_PPM_FILTER.newInstanceOf(FilterComparator.less, 10.0, false)));
+
+        for (List<AbstractFilter> filters : filterLists) {
+            assertEquals(psmModeller.getFilteredReportPSMs(FILE_ID, filters),
+                    table.getItems(table.filter(filters)));
+        }
+
+        assertEquals(psms, table.getItems(table.filter(null)));
+    }
+
+
+    @Test
+    public void testSortEqualsComparatorSort() {
+        List<String> sortKeys = Arrays.asList(
+                PSMReportItemComparator.CHARGE_SORT.toString(),
+                PSMReportItemComparator.SEQUENCE_SORT.toString(),
+                PSMReportItemComparator.RETENTION_TIME_SORT.toString(),
+                PSMReportItemComparator.SOURCE_ID_SORT.toString());
+
+        Map<String, SortOrder> sortables = new HashMap<>();
+        sortables.put(sortKeys.get(0), SortOrder.descending);
+        sortables.put(sortKeys.get(1), SortOrder.ascending);
+        sortables.put(sortKeys.get(2), SortOrder.ascending);
+        sortables.put(sortKeys.get(3), SortOrder.descending);
+
+        List<Comparator<PSMReportItem>> comparators = new ArrayList<>();
+        for (String sortKey : sortKeys) {
+            comparators.add(PSMReportItemComparator.getComparatorByName(sortKey, sortables.get(sortKey)));
+        }
+        List<ReportPSM> sorted = new ArrayList<>(psmModeller.getFilteredReportPSMs(FILE_ID, null));
+        sorted.sort(PSMReportItemComparator.getComparator(comparators));
+
+        assertEquals(sorted, table.getItems(table.sort(table.getAllRows(), sortKeys, sortables)));
+    }
+}
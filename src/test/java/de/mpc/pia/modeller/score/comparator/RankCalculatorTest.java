@@ -0,0 +1,194 @@
+package de.mpc.pia.modeller.score.comparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.mpc.pia.modeller.score.ScoreModel;
+import de.mpc.pia.modeller.score.ScoreModelEnum;
+
+
+public class RankCalculatorTest {
+
+    @Test
+    public void testRankingEqualsComparatorRanking() {
+        Random random = new Random(42);
+
+        for (ScoreModelEnum scoreModel : Arrays.asList(ScoreModelEnum.MASCOT_SCORE, ScoreModelEnum.MASCOT_EXPECT)) {
+            List<RankedItem> items = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                // many ties and some items without the score
+                ScoreModel score = (random.nextInt(10) == 0) ? null
+                        : new ScoreModel((double) random.nextInt(500), scoreModel);
+                items.add(new RankedItem(score));
+            }
+
+            assertRankingEqualsComparatorRanking(scoreModel.getShortName(), items);
+        }
+    }
+
+
+    @Test
+    public void testSignedZeroScores() {
+        Random random = new Random(42);
+        Double[] values = {-0.0, 0.0, -1.0, 1.0};
+
+        for (ScoreModelEnum scoreModel : Arrays.asList(ScoreModelEnum.MASCOT_SCORE, ScoreModelEnum.MASCOT_EXPECT)) {
+            List<RankedItem> items = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                items.add(new RankedItem(new ScoreModel(values[random.nextInt(values.length)], scoreModel)));
+            }
+
+            assertRankingEqualsComparatorRanking(scoreModel.getShortName(), items);
+        }
+    }
+
+
+    @Test
+    public void testInvalidScoreValues() {
+        Random random = new Random(42);
+
+        // the ScoreModel does not order invalid values consistently, which fails the
+        // merging of the TimSort on long lists, so many short lists are used
+        for (int run = 0; run < 500; run++) {
+            ScoreModelEnum scoreModel = (run % 2 == 0) ? ScoreModelEnum.MASCOT_SCORE : ScoreModelEnum.MASCOT_EXPECT;
+            List<RankedItem> items = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                ScoreModel score;
+                switch (random.nextInt(20)) {
+                case 0:
+                    score = null;
+                    break;
+                case 1:
+                    score = new ScoreModel(Double.NaN, scoreModel);
+                    break;
+                case 2:
+                    score = new ScoreModel(null, scoreModel);
+                    break;
+                default:
+                    score = new ScoreModel((double) random.nextInt(500), scoreModel);
+                    break;
+                }
+                items.add(new RankedItem(score));
+            }
+
+            assertRankingEqualsComparatorRanking(scoreModel.getShortName(), items);
+        }
+
+        String scoreShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+        RankedItem nanScore = new RankedItem(new ScoreModel(Double.NaN, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem nullScore = new RankedItem(new ScoreModel(null, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem low = new RankedItem(new ScoreModel(10.0, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem high = new RankedItem(new ScoreModel(50.0, ScoreModelEnum.MASCOT_SCORE));
+        assertRankingEqualsComparatorRanking(scoreShort, Arrays.asList(nanScore, low, high));
+        assertRankingEqualsComparatorRanking(scoreShort, Arrays.asList(low, nullScore, high, nanScore));
+    }
+
+
+    @Test
+    public void testMixedScoreTypes() {
+        String scoreShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+        RankedItem score = new RankedItem(new ScoreModel(10.0, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem otherScore = new RankedItem(new ScoreModel(50.0, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem expect = new RankedItem(new ScoreModel(0.01, ScoreModelEnum.MASCOT_EXPECT));
+        RankedItem otherExpect = new RankedItem(new ScoreModel(5.0, ScoreModelEnum.MASCOT_EXPECT));
+        RankedItem noScore = new RankedItem(null);
+
+        assertRankingEqualsComparatorRanking(scoreShort, Arrays.asList(score, expect, noScore, otherScore));
+        assertRankingEqualsComparatorRanking(scoreShort, Arrays.asList(otherExpect, score, expect, otherScore));
+    }
+
+
+    @Test
+    public void testNoScoresLast() {
+        String scoreShort = ScoreModelEnum.MASCOT_SCORE.getShortName();
+        RankedItem noScore = new RankedItem(null);
+        RankedItem low = new RankedItem(new ScoreModel(10.0, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem high = new RankedItem(new ScoreModel(50.0, ScoreModelEnum.MASCOT_SCORE));
+        RankedItem otherNoScore = new RankedItem(null);
+
+        RankCalculator.Ranking<RankedItem> ranking =
+                RankCalculator.createRanking(scoreShort, Arrays.asList(noScore, low, high, otherNoScore));
+
+        assertEquals(Arrays.asList(high, low, noScore, otherNoScore), ranking.getSortedItems());
+        assertEquals(1L, ranking.getRank(0));
+        assertEquals(2L, ranking.getRank(1));
+        assertEquals(3L, ranking.getRank(2));
+        assertEquals(ranking.getRank(2), ranking.getRank(3));
+
+        assertNull(RankCalculator.createRanking("not_a_score", Arrays.asList(low, high)));
+    }
+
+
+    /**
+     * Asserts that the ranking equals the one of
+     * {@link RankCalculator#calculateRanking(String, List, java.util.Comparator)}
+     * and sets the same ranks.
+     */
+    private static void assertRankingEqualsComparatorRanking(String scoreShort, List<RankedItem> items) {
+        RankCalculator.Ranking<RankedItem> ranking = RankCalculator.createRanking(scoreShort, items);
+
+        List<RankedItem> sorted = new ArrayList<>(items);
+        RankCalculator.calculateRanking(scoreShort, sorted, new ScoreComparator<>(scoreShort));
+
+        assertEquals(sorted, ranking.getSortedItems());
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i).getRank().longValue(), ranking.getRank(i));
+        }
+
+        // the ranks are only set on applying
+        items.forEach(item -> item.setRank(-1L));
+        ranking.applyRanks();
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(ranking.getRank(i), sorted.get(i).getRank().longValue());
+        }
+    }
+
+
+    /**
+     * Simple {@link Rankable} with only one score.
+     */
+    private static class RankedItem implements Rankable {
+
+        private final ScoreModel score;
+
+        private Long rank;
+
+
+        private RankedItem(ScoreModel score) {
+            this.score = score;
+            this.rank = -1L;
+        }
+
+
+        @Override
+        public ScoreModel getCompareScore(String scoreShortname) {
+            return score;
+        }
+
+
+        @Override
+        public Double getScore(String scoreName) {
+            // calculateRanking fails on null values, so they are returned as NaN
+            return ((score != null) && (score.getValue() != null)) ? score.getValue() : Double.valueOf(Double.NaN);
+        }
+
+
+        @Override
+        public Long getRank() {
+            return rank;
+        }
+
+
+        @Override
+        public void setRank(Long rank) {
+            this.rank = rank;
+        }
+    }
+}
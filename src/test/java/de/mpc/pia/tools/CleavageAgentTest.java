@@ -0,0 +1,27 @@
+package de.mpc.pia.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+
+public class CleavageAgentTest {
+
+    @Test
+    public void testCountMissedCleavages() {
+        String[] sequences = {"PEPTIDE", "KPEPTIDEK", "AKRPEKK", "K", ""};
+        for (String sequence : sequences) {
+            assertEquals(sequence.split(CleavageAgent.TRYPSIN.getSiteRegexp()).length - 1,
+                    CleavageAgent.TRYPSIN.getSiteMatcher().countMissedCleavages(sequence));
+        }
+    }
+
+
+    @Test
+    public void testGetAgent() {
+        assertEquals(CleavageAgent.TRYPSIN, CleavageAgent.getByName("trypsin (full)"));
+        assertEquals(CleavageAgent.TRYPSIN, CleavageAgent.getBySiteRegexp("(?<=[KR])(?!P)"));
+        assertNull(CleavageAgent.getByName("no enzyme with this name"));
+    }
+}
@@ -0,0 +1,63 @@
+package de.mpc.pia.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+public class CleavageSiteMatcherTest {
+
+    private static final String[] SEQUENCES = {"", "K", "PEPTIDE", "KPEPTIDEK", "AKRPEKKDPD",
+            "MDKDEFLZBWYRPA", "akrpEK", "AK\u00e9KP"};
+
+
+    @Test
+    public void testLookupTableForAllAgents() {
+        for (CleavageAgent agent : CleavageAgent.values()) {
+            CleavageSiteMatcher matcher = agent.getSiteMatcher();
+            assertTrue(agent.getName(), matcher.usesLookupTable());
+            assertSame(matcher, CleavageSiteMatcher.getForRegexp(agent.getSiteRegexp()));
+
+            for (String sequence : SEQUENCES) {
+                assertEquals(agent.getName() + " " + sequence,
+                        sequence.split(agent.getSiteRegexp()).length - 1,
+                        matcher.countMissedCleavages(sequence));
+                assertArrayEquals(agent.getName() + " " + sequence,
+                        sequence.split(agent.getSiteRegexp()), matcher.split(sequence));
+            }
+        }
+    }
+
+
+    @Test
+    public void testRegexpFallback() {
+        String[] regexps = {"[KR]", "(?<=KK)", "(?=P)*"};
+
+        for (String regexp : regexps) {
+            CleavageSiteMatcher matcher = CleavageSiteMatcher.getForRegexp(regexp);
+            assertFalse(regexp, matcher.usesLookupTable());
+
+            for (String sequence : SEQUENCES) {
+                assertEquals(regexp + " " + sequence,
+                        sequence.split(regexp).length - 1, matcher.countMissedCleavages(sequence));
+                assertArrayEquals(regexp + " " + sequence, sequence.split(regexp), matcher.split(sequence));
+            }
+        }
+    }
+
+
+    @Test
+    public void testMissedCleavageCache() {
+        MissedCleavageCache cache = new MissedCleavageCache(2);
+
+        assertEquals(2, cache.getMissedCleavages("AKRPEKK", CleavageAgent.TRYPSIN));
+        assertEquals(0, cache.getMissedCleavages("PEPTIDEK", CleavageAgent.TRYPSIN));
+        assertEquals(1, cache.getMissedCleavages("KAPEPTIDEK", CleavageAgent.TRYPSIN));
+        assertEquals(2, cache.getMissedCleavages("AKRPEKK", CleavageAgent.TRYPSIN.getSiteRegexp()));
+        assertEquals(3, cache.getMissedCleavages("AKRPEKK", CleavageAgent.TRYPSINP));
+    }
+}
@@ -0,0 +1,70 @@
+package de.mpc.pia.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class CompositeKeyGroupingTest {
+
+    @Test
+    public void testGroupingEqualsMapGrouping() {
+        Random random = new Random(42);
+        List<String[]> items = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            items.add(new String[] {"seq" + random.nextInt(50),
+                    random.nextBoolean() ? null : "mod" + random.nextInt(3),
+                    Integer.toString(random.nextInt(4))});
+        }
+
+        Map<String, List<String[]>> expected = new LinkedHashMap<>();
+        for (String[] item : items) {
+            expected.computeIfAbsent(Arrays.toString(item), k -> new ArrayList<>()).add(item);
+        }
+
+        List<List<String[]>> groups = CompositeKeyGrouping.group(items,
+                (item, hash) -> {
+                    for (String value : item) {
+                        hash.add(value);
+                    }
+                },
+                Arrays::equals);
+
+        assertEquals(new ArrayList<>(expected.values()), groups);
+    }
+
+
+    @Test
+    public void testCollisionsAreVerified() {
+        List<String> items = Arrays.asList("A", "B", "A", "C", "B", "A");
+
+        // all items have the same hash
+        List<List<String>> groups = CompositeKeyGrouping.group(items,
+                (item, hash) -> hash.add(1),
+                String::equals);
+
+        assertEquals(Arrays.asList(Arrays.asList("A", "A", "A"), Arrays.asList("B", "B"),
+                Arrays.asList("C")), groups);
+    }
+
+
+    @Test
+    public void testNullAndEmptyDiffer() {
+        List<String> items = Arrays.asList(null, "", null, "");
+
+        List<List<String>> groups = CompositeKeyGrouping.group(items,
+                (item, hash) -> hash.add(item),
+                (item1, item2) -> true);
+
+        assertEquals(2, groups.size());
+        assertEquals(Arrays.asList(null, null), groups.get(0));
+        assertEquals(Arrays.asList("", ""), groups.get(1));
+    }
+}
@@ -0,0 +1,96 @@
+package de.mpc.pia.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+
+public class DelimitedFieldTokenizerTest {
+
+    @Test
+    public void testLinesAndFields() throws IOException {
+        DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(
+                new StringReader("a\tb\tc\r\n\t12\t\n-7\t1.5"), '\t');
+
+        assertTrue(tokenizer.nextLine());
+        assertEquals(3, tokenizer.getNrFields());
+        assertEquals("b", tokenizer.getFieldString(1));
+        assertEquals("c", tokenizer.getField(2).toString());
+
+        assertTrue(tokenizer.nextLine());
+        assertEquals(3, tokenizer.getNrFields());
+        assertEquals("", tokenizer.getFieldString(0));
+        assertEquals(12, tokenizer.parseIntField(1));
+        assertEquals("", tokenizer.getFieldString(2));
+
+        assertTrue(tokenizer.nextLine());
+        assertEquals(3, tokenizer.getLineNumber());
+        assertEquals(-7, tokenizer.parseIntField(0));
+        assertEquals(1.5, tokenizer.parseDoubleField(1), 0.0);
+
+        assertFalse(tokenizer.nextLine());
+        tokenizer.close();
+    }
+
+
+    @Test
+    public void testProjection() throws IOException {
+        DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(
+                new StringReader("0,1,2,3,4\n5,6,7,8,9\n"), ',');
+        tokenizer.setProjection(1, 3);
+
+        assertTrue(tokenizer.nextLine());
+        assertFalse(tokenizer.hasField(0));
+        assertEquals("1", tokenizer.getFieldString(1));
+        assertFalse(tokenizer.hasField(2));
+        assertEquals(3, tokenizer.parseIntField(3));
+        assertFalse(tokenizer.hasField(4));
+
+        assertTrue(tokenizer.nextLine());
+        assertEquals(8, tokenizer.parseIntField(3));
+        assertFalse(tokenizer.nextLine());
+        tokenizer.close();
+    }
+
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidInteger() throws IOException {
+        DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(new StringReader("1a"), '\t');
+        tokenizer.nextLine();
+        tokenizer.parseIntField(0);
+    }
+
+
+
+    @Test
+    public void testParseDoubleField() throws IOException {
+        String[] values = {"0", "-0.0", "1.", ".5", "17.25", "-2.5e+3", "1E-5", "0.1",
+                "0.30000000000000004", "123456789012345.6", "9007199254740993", "1e22", "1e23",
+                "4.9e-324", "NaN", "-Infinity", " 3.0", "2.0d"};
+        StringBuilder line = new StringBuilder();
+        for (String value : values) {
+            line.append(value).append('\t');
+        }
+
+        DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(new StringReader(line.toString()), '\t');
+        assertTrue(tokenizer.nextLine());
+        for (int column = 0; column < values.length; column++) {
+            assertEquals(Double.doubleToRawLongBits(Double.parseDouble(values[column])),
+                    Double.doubleToRawLongBits(tokenizer.parseDoubleField(column)));
+        }
+        tokenizer.close();
+    }
+
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidDouble() throws IOException {
+        DelimitedFieldTokenizer tokenizer = new DelimitedFieldTokenizer(new StringReader("1.2.3"), '\t');
+        tokenizer.nextLine();
+        tokenizer.parseDoubleField(0);
+    }
+}
@@ -0,0 +1,46 @@
+package de.mpc.pia.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class IndexSorterTest {
+
+    @Test
+    public void testSortEqualsStableListSort() {
+        Random random = new Random(42);
+
+        for (int length : new int[] {0, 1, 15, 16, 17, 1000, 10000}) {
+            int[] keys = new int[length];
+            List<Integer> expected = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                // many ties, to check the stability
+                keys[i] = random.nextInt(50);
+                expected.add(i);
+            }
+            expected.sort(Comparator.comparingInt(idx -> keys[idx]));
+
+            int[] sorted = IndexSorter.sortedIndices(length,
+                    (idx1, idx2) -> Integer.compare(keys[idx1], keys[idx2]));
+
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), sorted);
+        }
+    }
+
+
+    @Test
+    public void testSortSelection() {
+        int[] keys = {5, 3, 5, 1, 3};
+        int[] selection = {4, 2, 0, 1};
+
+        IndexSorter.sort(selection, (idx1, idx2) -> Integer.compare(keys[idx1], keys[idx2]));
+
+        assertArrayEquals(new int[] {4, 1, 2, 0}, selection);
+    }
+}
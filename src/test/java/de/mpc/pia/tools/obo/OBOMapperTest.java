@@ -1,5 +1,8 @@
 package de.mpc.pia.tools.obo;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Set;
@@ -26,6 +29,29 @@ public class OBOMapperTest {
     }
 
 
+    @Test
+    public void testIndexedLookupsOffline() {
+        OBOMapper oboMapper = new OBOMapper(false);
+
+        Term mascotScore = oboMapper.getTermByName("Mascot:score");
+        assertEquals("MS:1001171", mascotScore.getName());
+        assertNull(oboMapper.getTermByName("sure_not_there"));
+
+        assertTrue(oboMapper.getParentAccessions(mascotScore).contains("MS:1001143"));
+        assertFalse(oboMapper.getParentAccessions(mascotScore).contains("MS:1002347"));
+        assertTrue(oboMapper.isA(mascotScore, "MS:1002347"));
+        assertFalse(oboMapper.isA(mascotScore, "MS:1001176"));
+        assertTrue(oboMapper.getRelationships(mascotScore).isEmpty());
+        assertTrue(oboMapper.getRelationships(oboMapper.getTerm("MS:1001155"))
+                .contains(OBOMapper.OBO_HAS_ORDER_HIGHERSCOREBETTER));
+
+        Term trypsin = oboMapper.getTerm("MS:1001251");
+        assertTrue(oboMapper.getRelationships(trypsin).contains("has_regexp MS:1001176"));
+        assertEquals("(?<=[KR])(?!P)", oboMapper.getEnzymeRegexp(trypsin));
+        assertNull(oboMapper.getEnzymeRegexp(mascotScore));
+    }
+
+
     private void testMapper(OBOMapper oboMapper) {
         boolean foundTrypsin = false;
         boolean foundMascotScore = false;
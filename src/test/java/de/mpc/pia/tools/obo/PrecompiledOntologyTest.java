@@ -0,0 +1,84 @@
+package de.mpc.pia.tools.obo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.biojava.nbio.ontology.Ontology;
+import org.biojava.nbio.ontology.Term;
+import org.biojava.nbio.ontology.Triple;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.mpc.pia.tools.PrecompiledFiles;
+
+
+public class PrecompiledOntologyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void testPsiMsEqualsParsedOntology() throws Exception {
+        PrecompiledOntology precompiled = writeAndMap(OBOMapper.parseShippedOntology(), "psi-ms.obo.bin");
+        assertPrecompiledEqualsParsed(OBOMapper.parseShippedOntology(), precompiled);
+
+        assertEquals("MS:1001171", precompiled.getTermByDescription("Mascot:score").getName());
+        assertNull(precompiled.getTermByDescription("sure_not_there"));
+        assertNull(precompiled.getTerm("sure_not_there"));
+    }
+
+
+    @Test
+    public void testPsiModEqualsParsedOntology() throws Exception {
+        PrecompiledOntology precompiled = writeAndMap(PsiModParser.parseShippedOntology(), "PSI-MOD.obo.bin");
+        assertPrecompiledEqualsParsed(PsiModParser.parseShippedOntology(), precompiled);
+
+        assertEquals("MOD:01090",
+                precompiled.getTermByDescription("iodoacetamide derivatized amino-terminal residue").getName());
+    }
+
+
+    private PrecompiledOntology writeAndMap(Ontology parsed, String fileName) throws Exception {
+        File file = folder.newFile(fileName);
+        PrecompiledOntology.write(parsed, file);
+        return new PrecompiledOntology(PrecompiledFiles.mapFile(file), parsed.getName(), parsed.getDescription());
+    }
+
+
+    private static void assertPrecompiledEqualsParsed(Ontology parsed, PrecompiledOntology precompiled) {
+        for (Term term : parsed.getTerms()) {
+            if (term instanceof Triple) {
+                continue;
+            }
+
+            Term precompiledTerm = precompiled.getTerm(term.getName());
+            assertNotNull(term.getName(), precompiledTerm);
+            assertEquals(term.getDescription(), precompiledTerm.getDescription());
+            assertEquals(term.getSynonyms().length, precompiledTerm.getSynonyms().length);
+
+            if (term.getAnnotation().containsProperty("def")) {
+                assertEquals(term.getAnnotation().getProperty("def").toString(),
+                        precompiledTerm.getAnnotation().getProperty("def").toString());
+            }
+
+            assertEquals(term.getName(), describeTriples(parsed.getTriples(term, null, null)),
+                    describeTriples(precompiled.getTriples(precompiledTerm, null, null)));
+        }
+    }
+
+
+    private static Set<String> describeTriples(Set<Triple> triples) {
+        Set<String> descriptions = new TreeSet<>();
+        for (Triple triple : triples) {
+            descriptions.add(triple.getPredicate().getName() + " " + triple.getObject().getName());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,74 @@
+package de.mpc.pia.tools.unimod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.mpc.pia.tools.PrecompiledFiles;
+import de.mpc.pia.tools.unimod.jaxb.ModT;
+import de.mpc.pia.tools.unimod.jaxb.SpecificityT;
+
+
+public class PrecompiledUnimodTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void testPrecompiledEqualsParsedUnimod() throws Exception {
+        List<ModT> parsedMods = UnimodParser.parseShippedModifications();
+        File file = folder.newFile("unimod.xml.bin");
+        PrecompiledUnimod.write(parsedMods, file);
+
+        UnimodIndex parsedIndex = new UnimodIndex(parsedMods);
+        UnimodIndex precompiledIndex = new PrecompiledUnimod(PrecompiledFiles.mapFile(file)).getIndex();
+
+        for (ModT parsed : parsedMods) {
+            ModT precompiled = precompiledIndex.getByRecordID(parsed.getRecordId());
+            assertEquals(parsedIndex.getByRecordID(parsed.getRecordId()).getRecordId(), precompiled.getRecordId());
+            if (parsedIndex.getByRecordID(parsed.getRecordId()) != parsed) {
+                // a duplicate record ID, only the first one is found
+                continue;
+            }
+
+            assertEquals(parsed.getTitle(), precompiled.getTitle());
+            assertEquals(parsed.getFullName(), precompiled.getFullName());
+            assertEquals(parsed.getAltName(), precompiled.getAltName());
+            assertEquals(parsed.getDelta().getMonoMass(), precompiled.getDelta().getMonoMass());
+            assertEquals(parsed.getDelta().getAvgeMass(), precompiled.getDelta().getAvgeMass());
+            assertEquals(parsed.getDelta().getComposition(), precompiled.getDelta().getComposition());
+
+            assertEquals(parsed.getSpecificity().size(), precompiled.getSpecificity().size());
+            for (int i = 0; i < parsed.getSpecificity().size(); i++) {
+                SpecificityT parsedSpec = parsed.getSpecificity().get(i);
+                SpecificityT precompiledSpec = precompiled.getSpecificity().get(i);
+                assertEquals(parsedSpec.getSite(), precompiledSpec.getSite());
+                assertEquals(parsedSpec.getPosition(), precompiledSpec.getPosition());
+                assertEquals(parsedSpec.isHidden(), precompiledSpec.isHidden());
+                assertEquals(parsedSpec.getClassification(), precompiledSpec.getClassification());
+            }
+
+            // the modifications are decoded only once
+            assertSame(precompiled, precompiledIndex.getByRecordID(parsed.getRecordId()));
+
+            if (parsed.getDelta().getMonoMass() != null) {
+                List<String> residues = Collections.singletonList(parsed.getSpecificity().get(0).getSite());
+                assertEquals(parsedIndex.getByMass(parsed.getDelta().getMonoMass(), residues).getRecordId(),
+                        precompiledIndex.getByMass(parsed.getDelta().getMonoMass(), residues).getRecordId());
+                assertEquals(parsedIndex.getByName(parsed.getTitle(), residues).getRecordId(),
+                        precompiledIndex.getByName(parsed.getTitle(), residues).getRecordId());
+            }
+        }
+
+        assertNull(precompiledIndex.getByRecordID(999999999L));
+    }
+}
@@ -0,0 +1,120 @@
+package de.mpc.pia.tools.unimod;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.mpc.pia.intermediate.compiler.PIACompiler;
+import de.mpc.pia.intermediate.compiler.PIASimpleCompiler;
+import de.mpc.pia.tools.OntologyRegistry;
+
+
+/**
+ * JMH benchmark of the Unimod lookups, once while parsing the modified PSMs
+ * of the bundled idXML file and once for the lookups of a modification heavy
+ * (phospho and TMT labelled) dataset.
+ * This is no unit test, run it via the main method from the test classpath.
+ *
+ * @author julian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UnimodLookupBenchmark {
+
+    /** the number of lookups of the modification heavy dataset */
+    private static final int NR_LOOKUPS = 100000;
+
+    private File idXMLFile;
+
+    private UnimodParser unimodParser;
+
+    private List<String> names;
+
+    private List<Double> masses;
+
+    private List<List<String>> residues;
+
+
+    @Setup(Level.Trial)
+    public void createLookups() throws URISyntaxException {
+        idXMLFile = new File(UnimodLookupBenchmark.class.getClassLoader().getResource("merge1-msgf-fdr_filtered-015.idXML").toURI());
+
+        // initialize the shared parser outside of the measurements
+        unimodParser = OntologyRegistry.getUnimodParser();
+
+        String[] modNames = {"Phospho", "TMT6plex", "Oxidation", "Carbamidomethyl", "Deamidated", "Acetyl"};
+        Double[] modMasses = {79.966331, 229.162932, 15.994915, 57.021464, 0.984016, 42.010565};
+        List<List<String>> modResidues = Arrays.asList(
+                Arrays.asList("S", "T", "Y"),
+                Collections.singletonList("K"),
+                Collections.singletonList("M"),
+                Collections.singletonList("C"),
+                Arrays.asList("N", "Q"),
+                Collections.singletonList("."));
+
+        names = new ArrayList<>(NR_LOOKUPS);
+        masses = new ArrayList<>(NR_LOOKUPS);
+        residues = new ArrayList<>(NR_LOOKUPS);
+        for (int i = 0; i < NR_LOOKUPS; i++) {
+            // mostly phospho and TMT
+            int modIdx = (i % 4 < 2) ? (i % 2) : (i % modNames.length);
+            List<String> modResidue = modResidues.get(modIdx);
+
+            names.add(modNames[modIdx]);
+            masses.add(modMasses[modIdx]);
+            residues.add(Collections.singletonList(modResidue.get(i % modResidue.size())));
+        }
+    }
+
+
+    @Benchmark
+    public PIACompiler parseIdXML() {
+        PIACompiler piaCompiler = new PIASimpleCompiler();
+        piaCompiler.getDataFromFile("msgf", idXMLFile.getAbsolutePath(), null, null);
+        return piaCompiler;
+    }
+
+
+    @Benchmark
+    public void lookupModifications(Blackhole blackhole) {
+        for (int i = 0; i < NR_LOOKUPS; i++) {
+            blackhole.consume(unimodParser.getModificationByName(names.get(i), residues.get(i)));
+            blackhole.consume(unimodParser.getModificationByNameAndMass(names.get(i), masses.get(i), residues.get(i)));
+            blackhole.consume(unimodParser.getModificationByMass(masses.get(i), residues.get(i)));
+        }
+    }
+
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UnimodLookupBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -27,6 +27,24 @@ public class UnimodParserTest {
     }
 
 
+    @Test
+    public void testLookupsOffline() {
+        UnimodParser unimodParser = new UnimodParser(false);
+
+        assertEquals(Long.valueOf(35), unimodParser.getModificationByAccession("UNIMOD:35").getRecordId());
+        assertEquals(Long.valueOf(21), unimodParser.getModificationByAccession("21").getRecordId());
+        assertNull(unimodParser.getModificationByAccession("UNIMOD:999999999"));
+
+        assertEquals(Long.valueOf(21), unimodParser.getModificationByName("PHOSPHORYLATION", "T").getRecordId());
+        assertEquals(Long.valueOf(21),
+                unimodParser.getModificationByNameAndMass("phospho", 79.9663, Arrays.asList("S", "Y")).getRecordId());
+        assertNull(unimodParser.getModificationByNameAndMass("Phospho", 80.5, Collections.singletonList("S")));
+
+        assertEquals(Long.valueOf(35), unimodParser.getModificationByMass(15.9949, "M").getRecordId());
+        assertNull(unimodParser.getModificationByMass(-12345.0, "M"));
+    }
+
+
     private void testParser(UnimodParser unimodParser) {
         assertNotNull(unimodParser.getModificationByName("Carbamidomethyl", Collections.singletonList("C")));
         assertNotNull(unimodParser.getModificationByName("Oxidation", Collections.singletonList("M")));